@@ -0,0 +1,190 @@
+package dao;
+
+import java.util.Arrays;
+
+/**
+ * The document term matrix of one block of the indexer, stored in compressed sparse row (CSR) layout: the termIDs and
+ * values of all rows are held in two contiguous arrays, and <code>rowStarts[i]</code> is the position of the first entry
+ * of row i, which belongs to docID <code>firstDocID + i</code>. Since docIDs arrive in increasing order from the token
+ * stream, no map from docIDs to rows is needed.
+ *
+ * While the block is built, every token simply appends its termID to the current row. {@link #sortRows()} then sorts
+ * every row in place and combines equal termIDs into one entry whose value is the term frequency.
+ */
+public class BlockMatrix
+{
+	private int firstDocID;
+	private int numberOfRows;
+	private int[] rowStarts;
+
+	private int[] termIDs;
+	private float[] values;
+	private int size; // number of used entries of termIDs and values
+
+	/**
+	 * Creates an empty matrix.
+	 *
+	 * @param _initialCapacity The initial number of entries, the arrays grow as needed.
+	 */
+	public BlockMatrix(int _initialCapacity)
+	{
+		firstDocID = -1;
+		numberOfRows = 0;
+		rowStarts = new int[1024];
+		termIDs = new int[Math.max(_initialCapacity, 16)];
+		values = null; // allocated by sortRows()
+		size = 0;
+	}
+
+	/**
+	 * Removes all rows. The arrays are kept, so a matrix can be reused for the next block without allocating.
+	 */
+	public void clear()
+	{
+		firstDocID = -1;
+		numberOfRows = 0;
+		size = 0;
+	}
+
+	/**
+	 * Starts the row of the given document, subsequent calls of {@link #add(int)} add to this row. Calling this method
+	 * with the docID of the current row has no effect, docIDs between the current and the new one get empty rows.
+	 *
+	 * @param docID The docID, must not be smaller than the docID of the current row.
+	 */
+	public void addDoc(int docID)
+	{
+		if (firstDocID < 0)
+		{
+			firstDocID = docID;
+		}
+		if (docID < firstDocID + numberOfRows - 1)
+		{
+			throw new IllegalArgumentException("docIDs have to be added in increasing order: " + docID + " after " + getLastDocID());
+		}
+
+		while (firstDocID + numberOfRows <= docID)
+		{
+			if (numberOfRows + 1 >= rowStarts.length)
+			{
+				rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+			}
+			rowStarts[numberOfRows] = size;
+			numberOfRows++;
+		}
+		rowStarts[numberOfRows] = size;
+	}
+
+	/**
+	 * Adds one occurrence of the given term to the current row.
+	 */
+	public void add(int termID)
+	{
+		if (size == termIDs.length)
+		{
+			termIDs = Arrays.copyOf(termIDs, size * 2);
+		}
+		termIDs[size++] = termID;
+		rowStarts[numberOfRows] = size;
+	}
+
+	/**
+	 * Sorts every row by termID and replaces repeated termIDs by a single entry holding the number of occurrences.
+	 * Rows are compacted in place, so afterwards every termID occurs at most once per row.
+	 */
+	public void sortRows()
+	{
+		if (values == null || values.length < size)
+		{
+			values = new float[termIDs.length];
+		}
+
+		int writePosition = 0;
+		for (int row = 0; row < numberOfRows; row++)
+		{
+			int start = rowStarts[row];
+			int end = rowStarts[row + 1];
+			rowStarts[row] = writePosition;
+
+			Arrays.sort(termIDs, start, end);
+
+			int i = start;
+			while (i < end)
+			{
+				int termID = termIDs[i];
+				int count = 0;
+				while (i < end && termIDs[i] == termID)
+				{
+					count++;
+					i++;
+				}
+				termIDs[writePosition] = termID;
+				values[writePosition] = count;
+				writePosition++;
+			}
+		}
+		rowStarts[numberOfRows] = writePosition;
+		size = writePosition;
+	}
+
+	/**
+	 * @return The docID of the first row, -1 if the matrix is empty.
+	 */
+	public int getFirstDocID()
+	{
+		return firstDocID;
+	}
+
+	/**
+	 * @return The docID of the last row, -1 if the matrix is empty.
+	 */
+	public int getLastDocID()
+	{
+		return numberOfRows == 0 ? -1 : firstDocID + numberOfRows - 1;
+	}
+
+	public int getNumberOfRows()
+	{
+		return numberOfRows;
+	}
+
+	/**
+	 * @return The number of entries of the matrix.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The position of the first entry of the given row (0 = first row) in {@link #getTermIDs()} and {@link #getValues()}.
+	 */
+	public int getRowStart(int row)
+	{
+		return rowStarts[row];
+	}
+
+	/**
+	 * @return The position after the last entry of the given row.
+	 */
+	public int getRowEnd(int row)
+	{
+		return rowStarts[row + 1];
+	}
+
+	/**
+	 * Returns the termID array, only the entries of the rows are valid.
+	 */
+	public int[] getTermIDs()
+	{
+		return termIDs;
+	}
+
+	/**
+	 * Returns the value array, parallel to {@link #getTermIDs()}. Only available after {@link #sortRows()}.
+	 */
+	public float[] getValues()
+	{
+		return values;
+	}
+}
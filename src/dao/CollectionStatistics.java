@@ -36,6 +36,11 @@ public class CollectionStatistics
 	 */
 	private double averageDocumentLength;
 	
+	/**
+	 * Whether the headers of the documents were skipped when the collection was tokenized.
+	 */
+	private boolean headersSkipped;
+	
 	private File file;
 	
 	public CollectionStatistics(int _numberOfDocuments, long _numberOfTokens, int _numberOfUniqueTerms, double _averageDocumentLength)
@@ -99,6 +104,16 @@ public class CollectionStatistics
 		this.averageDocumentLength = averageDocumentLength;
 	}
 	
+	public boolean isHeadersSkipped()
+	{
+		return headersSkipped;
+	}
+
+	public void setHeadersSkipped(boolean headersSkipped)
+	{
+		this.headersSkipped = headersSkipped;
+	}
+	
 	public void writeToFile()
 	{
 		writeToFile(file);
@@ -121,6 +136,7 @@ public class CollectionStatistics
 			out.write("numberOfTokens="+numberOfTokens+"\n");
 			out.write("numberOfUniqueTerms="+numberOfUniqueTerms+"\n");
 			out.write("averageDocumentLength="+averageDocumentLength+"\n");
+			out.write("headersSkipped="+headersSkipped+"\n");
 			
 			out.close();
 			System.out.println("Wrote StatisticsFile to "+_file.getPath()+".");
@@ -145,6 +161,7 @@ public class CollectionStatistics
 		numberOfTokens = -1;
 		numberOfUniqueTerms = -1;
 		averageDocumentLength = -1.0;
+		headersSkipped = false;
 		
 		while (sc.hasNext())
 		{
@@ -180,6 +197,10 @@ public class CollectionStatistics
 				{
 					averageDocumentLength = Double.parseDouble(value);
 				}
+				else if (parameter.equals("headersSkipped"))
+				{
+					headersSkipped = Boolean.parseBoolean(value);
+				}
 				else 
 				{
 				}
@@ -10,6 +10,7 @@ public class Document
 					// have to use long instead!
 	private String category;
 	private String name;
+	private int headerLength; // number of bytes of the header of the document file, 0 if it has none
 
 	public Document(int _id, String _docPath)
 	{
@@ -19,6 +20,13 @@ public class Document
 		this.category = path_parts[1];
 	}
 
+	public Document(int _id, String _category, String _name)
+	{
+		this.id = _id;
+		this.category = _category;
+		this.name = _name;
+	}
+
 	/**
 	 * Returns the id of this document.
 	 * 
@@ -39,6 +47,20 @@ public class Document
 		return this.name;
 	}
 
+	/**
+	 * Returns the length of the header (e.g. the newsgroup header) of the document file in bytes, which is also the
+	 * offset of the body in the file.
+	 */
+	public int getHeaderLength()
+	{
+		return this.headerLength;
+	}
+
+	public void setHeaderLength(int _headerLength)
+	{
+		this.headerLength = _headerLength;
+	}
+
 	/**
 	 * Debugging method. Returns a String representation of this Token.
 	 */
@@ -0,0 +1,256 @@
+package dao;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Disk-backed table of the documents of a collection, used by the indexer instead of keeping a Document object per
+ * document in main memory. Documents are appended in docID order while the collection is tokenized and stored in
+ * four column files:
+ *
+ * <ul>
+ * <li><code>documents.categories</code>: the category index (int) per docID, -1 for docIDs without document.</li>
+ * <li><code>documents.offsets</code>: the offset (int) of the name of each document in the name column, plus a final offset.</li>
+ * <li><code>documents.names</code>: the UTF-8 encoded names of the documents.</li>
+ * <li><code>documents.headers</code>: the header length (int) per docID, see {@link Document#getHeaderLength()}.</li>
+ * </ul>
+ *
+ * Only the categories (a handful of distinct Strings) are kept in main memory. Once all documents have been added,
+ * {@link #finish()} maps the columns, and {@link #get(int)} creates Document objects on demand.
+ */
+public class DocumentTable
+{
+	private File categoriesFile;
+	private File offsetsFile;
+	private File namesFile;
+	private File headersFile;
+
+	private DataOutputStream categoriesOut;
+	private DataOutputStream offsetsOut;
+	private OutputStream namesOut;
+	private DataOutputStream headersOut;
+
+	private ArrayList<String> categories;
+	private HashMap<String, Integer> categoryIndices;
+
+	private int numberOfDocIDs; // largest docID + 1
+	private int nameOffset;
+
+	private IntBuffer categoryColumn; // mapped by finish()
+	private IntBuffer offsetColumn;
+	private ByteBuffer nameColumn;
+	private IntBuffer headerColumn;
+
+	/**
+	 * Creates a new table, does not write to the disk.
+	 *
+	 * @param _directory The directory for the column files.
+	 */
+	public DocumentTable(File _directory)
+	{
+		this.categoriesFile = new File(_directory, "documents.categories");
+		this.offsetsFile = new File(_directory, "documents.offsets");
+		this.namesFile = new File(_directory, "documents.names");
+		this.headersFile = new File(_directory, "documents.headers");
+
+		categories = new ArrayList<String>();
+		categoryIndices = new HashMap<String, Integer>();
+		numberOfDocIDs = 0;
+		nameOffset = 0;
+	}
+
+	/**
+	 * Creates the column files.
+	 *
+	 * @throws IOException
+	 */
+	public void open() throws IOException
+	{
+		categoriesFile.getParentFile().mkdirs();
+
+		categoriesOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(categoriesFile)));
+		offsetsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsFile)));
+		namesOut = new BufferedOutputStream(new FileOutputStream(namesFile));
+		headersOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(headersFile)));
+	}
+
+	/**
+	 * Appends the given document. Documents have to be added in increasing docID order; adding a document whose docID
+	 * has been added before has no effect, docIDs that are skipped are stored without document.
+	 *
+	 * @param document The document to add.
+	 * @throws IOException
+	 */
+	public void add(Document document) throws IOException
+	{
+		if (document.getId() < numberOfDocIDs)
+		{
+			return; // already known, e.g. a document that spans two blocks
+		}
+
+		while (numberOfDocIDs < document.getId())
+		{
+			categoriesOut.writeInt(-1);
+			offsetsOut.writeInt(nameOffset);
+			headersOut.writeInt(0);
+			numberOfDocIDs++;
+		}
+
+		Integer categoryIndex = categoryIndices.get(document.getCategory());
+		if (categoryIndex == null)
+		{
+			categoryIndex = categories.size();
+			categories.add(document.getCategory());
+			categoryIndices.put(document.getCategory(), categoryIndex);
+		}
+
+		byte[] name = document.getName().getBytes("UTF-8");
+
+		categoriesOut.writeInt(categoryIndex);
+		offsetsOut.writeInt(nameOffset);
+		namesOut.write(name);
+		headersOut.writeInt(document.getHeaderLength());
+
+		nameOffset += name.length;
+		numberOfDocIDs++;
+	}
+
+	/**
+	 * Closes the column files and maps them for reading. No documents can be added afterwards.
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException
+	{
+		offsetsOut.writeInt(nameOffset); // end of the last name
+
+		categoriesOut.close();
+		offsetsOut.close();
+		namesOut.close();
+		headersOut.close();
+
+		categoryColumn = map(categoriesFile).asIntBuffer();
+		offsetColumn = map(offsetsFile).asIntBuffer();
+		nameColumn = map(namesFile);
+		headerColumn = map(headersFile).asIntBuffer();
+	}
+
+	private static ByteBuffer map(File file) throws IOException
+	{
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = randomAccessFile.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // the mapping stays valid after closing the file
+		}
+		finally
+		{
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * @return The largest docID + 1.
+	 */
+	public int getNumberOfDocIDs()
+	{
+		return numberOfDocIDs;
+	}
+
+	/**
+	 * @return The distinct categories, in the order of their category indices.
+	 */
+	public ArrayList<String> getCategories()
+	{
+		return categories;
+	}
+
+	/**
+	 * Can only be called after {@link #finish()}.
+	 *
+	 * @return The category index of the given document, -1 if there is no document with this docID.
+	 */
+	public int getCategoryIndex(int docID)
+	{
+		if (docID < 0 || docID >= numberOfDocIDs)
+		{
+			return -1;
+		}
+		return categoryColumn.get(docID);
+	}
+
+	/**
+	 * Can only be called after {@link #finish()}.
+	 *
+	 * @return The offset of the name of the given document in the name column, for docIDs from 0 to getNumberOfDocIDs() (inclusive).
+	 */
+	public int getNameOffset(int docID)
+	{
+		return offsetColumn.get(docID);
+	}
+
+	/**
+	 * Can only be called after {@link #finish()}.
+	 *
+	 * @return The header length of the given document, 0 if there is no document with this docID.
+	 */
+	public int getHeaderLength(int docID)
+	{
+		if (docID < 0 || docID >= numberOfDocIDs)
+		{
+			return 0;
+		}
+		return headerColumn.get(docID);
+	}
+
+	/**
+	 * Can only be called after {@link #finish()}.
+	 *
+	 * @return The name column (read only, positioned at 0).
+	 */
+	public ByteBuffer getNameColumn()
+	{
+		return nameColumn.duplicate();
+	}
+
+	/**
+	 * Returns the document with the given docID. Can only be called after {@link #finish()}.
+	 *
+	 * @return A new Document object or null if there is no document with this docID.
+	 */
+	public Document get(int docID)
+	{
+		int categoryIndex = getCategoryIndex(docID);
+		if (categoryIndex < 0)
+		{
+			return null;
+		}
+
+		int start = offsetColumn.get(docID);
+		byte[] name = new byte[offsetColumn.get(docID + 1) - start];
+		ByteBuffer names = nameColumn.duplicate();
+		names.position(start);
+		names.get(name);
+
+		try
+		{
+			Document document = new Document(docID, categories.get(categoryIndex), new String(name, "UTF-8"));
+			document.setHeaderLength(headerColumn.get(docID));
+			return document;
+		}
+		catch (java.io.UnsupportedEncodingException e)
+		{
+			throw new RuntimeException(e); // UTF-8 is always supported
+		}
+	}
+}
@@ -31,6 +31,14 @@ public class DocumentTermList implements IDocumentTermList
 		this.docTermEntries = new LinkedHashMap<Integer, Float>(1, 1.0f);
 	}
 
+	/**
+	 * Creates a copy of the given list, with the entries in the same order.
+	 */
+	public DocumentTermList(DocumentTermList _other)
+	{
+		this.docTermEntries = new LinkedHashMap<Integer, Float>(_other.docTermEntries);
+	}
+
 	/**
 	 * Adds the specified termID to the list. While we are still adding terms, the values are still term frequencies! 
 	 * Thus, repeated calls of this method with the same termID will not add additional entries to the list, but merely
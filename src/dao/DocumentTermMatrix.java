@@ -3,6 +3,7 @@ package dao;
 
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map.Entry;
 
 
 /**
@@ -25,6 +26,20 @@ public class DocumentTermMatrix
 		docTermLists = new LinkedHashMap<Integer, DocumentTermList>(); // list will be ordered according to docID
 	}
 	
+	/**
+	 * Returns a copy of this matrix, e.g. to apply different thresholds to the same part of a matrix. The rows are
+	 * copied as well, so the copy can be modified independently.
+	 */
+	public DocumentTermMatrix copy()
+	{
+		DocumentTermMatrix copy = new DocumentTermMatrix();
+		for (Entry<Integer, DocumentTermList> row : docTermLists.entrySet())
+		{
+			copy.docTermLists.put(row.getKey(), new DocumentTermList(row.getValue()));
+		}
+		return copy;
+	}
+	
 	/**
 	 * Clear the contents of the matrix.
 	 */
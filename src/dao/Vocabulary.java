@@ -2,32 +2,45 @@ package dao;
 
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
- * Stores terms (Strings) and their IDs (Integers). Should be implicitly ordered by term ID. After all terms have been 
- * added, {@link #finalize()} should be called. A Vocabulary also stores some additional info, like the total number of 
- * documents in the index.
+ * Stores terms (Strings) and their IDs (Integers). Should be implicitly ordered by term ID. A Vocabulary also stores
+ * some additional info, like the total number of documents in the index.
+ *
+ * Terms are found via an open addressing hash table of termIDs, which uses the same hash function as String.hashCode().
+ * This allows to look up and add terms given as a slice of a char array ({@link #get(char[], int, int)},
+ * {@link #add(char[], int, int, int)}), e.g. the term buffer of an {@link indexing.ITokenCursor}, without creating a
+ * String: the hash is computed once from the chars and a String is only created for terms that are new.
  *
  */
 public class Vocabulary
 {
-	private LinkedHashMap<String, VocabularyEntry> vocabulary; // the termIDs are the values, the terms are the keys
-	
-	private ArrayList<Map.Entry<String, VocabularyEntry>> fast_access_vocabulary; // to allow for the fast reverse loopkup get(ID)
-	
+	private ArrayList<String> terms; // the terms, by termID
+	private ArrayList<VocabularyEntry> entries; // the VocabularyEntries, by termID
+	private int[] hashes; // the hash codes of the terms, by termID
+
+	private int[] table; // termID + 1 of the term in each slot, 0 for empty slots. The length is a power of two.
+
 	private int totalNumberOfDocuments = 0;
-	
+
 	private int termID = 0;
-	
+
 
 	public Vocabulary(int _size)
 	{
-		vocabulary = new LinkedHashMap<String, VocabularyEntry>(_size, 1.0f);
-		fast_access_vocabulary = null;
+		terms = new ArrayList<String>(_size);
+		entries = new ArrayList<VocabularyEntry>(_size);
+		hashes = new int[Math.max(_size, 16)];
+
+		int capacity = 16;
+		while (capacity < 2 * _size) // keep the table at most half full
+		{
+			capacity *= 2;
+		}
+		table = new int[capacity];
 	}
-	
+
 	/**
 	 * Sets the total amount of documents in the index to the specified value.
 	 * @param _count
@@ -36,147 +49,277 @@ public class Vocabulary
 	{
 		totalNumberOfDocuments = _count;
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @return The total amount of documents in the index.
 	 */
 	public int getTotalNumberOfDocuments()
 	{
 		return totalNumberOfDocuments;
 	}
-	
-	/**
-	 * Allocates memory to create a fastAccessVocabulary, which enables the efficient use of get(termID). This
-	 * tacitly assumes that no additional calls to {@link #add(String, int)} are made!
-	 */
-	public void finalize()
-	{
-		fast_access_vocabulary = new ArrayList<Map.Entry<String, VocabularyEntry>>(vocabulary.entrySet());
-	}
-	
+
 	/**
-	 * Adds the specified term to the vocabulary. 
-	 * 
-	 * If it was already in the vocabulary and the 
-	 * current docId has been counted towards the documentFrequency of the specified term, this method does not modify the 
-	 * vocabulary and merely returns the VocabularyEntry of the term. 
-	 * 
-	 * If the term existed, but has occurred for the first time in the current Document, the docFrequency of this term 
+	 * Adds the specified term to the vocabulary.
+	 *
+	 * If it was already in the vocabulary and the
+	 * current docId has been counted towards the documentFrequency of the specified term, this method does not modify the
+	 * vocabulary and merely returns the VocabularyEntry of the term.
+	 *
+	 * If the term existed, but has occurred for the first time in the current Document, the docFrequency of this term
 	 * is increased by 1 and the adjusted VocabularyEntry is returned.
-	 * 
+	 *
 	 * For new terms, a new VocabularyEntry is created (with an initial docFrequency of 1 and a new termID) and returned.
-	 * 
+	 *
 	 * @param term The term to be added to the vocabulary
 	 * @param currentDocID The current DocID, used to calculate the document frequency
-	 * 
+	 *
 	 * @return The VocabularyEntry which is associated with the given term.
 	 */
 	public VocabularyEntry add(String term, int currentDocID)
 	{
-		VocabularyEntry old = get(term);
-		if (old != null)
+		int hash = term.hashCode();
+		int slot = findSlot(term, hash);
+		if (table[slot] != 0)
 		{
-			old.increaseCollectionFrequencyByOne();
-			if (old.getLastDocID() != currentDocID)
-			{
-				old.increaseDocFrequencyByOne(currentDocID);
-				vocabulary.put(term, old);
-				return old;
-			}
-			else
-			{
-				return old;
-			}	
+			return count(entries.get(table[slot] - 1), currentDocID);
 		}
-			
-		VocabularyEntry newEntry = new VocabularyEntry(termID, currentDocID);
-		vocabulary.put(term, newEntry);
-		termID++;
-		
-		return newEntry;
+
+		return insert(slot, term, hash, new VocabularyEntry(termID, currentDocID));
+	}
+
+	/**
+	 * Same as {@link #add(String, int)}, but for a term given as a slice of a char array. A String is only created if
+	 * the term is not in the vocabulary yet.
+	 *
+	 * @param chars The characters of the term.
+	 * @param offset The position of the first character of the term.
+	 * @param length The length of the term.
+	 * @param currentDocID The current DocID, used to calculate the document frequency
+	 *
+	 * @return The VocabularyEntry which is associated with the given term.
+	 */
+	public VocabularyEntry add(char[] chars, int offset, int length, int currentDocID)
+	{
+		int hash = hash(chars, offset, length);
+		int slot = findSlot(chars, offset, length, hash);
+		if (table[slot] != 0)
+		{
+			return count(entries.get(table[slot] - 1), currentDocID);
+		}
+
+		return insert(slot, new String(chars, offset, length), hash, new VocabularyEntry(termID, currentDocID));
 	}
-	
+
 	public VocabularyEntry addSilent(String term)
 	{
-		VocabularyEntry old = get(term);
-		if (old != null)
+		int hash = term.hashCode();
+		int slot = findSlot(term, hash);
+		if (table[slot] != 0)
 		{
-			return old;
+			return entries.get(table[slot] - 1);
 		}
-			
+
 		VocabularyEntry newEntry = new VocabularyEntry(termID, -1);
 		newEntry.setDocFreq(0);
 		newEntry.setCollectionFreq(0);
-		
-		vocabulary.put(term, newEntry);
+
+		return insert(slot, term, hash, newEntry);
+	}
+
+	/**
+	 * Counts one more occurrence of the term of the given entry in the given document.
+	 */
+	private VocabularyEntry count(VocabularyEntry entry, int currentDocID)
+	{
+		entry.increaseCollectionFrequencyByOne();
+		if (entry.getLastDocID() != currentDocID)
+		{
+			entry.increaseDocFrequencyByOne(currentDocID);
+		}
+		return entry;
+	}
+
+	/**
+	 * Stores a new term in the given (empty) slot and assigns it the next termID.
+	 */
+	private VocabularyEntry insert(int slot, String term, int hash, VocabularyEntry entry)
+	{
+		if (termID == hashes.length)
+		{
+			hashes = Arrays.copyOf(hashes, termID * 2);
+		}
+		terms.add(term);
+		entries.add(entry);
+		hashes[termID] = hash;
 		termID++;
-		
-		return newEntry;
+		table[slot] = termID;
+
+		if (2 * termID > table.length)
+		{
+			rehash();
+		}
+		return entry;
 	}
-	
 
-	
-	
 	/**
-	 * Returns the number of terms in this vocabulary.
-	 * @return
+	 * Doubles the size of the hash table. The stored hash codes are reused, no term has to be hashed again.
 	 */
-	public int size()
+	private void rehash()
 	{
-		return vocabulary.size();
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int id = 0; id < termID; id++)
+		{
+			int slot = spread(hashes[id]) & mask;
+			while (table[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = id + 1;
+		}
 	}
-	
+
 	/**
-	 * Convenience method that allows to access the vocabulary directly.
-	 * @return
+	 * @return The slot of the given term, or the empty slot where it would have to be inserted.
 	 */
-	public LinkedHashMap<String, VocabularyEntry> getVocabulary()
+	private int findSlot(String term, int hash)
 	{
-		return vocabulary;
+		int mask = table.length - 1;
+		int slot = spread(hash) & mask;
+		while (table[slot] != 0)
+		{
+			int id = table[slot] - 1;
+			if (hashes[id] == hash && terms.get(id).equals(term))
+			{
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
 	}
-	
 
+	/**
+	 * @return The slot of the given term, or the empty slot where it would have to be inserted.
+	 */
+	private int findSlot(char[] chars, int offset, int length, int hash)
+	{
+		int mask = table.length - 1;
+		int slot = spread(hash) & mask;
+		while (table[slot] != 0)
+		{
+			int id = table[slot] - 1;
+			if (hashes[id] == hash && equals(terms.get(id), chars, offset, length))
+			{
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static boolean equals(String term, char[] chars, int offset, int length)
+	{
+		if (term.length() != length)
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (term.charAt(i) != chars[offset + i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The hash code of the given term, the same as String.hashCode() would return.
+	 */
+	public static int hash(char[] chars, int offset, int length)
+	{
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++)
+		{
+			hash = 31 * hash + chars[i];
+		}
+		return hash;
+	}
 
 	/**
-	 * Returns the VocabularyEntry for the given term or null if the term is not in the vocabulary. 
-	 * 
+	 * Mixes the high bits of the hash code into the low bits, which select the slot.
+	 */
+	private static int spread(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+
+
+	/**
+	 * Returns the number of terms in this vocabulary.
+	 * @return
+	 */
+	public int size()
+	{
+		return termID;
+	}
+
+	/**
+	 * Returns the VocabularyEntry for the given term or null if the term is not in the vocabulary.
+	 *
 	 * @param term
 	 * @return
 	 */
 	public VocabularyEntry get(String term)
 	{
-		return vocabulary.get(term);
+		int slot = findSlot(term, term.hashCode());
+		return table[slot] == 0 ? null : entries.get(table[slot] - 1);
 	}
-	
+
 	/**
-	 * Fast access method to get the VocabularyEntry associated with the provided termID or null if the termID does 
-	 * not exist or the Vocabulary has not been finalized yet.
+	 * Same as {@link #get(String)}, but for a term given as a slice of a char array. Does not create a String.
+	 *
+	 * @return The VocabularyEntry of the given term or null if the term is not in the vocabulary.
+	 */
+	public VocabularyEntry get(char[] chars, int offset, int length)
+	{
+		int slot = findSlot(chars, offset, length, hash(chars, offset, length));
+		return table[slot] == 0 ? null : entries.get(table[slot] - 1);
+	}
+
+	/**
+	 * Fast access method to get the VocabularyEntry associated with the provided termID.
 	 * @param termID The termID of the term the caller is interested in.
-	 * @return The VocabularyEntry associated with the provided termID or null if either the term does not exist or this
-	 * method has been called before Vocabulary.finalize() has been called.
+	 * @return The VocabularyEntry associated with the provided termID or null if the termID does not exist.
 	 */
 	public VocabularyEntry get(int termID)
 	{
-		if (fast_access_vocabulary == null)
+		if (termID < 0 || termID >= this.termID)
 		{
-			System.err.println("Error, tried to access Vocabulary.get(termID) before the Vocabulary was finalized!");
 			return null;
 		}
-		return fast_access_vocabulary.get(termID).getValue();
+		return entries.get(termID);
 	}
-	
-	public ArrayList<Map.Entry<String, VocabularyEntry>> get_fast_access_vocabulary()
+
+	/**
+	 * @return The term with the given termID, null if the termID does not exist.
+	 */
+	public String getTerm(int termID)
 	{
-		return fast_access_vocabulary;
+		if (termID < 0 || termID >= this.termID)
+		{
+			return null;
+		}
+		return terms.get(termID);
 	}
-	
+
 	public void debugPrintContent()
 	{
-		for (int i = 0; i < fast_access_vocabulary.size(); i++)
+		for (int i = 0; i < termID; i++)
 		{
-			System.out.println(fast_access_vocabulary.get(i).getKey()+": Df = "+fast_access_vocabulary.get(i).getValue().getDocFrequency());
+			System.out.println(terms.get(i)+": Df = "+entries.get(i).getDocFrequency());
 		}
 	}
-	
+
 }
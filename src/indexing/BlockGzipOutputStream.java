@@ -0,0 +1,190 @@
+package indexing;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a gzip file as a sequence of independent gzip members ("blocks"). A gzip file of several members is still a
+ * valid gzip file, gzip, java.util.zip.GZIPInputStream and Weka read it as the concatenation of the members. But every
+ * member can also be decompressed on its own, starting at its byte offset in the file, so a reader can seek to a
+ * block, or decompress several blocks in parallel.
+ *
+ * The written bytes are buffered until the writer ends the block, see {@link #startRecord()}: blocks are only ended
+ * between records (e.g. the rows of an ARFF file), so no record is split over two blocks. {@link #flush()} does not
+ * end a block, it only passes the bytes of completed blocks on.
+ */
+public class BlockGzipOutputStream extends OutputStream
+{
+	public static final int DEFAULT_BLOCK_SIZE = 64 * 1024; // uncompressed bytes
+
+	private OutputStream out;
+	private int blockSize;
+
+	private byte[] buffer; // the uncompressed bytes of the current block
+	private int count;
+	private long blockOffset; // the offset of the current block in the file
+	private int numberOfBlocks;
+
+	/**
+	 * @param _out The stream to write the blocks to.
+	 * @param _blockSize The uncompressed size after which a block is ended at the next record.
+	 */
+	public BlockGzipOutputStream(OutputStream _out, int _blockSize)
+	{
+		if (_blockSize < 1)
+		{
+			throw new IllegalArgumentException("The block size must be positive: " + _blockSize);
+		}
+		this.out = _out;
+		this.blockSize = _blockSize;
+		this.buffer = new byte[_blockSize + 1024];
+		this.count = 0;
+		this.blockOffset = 0;
+		this.numberOfBlocks = 0;
+	}
+
+	public BlockGzipOutputStream(OutputStream _out)
+	{
+		this(_out, DEFAULT_BLOCK_SIZE);
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		ensureCapacity(count + 1);
+		buffer[count++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int offset, int length) throws IOException
+	{
+		ensureCapacity(count + length);
+		System.arraycopy(b, offset, buffer, count, length);
+		count += length;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > buffer.length)
+		{
+			buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+		}
+	}
+
+	/**
+	 * Called before the next record is written: ends the current block if it has reached the block size.
+	 */
+	public void startRecord() throws IOException
+	{
+		if (count >= blockSize)
+		{
+			endBlock();
+		}
+	}
+
+	/**
+	 * Ends the current block, if it is not empty, so the next bytes start a new block.
+	 */
+	public void endBlock() throws IOException
+	{
+		if (count == 0)
+		{
+			return;
+		}
+		CountingOutputStream counter = new CountingOutputStream(out);
+		GZIPOutputStream gzos = new GZIPOutputStream(counter, 8192);
+		gzos.write(buffer, 0, count);
+		gzos.close(); // writes the trailer and releases the deflater, out stays open
+		blockOffset += counter.getCount();
+		numberOfBlocks++;
+		count = 0;
+		if (buffer.length > blockSize + 1024) // a single large record grew the buffer
+		{
+			buffer = new byte[blockSize + 1024];
+		}
+	}
+
+	/**
+	 * @return The offset of the current block in the file, i.e. the compressed size of all blocks before.
+	 */
+	public long getBlockOffset()
+	{
+		return blockOffset;
+	}
+
+	/**
+	 * @return The number of uncompressed bytes written to the current block so far.
+	 */
+	public int getOffsetInBlock()
+	{
+		return count;
+	}
+
+	/**
+	 * @return The number of blocks ended so far.
+	 */
+	public int getNumberOfBlocks()
+	{
+		return numberOfBlocks;
+	}
+
+	/**
+	 * Passes the completed blocks on, the current block stays open.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	/**
+	 * Ends the last block and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		endBlock();
+		out.close();
+	}
+
+	/**
+	 * Counts the compressed bytes of a block, without closing the file when the gzip member is finished.
+	 */
+	private static class CountingOutputStream extends OutputStream
+	{
+		private OutputStream out;
+		private long count = 0;
+
+		CountingOutputStream(OutputStream _out)
+		{
+			this.out = _out;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int offset, int length) throws IOException
+		{
+			out.write(b, offset, length);
+			count += length;
+		}
+
+		@Override
+		public void close()
+		{
+			// the file stays open for the next block
+		}
+
+		long getCount()
+		{
+			return count;
+		}
+	}
+}
@@ -2,24 +2,30 @@ package indexing;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.PriorityQueue;
-import java.util.zip.ZipException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import dao.BlockMatrix;
 import dao.CollectionStatistics;
 import dao.Document;
 import dao.DocumentTermList;
 import dao.DocumentTermMatrix;
+import dao.DocumentTable;
 import dao.DocumentTermMatrixFileEntry;
-import dao.Token;
 import dao.Vocabulary;
 import dao.VocabularyEntry;
 
 /**
- * Class to perform SPIMI indexing of a set of files (
- * {@link #indexFiles(File[], File, boolean)}) or a single zipped file (
- * {@link #indexZipFile(File, File, boolean)}). The resulting index will be
+ * Class to perform SPIMI indexing of a set of collections (
+ * {@link #indexFiles(File[], String)}, see {@link MultiCollectionReader}) or a single zipped file (
+ * {@link #indexZipFile(File, String)}). The resulting index will be
  * written to an output file in the WEKA arff file format. Tokenizers, Parsers
  * and Writers all try to ensure memory constraints, which should allow this
  * indexer to perform indexing on arbitrarily sized datasets (given enough disk
@@ -42,12 +48,21 @@ public class BlockIndexer implements IIndexer
 																	// (here: 10
 																	// MB).
 	public static final int NUMBER_OF_ENTRIES_TO_WRITE_IN_ONE_BLOCK = 10 * 1024;
+	public static final int BYTES_PER_BLOCK_ENTRY = 8; // every token takes one int (termID) and one float (tf) in a BlockMatrix
 
 	// private Dictionary mergedDictionary;
 
 	private boolean useStemming = false;
 	private int lowTfThreshold = 0;
 	private int highTfThreshold = Integer.MAX_VALUE;
+	private int stemCacheSize = StemCache.DEFAULT_SIZE;
+	private boolean skipHeaders = false;
+	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+	private File tokenCacheDirectory = null; // no token cache by default
+	private boolean buildBothStemmingVariants = false;
+	private ArrayList<ThresholdVariant> additionalThresholdVariants = new ArrayList<ThresholdVariant>();
+	private boolean appendSegment = false;
+	private boolean storePositions = false;
 
 	@Override
 	public void setUseStemming(boolean _useStemming)
@@ -68,271 +83,782 @@ public class BlockIndexer implements IIndexer
 		this.highTfThreshold = _highThresh;
 	}
 
-	@Override
-	public void indexFiles(File[] files, File outputFile)
+	/**
+	 * Sets the number of surface forms whose stems are cached while tokenizing (see {@link StemCache}), 0 disables the
+	 * cache. Only used if stemming is enabled.
+	 */
+	public void setStemCacheSize(int _stemCacheSize)
+	{
+		this.stemCacheSize = _stemCacheSize;
+	}
+
+	/**
+	 * Sets whether the header of each document (e.g. the newsgroup header, see CollectionTokenStream) is left out of the
+	 * index. The header lengths are recorded in the document meta data either way.
+	 */
+	public void setSkipHeaders(boolean _skipHeaders)
+	{
+		this.skipHeaders = _skipHeaders;
+	}
+
+	/**
+	 * Sets the number of threads that walk and read directory trees (see {@link DirectoryCollectionReader}) and that
+	 * tokenize the documents (see {@link ParallelTokenStream}), defaults to the number of processors. The tokens are
+	 * indexed in docID order by a single thread, so the index does not depend on the number of threads.
+	 */
+	public void setNumberOfThreads(int _numberOfThreads)
+	{
+		if (_numberOfThreads < 1)
+		{
+			throw new IllegalArgumentException("The number of threads must be positive: " + _numberOfThreads);
+		}
+		this.numberOfThreads = _numberOfThreads;
+	}
+
+	/**
+	 * Sets the directory of the token caches (see {@link TokenCache}), null disables them. If the cache of the
+	 * collection and analysis exists and is up to date, the collection is indexed from the cache instead of being
+	 * tokenized. Otherwise the cache is written while the vocabulary is built, and the second pass already reads it.
+	 */
+	public void setTokenCacheDirectory(File _tokenCacheDirectory)
+	{
+		this.tokenCacheDirectory = _tokenCacheDirectory;
+	}
+
+	/**
+	 * Sets whether a stemmed and an unstemmed index (in output/stemming/ and output/no_stemming/) are built in one run,
+	 * instead of only the one chosen by {@link #setUseStemming(boolean)}. The collection is tokenized once, the stems
+	 * are computed from the unstemmed terms.
+	 */
+	public void setBuildBothStemmingVariants(boolean _buildBothStemmingVariants)
 	{
-		System.err.println("Sorry, this feature is not implemented yet!");
-		return;
+		this.buildBothStemmingVariants = _buildBothStemmingVariants;
+	}
+
+	/**
+	 * Adds an index that is built in the same run as the main index, from the same vocabulary and block matrices, but
+	 * with thresholds of its own (e.g. "medium" and "small" next to "large"). All variants are written while the block
+	 * matrices are merged.
+	 */
+	public void addThresholdVariant(String _indexName, int _lowThresh, int _highThresh)
+	{
+		additionalThresholdVariants.add(new ThresholdVariant(_indexName, _lowThresh, _highThresh));
+	}
+
+	/**
+	 * Sets whether the collection is added to the index as a new segment (see {@link SegmentManifest}) instead of
+	 * replacing the index. The segment is indexed on its own, i.e. it has its own vocabulary and statistics, so adding
+	 * documents only costs the time needed to index them. The search engine aggregates the statistics of all segments
+	 * when it opens the index. An index built without segments becomes the first segment of the index. Replacing an
+	 * index deletes its segments.
+	 *
+	 * Note that the term frequency thresholds are applied per segment.
+	 */
+	public void setAppendSegment(boolean _appendSegment)
+	{
+		this.appendSegment = _appendSegment;
+	}
+
+	/**
+	 * Sets whether the positions of the terms in the documents are stored next to the index (see
+	 * {@link PositionalIndexWriter}), as needed for phrase and proximity queries. Off by default, since the positions
+	 * need more space than the gzipped ARFF index and add to the indexing time. Positions are only stored for an index
+	 * built in one run, not for segments (see {@link #setAppendSegment(boolean)}).
+	 */
+	public void setStorePositions(boolean _storePositions)
+	{
+		this.storePositions = _storePositions;
 	}
 
 	@Override
 	public void indexZipFile(File zipFile, String indexName)
 	{
-		try
+		indexFiles(new File[] { zipFile }, indexName);
+	}
+
+	@Override
+	public void indexFiles(File[] files, String indexName)
+	{
+		for (File file : files)
 		{
-			ZipTokenStream zipTokenStream = new ZipTokenStream(zipFile, useStemming);
-			zipTokenStream.initialize();
+			if (!file.exists())
+			{
+				System.err.println("Error: " + file.getPath() + " does not exist!");
+				return;
+			}
+		}
 
-			System.out.println("Running...");
+		// the tokens are analyzed once, for the analysis of the first variant. The stemmed variant of a run with both
+		// analyses stems the unstemmed tokens (see AnalysisVariant).
+		AnalysisVariant[] analyses;
+		if (buildBothStemmingVariants)
+		{
+			analyses = new AnalysisVariant[] { new AnalysisVariant(false, false, 0), new AnalysisVariant(true, true, stemCacheSize) };
+		}
+		else
+		{
+			analyses = new AnalysisVariant[] { new AnalysisVariant(useStemming, false, 0) };
+		}
+		boolean tokensStemmed = analyses[0].useStemming;
 
-			System.out.print("Building Vocabulary... ");
+		ArrayList<ThresholdVariant> thresholdVariants = new ArrayList<ThresholdVariant>();
+		thresholdVariants.add(new ThresholdVariant(indexName, lowTfThreshold, highTfThreshold));
+		thresholdVariants.addAll(additionalThresholdVariants);
 
-			String statisticsFileName = indexName + ".stat";
-			String directory = "output"+java.io.File.separator;
-			
-			if (useStemming)
+		ArrayList<ThresholdVariant> segments = null; // written instead of the threshold variants, null if the indexes are replaced
+		if (appendSegment)
+		{
+			ArrayList<SegmentManifest> manifests = readSegmentManifests(analyses, thresholdVariants);
+			if (manifests == null)
 			{
-				directory += "stemming"+File.separator;
+				return;
 			}
-			else
+			int segmentNumber = 0; // the same for all indexes of the run, so their segments can be told apart by name
+			for (SegmentManifest manifest : manifests)
 			{
-				directory += "no_stemming"+File.separator;
+				segmentNumber = Math.max(segmentNumber, manifest.reserveSegmentNumber());
 			}
-			
-			File statisticsFile = new File(directory + statisticsFileName);
-			
-			CollectionStatistics collectionStatistics = new CollectionStatistics();
-			collectionStatistics.setFile(statisticsFile);
-			
-			Vocabulary vocabulary = buildVocabulary(zipTokenStream, collectionStatistics);
-			System.out.print(" Found " + vocabulary.size() + " terms. ");
-			// System.gc();
+			segments = new ArrayList<ThresholdVariant>(thresholdVariants.size());
+			for (ThresholdVariant variant : thresholdVariants)
+			{
+				segments.add(new ThresholdVariant(SegmentManifest.segmentName(variant.getIndexName(), segmentNumber), variant.getLowTfThreshold(), variant.getHighTfThreshold()));
+			}
+		}
 
-			zipTokenStream = new ZipTokenStream(zipFile, useStemming); // rewind
-																		// token
-																		// stream
-			zipTokenStream.initialize();
+		TermAnalyzer analyzer = new TermAnalyzer(tokensStemmed, stemCacheSize);
+		ITokenCursor tokenStream = null; // null if the tokens are read from the token cache
+		ITokenCursor tokenCursor;
 
-			System.out.println("Done. ");
+		File tokenCacheFile = null;
+		String signature = null;
+		TokenCacheWriter tokenCacheWriter = null;
+		if (tokenCacheDirectory != null)
+		{
+			try
+			{
+				signature = TokenCache.getSignature(files);
+				tokenCacheFile = TokenCache.getFile(tokenCacheDirectory, files, tokensStemmed, skipHeaders);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error locating the token cache in " + tokenCacheDirectory.getPath() + ", indexing without it! -- Stack Trace follows.");
+				e.printStackTrace();
+				signature = null;
+				tokenCacheFile = null;
+			}
+		}
 
-			buildDocumentTermMatrix(zipTokenStream, vocabulary, directory, indexName, collectionStatistics);
+		tokenCursor = openTokenCache(tokenCacheFile, signature, tokensStemmed);
+		if (tokenCursor != null)
+		{
+			System.out.println("Reading the tokens from " + tokenCacheFile.getPath() + ".");
+		}
+		else
+		{
+			tokenStream = openTokenStream(files, analyzer);
+			tokenCursor = tokenStream;
+
+			if (tokenCacheFile != null)
+			{
+				try
+				{
+					tokenCacheWriter = new TokenCacheWriter(tokenCacheFile, signature, tokensStemmed, skipHeaders);
+					System.out.println("Writing the tokens to " + tokenCacheFile.getPath() + ".");
+				}
+				catch (IOException e)
+				{
+					System.err.println("Error creating the token cache " + tokenCacheFile.getPath() + ", indexing without it! -- Stack Trace follows.");
+					e.printStackTrace();
+				}
+			}
+		}
 
-			// System.out.println("Building index... ");
-			// buildIndex(zipTokenStream, vocabulary, outputFile);
+		System.out.println("Running...");
 
-			/*
-			 * while(zipTokenStream.hasNext()) { Token newToken =
-			 * zipTokenStream.next();
-			 * System.out.println("Token, ID = "+newToken.
-			 * getDocID()+", term = "+newToken.getTerm()); }
-			 */
-			System.out.println("Done building index, files were saved to " + directory);
+		System.out.print("Building Vocabulary... ");
+
+		if (!buildVocabulary(tokenCursor, analyses, tokenCacheWriter))
+		{
+			System.err.println("The collection does not contain any documents!");
+			if (tokenCacheWriter != null)
+			{
+				tokenCacheWriter.abort();
+			}
+			return;
 		}
-		catch (ZipException ze)
+		for (AnalysisVariant analysis : analyses)
 		{
-			ze.printStackTrace();
+			System.out.print(" Found " + analysis.vocabulary.size() + " " + (analysis.useStemming ? "stemmed" : "unstemmed") + " terms. ");
 		}
-		catch (IOException ioe)
+		if (tokensStemmed && tokenStream != null)
 		{
-			ioe.printStackTrace();
+			System.out.print((tokenStream instanceof ParallelTokenStream ? ((ParallelTokenStream)tokenStream).getStemCacheStatistics() : analyzer.getStemCache().getStatistics()) + ". ");
 		}
+		for (AnalysisVariant analysis : analyses)
+		{
+			if (analysis.stemCache != null)
+			{
+				System.out.print(analysis.stemCache.getStatistics() + ". ");
+			}
+		}
+		// System.gc();
 
-	}
+		if (tokenCacheWriter != null)
+		{
+			try
+			{
+				tokenCacheWriter.close(analyses[0].vocabulary);
+			}
+			catch (IOException e)
+			{
+				System.err.println(); // to end any previous output line
+				System.err.println("Error writing the token cache " + tokenCacheFile.getPath() + "! -- Stack Trace follows.");
+				e.printStackTrace();
+				tokenCacheWriter.abort();
+			}
+		}
 
-	private Vocabulary buildVocabulary(ITokenStream<Token> tokenStream, CollectionStatistics collectionStatistics)
-	{
-		Vocabulary vocabulary = new Vocabulary(65536); // will grow as needed
-		Token next = null;
-		
-		long totalNumberOfTokens = 0;
+		tokenCursor = openTokenCache(tokenCacheFile, signature, tokensStemmed); // rewind, from the cache if there is one by now
+		if (tokenCursor == null)
+		{
+			tokenStream = openTokenStream(files, analyzer); // rewind token stream
+			tokenCursor = tokenStream;
+		}
+
+		System.out.println("Done. ");
 
-		while (tokenStream.hasNext())
+		if (segments == null)
 		{
-			next = tokenStream.next();
-			totalNumberOfTokens++;
-			
-			/*
-			 * System.out.println(next.getDoc().getCategory()+"/"+next.getDoc().
-			 * getName()+": "+next.getTerm()); if
-			 * (next.getDoc().getName().equals("54457")) { System.out.println();
-			 * }
-			 */
-			vocabulary.add(next.getTerm(), next.getDoc().getId());
-		}
-		collectionStatistics.setNumberOfDocuments(next.getDoc().getId());
-		collectionStatistics.setNumberOfTokens(totalNumberOfTokens);
-		collectionStatistics.setNumberOfUniqueTerms(vocabulary.getVocabulary().size());
-		collectionStatistics.setAverageDocumentLength(totalNumberOfTokens / next.getDoc().getId());
-		
+			if (!deleteSegments(analyses, thresholdVariants))
+			{
+				return;
+			}
+			openPositionalIndexes(analyses, thresholdVariants.get(0));
+		}
+		else if (storePositions)
+		{
+			System.out.println("Positions are not stored for segments.");
+		}
 
-		vocabulary.setTotalNumberOfDocuments(next.getDoc().getId()); 
+		DocumentTable documents = buildDocumentTermMatrices(tokenCursor, analyses);
+		if (documents == null)
+		{
+			for (AnalysisVariant analysis : analyses)
+			{
+				if (analysis.positionsWriter != null)
+				{
+					analysis.positionsWriter.abort();
+				}
+			}
+			return;
+		}
 
-		vocabulary.finalize();
-		
+		// we are done writing block dictionaries. We now have to merge them
+		// into a large dictionary and write the resulting dict to the
+		// files of all threshold variants:
+		ExecutorService writers = Executors.newFixedThreadPool(Math.min(thresholdVariants.size(), Runtime.getRuntime().availableProcessors()));
+		try
+		{
+			for (int a = 0; a < analyses.length; a++)
+			{
+				System.out.print("Done indexing block dictionaries, now merging files to " + analyses[a].directory + "... ");
+				if (mergeMatrixFiles(analyses[a], segments != null ? segments : thresholdVariants, documents, writers) && segments != null)
+				{
+					addSegments(analyses[a], thresholdVariants, segments);
+				}
+				if (segments == null)
+				{
+					copyPositionalIndex(analyses[a], thresholdVariants);
+				}
+			}
+		}
+		finally
+		{
+			writers.shutdown();
+		}
 
-		return vocabulary;
+		/*
+		 * while(zipTokenStream.hasNext()) { Token newToken =
+		 * zipTokenStream.next();
+		 * System.out.println("Token, ID = "+newToken.
+		 * getDocID()+", term = "+newToken.getTerm()); }
+		 */
+		for (AnalysisVariant analysis : analyses)
+		{
+			System.out.println("Done building index, files were saved to " + analysis.directory);
+		}
 	}
 
-	private void buildDocumentTermMatrix(ITokenStream<Token> tokenStream, Vocabulary vocabulary, String directory, String indexName, CollectionStatistics collectionStatistics)
+	/**
+	 * Writes an index from block matrix files that were not built by this indexer, e.g. the merged segments of a
+	 * {@link SegmentMerger}. The files are merged by the same k-way merge as the blocks of a collection.
+	 *
+	 * @param directory The output directory, e.g. "output/stemming/".
+	 * @param variant The name and thresholds of the index.
+	 * @param vocabulary The vocabulary of the block matrices, with document frequencies and the number of documents.
+	 * @param collectionStatistics The statistics of the index.
+	 * @param blockMatrixFiles The block matrix files, ordered by their docIDs.
+	 * @param documents The documents of the block matrices.
+	 * @return Whether all files were written.
+	 */
+	boolean writeIndex(String directory, ThresholdVariant variant, Vocabulary vocabulary, CollectionStatistics collectionStatistics, ArrayList<File> blockMatrixFiles, DocumentTable documents)
 	{
-		Token currentToken;
-		File blockOutputFile;
-		DocumentTermMatrix blockMatrix = null;
-		DocumentTermList currentTermList = new DocumentTermList();
-		int numberOfBlock = 0;
+		AnalysisVariant analysis = new AnalysisVariant(directory, vocabulary, collectionStatistics, blockMatrixFiles);
+		ArrayList<ThresholdVariant> thresholdVariants = new ArrayList<ThresholdVariant>(1);
+		thresholdVariants.add(variant);
 
-		ArrayList<File> blockMatrixFiles = new ArrayList<File>();
-		LinkedHashMap<Integer, Document> documents = new LinkedHashMap<Integer, Document>();
-
-		Document lastDocument = null;
-		int termID = -1;
-
-		while (tokenStream.hasNext())
+		ExecutorService writers = Executors.newFixedThreadPool(1);
+		try
+		{
+			return mergeMatrixFiles(analysis, thresholdVariants, documents, writers);
+		}
+		finally
 		{
-			// int accumulatedSize = 0;
+			writers.shutdown();
+		}
+	}
 
-			blockMatrix = new DocumentTermMatrix();
-			blockOutputFile = new File("output/tmp/" + numberOfBlock + ".mat");
-			blockMatrixFiles.add(blockOutputFile);
+	/**
+	 * Reads the segment manifests of all indexes of the run.
+	 *
+	 * @return The manifests or null if one of them cannot be read.
+	 */
+	private ArrayList<SegmentManifest> readSegmentManifests(AnalysisVariant[] analyses, ArrayList<ThresholdVariant> thresholdVariants)
+	{
+		ArrayList<SegmentManifest> manifests = new ArrayList<SegmentManifest>(analyses.length * thresholdVariants.size());
+		for (AnalysisVariant analysis : analyses)
+		{
+			for (ThresholdVariant variant : thresholdVariants)
+			{
+				try
+				{
+					manifests.add(SegmentManifest.read(analysis.directory, variant.getIndexName()));
+				}
+				catch (IOException e)
+				{
+					System.err.println("Error reading the segments of " + analysis.directory + variant.getIndexName() + "! -- Stack Trace follows.");
+					e.printStackTrace();
+					return null;
+				}
+			}
+		}
+		return manifests;
+	}
 
-			long runningMemoryCounter = 0;
+	/**
+	 * Appends the segments just written for the given analysis to the manifests of the indexes of the threshold
+	 * variants.
+	 */
+	private void addSegments(AnalysisVariant analysis, ArrayList<ThresholdVariant> thresholdVariants, ArrayList<ThresholdVariant> segments)
+	{
+		for (int i = 0; i < segments.size(); i++)
+		{
+			SegmentManifest manifest;
+			try
+			{
+				manifest = SegmentManifest.appendSegment(analysis.directory, thresholdVariants.get(i).getIndexName(), segments.get(i).getIndexName(), analysis.collectionStatistics.getNumberOfDocuments());
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error adding segment " + segments.get(i).getIndexName() + " to its index! -- Stack Trace follows.");
+				e.printStackTrace();
+				continue;
+			}
+			System.out.println("Added segment " + segments.get(i).getIndexName() + " to " + analysis.directory + ", the index now has " + manifest.size() + " segments.");
+		}
+	}
 
-			System.out.print("Tokenizing block dictionary #" + numberOfBlock + "... ");
-			currentTermList.clear();
+	/**
+	 * Deletes the segments of the indexes of the run (see {@link SegmentManifest#deleteSegments(String, String)}) and
+	 * the deletions of the indexes themselves (see {@link LiveDocs}), which are replaced by the index built by this run.
+	 *
+	 * @return Whether all of them were deleted.
+	 */
+	private boolean deleteSegments(AnalysisVariant[] analyses, ArrayList<ThresholdVariant> thresholdVariants)
+	{
+		for (AnalysisVariant analysis : analyses)
+		{
+			for (ThresholdVariant variant : thresholdVariants)
+			{
+				try
+				{
+					int deleted = SegmentManifest.deleteSegments(analysis.directory, variant.getIndexName());
+					if (deleted > 0)
+					{
+						System.out.println("Deleted " + deleted + " segment(s) of " + analysis.directory + variant.getIndexName() + ", the index is replaced.");
+					}
+					LiveDocs.delete(analysis.directory, variant.getIndexName());
+				}
+				catch (IOException e)
+				{
+					System.err.println("Error deleting the segments or deletions of " + analysis.directory + variant.getIndexName() + "! -- Stack Trace follows.");
+					e.printStackTrace();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
 
-			Token current = tokenStream.current();
-			if (lastDocument != null && lastDocument.getId() == current.getDoc().getId()) // the
-																							// previous
-																							// entry
-																							// was
-																							// not
-																							// completed,
-																							// keep
-																							// writing:
+	/**
+	 * Opens the positional index of every analysis, named after the given (first) threshold variant, if positions are
+	 * stored. Otherwise the positional indexes of earlier runs are deleted, they would not match the new index.
+	 */
+	private void openPositionalIndexes(AnalysisVariant[] analyses, ThresholdVariant variant)
+	{
+		for (AnalysisVariant analysis : analyses)
+		{
+			for (File file : PositionalIndexWriter.getFiles(analysis.directory, variant.getIndexName()))
 			{
-				documents.put(lastDocument.getId(), lastDocument);
-				currentTermList = blockMatrix.addDoc(lastDocument.getId());
+				file.delete();
+			}
+			if (!storePositions)
+			{
+				continue;
+			}
+			analysis.positionsWriter = new PositionalIndexWriter(analysis.directory, variant.getIndexName());
+			try
+			{
+				analysis.positionsWriter.init();
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error creating the positional index in " + analysis.directory + ", indexing without positions! -- Stack Trace follows.");
+				e.printStackTrace();
+				analysis.positionsWriter.abort();
+				analysis.positionsWriter = null;
 			}
+		}
+	}
 
-			VocabularyEntry tempEntry;
-			// Runtime.getRuntime().totalMemory()-initial_used_memory <
-			// BLOCK_SIZE_IN_BYTES &&
-			while (tokenStream.hasNext() && runningMemoryCounter < BLOCK_SIZE_IN_BYTES) // 3
-																						// while
-																						// (free
-																						// memory
-																						// available)
+	/**
+	 * Copies the positional index of the given analysis (written for the first threshold variant) to the other
+	 * threshold variants, the thresholds do not change the positions. Deletes the positional indexes of the other
+	 * variants if there is none.
+	 */
+	private void copyPositionalIndex(AnalysisVariant analysis, ArrayList<ThresholdVariant> thresholdVariants)
+	{
+		File[] sources = PositionalIndexWriter.getFiles(analysis.directory, thresholdVariants.get(0).getIndexName());
+		for (int i = 1; i < thresholdVariants.size(); i++)
+		{
+			File[] targets = PositionalIndexWriter.getFiles(analysis.directory, thresholdVariants.get(i).getIndexName());
+			for (int f = 0; f < targets.length; f++)
 			{
-				currentToken = tokenStream.next(); // 4 do token =
-													// next(token_stream)
-				Document currentDocument = currentToken.getDoc();
-				if (currentDocument != lastDocument)
+				try
 				{
-					documents.put(currentDocument.getId(), currentDocument);
-					lastDocument = currentDocument;
-					currentTermList = blockMatrix.addDoc(currentDocument.getId());
+					if (analysis.positionsWriter != null)
+					{
+						Files.copy(sources[f].toPath(), targets[f].toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+					else
+					{
+						Files.deleteIfExists(targets[f].toPath());
+					}
 				}
-				else
+				catch (IOException e)
 				{
+					System.err.println("Error copying the positional index to " + targets[f].getPath() + "! -- Stack Trace follows.");
+					e.printStackTrace();
+					targets[f].delete();
 				}
+			}
+		}
+	}
 
-				tempEntry = vocabulary.get(currentToken.getTerm());
+	/**
+	 * Opens a token stream over the given collections: with a single thread a {@link CollectionTokenStream} that uses
+	 * the given analyzer, otherwise a {@link ParallelTokenStream} with an analyzer per thread. Both yield the same tokens.
+	 */
+	private ITokenCursor openTokenStream(File[] files, TermAnalyzer analyzer)
+	{
+		ICollectionReader reader = new MultiCollectionReader(files, numberOfThreads);
+		if (numberOfThreads == 1)
+		{
+			CollectionTokenStream tokenStream = new CollectionTokenStream(reader, analyzer);
+			tokenStream.setSkipMetaData(skipHeaders);
+			return tokenStream;
+		}
+		ParallelTokenStream tokenStream = new ParallelTokenStream(reader, analyzer.usesStemming(), stemCacheSize, numberOfThreads);
+		tokenStream.setSkipMetaData(skipHeaders);
+		return tokenStream;
+	}
 
-				termID = tempEntry.getTermID();
+	/**
+	 * Opens the token cache, if it exists and is up to date.
+	 *
+	 * @return The reader of the cache or null if there is no (usable) cache.
+	 */
+	private TokenCacheReader openTokenCache(File tokenCacheFile, String signature, boolean tokensStemmed)
+	{
+		if (tokenCacheFile == null || !tokenCacheFile.exists())
+		{
+			return null;
+		}
+		try
+		{
+			return new TokenCacheReader(tokenCacheFile, signature, tokensStemmed, skipHeaders);
+		}
+		catch (IOException e)
+		{
+			System.out.println("Not using the token cache: " + e.getMessage());
+			return null;
+		}
+	}
 
-				currentTermList.add(termID);
+	/**
+	 * Builds the vocabularies and collection statistics of all analyses in one pass over the tokens.
+	 *
+	 * @return False if the collection does not contain any tokens.
+	 */
+	private boolean buildVocabulary(ITokenCursor tokenCursor, AnalysisVariant[] analyses, TokenCacheWriter tokenCacheWriter)
+	{
+		for (AnalysisVariant analysis : analyses)
+		{
+			analysis.vocabulary = new Vocabulary(65536); // will grow as needed
+		}
+		int lastDocID = 0;
+		
+		long totalNumberOfTokens = 0;
 
-				runningMemoryCounter += 16; // TODO make some experiments to
-											// estimate a good approximation
+		while (tokenCursor.advance()) // the term is never turned into a String unless it is new to the vocabulary
+		{
+			totalNumberOfTokens++;
+			lastDocID = tokenCursor.getDocID();
+			
+			for (AnalysisVariant analysis : analyses)
+			{
+				analysis.analyze(tokenCursor);
+				VocabularyEntry entry = analysis.vocabulary.add(analysis.termBuffer, analysis.termOffset, analysis.termLength, lastDocID);
+				if (tokenCacheWriter != null && analysis == analyses[0])
+				{
+					try
+					{
+						tokenCacheWriter.add(tokenCursor.getDocument(), entry.getTermID(), tokenCursor.getPosition(), analysis.vocabulary);
+					}
+					catch (IOException e)
+					{
+						System.err.println(); // to end any previous output line
+						System.err.println("Error writing the token cache, indexing without it! -- Stack Trace follows.");
+						e.printStackTrace();
+						tokenCacheWriter.abort();
+						tokenCacheWriter = null;
+					}
+				}
 			}
+		}
+		if (lastDocID == 0)
+		{
+			return false; // no documents at all, or none containing a term
+		}
 
-			/*
-			 * Iterator<Entry<Integer, DocumentTermList>> it =
-			 * blockMatrix.getMatrix().entrySet().iterator(); Entry<Integer,
-			 * DocumentTermList> currentDocument;
-			 * 
-			 * Iterator<Entry<Integer, Float>> termIt = null; Entry<Integer,
-			 * Float> entry;
-			 * 
-			 * while (it.hasNext()) // for every documentTerm list: {
-			 * currentDocument = it.next();
-			 * System.out.println("DocumentMatrix for document "
-			 * +currentDocument.getKey());
-			 * 
-			 * termIt =
-			 * currentDocument.getValue().getDocTermEntries().entrySet()
-			 * .iterator(); while (termIt.hasNext()) // for every termEntry in
-			 * the current documentTerm list: { entry = termIt.next();
-			 * System.out.print("<" + entry.getKey() + ":" + entry.getValue() +
-			 * ">"); } System.out.println(); }
-			 */
-
-			// One Block Matrix is full, we need to sort it and write it to
-			// disk:
-
-			blockMatrix.sortTermListingsByID();
+		for (AnalysisVariant analysis : analyses)
+		{
+			CollectionStatistics collectionStatistics = new CollectionStatistics();
+			collectionStatistics.setNumberOfDocuments(lastDocID);
+			collectionStatistics.setNumberOfTokens(totalNumberOfTokens);
+			collectionStatistics.setNumberOfUniqueTerms(analysis.vocabulary.size());
+			collectionStatistics.setAverageDocumentLength(totalNumberOfTokens / lastDocID);
+			collectionStatistics.setHeadersSkipped(skipHeaders);
+			analysis.collectionStatistics = collectionStatistics;
+
+			analysis.vocabulary.setTotalNumberOfDocuments(lastDocID); 
+		}
 
-			try
+		return true;
+	}
+
+	/**
+	 * Adds the tokens to the block matrices of all analyses in one pass, writing a block matrix to disk whenever it is
+	 * full, and fills the document table shared by all analyses.
+	 *
+	 * @return The document table or null if an error occurred.
+	 */
+	private DocumentTable buildDocumentTermMatrices(ITokenCursor tokenCursor, AnalysisVariant[] analyses)
+	{
+		DocumentTable documents = new DocumentTable(new File("output/tmp/"));
+		try
+		{
+			documents.open();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Error creating the document table in output/tmp/! -- Stack Trace follows.");
+			e.printStackTrace();
+			return null;
+		}
+
+		for (AnalysisVariant analysis : analyses)
+		{
+			analysis.blockMatrix = new BlockMatrix(BLOCK_SIZE_IN_BYTES / BYTES_PER_BLOCK_ENTRY); // reused for every block
+			analysis.blockMatrixFiles = new ArrayList<File>();
+		}
+
+		Document lastDocument = null;
+
+		while (tokenCursor.advance())
+		{
+			Document currentDocument = tokenCursor.getDocument();
+			if (currentDocument != lastDocument)
 			{
-				System.out.print("Writing to " + blockOutputFile.getPath() + "... ");
+				try
+				{
+					documents.add(currentDocument);
+				}
+				catch (IOException e)
+				{
+					System.err.println(); // to end any previous output line
+					System.err.println("Error writing document " + currentDocument.getId() + " to the document table! -- Stack Trace follows.");
+					e.printStackTrace();
+					return null;
+				}
+				lastDocument = currentDocument;
+			}
 
-				BufferedBlockMatrixWriter bbmw = new BufferedBlockMatrixWriter(blockOutputFile, blockMatrix);
-				bbmw.writeToFile();
+			for (AnalysisVariant analysis : analyses)
+			{
+				if (analysis.blockDocID != currentDocument.getId()) // a new document, or the previous block was full in the middle of the document
+				{
+					analysis.blockMatrix.addDoc(currentDocument.getId());
+					analysis.blockDocID = currentDocument.getId();
+				}
 
-				bbmw = null;
-				blockMatrix = null;
-				System.gc();
+				analysis.analyze(tokenCursor);
+				int termID = analysis.vocabulary.get(analysis.termBuffer, analysis.termOffset, analysis.termLength).getTermID();
+				analysis.blockMatrix.add(termID);
+				if (analysis.positionsWriter != null)
+				{
+					try
+					{
+						analysis.positionsWriter.add(currentDocument.getId(), termID, tokenCursor.getPosition());
+					}
+					catch (IOException e)
+					{
+						System.err.println(); // to end any previous output line
+						System.err.println("Error writing the positional index in " + analysis.directory + ", indexing without positions! -- Stack Trace follows.");
+						e.printStackTrace();
+						analysis.positionsWriter.abort();
+						analysis.positionsWriter = null;
+					}
+				}
 
-				// blockDictionary.writeToDisk(blockOutputFile, 0,
-				// Integer.MAX_VALUE);
-				System.out.println("Done.");
+				analysis.runningMemoryCounter += BYTES_PER_BLOCK_ENTRY;
+				if (analysis.runningMemoryCounter >= BLOCK_SIZE_IN_BYTES)
+				{
+					writeBlockMatrix(analysis);
+				}
 			}
-			catch (IOException e)
+		}
+
+		for (AnalysisVariant analysis : analyses)
+		{
+			if (analysis.runningMemoryCounter > 0)
 			{
-				System.err.println(); // to end any previous output line
-				System.err.println("Error writing block dictionary #" + numberOfBlock + " to " + blockOutputFile.getPath() + ". Stack Trace follows---");
-				e.printStackTrace();
+				writeBlockMatrix(analysis);
 			}
+			analysis.blockMatrix = null;
 
-			numberOfBlock++;
+			if (analysis.positionsWriter != null)
+			{
+				try
+				{
+					analysis.positionsWriter.close();
+					System.out.println("Wrote " + analysis.positionsWriter.getSizeInBytes() / 1024 + " KB of positions to " + analysis.directory + ".");
+				}
+				catch (IOException e)
+				{
+					System.err.println("Error writing the positional index in " + analysis.directory + "! -- Stack Trace follows.");
+					e.printStackTrace();
+					analysis.positionsWriter.abort();
+					analysis.positionsWriter = null;
+				}
+			}
 		}
 
-		tokenStream = null;
+		tokenCursor = null;
 		System.gc();
 
-		// we are done writing block dictionaries. We now have to merge them
-		// into a large dictionary and write the resulting dict to the
-		// file outputFile:
-		System.out.print("Done indexing block dictionaries, now merging files... ");
-
-		mergeMatrixFiles(blockMatrixFiles, directory, indexName, vocabulary, documents, collectionStatistics);
+		try
+		{
+			documents.finish();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Error writing the document table to output/tmp/! -- Stack Trace follows.");
+			e.printStackTrace();
+			return null;
+		}
+		return documents;
 	}
 
-	private void mergeMatrixFiles(ArrayList<File> blockMatrixFiles, String directory, String indexName, Vocabulary vocabulary, LinkedHashMap<Integer, Document> documents, CollectionStatistics collectionStatistics)
+	/**
+	 * One Block Matrix is full, we need to sort it and write it to disk.
+	 */
+	private void writeBlockMatrix(AnalysisVariant analysis)
 	{
-		PriorityQueue<PriorityQueueTermReaderToken<DocumentTermMatrixFileEntry>> queue = new PriorityQueue<PriorityQueueTermReaderToken<DocumentTermMatrixFileEntry>>(blockMatrixFiles.size(), new PriorityQueueTermReaderComparator<DocumentTermMatrixFileEntry>());
+		File blockOutputFile = new File("output/tmp/" + analysis.blockFilePrefix + analysis.blockMatrixFiles.size() + ".mat");
+		analysis.blockMatrixFiles.add(blockOutputFile);
 
-		File idfIndex = new File(directory+indexName+"_tfidf.arff.gz");
-		File tfIndex = new File(directory+indexName+"_tf.arff.gz");
-		
-		BufferedArffMatrixWriter idfArffWriter = new BufferedArffMatrixWriter(idfIndex, vocabulary, documents);
-		BufferedArffMatrixWriter tfArffWriter = new BufferedArffMatrixWriter(tfIndex, vocabulary, documents);
+		analysis.blockMatrix.sortRows();
 
 		try
 		{
-			System.out.print("Writing ARFF Header and Vocabulary... ");
-			idfArffWriter.init(); // open File and write Header + vocabulary
-			tfArffWriter.init();
+			System.out.print("Writing block dictionary #" + (analysis.blockMatrixFiles.size() - 1) + " to " + blockOutputFile.getPath() + "... ");
+
+			BufferedBlockMatrixWriter bbmw = new BufferedBlockMatrixWriter(blockOutputFile, analysis.blockMatrix);
+			bbmw.writeToFile();
+
+			bbmw = null;
+
 			System.out.println("Done.");
 		}
-		catch (IOException e1)
+		catch (IOException e)
 		{
-			System.err.println("Error accessing files " + idfIndex.getPath() + ", "+tfIndex.getPath()+"! -- Stack Trace follows.");
-			e1.printStackTrace();
-			return;
+			System.err.println(); // to end any previous output line
+			System.err.println("Error writing block dictionary #" + (analysis.blockMatrixFiles.size() - 1) + " to " + blockOutputFile.getPath() + ". Stack Trace follows---");
+			e.printStackTrace();
 		}
 
-		int thresholdedItemsCounter = 0;
+		analysis.blockMatrix.clear();
+		analysis.runningMemoryCounter = 0;
+		analysis.blockDocID = -1;
+	}
+
+	/**
+	 * Merges the block matrices of the given analysis and writes all threshold variants.
+	 *
+	 * @return Whether all files were written.
+	 */
+	private boolean mergeMatrixFiles(AnalysisVariant analysis, ArrayList<ThresholdVariant> thresholdVariants, DocumentTable documents, ExecutorService writers)
+	{
+		ArrayList<File> blockMatrixFiles = analysis.blockMatrixFiles;
+		PriorityQueue<PriorityQueueTermReaderToken<DocumentTermMatrixFileEntry>> queue = new PriorityQueue<PriorityQueueTermReaderToken<DocumentTermMatrixFileEntry>>(Math.max(1, blockMatrixFiles.size()), new PriorityQueueTermReaderComparator<DocumentTermMatrixFileEntry>());
+
+		ArrayList<ThresholdVariantWriter> variantWriters = new ArrayList<ThresholdVariantWriter>(thresholdVariants.size());
+		for (ThresholdVariant thresholdVariant : thresholdVariants)
+		{
+			variantWriters.add(new ThresholdVariantWriter(thresholdVariant, analysis.directory, analysis.vocabulary, documents));
+		}
+
+		System.out.print("Writing ARFF Header and Vocabulary... ");
+		for (ThresholdVariantWriter variantWriter : variantWriters)
+		{
+			try
+			{
+				variantWriter.init();
+			}
+			catch (IOException e1)
+			{
+				System.err.println("Error accessing files " + variantWriter.getFileNames() + "! -- Stack Trace follows.");
+				e1.printStackTrace();
+				for (ThresholdVariantWriter opened : variantWriters)
+				{
+					opened.abort();
+				}
+				return false;
+			}
+		}
+		System.out.println("Done.");
+
 		int docCounter = 0;
 
 		System.out.print("Writing ARFF Data... ");
@@ -495,37 +1021,15 @@ public class BlockIndexer implements IIndexer
 
 					if (entryCounter > NUMBER_OF_ENTRIES_TO_WRITE_IN_ONE_BLOCK)
 					{
-						try
+						if (!writePart(tempMatrix, variantWriters, writers))
 						{
-							if (lowTfThreshold > 0 || highTfThreshold < Integer.MAX_VALUE)
-							{
-								//System.out.print("Applying Tf thresholds... ");
-								thresholdedItemsCounter += tempMatrix.applyTfThresholds(lowTfThreshold, highTfThreshold);
-							}
-							//System.out.print("Calculating idfs... ");
-							tfArffWriter.writeNextPart(tempMatrix);
-							tempMatrix.calculateIdfs(vocabulary);
-							idfArffWriter.writeNextPart(tempMatrix);
-							tempMatrix.clear();
-							entryCounter = 0;
-							if (activeReaders.size() > 0)
-							{
-								currentTermList = tempMatrix.addDoc(newDoc); 
-							}
+							return false;
 						}
-						catch (IOException e)
+						tempMatrix.clear();
+						entryCounter = 0;
+						if (activeReaders.size() > 0)
 						{
-							System.err.println("Error writing to file " + idfIndex.getPath() + "! -- Stack Trace follows.");
-							e.printStackTrace();
-							try
-							{
-								tfArffWriter.close();
-								idfArffWriter.close();
-							}
-							catch (IOException e1)
-							{
-							}
-							return;
+							currentTermList = tempMatrix.addDoc(newDoc); 
 						}
 						//currentTermList = tempMatrix.addDoc(newDoc); 
 						continue; // continue merging
@@ -566,36 +1070,15 @@ public class BlockIndexer implements IIndexer
 
 					if (entryCounter > NUMBER_OF_ENTRIES_TO_WRITE_IN_ONE_BLOCK)
 					{
-						try
+						if (!writePart(tempMatrix, variantWriters, writers))
 						{
-							if (lowTfThreshold > 0 || highTfThreshold < Integer.MAX_VALUE)
-							{
-								//System.out.print("Applying Tf thresholds... ");
-								thresholdedItemsCounter += tempMatrix.applyTfThresholds(lowTfThreshold, highTfThreshold);
-							}
-							//System.out.print("Calculating idfs... ");
-							tfArffWriter.writeNextPart(tempMatrix);
-							tempMatrix.calculateIdfs(vocabulary);
-							idfArffWriter.writeNextPart(tempMatrix);
-							tempMatrix.clear();
-							entryCounter = 0;
-							if (curReader.reader.hasNext() && curReader.reader.current().docID == newDoc)
-							{
-								currentTermList = tempMatrix.addDoc(newDoc); 
-							}
+							return false;
 						}
-						catch (IOException e)
+						tempMatrix.clear();
+						entryCounter = 0;
+						if (curReader.reader.hasNext() && curReader.reader.current().docID == newDoc)
 						{
-							System.err.println("Error writing to file " + idfIndex.getPath() + "! -- Stack Trace follows.");
-							e.printStackTrace();
-							try
-							{
-								idfArffWriter.close();
-							}
-							catch (IOException e1)
-							{
-							}
-							return;
+							currentTermList = tempMatrix.addDoc(newDoc); 
 						}
 					}
 				}
@@ -621,54 +1104,166 @@ public class BlockIndexer implements IIndexer
 		}
 		
 		//System.out.println("Writing last part... ");
-		try
+		if (!writePart(tempMatrix, variantWriters, writers))
 		{
-			if (lowTfThreshold > 0 || highTfThreshold < Integer.MAX_VALUE)
-			{
-				//System.out.print("Applying Tf thresholds... ");
-				thresholdedItemsCounter += tempMatrix.applyTfThresholds(lowTfThreshold, highTfThreshold);
-			}
-			//System.out.print("Calculating idfs... ");
-			tfArffWriter.writeNextPart(tempMatrix);
-			tempMatrix.calculateIdfs(vocabulary);
-			idfArffWriter.writeNextPart(tempMatrix);
-			tempMatrix.clear();
+			return false;
 		}
-		catch (IOException e)
+		tempMatrix.clear();
+
+		int thresholdedItemsCounter = 0;
+		for (ThresholdVariantWriter variantWriter : variantWriters)
 		{
-			System.err.println("Error writing to file " + idfIndex.getPath() + "! -- Stack Trace follows.");
-			e.printStackTrace();
 			try
 			{
-				tfArffWriter.close();
-				idfArffWriter.close();
+				variantWriter.close();
 			}
 			catch (IOException e1)
 			{
+				System.err.println("Error closing files " + variantWriter.getFileNames() + "! -- Stack Trace follows.");
+				e1.printStackTrace();
+				return false;
 			}
-			return;
-		}
-
-		try
-		{
-			tfArffWriter.close();
-			idfArffWriter.close();
-		}
-		catch (IOException e1)
-		{
-			System.err.println("Error closing file " + idfIndex.getPath() + "! -- Stack Trace follows.");
-			e1.printStackTrace();
-			return;
+			thresholdedItemsCounter += variantWriter.getThresholdedItemsCounter();
 		}
 		System.out.print("Removed "+thresholdedItemsCounter+" items due to thresholding. ");
 		System.out.println("Done.");
 		
-		collectionStatistics.setNumberOfTokens(collectionStatistics.getNumberOfTokens() - thresholdedItemsCounter);
-		collectionStatistics.setAverageDocumentLength(collectionStatistics.getNumberOfTokens() / collectionStatistics.getNumberOfDocuments());
-		collectionStatistics.writeToFile();
+		for (ThresholdVariantWriter variantWriter : variantWriters)
+		{
+			variantWriter.writeMetadata(analysis.collectionStatistics);
+		}
 		
 		// System.out.println("Merged Dictionary contains a total of " +
 		// docCounter + " documents.");
+		return true;
+	}
+
+	/**
+	 * Writes the next part of the merged matrix to all threshold variants, in parallel if there are several. Every
+	 * variant but the last gets a copy of the part, since writing modifies it. On errors, all files are closed.
+	 *
+	 * @return Whether the part was written.
+	 */
+	private boolean writePart(DocumentTermMatrix tempMatrix, ArrayList<ThresholdVariantWriter> variantWriters, ExecutorService writers)
+	{
+		ArrayList<Future<Void>> results = new ArrayList<Future<Void>>(variantWriters.size());
+		for (int i = 0; i < variantWriters.size(); i++)
+		{
+			final ThresholdVariantWriter variantWriter = variantWriters.get(i);
+			final DocumentTermMatrix part = i < variantWriters.size() - 1 ? tempMatrix.copy() : tempMatrix;
+			results.add(writers.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws IOException
+				{
+					variantWriter.writeNextPart(part);
+					return null;
+				}
+			}));
+		}
+
+		boolean success = true;
+		for (int i = 0; i < results.size(); i++)
+		{
+			try
+			{
+				results.get(i).get();
+			}
+			catch (ExecutionException e)
+			{
+				System.err.println("Error writing to files " + variantWriters.get(i).getFileNames() + "! -- Stack Trace follows.");
+				e.getCause().printStackTrace();
+				success = false;
+			}
+			catch (InterruptedException e)
+			{
+				System.err.println("Interrupted while writing to files " + variantWriters.get(i).getFileNames() + "!");
+				success = false;
+			}
+		}
+
+		if (!success)
+		{
+			for (ThresholdVariantWriter variantWriter : variantWriters)
+			{
+				variantWriter.abort();
+			}
+		}
+		return success;
+	}
+
+	/**
+	 * The state of one analysis (stemmed or unstemmed) of a run: its vocabulary, its block matrices and where its
+	 * index is written. If the tokens are not analyzed the same way, the analysis maps them itself: a stemmed analysis
+	 * of unstemmed tokens stems every token through a {@link StemCache}.
+	 */
+	private static class AnalysisVariant
+	{
+		boolean useStemming;
+		StemCache stemCache; // null if the tokens are used as they are
+		String directory;
+		String blockFilePrefix;
+
+		Vocabulary vocabulary;
+		CollectionStatistics collectionStatistics;
+
+		BlockMatrix blockMatrix;
+		ArrayList<File> blockMatrixFiles;
+		long runningMemoryCounter = 0;
+		int blockDocID = -1; // the document of the last row of the block matrix
+		PositionalIndexWriter positionsWriter; // null if no positions are stored
+
+		char[] termBuffer; // the term of the current token, see analyze()
+		int termOffset;
+		int termLength;
+
+		/**
+		 * @param _stemTokens Whether this analysis stems the (unstemmed) tokens itself.
+		 * @param _stemCacheSize The size of the stem cache used to stem the tokens.
+		 */
+		AnalysisVariant(boolean _useStemming, boolean _stemTokens, int _stemCacheSize)
+		{
+			this.useStemming = _useStemming;
+			if (_stemTokens)
+			{
+				this.stemCache = new StemCache(_stemCacheSize);
+				this.termBuffer = new char[64];
+			}
+			this.directory = "output" + File.separator + (_useStemming ? "stemming" : "no_stemming") + File.separator;
+			this.blockFilePrefix = _useStemming ? "stemming_" : "no_stemming_";
+		}
+
+		/**
+		 * An analysis whose vocabulary and block matrices have been built already, see {@link BlockIndexer#writeIndex}.
+		 */
+		AnalysisVariant(String _directory, Vocabulary _vocabulary, CollectionStatistics _collectionStatistics, ArrayList<File> _blockMatrixFiles)
+		{
+			this.directory = _directory;
+			this.vocabulary = _vocabulary;
+			this.collectionStatistics = _collectionStatistics;
+			this.blockMatrixFiles = _blockMatrixFiles;
+		}
+
+		/**
+		 * Sets the term of the current token of the cursor for this analysis.
+		 */
+		void analyze(ITokenCursor tokenCursor)
+		{
+			if (stemCache == null)
+			{
+				termBuffer = tokenCursor.getTermBuffer();
+				termOffset = tokenCursor.getTermOffset();
+				termLength = tokenCursor.getTermLength();
+				return;
+			}
+
+			if (termBuffer.length < tokenCursor.getTermLength())
+			{
+				termBuffer = new char[tokenCursor.getTermLength() * 2];
+			}
+			termOffset = 0;
+			termLength = stemCache.stem(tokenCursor.getTermBuffer(), tokenCursor.getTermOffset(), tokenCursor.getTermLength(), termBuffer);
+		}
 	}
 
 	/*
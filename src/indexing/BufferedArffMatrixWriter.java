@@ -2,9 +2,7 @@ package indexing;
 
 import java.io.*;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map.Entry;
-import java.util.zip.GZIPOutputStream;
 
 import dao.*;
 
@@ -13,20 +11,31 @@ import dao.*;
  * Is still a WIP but so far, the memory footprint is relatively low even for large files and many instances of this class, so long 
  * as the garbage collector does it's job.
  * 
+ * The file is written as a block-gzip (see {@link BlockGzipOutputStream}): the header is one gzip member, the rows
+ * follow in members of about 64 kB, a row never spans two members. Standard gzip readers see one file as before.
+ * Next to the file, a row index <code>&lt;file&gt;.rows</code> is written, with one entry per row: the docID (int),
+ * the offset of the member holding the row in the file (long) and the offset of the row in the decompressed member
+ * (int). It allows to read single rows, or to decompress the members in parallel (see retrieval.ArffRowIndex).
+ * 
  * TODO replace Writer out with FileChannel to increase performance
  *
  */
 public class BufferedArffMatrixWriter
 {
+	public static final String ROW_INDEX_SUFFIX = ".rows";
+	public static final int BYTES_PER_ROW = 16; // int docID + long block offset + int offset in the block
+
 	private File file;
 	
 	private char[] currentString;
 	
 	
-	GZIPOutputStream gzos;
+	BlockGzipOutputStream gzos;
 	
 	private Writer out;
 	
+	private DataOutputStream rowIndexOut;
+	
 	public static final int BUFFER_SIZE_IN_BYTES = 1024; // 1 kB, TODO choose good value here. Needs to be large enough to fit any term in the dictionary inside!
 
 	int lastActiveDocument;
@@ -34,7 +43,7 @@ public class BufferedArffMatrixWriter
 	private int numOfCharsFilled;
 	
 	private Vocabulary vocabulary;
-	private LinkedHashMap<Integer, Document> documents; 
+	private DocumentTable documents; 
 
 	/**
 	 * Constructor, creates a BufferedArffMatrixWriter with the given parameters. Does not write to the disk, merely creates 
@@ -44,7 +53,7 @@ public class BufferedArffMatrixWriter
 	 * @param _vocabulary The vocabulary of the matrix.
 	 * @param documents Provides class and name of the documentInstances to write.
 	 */
-	public BufferedArffMatrixWriter(File _file, Vocabulary _vocabulary, LinkedHashMap<Integer, Document> _documents)
+	public BufferedArffMatrixWriter(File _file, Vocabulary _vocabulary, DocumentTable _documents)
 	{
 		file = _file;
 
@@ -69,13 +78,17 @@ public class BufferedArffMatrixWriter
 			parent.mkdirs();
 			file.createNewFile();
 		}
-		gzos = new GZIPOutputStream(new FileOutputStream(file));
+		gzos = new BlockGzipOutputStream(new BufferedOutputStream(new FileOutputStream(file), BlockGzipOutputStream.DEFAULT_BLOCK_SIZE));
 
 		out = new BufferedWriter(new OutputStreamWriter(gzos));//, "UTF-8"));
         
 	//	out = new FileWriter(file);
 
 		writeHeader(); 
+		out.flush();
+		gzos.endBlock(); // the rows start in a member of their own
+		
+		rowIndexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.getPath() + ROW_INDEX_SUFFIX)));
 	}
 	
 	/**
@@ -94,15 +107,10 @@ public class BufferedArffMatrixWriter
 	//	out.write("% Now we write the Vocabulary. The termIDs are offset by the number of attributes before, i.e. 3.");
 		
 
-		Iterator<Entry<String, VocabularyEntry>> entries = vocabulary.getVocabulary().entrySet().iterator();
-		Entry<String, VocabularyEntry> nextEntry;
-		
-		
-		while (entries.hasNext())
+		for (int termID = 0; termID < vocabulary.size(); termID++)
 		{
-			nextEntry = entries.next();
 			out.write("@ATTRIBUTE ");
-			out.write(nextEntry.getKey());
+			out.write(vocabulary.getTerm(termID));
 			out.write(" NUMERIC\n");
 		}
 		
@@ -145,6 +153,7 @@ public class BufferedArffMatrixWriter
 					currentString[numOfCharsFilled++] = '}'; // close the curly brace of the previous document and
 					currentString[numOfCharsFilled++] = '\n'; // start a new line for the current document
 				}
+				startRow(currentDocument.getKey());
 				
 		//		System.out.println("termID = "+currentDocument.getKey()+", term = "+vocabulary.get(currentDocument.getKey()).)
 
@@ -241,10 +250,28 @@ public class BufferedArffMatrixWriter
 		}
 	}
 	
+	/**
+	 * Ends the previous row, if the current member has reached the block size, a new member is started, and records
+	 * where the row of the given document starts.
+	 */
+	private void startRow(int docID) throws IOException
+	{
+		out.write(currentString, 0, numOfCharsFilled);
+		numOfCharsFilled = 0;
+		out.flush(); // the encoded characters are needed in the block stream to know the offset
+		gzos.startRecord();
+		
+		rowIndexOut.writeInt(docID);
+		rowIndexOut.writeLong(gzos.getBlockOffset());
+		rowIndexOut.writeInt(gzos.getOffsetInBlock());
+	}
+	
 	public void close() throws IOException
 	{
 		out.write('}'); // we need to manually close the last line
 		if (out != null)
 			out.close();
+		if (rowIndexOut != null)
+			rowIndexOut.close();
 	}
 }
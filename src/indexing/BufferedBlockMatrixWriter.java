@@ -1,8 +1,6 @@
 package indexing;
 
 import java.io.*;
-import java.util.Iterator;
-import java.util.Map.Entry;
 
 import dao.*;
 
@@ -25,16 +23,16 @@ public class BufferedBlockMatrixWriter
 	public static final int BUFFER_SIZE_IN_BYTES = 1024; // 1 kB, TODO choose good value here. Needs to be large enough to fit any term in the dictionary inside!
 
 	
-	private DocumentTermMatrix matrix;
+	private BlockMatrix matrix;
 
 	/**
 	 * Constructor, creates a BufferedBlockDictionaryWriter with the given parameters. Does not write to the disk, merely creates 
 	 * the object!
 	 * 
 	 * @param _file The file to write the dictionary to.
-	 * @param _dict The dictionary to write to the file.
+	 * @param _matrix The block matrix to write to the file, its rows have to be sorted already (see {@link BlockMatrix#sortRows()}).
 	 */
-	public BufferedBlockMatrixWriter(File _file, DocumentTermMatrix _matrix)
+	public BufferedBlockMatrixWriter(File _file, BlockMatrix _matrix)
 	{
 		file = _file;
 
@@ -73,66 +71,89 @@ public class BufferedBlockMatrixWriter
 	
 		
 		
-		Iterator<Entry<Integer, DocumentTermList>> it = matrix.getMatrix().entrySet().iterator();
-		Entry<Integer, DocumentTermList> currentDocument;
-		
-		Iterator<Entry<Integer, Float>> termIt = null; 
-		
+		int[] termIDs = matrix.getTermIDs();
+		float[] values = matrix.getValues();
 		int numOfCharsFilled = 0;
-		Entry<Integer, Float> entry;
 		
-		while (it.hasNext()) // for every documentTerm list:
+		for (int row = 0; row < matrix.getNumberOfRows(); row++) // for every documentTerm list:
 		{
-			currentDocument = it.next();
-			char[] docID_Chars = String.valueOf(currentDocument.getKey()).toCharArray();
-			for (int i = 0; i < docID_Chars.length; i++)
+			int start = matrix.getRowStart(row);
+			int end = matrix.getRowEnd(row);
+			if (start == end)
 			{
-				currentString[numOfCharsFilled++] = docID_Chars[i];
+				continue; // docID without tokens
 			}
 			
-
+			if (numOfCharsFilled >= BUFFER_SIZE_IN_BYTES - 30)
+			{
+				out.write(currentString, 0, numOfCharsFilled);
+				numOfCharsFilled = 0;
+			}
+			numOfCharsFilled = appendInt(matrix.getFirstDocID() + row, numOfCharsFilled);
 			currentString[numOfCharsFilled++] = '\t';
 			
-			
-			termIt = currentDocument.getValue().getDocTermEntries().entrySet().iterator();
-			while (termIt.hasNext()) // for every termEntry in the current documentTerm list:
+			for (int i = start; i < end; i++) // for every termEntry in the current documentTerm list:
 			{
-				while(numOfCharsFilled < BUFFER_SIZE_IN_BYTES - 30 && termIt.hasNext()) 
+				if (numOfCharsFilled >= BUFFER_SIZE_IN_BYTES - 30)
 				{
-					entry = termIt.next();
-					
-					currentString[numOfCharsFilled++] = '<';
-					
-					char[] termID_Chars = String.valueOf(entry.getKey()).toCharArray(); 
-					char[] idf_Chars = String.valueOf(entry.getValue()).toCharArray();
-					
-					for (int i = 0; i < termID_Chars.length; i++)
-					{
-						currentString[numOfCharsFilled++] = termID_Chars[i];
-					}
-					
-					currentString[numOfCharsFilled++] = ':';
-					
-					for (int i = 0; i < idf_Chars.length; i++)
-					{
-						currentString[numOfCharsFilled++] = idf_Chars[i];
-					}
-					
-					currentString[numOfCharsFilled++] = '>';
+					out.write(currentString, 0, numOfCharsFilled);
+					numOfCharsFilled = 0;
 				}
-				out.write(currentString, 0, numOfCharsFilled);
-				numOfCharsFilled = 0;
 				
-				if (!termIt.hasNext())
-				{
-					currentString[0] = '\n';
-					numOfCharsFilled = 1;
-					break;
-				}		
+				currentString[numOfCharsFilled++] = '<';
+				numOfCharsFilled = appendInt(termIDs[i], numOfCharsFilled);
+				currentString[numOfCharsFilled++] = ':';
+				numOfCharsFilled = appendValue(values[i], numOfCharsFilled);
+				currentString[numOfCharsFilled++] = '>';
 			}
-			
+			currentString[numOfCharsFilled++] = '\n';
 		}
+		out.write(currentString, 0, numOfCharsFilled);
 
 		out.close();
-	}	
+	}
+	
+	/**
+	 * Writes the decimal digits of the given non-negative number to <code>currentString</code>, starting at the given position.
+	 * 
+	 * @return The position after the last digit.
+	 */
+	private int appendInt(int number, int position)
+	{
+		int digits = 1;
+		for (int rest = number / 10; rest > 0; rest /= 10)
+		{
+			digits++;
+		}
+		for (int i = position + digits - 1; i >= position; i--)
+		{
+			currentString[i] = (char)('0' + number % 10);
+			number /= 10;
+		}
+		return position + digits;
+	}
+	
+	/**
+	 * Writes the given value like String.valueOf(float) would. Values of block matrices are term frequencies, i.e. 
+	 * whole numbers, which are written without creating a String.
+	 * 
+	 * @return The position after the last character.
+	 */
+	private int appendValue(float value, int position)
+	{
+		if (value >= 0.0f && value < 1.0e7f && value == (int)value)
+		{
+			position = appendInt((int)value, position);
+			currentString[position++] = '.';
+			currentString[position++] = '0';
+			return position;
+		}
+		
+		char[] valueChars = String.valueOf(value).toCharArray();
+		for (int i = 0; i < valueChars.length; i++)
+		{
+			currentString[position++] = valueChars[i];
+		}
+		return position;
+	}
 }
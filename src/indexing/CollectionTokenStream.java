@@ -0,0 +1,525 @@
+package indexing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import dao.Document;
+import dao.Token;
+
+/**
+ * Class to tokenize the documents of a collection, as read by an {@link ICollectionReader}. Every document is handed
+ * over as a byte buffer as a whole, and terms are split directly on the UTF-8 encoded bytes: ASCII bytes are
+ * classified through a 256 entry table and lower cased in place, only non-ASCII sequences are decoded to chars. The
+ * terms are the same as those of {@link TermAnalyzer#analyze(Reader)} on the decoded text.
+ *
+ * The stream can be used in two ways: as an {@link ITokenStream} ({@link #initialize()}, then {@link #next()}), which
+ * creates a Token per term, or as an {@link ITokenCursor} ({@link #advance()}), which reuses one term buffer and does
+ * not allocate anything per token. The two must not be mixed on the same stream.
+ *
+ * The documents are numbered in the order they are read, starting with docID 1.
+ *
+ * Note that CollectionTokenStream is NOT thread safe, meaning that methods should never be called concurrently!
+ *
+ */
+public class CollectionTokenStream implements ITokenStream<Token>, ITokenCursor
+{
+	// classes of the ASCII characters, see TermAnalyzer.isTermStart() and isTermPart():
+	private static final byte DELIMITER = 0;
+	private static final byte LETTER = 1; // starts and continues terms
+	private static final byte PART = 2; // continues terms (digits, '@')
+	private static final byte CONNECTOR = 3; // continues terms if followed by a letter ('.', '-')
+	private static final byte NON_ASCII = 4; // first byte of a multi byte sequence (or a malformed byte), has to be decoded
+
+	private static final byte[] CHAR_CLASSES = new byte[256];
+	private static final byte[] LOWER_CASE = new byte[256];
+
+	static
+	{
+		for (int b = 0; b < 256; b++)
+		{
+			char c = (char)b;
+			LOWER_CASE[b] = (byte)b;
+			if (b >= 128)
+			{
+				CHAR_CLASSES[b] = NON_ASCII;
+			}
+			else if (TermAnalyzer.isTermStart(c))
+			{
+				CHAR_CLASSES[b] = LETTER;
+				LOWER_CASE[b] = (byte)Character.toLowerCase(c);
+			}
+			else if (TermAnalyzer.isTermPart(c, ' '))
+			{
+				CHAR_CLASSES[b] = PART;
+			}
+			else if (TermAnalyzer.isTermPart(c, 'a'))
+			{
+				CHAR_CLASSES[b] = CONNECTOR;
+			}
+			else
+			{
+				CHAR_CLASSES[b] = DELIMITER;
+			}
+		}
+	}
+
+	protected ICollectionReader reader;
+	private boolean useStemming;
+	private boolean exhausted; // all documents have been tokenized
+
+	private int docID; // the docID of the current document, 0 before the first one
+	private Document currentDocument;
+
+	private byte[] document; // the bytes of the current document, owned by the reader
+	private int documentLength;
+	private int position; // the next byte to be tokenized
+	private int decodedLength; // the number of bytes of the char returned by the last call of decode()
+	private int wordsRead; // the number of words of the current document read so far, including the discarded ones
+
+	private char[] rawTerm; // the last term found by scanTermInDocument(), before normalization (ASCII letters are already lower case)
+	private int rawTermLength;
+	private boolean asciiTerm; // whether rawTerm only consists of ASCII characters
+
+	private char[] cursorTermBuffer; // cursor API, see advance()
+	private int cursorTermLength;
+	private int cursorPosition;
+	private Document cursorDocument;
+
+	private Token nextToken; // Token API, the next token
+	private boolean hasNext;
+
+	private TermAnalyzer analyzer;
+
+	private boolean skipMetaData; // skip the header of each file, see findHeaderLength()
+
+	/**
+	 * Constructor. No data is read before {@link #initialize()} or {@link #advance()} is called. The reader is closed
+	 * once all of its documents have been tokenized.
+	 *
+	 * @param _reader The collection to tokenize.
+	 * @param _analyzer The analyzer that normalizes the terms of the stream. It must not be used concurrently by anyone
+	 * else, but may be shared with other streams, e.g. to share its stem cache.
+	 */
+	public CollectionTokenStream(ICollectionReader _reader, TermAnalyzer _analyzer)
+	{
+		reader = _reader;
+		useStemming = _analyzer.usesStemming();
+		analyzer = _analyzer;
+
+		docID = 0;
+
+		documentLength = 0;
+		position = 0;
+		rawTerm = new char[64];
+		skipMetaData = false;
+	}
+
+	/**
+	 * @return The stem cache used for the tokens of this stream.
+	 */
+	public StemCache getStemCache()
+	{
+		return analyzer.getStemCache();
+	}
+
+	/**
+	 * Lets the docIDs of this stream start after the given one instead of 0, for a stream that tokenizes a part of a
+	 * collection (see {@link ParallelTokenStream}).
+	 */
+	void setDocIDBase(int docIDBase)
+	{
+		this.docID = docIDBase;
+	}
+
+	/**
+	 * Sets whether the header of each file (newsgroup / RFC 822 style, see {@link #findHeaderLength()}) is skipped.
+	 * The length of the header is recorded in the Document either way.
+	 */
+	public void setSkipMetaData(boolean skip)
+	{
+		this.skipMetaData = skip;
+	}
+
+	/**
+	 * Finds the header of the current document on the raw bytes, before anything is tokenized. A file has a header if its
+	 * first line is a header field ("Name: value"); the header then ends with the first blank line. Files without a
+	 * blank line are assumed to end their header with the 'Lines:' field, as newsgroup postings do. If neither is
+	 * found, the file is treated as having no header at all.
+	 *
+	 * @return The length of the header in bytes, i.e. the offset of the body in the file.
+	 */
+	private int findHeaderLength()
+	{
+		if (!isHeaderField(0))
+		{
+			return 0;
+		}
+
+		int endOfLinesField = 0;
+		int lineStart = 0;
+		while (lineStart < documentLength)
+		{
+			int lineEnd = lineStart;
+			while (lineEnd < documentLength && document[lineEnd] != '\n')
+			{
+				lineEnd++;
+			}
+
+			if (lineEnd == lineStart || (lineEnd == lineStart + 1 && document[lineStart] == '\r'))
+			{
+				return Math.min(lineEnd + 1, documentLength); // blank line
+			}
+			if (endOfLinesField == 0 && startsWithIgnoreCase(lineStart, "Lines:"))
+			{
+				endOfLinesField = Math.min(lineEnd + 1, documentLength);
+			}
+			lineStart = lineEnd + 1;
+		}
+		return endOfLinesField;
+	}
+
+	/**
+	 * @return Whether the line starting at the given position begins with a header field name (printable ASCII
+	 * characters other than ':', followed by ':').
+	 */
+	private boolean isHeaderField(int lineStart)
+	{
+		int pos = lineStart;
+		while (pos < documentLength && document[pos] > 32 && document[pos] < 127 && document[pos] != ':')
+		{
+			pos++;
+		}
+		return pos > lineStart && pos < documentLength && document[pos] == ':';
+	}
+
+	private boolean startsWithIgnoreCase(int pos, String prefix)
+	{
+		if (pos + prefix.length() > documentLength)
+		{
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			if (Character.toLowerCase((char)document[pos + i]) != Character.toLowerCase(prefix.charAt(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Initializes the stream for the Token API by caching the first token.
+	 */
+	public void initialize() {
+		nextToken = prepareNextToken();
+		hasNext = nextToken != null;
+	}
+
+	/**
+	 * @return A new Token for the next term of the stream or null if the stream does not contain any more tokens.
+	 */
+	private Token prepareNextToken()
+	{
+		if (!advance())
+		{
+			return null;
+		}
+		return new Token(new String(cursorTermBuffer, 0, cursorTermLength), cursorDocument);
+	}
+
+	@Override
+	public Token next()
+	{
+		Token currentToken = nextToken;
+
+		nextToken = prepareNextToken();
+		hasNext = nextToken != null;
+
+		return currentToken;
+	}
+
+
+	@Override
+	public boolean hasNext()
+	{
+		return hasNext;
+	}
+
+	@Override
+	public Token current()
+	{
+		return nextToken;
+	}
+
+	@Override
+	public boolean advance()
+	{
+		while (!scanTermInDocument())
+		{
+			if (!loadNextFile())
+			{
+				cursorDocument = null;
+				return false;
+			}
+		}
+
+		normalizeCurrentTerm();
+		return true;
+	}
+
+	/**
+	 * Normalizes the term found by the last call of scanTermInDocument() and makes it the current term of the cursor.
+	 */
+	private void normalizeCurrentTerm()
+	{
+		if (asciiTerm && !useStemming)
+		{
+			cursorTermBuffer = rawTerm; // already lower case
+			cursorTermLength = rawTermLength;
+		}
+		else
+		{
+			cursorTermLength = analyzer.normalizeToBuffer(rawTerm, 0, rawTermLength);
+			cursorTermBuffer = analyzer.getTermBuffer();
+		}
+		cursorPosition = wordsRead - 1;
+		cursorDocument = currentDocument;
+	}
+
+	@Override
+	public char[] getTermBuffer()
+	{
+		return cursorTermBuffer;
+	}
+
+	@Override
+	public int getTermOffset()
+	{
+		return 0;
+	}
+
+	@Override
+	public int getTermLength()
+	{
+		return cursorTermLength;
+	}
+
+	@Override
+	public int getPosition()
+	{
+		return cursorPosition;
+	}
+
+	@Override
+	public int getDocID()
+	{
+		return cursorDocument.getId();
+	}
+
+	@Override
+	public Document getDocument()
+	{
+		return cursorDocument;
+	}
+
+	/**
+	 * Finds the next term in the current document, starting at <code>position</code>, and stores it in
+	 * <code>rawTerm</code>. Terms shorter than {@link TermAnalyzer#MIN_TERM_LENGTH} are skipped, but counted in
+	 * <code>wordsRead</code> like all others.
+	 *
+	 * @return Whether a term was found, false if the rest of the document does not contain any terms.
+	 */
+	private boolean scanTermInDocument()
+	{
+		while (position < documentLength)
+		{
+			int b = document[position] & 0xFF;
+			byte charClass = CHAR_CLASSES[b];
+
+			if (charClass == NON_ASCII)
+			{
+				if (!TermAnalyzer.isTermStart(decode(position)))
+				{
+					position += decodedLength;
+					continue;
+				}
+			}
+			else if (charClass != LETTER)
+			{
+				position++;
+				continue; // every term should start with a proper letter.
+			}
+
+			scanTerm();
+			wordsRead++;
+			if (rawTermLength >= TermAnalyzer.MIN_TERM_LENGTH) // discard short words
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copies the term starting at <code>position</code> (which has to be a letter) to <code>rawTerm</code> and moves
+	 * <code>position</code> to the first byte after the term.
+	 */
+	private void scanTerm()
+	{
+		rawTermLength = 0;
+		asciiTerm = true;
+
+		int pos = position;
+		while (pos < documentLength)
+		{
+			int b = document[pos] & 0xFF;
+			byte charClass = CHAR_CLASSES[b];
+
+			if (charClass == LETTER)
+			{
+				b = LOWER_CASE[b];
+				document[pos] = (byte)b; // lower case in place
+				appendToRawTerm((char)b);
+				pos++;
+			}
+			else if (charClass == PART || (charClass == CONNECTOR && isLetterAt(pos + 1)))
+			{
+				appendToRawTerm((char)b);
+				pos++;
+			}
+			else if (charClass == NON_ASCII)
+			{
+				char currentChar = decode(pos);
+				int length = decodedLength;
+				char nextChar = pos + length < documentLength ? decode(pos + length) : ' ';
+				if (!TermAnalyzer.isTermPart(currentChar, nextChar))
+				{
+					break;
+				}
+				appendToRawTerm(currentChar);
+				asciiTerm = false;
+				pos += length;
+			}
+			else
+			{
+				break;
+			}
+		}
+		position = pos;
+	}
+
+	private boolean isLetterAt(int pos)
+	{
+		if (pos >= documentLength)
+		{
+			return false; // the end of the document is a delimiter
+		}
+		byte charClass = CHAR_CLASSES[document[pos] & 0xFF];
+		return charClass == LETTER || (charClass == NON_ASCII && TermAnalyzer.isTermStart(decode(pos)));
+	}
+
+	private void appendToRawTerm(char c)
+	{
+		if (rawTermLength == rawTerm.length)
+		{
+			rawTerm = Arrays.copyOf(rawTerm, rawTerm.length * 2);
+		}
+		rawTerm[rawTermLength++] = c;
+	}
+
+	/**
+	 * Decodes the UTF-8 sequence starting at the given position and sets <code>decodedLength</code> to its number of
+	 * bytes. Malformed bytes are decoded to U+FFFD one at a time, characters outside the BMP to their high surrogate.
+	 * Neither is a letter or digit, so like with a decoding Reader they end up as delimiters.
+	 */
+	private char decode(int pos)
+	{
+		int b = document[pos] & 0xFF;
+		if (b < 0x80)
+		{
+			decodedLength = 1;
+			return (char)b;
+		}
+		if (b >= 0xC2 && b <= 0xDF && isContinuation(pos + 1))
+		{
+			decodedLength = 2;
+			return (char)(((b & 0x1F) << 6) | (document[pos + 1] & 0x3F));
+		}
+		if (b >= 0xE0 && b <= 0xEF && isContinuation(pos + 1) && isContinuation(pos + 2))
+		{
+			char c = (char)(((b & 0x0F) << 12) | ((document[pos + 1] & 0x3F) << 6) | (document[pos + 2] & 0x3F));
+			if (c >= 0x800 && !Character.isSurrogate(c)) // no overlong encodings and surrogates
+			{
+				decodedLength = 3;
+				return c;
+			}
+		}
+		if (b >= 0xF0 && b <= 0xF4 && isContinuation(pos + 1) && isContinuation(pos + 2) && isContinuation(pos + 3))
+		{
+			int codePoint = ((b & 0x07) << 18) | ((document[pos + 1] & 0x3F) << 12) | ((document[pos + 2] & 0x3F) << 6) | (document[pos + 3] & 0x3F);
+			if (codePoint >= 0x10000 && codePoint <= 0x10FFFF)
+			{
+				decodedLength = 4;
+				return Character.highSurrogate(codePoint);
+			}
+		}
+		decodedLength = 1;
+		return '\uFFFD';
+	}
+
+	private boolean isContinuation(int pos)
+	{
+		return pos < documentLength && (document[pos] & 0xC0) == 0x80;
+	}
+
+	/**
+	 * Moves the reader to the next document, which is then tokenized from <code>document</code>. Once all documents
+	 * have been tokenized, the reader is closed.
+	 *
+	 * @return Whether there was a next document.
+	 */
+	private boolean loadNextFile()
+	{
+		if (exhausted)
+		{
+			return false;
+		}
+
+		documentLength = 0;
+		position = 0;
+		wordsRead = 0;
+
+		try
+		{
+			if (!reader.nextDocument())
+			{
+				exhausted = true;
+				reader.close();
+				return false;
+			}
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error reading the collection, no documents after docID "+docID+" are tokenized! -- Stack Trace follows.");
+			ioe.printStackTrace();
+			exhausted = true;
+			reader.close();
+			return false;
+		}
+
+		docID += 1; // note that empty files will still increase the counter. This shouldn't be a problem imho?
+		currentDocument = new Document(docID, reader.getCategory(), reader.getName());
+		document = reader.getContent();
+		documentLength = reader.getContentLength();
+
+		int headerLength = findHeaderLength();
+		currentDocument.setHeaderLength(headerLength);
+		if (skipMetaData)
+		{
+			position = headerLength;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,165 @@
+package indexing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file of concatenated documents in the mbox format: every document starts with a line beginning with
+ * "From " (which is not part of the document), text before the first such line is a document of its own. The file is
+ * memory mapped and split on the fly. The category of all documents is the file name without its extension, their
+ * names are their positions in the file, starting with "1".
+ */
+public class ConcatenatedCollectionReader implements ICollectionReader
+{
+	public static final int INITIAL_BUFFER_SIZE_IN_BYTES = 64 * 1024; // grows to the size of the largest document
+
+	private static final byte[] SEPARATOR = { 'F', 'r', 'o', 'm', ' ' };
+
+	private MappedByteBuffer file;
+	private int fileLength;
+	private int position; // the start of the next document or separator line
+	private boolean closed;
+
+	private String category;
+	private int numberOfDocuments;
+	private byte[] content;
+	private int contentLength;
+
+	/**
+	 * Maps the given file into memory.
+	 *
+	 * @throws IOException If the file cannot be read or is larger than 2 GB.
+	 */
+	public ConcatenatedCollectionReader(File _file) throws IOException
+	{
+		FileInputStream fis = new FileInputStream(_file);
+		try
+		{
+			FileChannel channel = fis.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException(_file.getPath() + " is too large, concatenated files are limited to 2 GB");
+			}
+			fileLength = (int)channel.size();
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength); // stays valid after closing the channel
+		}
+		finally
+		{
+			fis.close();
+		}
+
+		category = _file.getName();
+		int extension = category.lastIndexOf('.');
+		if (extension > 0)
+		{
+			category = category.substring(0, extension);
+		}
+		content = new byte[INITIAL_BUFFER_SIZE_IN_BYTES];
+	}
+
+	@Override
+	public boolean nextDocument() throws IOException
+	{
+		if (closed)
+		{
+			return false;
+		}
+		if (position >= fileLength)
+		{
+			close();
+			return false;
+		}
+
+		if (isSeparatorAt(position))
+		{
+			position = endOfLine(position);
+		}
+
+		int start = position;
+		int end = start;
+		while (end < fileLength)
+		{
+			int lineEnd = endOfLine(end);
+			if (lineEnd < fileLength && isSeparatorAt(lineEnd))
+			{
+				end = lineEnd;
+				break;
+			}
+			end = lineEnd;
+		}
+		position = end;
+
+		contentLength = end - start;
+		if (contentLength > content.length)
+		{
+			content = new byte[contentLength];
+		}
+		file.position(start);
+		file.get(content, 0, contentLength);
+
+		numberOfDocuments++;
+		return true;
+	}
+
+	/**
+	 * @return The position after the end of the line (after the '\n') containing the given position.
+	 */
+	private int endOfLine(int pos)
+	{
+		while (pos < fileLength && file.get(pos) != '\n')
+		{
+			pos++;
+		}
+		return Math.min(pos + 1, fileLength);
+	}
+
+	private boolean isSeparatorAt(int pos)
+	{
+		if (pos + SEPARATOR.length > fileLength)
+		{
+			return false;
+		}
+		for (int i = 0; i < SEPARATOR.length; i++)
+		{
+			if (file.get(pos + i) != SEPARATOR[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String getCategory()
+	{
+		return category;
+	}
+
+	@Override
+	public String getName()
+	{
+		return Integer.toString(numberOfDocuments);
+	}
+
+	@Override
+	public byte[] getContent()
+	{
+		return content;
+	}
+
+	@Override
+	public int getContentLength()
+	{
+		return contentLength;
+	}
+
+	@Override
+	public void close()
+	{
+		closed = true;
+		file = null; // the mapping is released once the buffer is garbage collected
+	}
+}
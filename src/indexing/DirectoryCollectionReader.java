@@ -0,0 +1,264 @@
+package indexing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads the files of a directory tree as documents. The category of a document is the name of the directory that
+ * contains it, its name is the file name, so an unzipped collection gets the same meta data as the zip file.
+ *
+ * The tree is walked in parallel (one fork/join task per directory), and the files are sorted by their path, so the
+ * documents are read in the same order every time. Hidden files and directories (starting with '.') are skipped.
+ * While the documents are tokenized, a pool of threads reads the next ones, so the tokenizer does not have to wait for
+ * the disk. The documents are handed out one at a time, in order; to tokenize them on several threads as well, the
+ * reader is wrapped in a {@link ParallelTokenStream}. The files are read into arrays straight from their channel; they
+ * are not memory mapped, since the tokenizer lower cases the content in place and needs a private array anyway, so a
+ * mapping would only add a copy.
+ */
+public class DirectoryCollectionReader implements ICollectionReader
+{
+	public static final int PREFETCHED_FILES_PER_THREAD = 4;
+
+	private File[] files;
+	private int nextFileToRead; // index into files of the next file to submit to the executor
+	private ExecutorService executor;
+	private ArrayDeque<Future<byte[]>> prefetchedFiles;
+	private int prefetchLimit;
+	private boolean closed;
+
+	private File currentFile;
+	private byte[] content;
+
+	/**
+	 * Walks the given directory tree. No file is read before {@link #nextDocument()} is called.
+	 *
+	 * @param _directory The root of the collection.
+	 * @param _numberOfThreads The number of threads that walk the tree and read the files.
+	 * @throws IOException If the directory cannot be read.
+	 */
+	public DirectoryCollectionReader(File _directory, int _numberOfThreads) throws IOException
+	{
+		if (_numberOfThreads < 1)
+		{
+			throw new IllegalArgumentException("At least one thread is needed to read a directory: " + _numberOfThreads);
+		}
+		if (!_directory.isDirectory())
+		{
+			throw new IOException(_directory.getPath() + " is not a directory");
+		}
+
+		ForkJoinPool walkers = new ForkJoinPool(_numberOfThreads);
+		try
+		{
+			List<File> collectedFiles = walkers.invoke(new DirectoryWalk(_directory));
+			files = collectedFiles.toArray(new File[collectedFiles.size()]);
+		}
+		finally
+		{
+			walkers.shutdown();
+		}
+
+		executor = Executors.newFixedThreadPool(_numberOfThreads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "DirectoryCollectionReader");
+				thread.setDaemon(true); // never keeps the program alive if the reader is not closed
+				return thread;
+			}
+		});
+		prefetchedFiles = new ArrayDeque<Future<byte[]>>();
+		prefetchLimit = _numberOfThreads * PREFETCHED_FILES_PER_THREAD;
+		content = new byte[0];
+	}
+
+	/**
+	 * @return The number of documents of the collection.
+	 */
+	public int size()
+	{
+		return files.length;
+	}
+
+	@Override
+	public boolean nextDocument() throws IOException
+	{
+		if (closed)
+		{
+			return false;
+		}
+
+		while (prefetchedFiles.size() < prefetchLimit && nextFileToRead < files.length)
+		{
+			final File file = files[nextFileToRead++];
+			prefetchedFiles.add(executor.submit(new Callable<byte[]>()
+			{
+				@Override
+				public byte[] call() throws IOException
+				{
+					return readFile(file);
+				}
+			}));
+		}
+
+		Future<byte[]> next = prefetchedFiles.poll();
+		if (next == null)
+		{
+			close();
+			return false;
+		}
+		currentFile = files[nextFileToRead - prefetchedFiles.size() - 1];
+
+		try
+		{
+			content = next.get();
+		}
+		catch (ExecutionException ee)
+		{
+			System.err.println("Error reading "+currentFile.getPath()+", the document is left empty! -- Stack Trace follows.");
+			ee.getCause().printStackTrace();
+			content = new byte[0];
+		}
+		catch (InterruptedException ie)
+		{
+			close();
+			throw new IOException("Interrupted while reading " + currentFile.getPath(), ie);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the given file as a whole. A file that is truncated while it is read yields the bytes read so far.
+	 */
+	private static byte[] readFile(File file) throws IOException
+	{
+		FileInputStream fis = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = fis.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+			{
+				throw new IOException(file.getPath() + " is too large to be indexed as a single document");
+			}
+
+			byte[] bytes = new byte[(int)size];
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining() && channel.read(buffer) > -1)
+			{
+			}
+			if (buffer.hasRemaining())
+			{
+				bytes = Arrays.copyOf(bytes, buffer.position()); // the file has been truncated meanwhile
+			}
+			return bytes;
+		}
+		finally
+		{
+			fis.close();
+		}
+	}
+
+	@Override
+	public String getCategory()
+	{
+		return currentFile.getParentFile().getName();
+	}
+
+	@Override
+	public String getName()
+	{
+		return currentFile.getName();
+	}
+
+	@Override
+	public byte[] getContent()
+	{
+		return content;
+	}
+
+	@Override
+	public int getContentLength()
+	{
+		return content.length;
+	}
+
+	@Override
+	public void close()
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		executor.shutdownNow();
+		prefetchedFiles.clear();
+	}
+
+	/**
+	 * Lists the files of a directory tree, sorted by their path. Every subdirectory is listed by a task of its own.
+	 */
+	private static class DirectoryWalk extends RecursiveTask<List<File>>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private File directory;
+
+		public DirectoryWalk(File _directory)
+		{
+			this.directory = _directory;
+		}
+
+		@Override
+		protected List<File> compute()
+		{
+			File[] entries = directory.listFiles();
+			if (entries == null)
+			{
+				System.err.println("Error listing the directory " + directory.getPath() + ", its files are not indexed!");
+				return new ArrayList<File>(0);
+			}
+			Arrays.sort(entries);
+
+			DirectoryWalk[] subdirectories = new DirectoryWalk[entries.length]; // null for files
+			for (int i = 0; i < entries.length; i++)
+			{
+				if (!entries[i].getName().startsWith(".") && entries[i].isDirectory())
+				{
+					subdirectories[i] = new DirectoryWalk(entries[i]);
+					subdirectories[i].fork();
+				}
+			}
+
+			ArrayList<File> files = new ArrayList<File>();
+			for (int i = 0; i < entries.length; i++)
+			{
+				if (subdirectories[i] != null)
+				{
+					files.addAll(subdirectories[i].join());
+				}
+				else if (!entries[i].getName().startsWith(".") && entries[i].isFile())
+				{
+					files.add(entries[i]);
+				}
+			}
+			return files;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package indexing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+
+import retrieval.ArffDocumentRow;
+import retrieval.DocumentMetadataStore;
+
+/**
+ * Deletes documents from an index, by name or by docID, without rewriting any of its files: the deleted documents are
+ * marked in the {@link LiveDocs} of their segments, and the number of deleted documents of every segment is recorded in
+ * the manifest (see {@link SegmentManifest}). Queries skip deleted documents, merges leave them out. An index that was
+ * built in one run is treated as an index of one segment, its live docs are stored in <code>&lt;indexName&gt;.liv</code>.
+ *
+ * Documents are looked up by their path "category/name" in the meta data files of the segments, or in the rows of the
+ * plain tf file of segments without one. The lookup tables of the segments are kept, since segments never change. A
+ * path may match several documents, e.g. a document that was added again after an update, all of them are deleted.
+ *
+ * Every deletion is done under the lock of the manifests, so deletions do not get lost by merges committed meanwhile
+ * (see {@link SegmentMerger#carryOverDeletions(String)}). After a deletion, the listeners are notified like after a
+ * merge.
+ */
+public class DocumentDeleter
+{
+	private String directory;
+	private String indexName;
+	private HashMap<String, HashMap<String, ArrayList<Integer>>> documentIDs = new HashMap<String, HashMap<String, ArrayList<Integer>>>(); // segment -> path -> docIDs, guarded by this
+	private List<ISegmentListener> listeners = new CopyOnWriteArrayList<ISegmentListener>();
+
+	/**
+	 * @param _directory The directory of the index, e.g. "output/stemming/".
+	 * @param _indexName The name of the index.
+	 */
+	public DocumentDeleter(String _directory, String _indexName)
+	{
+		this.directory = _directory;
+		this.indexName = _indexName;
+	}
+
+	public void addListener(ISegmentListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeListener(ISegmentListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Deletes the document with the given docID, as numbered by the current segments of the index.
+	 *
+	 * @return Whether the document was deleted, false if it had been deleted already.
+	 * @throws IOException If the index cannot be read or the deletion cannot be written.
+	 */
+	public boolean deleteDocument(int docID) throws IOException
+	{
+		boolean deleted;
+		synchronized (SegmentManifest.LOCK)
+		{
+			SegmentManifest manifest = SegmentManifest.read(directory, indexName);
+			int segment = 0;
+			while (segment < manifest.size() && docID > manifest.getDocIDBase(segment) + manifest.getNumberOfDocuments(segment))
+			{
+				segment++;
+			}
+			if (docID < 1 || segment == manifest.size())
+			{
+				throw new IllegalArgumentException("Invalid docID " + docID + ", the index " + directory + indexName + " has " + manifest.getDocIDBase(manifest.size()) + " documents.");
+			}
+			LiveDocs liveDocs = LiveDocs.read(directory, manifest.getSegmentName(segment), manifest.getNumberOfDocuments(segment));
+			deleted = liveDocs.delete(docID - manifest.getDocIDBase(segment));
+			if (deleted)
+			{
+				writeDeletions(manifest.getSegmentName(segment), liveDocs);
+			}
+		}
+		if (deleted)
+		{
+			notifyListeners();
+		}
+		return deleted;
+	}
+
+	/**
+	 * Deletes all live documents with the given category and name.
+	 *
+	 * @return The number of deleted documents, 0 if the index does not contain such a live document.
+	 * @throws IOException If the index cannot be read or the deletions cannot be written.
+	 */
+	public int deleteDocuments(String category, String name) throws IOException
+	{
+		String path = category + "/" + name;
+		int numberOfDeletedDocuments = 0;
+		synchronized (SegmentManifest.LOCK)
+		{
+			SegmentManifest manifest = SegmentManifest.read(directory, indexName);
+			forgetMergedSegments(manifest);
+			for (int segment = 0; segment < manifest.size(); segment++)
+			{
+				String segmentName = manifest.getSegmentName(segment);
+				ArrayList<Integer> docIDs = getDocumentIDs(segmentName).get(path);
+				if (docIDs == null)
+				{
+					continue;
+				}
+				LiveDocs liveDocs = LiveDocs.read(directory, segmentName, manifest.getNumberOfDocuments(segment));
+				int deleted = 0;
+				for (int docID : docIDs)
+				{
+					if (liveDocs.delete(docID))
+					{
+						deleted++;
+					}
+				}
+				if (deleted > 0)
+				{
+					writeDeletions(segmentName, liveDocs);
+					numberOfDeletedDocuments += deleted;
+				}
+			}
+		}
+		if (numberOfDeletedDocuments > 0)
+		{
+			notifyListeners();
+		}
+		return numberOfDeletedDocuments;
+	}
+
+	/**
+	 * Writes the live docs of a segment. The manifest of an index that was built in one run is not created, its
+	 * live docs are found without it.
+	 */
+	private void writeDeletions(String segmentName, LiveDocs liveDocs) throws IOException
+	{
+		if (segmentName.equals(indexName) && !SegmentManifest.exists(directory, indexName))
+		{
+			liveDocs.write(directory, segmentName);
+		}
+		else
+		{
+			SegmentManifest.setDeletions(directory, indexName, segmentName, liveDocs);
+		}
+	}
+
+	private void notifyListeners()
+	{
+		for (ISegmentListener listener : listeners)
+		{
+			listener.segmentsChanged(directory, indexName);
+		}
+	}
+
+	/**
+	 * Drops the lookup tables of segments that have been merged.
+	 */
+	private synchronized void forgetMergedSegments(SegmentManifest manifest)
+	{
+		ArrayList<String> segmentNames = new ArrayList<String>(manifest.size());
+		for (int segment = 0; segment < manifest.size(); segment++)
+		{
+			segmentNames.add(manifest.getSegmentName(segment));
+		}
+		documentIDs.keySet().retainAll(segmentNames);
+	}
+
+	/**
+	 * @return The docIDs of the documents of the given segment by their path, read on first use.
+	 */
+	private synchronized HashMap<String, ArrayList<Integer>> getDocumentIDs(String segmentName) throws IOException
+	{
+		HashMap<String, ArrayList<Integer>> segmentDocumentIDs = documentIDs.get(segmentName);
+		if (segmentDocumentIDs != null)
+		{
+			return segmentDocumentIDs;
+		}
+
+		segmentDocumentIDs = new HashMap<String, ArrayList<Integer>>();
+		if (DocumentMetadataStore.exists(directory, segmentName))
+		{
+			DocumentMetadataStore metadataStore = DocumentMetadataStore.open(directory, segmentName);
+			for (int docID = 1; docID <= metadataStore.getMaxDocID(); docID++)
+			{
+				String category = metadataStore.getDocumentClass(docID);
+				if (category != null)
+				{
+					addDocumentID(segmentDocumentIDs, category + "/" + metadataStore.getDocumentName(docID), docID);
+				}
+			}
+		}
+		else
+		{
+			readDocumentIDs(segmentName, segmentDocumentIDs);
+		}
+		documentIDs.put(segmentName, segmentDocumentIDs);
+		return segmentDocumentIDs;
+	}
+
+	/**
+	 * Reads the paths of the documents of a segment without meta data file from its plain tf file.
+	 */
+	private void readDocumentIDs(String segmentName, HashMap<String, ArrayList<Integer>> segmentDocumentIDs) throws IOException
+	{
+		File file = new File(directory + segmentName + "_tf.arff.gz");
+		Scanner scanner = new Scanner(new GZIPInputStream(new FileInputStream(file)));
+		try
+		{
+			while (scanner.hasNext() && !scanner.nextLine().equalsIgnoreCase("@data"))
+			{
+				// skip the header
+			}
+			ArffDocumentRow row = new ArffDocumentRow();
+			while (scanner.hasNext())
+			{
+				String line = scanner.nextLine();
+				if (!row.parse(line, true))
+				{
+					throw new IOException("Invalid line in " + file.getPath() + ": " + line);
+				}
+				addDocumentID(segmentDocumentIDs, row.getDocumentClass() + "/" + row.getDocumentName(), row.docID);
+			}
+		}
+		finally
+		{
+			scanner.close();
+		}
+	}
+
+	private static void addDocumentID(HashMap<String, ArrayList<Integer>> segmentDocumentIDs, String path, int docID)
+	{
+		ArrayList<Integer> docIDs = segmentDocumentIDs.get(path);
+		if (docIDs == null)
+		{
+			docIDs = new ArrayList<Integer>(1);
+			segmentDocumentIDs.put(path, docIDs);
+		}
+		docIDs.add(docID);
+	}
+}
@@ -0,0 +1,87 @@
+package indexing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import dao.DocumentTable;
+
+/**
+ * Writes the document meta data of an index (docID -> category, name) to <code>&lt;index&gt;.meta</code>, in a
+ * compact binary format that can be memory mapped by the search engine (see retrieval.DocumentMetadataStore):
+ *
+ * <pre>
+ * int                      number of categories
+ * UTF (see DataOutput)     the categories
+ * int                      number of docIDs N (largest docID + 1)
+ * int[N]                   category index per docID, -1 for unused docIDs
+ * int[N+1]                 offsets of the document names in the name section
+ * byte[]                   name section, the UTF-8 encoded document names
+ * int[N]                   header length per docID (offset of the body in the document file)
+ * </pre>
+ */
+public class DocumentMetadataWriter
+{
+	public static final String METADATA_SUFFIX = ".meta";
+
+	private DocumentMetadataWriter()
+	{
+	}
+
+	/**
+	 * Writes the meta data of the given documents. The layout is the one of the columns of the DocumentTable, 
+	 * so they are copied over as they are.
+	 *
+	 * @param directory The directory of the index.
+	 * @param indexName The name of the index, used as prefix of the file name.
+	 * @param documents The documents of the index, {@link DocumentTable#finish()} must have been called.
+	 * @throws IOException
+	 */
+	public static void write(String directory, String indexName, DocumentTable documents) throws IOException
+	{
+		int numberOfDocIDs = documents.getNumberOfDocIDs();
+
+		File file = new File(directory + indexName + METADATA_SUFFIX);
+		file.getParentFile().mkdirs();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			out.writeInt(documents.getCategories().size());
+			for (String category : documents.getCategories())
+			{
+				out.writeUTF(category);
+			}
+
+			out.writeInt(numberOfDocIDs);
+			for (int docID = 0; docID < numberOfDocIDs; docID++)
+			{
+				out.writeInt(documents.getCategoryIndex(docID));
+			}
+			for (int docID = 0; docID <= numberOfDocIDs; docID++)
+			{
+				out.writeInt(documents.getNameOffset(docID));
+			}
+
+			ByteBuffer names = documents.getNameColumn();
+			byte[] buffer = new byte[8192];
+			while (names.hasRemaining())
+			{
+				int length = Math.min(buffer.length, names.remaining());
+				names.get(buffer, 0, length);
+				out.write(buffer, 0, length);
+			}
+
+			for (int docID = 0; docID < numberOfDocIDs; docID++)
+			{
+				out.writeInt(documents.getHeaderLength(docID));
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
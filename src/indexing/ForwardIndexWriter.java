@@ -0,0 +1,202 @@
+package indexing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import dao.DocumentTermList;
+import dao.DocumentTermMatrix;
+
+/**
+ * Writes the forward index of a collection while the block matrices are merged: for every docID the term
+ * frequencies of the document, sorted by termID. This allows to use a document of the collection as a query
+ * without tokenizing it again (see retrieval.ForwardIndex). Two files are written:
+ *
+ * <ul>
+ * <li><code>&lt;index&gt;.fwd</code>: the entries of all documents in docID order, every entry is a termID (int)
+ * followed by its term frequency (float).</li>
+ * <li><code>&lt;index&gt;.fwdx</code>: one byte offset (long) into the .fwd file per docID, plus a final offset,
+ * such that the entries of document d are found between the offsets d and d+1.</li>
+ * </ul>
+ *
+ * Like {@link BufferedArffMatrixWriter}, this writer is fed the parts of the merged matrix one after the other. A
+ * document may be split over two consecutive parts, so the last document of a part is held back until the next
+ * document starts.
+ */
+public class ForwardIndexWriter
+{
+	public static final String FORWARD_INDEX_SUFFIX = ".fwd";
+	public static final String OFFSETS_SUFFIX = ".fwdx";
+
+	public static final int BYTES_PER_ENTRY = 8; // int termID + float tf
+
+	private File forwardIndexFile;
+	private File offsetsFile;
+
+	private DataOutputStream forwardIndexOut;
+	private DataOutputStream offsetsOut;
+
+	private int currentDocID; // the document held back, -1 if none
+	private int[] currentTermIDs;
+	private float[] currentValues;
+	private int currentSize;
+
+	private int nextOffsetDocID; // the next docID whose offset has to be written
+	private long currentOffset;
+
+	/**
+	 * Creates a ForwardIndexWriter, does not write to the disk.
+	 *
+	 * @param _directory The directory of the index.
+	 * @param _indexName The name of the index, used as prefix of the file names.
+	 */
+	public ForwardIndexWriter(String _directory, String _indexName)
+	{
+		this.forwardIndexFile = new File(_directory + _indexName + FORWARD_INDEX_SUFFIX);
+		this.offsetsFile = new File(_directory + _indexName + OFFSETS_SUFFIX);
+
+		currentDocID = -1;
+		currentTermIDs = new int[64];
+		currentValues = new float[64];
+		currentSize = 0;
+		nextOffsetDocID = 0;
+		currentOffset = 0;
+	}
+
+	/**
+	 * Opens the files.
+	 *
+	 * @throws IOException
+	 */
+	public void init() throws IOException
+	{
+		forwardIndexFile.getParentFile().mkdirs();
+
+		forwardIndexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(forwardIndexFile)));
+		offsetsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsFile)));
+	}
+
+	/**
+	 * Writes the next part of the merged matrix. Has to be called before thresholds are applied and before the tf
+	 * values are replaced by tf-idf values, so that the stored vectors are the ones a query on the document would produce.
+	 *
+	 * @param matrix The next part of the complete DocumentTermMatrix.
+	 * @throws IOException
+	 */
+	public void writeNextPart(DocumentTermMatrix matrix) throws IOException
+	{
+		Iterator<Entry<Integer, DocumentTermList>> it = matrix.getMatrix().entrySet().iterator();
+		while (it.hasNext())
+		{
+			Entry<Integer, DocumentTermList> document = it.next();
+
+			if (document.getKey() != currentDocID)
+			{
+				writeCurrentDocument();
+				currentDocID = document.getKey();
+			}
+
+			Iterator<Entry<Integer, Float>> termIt = document.getValue().getDocTermEntries().entrySet().iterator();
+			while (termIt.hasNext())
+			{
+				Entry<Integer, Float> entry = termIt.next();
+				if (currentSize == currentTermIDs.length)
+				{
+					currentTermIDs = Arrays.copyOf(currentTermIDs, currentSize * 2);
+					currentValues = Arrays.copyOf(currentValues, currentSize * 2);
+				}
+				currentTermIDs[currentSize] = entry.getKey();
+				currentValues[currentSize] = entry.getValue();
+				currentSize++;
+			}
+		}
+	}
+
+	/**
+	 * Writes the document held back (if any), sorted by termID. Entries for the same termID (from different parts)
+	 * are added up.
+	 */
+	private void writeCurrentDocument() throws IOException
+	{
+		if (currentDocID < 0)
+		{
+			return;
+		}
+
+		while (nextOffsetDocID <= currentDocID) // documents without entries get an empty range
+		{
+			offsetsOut.writeLong(currentOffset);
+			nextOffsetDocID++;
+		}
+
+		sortCurrentDocument();
+
+		int lastTermID = -1;
+		float lastValue = 0.0f;
+		for (int i = 0; i < currentSize; i++)
+		{
+			if (currentTermIDs[i] != lastTermID && lastTermID >= 0)
+			{
+				writeEntry(lastTermID, lastValue);
+				lastValue = 0.0f;
+			}
+			lastTermID = currentTermIDs[i];
+			lastValue += currentValues[i];
+		}
+		if (lastTermID >= 0)
+		{
+			writeEntry(lastTermID, lastValue);
+		}
+
+		currentDocID = -1;
+		currentSize = 0;
+	}
+
+	private void writeEntry(int termID, float value) throws IOException
+	{
+		forwardIndexOut.writeInt(termID);
+		forwardIndexOut.writeFloat(value);
+		currentOffset += BYTES_PER_ENTRY;
+	}
+
+	/**
+	 * Insertion sort of the held back document by termID. The entries arrive (almost) sorted from the block
+	 * matrices, so this is linear in practice.
+	 */
+	private void sortCurrentDocument()
+	{
+		for (int i = 1; i < currentSize; i++)
+		{
+			int termID = currentTermIDs[i];
+			float value = currentValues[i];
+			int j = i - 1;
+			while (j >= 0 && currentTermIDs[j] > termID)
+			{
+				currentTermIDs[j + 1] = currentTermIDs[j];
+				currentValues[j + 1] = currentValues[j];
+				j--;
+			}
+			currentTermIDs[j + 1] = termID;
+			currentValues[j + 1] = value;
+		}
+	}
+
+	/**
+	 * Writes the last document and the final offset and closes the files.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		writeCurrentDocument();
+		offsetsOut.writeLong(currentOffset); // end of the last document
+
+		forwardIndexOut.close();
+		offsetsOut.close();
+	}
+}
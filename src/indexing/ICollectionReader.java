@@ -0,0 +1,48 @@
+package indexing;
+
+import java.io.IOException;
+
+/**
+ * Reads the documents of a collection one after another, as raw bytes plus the category and name of each document.
+ * {@link CollectionTokenStream} tokenizes the documents of any reader, so the indexer does not need to know how a
+ * collection is stored (zip or tar archives, directory trees, files of concatenated documents, ...).
+ *
+ * Readers have to return the documents in the same order every time a collection is read, since the indexer reads
+ * the collection twice and relies on the docIDs of both passes to match.
+ */
+public interface ICollectionReader
+{
+	/**
+	 * Moves to the next document.
+	 *
+	 * @return Whether there is a next document.
+	 * @throws IOException If the collection cannot be read any further.
+	 */
+	public boolean nextDocument() throws IOException;
+
+	/**
+	 * @return The category of the current document, by convention the name of the directory that contains it.
+	 */
+	public String getCategory();
+
+	/**
+	 * @return The name of the current document.
+	 */
+	public String getName();
+
+	/**
+	 * @return The buffer holding the bytes of the current document, starting at position 0. The buffer may be reused
+	 * for the next document and may be modified by the caller.
+	 */
+	public byte[] getContent();
+
+	/**
+	 * @return The number of bytes of the current document.
+	 */
+	public int getContentLength();
+
+	/**
+	 * Releases all resources of the reader. May be called more than once.
+	 */
+	public void close();
+}
@@ -9,14 +9,15 @@ public interface IIndexer
 	static public final int META_FIELD_COUNT = 3;
 	
 	/**
-	 * Performs indexing of the given array of files (i.e. documents) and saves the result to <code>outputFile</code>.
-	 * @param files Array of files to process.
-	 * @param outputFile The file to save the index to.
+	 * Performs indexing of the documents of the given collections, which are read one after another (see
+	 * {@link MultiCollectionReader}): directory trees, zip or tar archives and files of concatenated documents.
+	 * @param files Array of collections to process.
+	 * @param indexName The name of the index, which will be used to name the resulting files.
 	 */
-	public void indexFiles(java.io.File[] files, java.io.File outputFile);
+	public void indexFiles(java.io.File[] files, String indexName);
 	
 	/**
-	 * Performs indexing on the given zip file and saves the result to <code>outputFile</code>.
+	 * Performs indexing on the given zip file, same as {@link #indexFiles(java.io.File[], String)} with a single zip file.
 	 * @param zipFile The zip file to process.
 	 * @param indexName The name of the index, which will be used to name the resulting file.
 	 */
@@ -0,0 +1,133 @@
+package indexing;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Limits the rate at which background work (e.g. the merges of a {@link MergeScheduler}) reads from the disk, so
+ * that it does not take the bandwidth needed by the foreground (queries, indexing). Every read through a stream
+ * returned by {@link #wrap(InputStream)} acquires its bytes from the limiter first, and is delayed until the rate
+ * allows it. One limiter can be shared by several threads, the rate then applies to all of them together.
+ */
+public class IORateLimiter
+{
+	private double nanosPerByte;
+	private long nextFreeNanos; // the time the next bytes may be read at
+
+	private long bytes = 0;
+	private long throttledNanos = 0;
+
+	/**
+	 * @param _megabytesPerSecond The maximum rate, in MB (2^20 bytes) per second.
+	 */
+	public IORateLimiter(double _megabytesPerSecond)
+	{
+		if (!(_megabytesPerSecond > 0))
+		{
+			throw new IllegalArgumentException("The rate of the I/O rate limiter must be positive: " + _megabytesPerSecond);
+		}
+		this.nanosPerByte = 1e9 / (_megabytesPerSecond * 1024 * 1024);
+		this.nextFreeNanos = System.nanoTime();
+	}
+
+	/**
+	 * Waits until the given number of bytes may be read.
+	 */
+	public void acquire(long _bytes)
+	{
+		long waitNanos;
+		synchronized (this)
+		{
+			long now = System.nanoTime();
+			if (nextFreeNanos < now) // idle time is not saved up for later bursts
+			{
+				nextFreeNanos = now;
+			}
+			waitNanos = nextFreeNanos - now;
+			nextFreeNanos += (long)(_bytes * nanosPerByte);
+			bytes += _bytes;
+			throttledNanos += waitNanos;
+		}
+
+		if (waitNanos > 0)
+		{
+			try
+			{
+				Thread.sleep(waitNanos / 1000000, (int)(waitNanos % 1000000));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt(); // let the caller find out
+			}
+		}
+	}
+
+	/**
+	 * @return A stream that reads from the given one at the rate of this limiter.
+	 */
+	public InputStream wrap(InputStream in)
+	{
+		return new ThrottledInputStream(in, this);
+	}
+
+	/**
+	 * @return The number of bytes read through this limiter.
+	 */
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * @return The time all readers together were delayed by this limiter, in nanoseconds.
+	 */
+	public synchronized long getThrottledNanos()
+	{
+		return throttledNanos;
+	}
+
+	private static class ThrottledInputStream extends FilterInputStream
+	{
+		private IORateLimiter limiter;
+
+		ThrottledInputStream(InputStream _in, IORateLimiter _limiter)
+		{
+			super(_in);
+			this.limiter = _limiter;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if (b >= 0)
+			{
+				limiter.acquire(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			int read = super.read(buffer, offset, length);
+			if (read > 0)
+			{
+				limiter.acquire(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long skipped = super.skip(n);
+			if (skipped > 0)
+			{
+				limiter.acquire(skipped);
+			}
+			return skipped;
+		}
+	}
+}
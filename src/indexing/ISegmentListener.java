@@ -0,0 +1,17 @@
+package indexing;
+
+/**
+ * Is notified when the segments of an index change, e.g. by a {@link MergeScheduler} once a merge has been committed.
+ * The files of segments that were merged are deleted after all listeners have returned, so a searcher that still
+ * needs them has to be done with them by then.
+ */
+public interface ISegmentListener
+{
+	/**
+	 * Called after the manifest of the index has been written.
+	 *
+	 * @param directory The directory of the index, e.g. "output/stemming/".
+	 * @param indexName The name of the index.
+	 */
+	public void segmentsChanged(String directory, String indexName);
+}
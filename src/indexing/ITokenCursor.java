@@ -0,0 +1,53 @@
+package indexing;
+
+import dao.Document;
+
+/**
+ * A cursor over the tokens of a collection, the allocation free alternative to {@link ITokenStream}. Instead of
+ * returning a new Token per term, the cursor exposes the current term as a slice of a char buffer that is reused
+ * (overwritten) by the next call of {@link #advance()}. The slice can be passed to
+ * {@link dao.Vocabulary#get(char[], int, int)} and {@link dao.Vocabulary#add(char[], int, int, int)} directly, so
+ * a String is only created for terms that are new to the vocabulary.
+ *
+ */
+public interface ITokenCursor
+{
+	/**
+	 * Moves the cursor to the next token. Has to be called once before the first token can be accessed.
+	 *
+	 * @return Whether there is a next token. If false, the cursor is exhausted and the getters must not be called anymore.
+	 */
+	public boolean advance();
+
+	/**
+	 * @return The buffer holding the term of the current token. Only valid until the next call of {@link #advance()}.
+	 */
+	public char[] getTermBuffer();
+
+	/**
+	 * @return The position of the first character of the current term in {@link #getTermBuffer()}.
+	 */
+	public int getTermOffset();
+
+	/**
+	 * @return The length of the current term.
+	 */
+	public int getTermLength();
+
+	/**
+	 * @return The position of the current token in its document: the number of words read before it, starting with 0
+	 * for the first word. Words that are discarded (see {@link TermAnalyzer#MIN_TERM_LENGTH}) count as well, so the
+	 * distance of two positions is the distance of the words in the text.
+	 */
+	public int getPosition();
+
+	/**
+	 * @return The docID of the document of the current token.
+	 */
+	public int getDocID();
+
+	/**
+	 * @return The document of the current token. The same object is returned for all tokens of a document.
+	 */
+	public Document getDocument();
+}
@@ -0,0 +1,178 @@
+package indexing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * The documents of a segment (see {@link SegmentManifest}) that have not been deleted. The files of a segment are
+ * never modified, so deleting a document only marks it in a bitset, stored in <code>&lt;segment&gt;.liv</code> next to
+ * the segment. Deleted documents keep their docIDs and still count towards the statistics of the index (N, df), but
+ * are never returned by queries. They are removed physically when the segment is merged (see {@link SegmentMerger}).
+ *
+ * The bitset marks the deleted docIDs, so a segment with few deletions needs only a few words on disk: the file holds
+ * the number of documents, the number of deleted documents and the words of the bitset up to the last deleted docID.
+ * A segment without a file has no deletions.
+ */
+public class LiveDocs
+{
+	public static final String SUFFIX = ".liv";
+
+	private int numberOfDocuments;
+	private BitSet deleted; // indexed by docID, starting at 1
+	private int numberOfDeletedDocuments;
+
+	/**
+	 * Creates the live docs of a segment without deletions.
+	 */
+	public LiveDocs(int _numberOfDocuments)
+	{
+		this.numberOfDocuments = _numberOfDocuments;
+		this.deleted = new BitSet();
+		this.numberOfDeletedDocuments = 0;
+	}
+
+	/**
+	 * @return Whether the given segment has a live docs file.
+	 */
+	public static boolean exists(String directory, String segmentName)
+	{
+		return new File(directory + segmentName + SUFFIX).exists();
+	}
+
+	/**
+	 * Reads the live docs of the given segment.
+	 *
+	 * @param numberOfDocuments The number of documents of the segment, used if it has no live docs file.
+	 * @return The live docs, without deletions if the segment has no live docs file.
+	 * @throws IOException If the file cannot be read or belongs to a segment of another size.
+	 */
+	public static LiveDocs read(String directory, String segmentName, int numberOfDocuments) throws IOException
+	{
+		File file = new File(directory + segmentName + SUFFIX);
+		LiveDocs liveDocs = new LiveDocs(numberOfDocuments);
+		if (!file.exists())
+		{
+			return liveDocs;
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			if (in.readInt() != numberOfDocuments)
+			{
+				throw new IOException("The live docs " + file.getPath() + " do not belong to a segment of " + numberOfDocuments + " documents.");
+			}
+			liveDocs.numberOfDeletedDocuments = in.readInt();
+			long[] words = new long[in.readInt()];
+			for (int i = 0; i < words.length; i++)
+			{
+				words[i] = in.readLong();
+			}
+			liveDocs.deleted = BitSet.valueOf(words);
+		}
+		finally
+		{
+			in.close();
+		}
+		return liveDocs;
+	}
+
+	/**
+	 * Writes the live docs of the given segment. The file is replaced by an atomic move, so a reader sees either the
+	 * old or the new deletions.
+	 */
+	public void write(String directory, String segmentName) throws IOException
+	{
+		File file = new File(directory + segmentName + SUFFIX);
+		File tmpFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try
+		{
+			long[] words = deleted.toLongArray();
+			out.writeInt(numberOfDocuments);
+			out.writeInt(numberOfDeletedDocuments);
+			out.writeInt(words.length);
+			for (long word : words)
+			{
+				out.writeLong(word);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Deletes the live docs file of the given segment, if any, e.g. because the segment is rebuilt: the deletions
+	 * would hide unrelated documents of the new segment.
+	 *
+	 * @return Whether there was a file.
+	 */
+	public static boolean delete(String directory, String segmentName) throws IOException
+	{
+		return Files.deleteIfExists(new File(directory + segmentName + SUFFIX).toPath());
+	}
+
+	/**
+	 * @return Whether the given document has not been deleted.
+	 */
+	public boolean isLive(int docID)
+	{
+		return !deleted.get(docID);
+	}
+
+	/**
+	 * Marks the given document as deleted.
+	 *
+	 * @return Whether the document was live before.
+	 */
+	public boolean delete(int docID)
+	{
+		if (docID < 1 || docID > numberOfDocuments)
+		{
+			throw new IllegalArgumentException("Invalid docID " + docID + ", the segment has " + numberOfDocuments + " documents.");
+		}
+		if (deleted.get(docID))
+		{
+			return false;
+		}
+		deleted.set(docID);
+		numberOfDeletedDocuments++;
+		return true;
+	}
+
+	/**
+	 * @return The next deleted docID from the given one on (inclusive), -1 if there is none.
+	 */
+	public int nextDeletedDocument(int fromDocID)
+	{
+		return deleted.nextSetBit(fromDocID);
+	}
+
+	public int getNumberOfDocuments()
+	{
+		return numberOfDocuments;
+	}
+
+	public int getNumberOfDeletedDocuments()
+	{
+		return numberOfDeletedDocuments;
+	}
+
+	public int getNumberOfLiveDocuments()
+	{
+		return numberOfDocuments - numberOfDeletedDocuments;
+	}
+}
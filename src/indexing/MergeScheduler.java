@@ -0,0 +1,297 @@
+package indexing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Merges the segments of an index (see {@link SegmentManifest}) in the background, so the number of segments stays
+ * small while documents are added. {@link #maybeMerge()} asks the {@link TieredMergePolicy} for merges and runs each of
+ * them on one of the merge threads with a {@link SegmentMerger}. A merge is committed by replacing the merged segments
+ * in the manifest by the new segment at once; then the listeners (e.g. a SearchEngine) are notified, so they can swap
+ * in the new segment, and the files of the merged segments are deleted. After every merge, the policy is asked again,
+ * since the new segment may complete a tier. A reader that read the manifest before the commit may still be reading
+ * the merged segments and find their files gone; it then reads the new manifest and starts over (see
+ * retrieval.SearchEngine), so the files need not be kept around for it.
+ *
+ * The segments are read through an optional {@link IORateLimiter}, so merges do not take the disk bandwidth needed by
+ * queries. The number of merges, their bytes and durations are kept as metrics, see {@link #getStatistics()}.
+ *
+ * Merges purge deleted documents (see {@link DocumentDeleter}): documents deleted before a merge starts are left out of
+ * the merged segment, documents deleted while it runs are carried over to the live docs of the merged segment under the
+ * same lock that commits the merge.
+ */
+public class MergeScheduler
+{
+	private String directory;
+	private String indexName;
+	private TieredMergePolicy mergePolicy = new TieredMergePolicy();
+	private IORateLimiter rateLimiter = null; // no limit by default
+
+	private ExecutorService mergeThreads;
+	private HashSet<String> mergingSegments = new HashSet<String>(); // guarded by this
+	private int runningMerges = 0;
+	private List<ISegmentListener> listeners = new CopyOnWriteArrayList<ISegmentListener>();
+
+	// metrics, guarded by this
+	private int merges = 0;
+	private int failedMerges = 0;
+	private int mergedSegments = 0;
+	private long mergedDocuments = 0;
+	private long bytesRead = 0;
+	private long bytesWritten = 0;
+	private long mergeNanos = 0;
+	private long maxMergeNanos = 0;
+
+	/**
+	 * @param _directory The directory of the index, e.g. "output/stemming/".
+	 * @param _indexName The name of the index.
+	 * @param _numberOfThreads The maximum number of merges that run at the same time.
+	 */
+	public MergeScheduler(String _directory, String _indexName, int _numberOfThreads)
+	{
+		if (_numberOfThreads < 1)
+		{
+			throw new IllegalArgumentException("The number of merge threads must be positive: " + _numberOfThreads);
+		}
+		this.directory = _directory;
+		this.indexName = _indexName;
+		this.mergeThreads = Executors.newFixedThreadPool(_numberOfThreads, new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "segment-merger");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY); // queries first
+				return thread;
+			}
+		});
+	}
+
+	public void setMergePolicy(TieredMergePolicy _mergePolicy)
+	{
+		this.mergePolicy = _mergePolicy;
+	}
+
+	/**
+	 * Limits the rate at which all merges of this scheduler together read segments, 0 for no limit.
+	 */
+	public void setMaxMegabytesPerSecond(double _megabytesPerSecond)
+	{
+		this.rateLimiter = _megabytesPerSecond > 0 ? new IORateLimiter(_megabytesPerSecond) : null;
+	}
+
+	public void addListener(ISegmentListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeListener(ISegmentListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Starts all merges the merge policy finds for the current segments of the index, without waiting for them.
+	 */
+	public synchronized void maybeMerge()
+	{
+		final SegmentManifest manifest;
+		try
+		{
+			manifest = SegmentManifest.read(directory, indexName);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Error reading the segments of " + directory + indexName + ", not merging! -- Stack Trace follows.");
+			e.printStackTrace();
+			return;
+		}
+
+		int[] merge;
+		while ((merge = mergePolicy.findMerge(manifest, mergingSegments)) != null)
+		{
+			final int first = merge[0];
+			final int count = merge[1];
+			final ArrayList<String> segments = new ArrayList<String>(count);
+			for (int i = first; i < first + count; i++)
+			{
+				segments.add(manifest.getSegmentName(i));
+			}
+			mergingSegments.addAll(segments);
+			runningMerges++;
+			mergeThreads.submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					runMerge(manifest, first, count, segments);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs one merge and commits it.
+	 */
+	private void runMerge(SegmentManifest manifest, int first, int count, ArrayList<String> segments)
+	{
+		String segmentName = SegmentManifest.segmentName(indexName, manifest.reserveSegmentNumber());
+		long start = System.nanoTime();
+		SegmentMerger merger = new SegmentMerger(directory, rateLimiter, new File("output" + File.separator + "tmp" + File.separator + "merge_" + segmentName));
+
+		boolean committed = false;
+		int numberOfDocuments = 0;
+		try
+		{
+			numberOfDocuments = merger.merge(manifest, first, count, segmentName);
+			synchronized (SegmentManifest.LOCK) // no deletions between carrying them over and committing
+			{
+				int numberOfDeletedDocuments = merger.carryOverDeletions(segmentName);
+				SegmentManifest.replaceSegments(directory, indexName, segments, segmentName, numberOfDocuments, numberOfDeletedDocuments);
+			}
+			committed = true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Error merging the segments " + segments + " of " + directory + indexName + "! -- Stack Trace follows.");
+			e.printStackTrace();
+			for (File file : SegmentManifest.getSegmentFiles(directory, segmentName))
+			{
+				file.delete();
+			}
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println("Error merging the segments " + segments + " of " + directory + indexName + "! -- Stack Trace follows.");
+			e.printStackTrace();
+		}
+		long duration = System.nanoTime() - start;
+
+		if (committed)
+		{
+			for (ISegmentListener listener : listeners)
+			{
+				listener.segmentsChanged(directory, indexName);
+			}
+			for (String segment : segments)
+			{
+				for (File file : SegmentManifest.getSegmentFiles(directory, segment))
+				{
+					file.delete();
+				}
+			}
+		}
+
+		synchronized (this)
+		{
+			mergingSegments.removeAll(segments);
+			if (committed)
+			{
+				merges++;
+				mergedSegments += count;
+				mergedDocuments += numberOfDocuments;
+				bytesRead += merger.getBytesRead();
+				bytesWritten += merger.getBytesWritten();
+				mergeNanos += duration;
+				maxMergeNanos = Math.max(maxMergeNanos, duration);
+				maybeMerge(); // the new segment may complete a tier, started before this merge counts as done
+			}
+			else
+			{
+				failedMerges++;
+			}
+			runningMerges--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until no merges are running anymore, including the merges started by finished merges.
+	 */
+	public synchronized void waitForMerges() throws InterruptedException
+	{
+		while (runningMerges > 0)
+		{
+			wait();
+		}
+	}
+
+	/**
+	 * Waits for all merges and stops the merge threads.
+	 */
+	public void close() throws InterruptedException
+	{
+		waitForMerges();
+		mergeThreads.shutdown();
+	}
+
+	public synchronized int getNumberOfMerges()
+	{
+		return merges;
+	}
+
+	public synchronized int getNumberOfFailedMerges()
+	{
+		return failedMerges;
+	}
+
+	public synchronized int getNumberOfMergedSegments()
+	{
+		return mergedSegments;
+	}
+
+	public synchronized long getNumberOfMergedDocuments()
+	{
+		return mergedDocuments;
+	}
+
+	/**
+	 * @return The number of bytes of the segments read by merges.
+	 */
+	public synchronized long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/**
+	 * @return The number of bytes of the segments written by merges.
+	 */
+	public synchronized long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	/**
+	 * @return The time spent merging, in nanoseconds, summed over all merges.
+	 */
+	public synchronized long getMergeNanos()
+	{
+		return mergeNanos;
+	}
+
+	public synchronized long getMaxMergeNanos()
+	{
+		return maxMergeNanos;
+	}
+
+	/**
+	 * @return A one line summary of the metrics, e.g. for the console output of the indexer.
+	 */
+	public synchronized String getStatistics()
+	{
+		String statistics = "Merges of " + directory + indexName + ": " + merges + " merges (" + failedMerges + " failed) of " + mergedSegments + " segments, "
+				+ mergedDocuments + " documents, " + bytesRead / 1024 + " KB read, " + bytesWritten / 1024 + " KB written";
+		if (rateLimiter != null)
+		{
+			statistics += String.format(", throttled for %.1f ms", rateLimiter.getThrottledNanos() / 1e6);
+		}
+		return statistics + String.format(", %.1f ms merging in total, %.1f ms for the longest merge", mergeNanos / 1e6, maxMergeNanos / 1e6);
+	}
+}
@@ -0,0 +1,115 @@
+package indexing;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads the documents of several collections one after another, as one collection. A reader is chosen per file:
+ * directories are read by a {@link DirectoryCollectionReader}, ".zip" files by a {@link ZipCollectionReader},
+ * ".tar", ".tar.gz" and ".tgz" files by a {@link TarCollectionReader}, and all other files are taken to be files of
+ * concatenated documents ({@link ConcatenatedCollectionReader}). Only one collection is open at a time.
+ */
+public class MultiCollectionReader implements ICollectionReader
+{
+	private File[] collections;
+	private int numberOfThreads;
+	private int nextCollection; // index into collections
+	private ICollectionReader currentReader;
+	private boolean closed;
+
+	/**
+	 * @param _collections The collections to read, in this order.
+	 * @param _numberOfThreads The number of threads used to read directories, see {@link DirectoryCollectionReader}.
+	 */
+	public MultiCollectionReader(File[] _collections, int _numberOfThreads)
+	{
+		this.collections = _collections;
+		this.numberOfThreads = _numberOfThreads;
+	}
+
+	/**
+	 * Opens the reader that fits the given file.
+	 */
+	public static ICollectionReader open(File collection, int numberOfThreads) throws IOException
+	{
+		if (collection.isDirectory())
+		{
+			return new DirectoryCollectionReader(collection, numberOfThreads);
+		}
+		if (!collection.isFile())
+		{
+			throw new IOException(collection.getPath() + " does not exist");
+		}
+
+		String name = collection.getName().toLowerCase();
+		if (name.endsWith(".zip"))
+		{
+			return new ZipCollectionReader(collection);
+		}
+		if (name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz"))
+		{
+			return new TarCollectionReader(collection);
+		}
+		return new ConcatenatedCollectionReader(collection);
+	}
+
+	@Override
+	public boolean nextDocument() throws IOException
+	{
+		if (closed)
+		{
+			return false;
+		}
+
+		while (currentReader == null || !currentReader.nextDocument())
+		{
+			if (currentReader != null)
+			{
+				currentReader.close();
+				currentReader = null;
+			}
+			if (nextCollection == collections.length)
+			{
+				close();
+				return false;
+			}
+			currentReader = open(collections[nextCollection++], numberOfThreads);
+		}
+		return true;
+	}
+
+	@Override
+	public String getCategory()
+	{
+		return currentReader.getCategory();
+	}
+
+	@Override
+	public String getName()
+	{
+		return currentReader.getName();
+	}
+
+	@Override
+	public byte[] getContent()
+	{
+		return currentReader.getContent();
+	}
+
+	@Override
+	public int getContentLength()
+	{
+		return currentReader.getContentLength();
+	}
+
+	@Override
+	public void close()
+	{
+		closed = true;
+		if (currentReader != null)
+		{
+			currentReader.close();
+			currentReader = null;
+		}
+	}
+}
@@ -0,0 +1,719 @@
+package indexing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import dao.BlockMatrix;
+import dao.CollectionStatistics;
+import dao.Document;
+import dao.DocumentTable;
+import dao.DocumentTermList;
+import dao.Vocabulary;
+import dao.VocabularyEntry;
+
+/**
+ * Adds single documents to an index of segments (see {@link SegmentManifest}), e.g. newly posted messages, and makes
+ * them searchable without waiting for a segment to be written. Every added document is tokenized like a document of a
+ * collection (see {@link CollectionTokenStream}) and kept in an in-memory segment: one {@link DocumentTermList} per
+ * document, with a vocabulary of its own that counts document and collection frequencies like the vocabulary of the
+ * {@link BlockIndexer}. A search engine opened on this indexer (see retrieval.SearchEngine#setNearRealTimeIndexer)
+ * takes a {@link Snapshot} of the buffer whenever it refreshes, and searches it together with the on-disk segments.
+ *
+ * The buffer is flushed to a new on-disk segment by {@link #flush()}: automatically every flush interval (by a
+ * background thread) and whenever it holds the maximum number of buffered documents. The segment is written from a
+ * copy of the buffered documents without holding the lock of the indexer; the flushed documents stay in the buffer,
+ * and searchable, until the segment has been appended to the manifest. The docIDs of the buffered documents follow
+ * those of the on-disk segments, and flushing does not change them (merges do, when they purge deleted documents).
+ *
+ * Documents are deleted by {@link #deleteDocuments(String, String)}, in the buffer and in the on-disk segments (see
+ * {@link DocumentDeleter}). Deleted buffered documents are written nevertheless, and deleted in the live docs of the
+ * new segment. {@link #updateDocument(String, String, byte[])} replaces a document by deleting and adding it.
+ *
+ * All methods are thread safe, documents may be added while a snapshot is searched or the buffer is flushed.
+ */
+public class NearRealTimeIndexer
+{
+	public static final long DEFAULT_FLUSH_INTERVAL = 60000; // milliseconds
+	public static final int DEFAULT_MAX_BUFFERED_DOCUMENTS = 10000;
+
+	private String directory;
+	private String indexName;
+	private TermAnalyzer analyzer; // guarded by this, like the buffer
+	private boolean skipHeaders = false;
+	private int maxBufferedDocuments = DEFAULT_MAX_BUFFERED_DOCUMENTS;
+
+	// the in-memory segment, guarded by this
+	private Vocabulary vocabulary;
+	private ArrayList<DocumentTermList> rows;
+	private ArrayList<Document> documents;
+	private BitSet deletedDocuments; // buffer docIDs, starting at 1
+	private long numberOfTokens;
+	private int docIDBase; // the number of documents in the on-disk segments
+	private long generation = 0; // changes whenever a document is added or deleted or the buffer is flushed
+	private boolean flushing = false; // whether a segment is being written from the buffer, guarded by this
+	private DocumentDeleter deleter;
+
+	private Thread flushThread; // null if the buffer is only flushed when it is full
+	private volatile boolean closed = false;
+
+	/**
+	 * Opens the given index for adding documents. If the index does not exist yet, it is created by the first flush.
+	 *
+	 * @param _directory The directory of the index, e.g. "output/stemming/".
+	 * @param _indexName The name of the index.
+	 * @param _useStemming Whether the index is stemmed, i.e. whether the terms of added documents are stemmed.
+	 * @throws IOException If the segments of the index cannot be read.
+	 */
+	public NearRealTimeIndexer(String _directory, String _indexName, boolean _useStemming) throws IOException
+	{
+		this.directory = _directory;
+		this.indexName = _indexName;
+		this.analyzer = new TermAnalyzer(_useStemming);
+		this.deleter = new DocumentDeleter(directory, indexName);
+
+		SegmentManifest manifest = SegmentManifest.read(directory, indexName);
+		clearBuffer(manifest.getDocIDBase(manifest.size()));
+	}
+
+	/**
+	 * Sets whether the header of each added document is left out, like {@link BlockIndexer#setSkipHeaders(boolean)}.
+	 * Should match the setting the on-disk segments were built with.
+	 */
+	public synchronized void setSkipHeaders(boolean _skipHeaders)
+	{
+		this.skipHeaders = _skipHeaders;
+	}
+
+	/**
+	 * Sets the number of documents after which the buffer is flushed by the thread adding a document.
+	 */
+	public synchronized void setMaxBufferedDocuments(int _maxBufferedDocuments)
+	{
+		if (_maxBufferedDocuments < 1)
+		{
+			throw new IllegalArgumentException("The maximum number of buffered documents must be positive: " + _maxBufferedDocuments);
+		}
+		this.maxBufferedDocuments = _maxBufferedDocuments;
+	}
+
+	/**
+	 * Starts a background thread that flushes the buffer every <code>_flushInterval</code> milliseconds, if it holds
+	 * any documents. Stopped by {@link #close()}.
+	 */
+	public synchronized void startFlushing(final long _flushInterval)
+	{
+		if (_flushInterval < 1)
+		{
+			throw new IllegalArgumentException("The flush interval must be positive: " + _flushInterval);
+		}
+		if (flushThread != null)
+		{
+			throw new IllegalStateException("The buffer of " + directory + indexName + " is flushed already.");
+		}
+		flushThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				while (!closed)
+				{
+					try
+					{
+						// waits on the indexer instead of sleeping, so close() wakes the thread without interrupting a flush
+						long end = System.currentTimeMillis() + _flushInterval;
+						synchronized (NearRealTimeIndexer.this)
+						{
+							for (long remaining = _flushInterval; !closed && remaining > 0; remaining = end - System.currentTimeMillis())
+							{
+								NearRealTimeIndexer.this.wait(remaining);
+							}
+						}
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+					if (closed)
+					{
+						return;
+					}
+					try
+					{
+						flush();
+					}
+					catch (IOException e)
+					{
+						System.err.println("Error flushing the buffered documents of " + directory + indexName + ", keeping them in memory! -- Stack Trace follows.");
+						e.printStackTrace();
+					}
+				}
+			}
+		}, "nrt-flusher");
+		flushThread.setDaemon(true);
+		flushThread.start();
+	}
+
+	/**
+	 * Tokenizes the given document and adds it to the in-memory segment. The document is searchable by the next
+	 * refresh of a search engine opened on this indexer.
+	 *
+	 * @param category The category of the document, by convention the directory that contains it.
+	 * @param name The name of the document.
+	 * @param content The bytes of the document, UTF-8 encoded like the files of a collection.
+	 * @return The docID of the document at this moment. Like all docIDs, it changes when a merge purges deleted
+	 * documents of the segments before it.
+	 * @throws IOException If the manifest of the index cannot be read, the document has not been added then. Or if
+	 * the buffer was full and could not be flushed, the document has been added anyway.
+	 */
+	public int addDocument(String category, String name, byte[] content) throws IOException
+	{
+		int docID;
+		synchronized (this)
+		{
+			docID = addToBuffer(category, name, content);
+		}
+		maybeFlush();
+		return docID;
+	}
+
+	/**
+	 * Adds the given document to the buffer, the caller holds the lock.
+	 *
+	 * @return The docID of the document.
+	 */
+	private int addToBuffer(String category, String name, byte[] content) throws IOException
+	{
+		SegmentManifest manifest = SegmentManifest.read(directory, indexName);
+		docIDBase = manifest.getDocIDBase(manifest.size()); // merges purge deleted documents
+
+		int bufferDocID = rows.size() + 1;
+		Document document = new Document(docIDBase + bufferDocID, category, name);
+		DocumentTermList row = new DocumentTermList();
+
+		CollectionTokenStream tokenStream = new CollectionTokenStream(new SingleDocumentReader(category, name, content.clone()), analyzer); // the stream lower cases the bytes in place
+		tokenStream.setSkipMetaData(skipHeaders);
+		while (tokenStream.advance())
+		{
+			VocabularyEntry entry = vocabulary.add(tokenStream.getTermBuffer(), tokenStream.getTermOffset(), tokenStream.getTermLength(), bufferDocID);
+			row.add(entry.getTermID());
+			document.setHeaderLength(tokenStream.getDocument().getHeaderLength());
+			numberOfTokens++;
+		}
+		row.sortTermsByID();
+
+		rows.add(row);
+		documents.add(document);
+		generation++;
+		return document.getId();
+	}
+
+	/**
+	 * Flushes the buffer if it is full, unless it is being flushed already: then the documents added meanwhile are
+	 * flushed by the next document added after that flush.
+	 */
+	private void maybeFlush() throws IOException
+	{
+		synchronized (this)
+		{
+			if (flushing || rows.size() < maxBufferedDocuments)
+			{
+				return;
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Deletes all documents with the given category and name, from the buffer and from the on-disk segments. The
+	 * deletion is seen by the next refresh of a search engine opened on this indexer.
+	 *
+	 * @return The number of deleted documents.
+	 * @throws IOException If the deletions of the on-disk segments cannot be written.
+	 */
+	public synchronized int deleteDocuments(String category, String name) throws IOException
+	{
+		int numberOfDeletedDocuments = 0;
+		for (int i = 0; i < documents.size(); i++)
+		{
+			Document document = documents.get(i);
+			if (!deletedDocuments.get(i + 1) && document.getCategory().equals(category) && document.getName().equals(name))
+			{
+				deletedDocuments.set(i + 1);
+				numberOfDeletedDocuments++;
+			}
+		}
+		numberOfDeletedDocuments += deleter.deleteDocuments(category, name);
+		if (numberOfDeletedDocuments > 0)
+		{
+			generation++;
+		}
+		return numberOfDeletedDocuments;
+	}
+
+	/**
+	 * Replaces all documents with the given category and name by the given content, i.e. deletes them and adds the
+	 * new version. Queries see either the old or the new version.
+	 *
+	 * @return The docID of the new version.
+	 * @throws IOException If the deletions cannot be written or the buffer was full and could not be flushed.
+	 */
+	public int updateDocument(String category, String name, byte[] content) throws IOException
+	{
+		int docID;
+		synchronized (this)
+		{
+			deleteDocuments(category, name);
+			docID = addToBuffer(category, name, content);
+		}
+		maybeFlush();
+		return docID;
+	}
+
+	/**
+	 * @return The documents and terms of the in-memory segment at this moment, with the manifest of the on-disk
+	 * segments they follow. Later changes of the buffer do not affect the snapshot.
+	 * @throws IOException If the manifest cannot be read.
+	 */
+	public synchronized Snapshot snapshot() throws IOException
+	{
+		SegmentManifest manifest = SegmentManifest.read(directory, indexName); // flushes wait for this lock, merges do not change the documents
+		docIDBase = manifest.getDocIDBase(manifest.size()); // merges purge deleted documents
+		// the rows are not modified once added, so they are shared with the snapshot
+		return new Snapshot(manifest, getTerms(), new ArrayList<DocumentTermList>(rows), new ArrayList<Document>(documents), (BitSet)deletedDocuments.clone(), numberOfTokens, skipHeaders, generation);
+	}
+
+	/**
+	 * @return A number that changes whenever the buffer changes, to find out whether a snapshot is out of date.
+	 */
+	public synchronized long getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Writes the buffered documents as a new segment, appends it to the manifest of the index and removes them from the
+	 * buffer. Does nothing if the buffer is empty. The segment is written without holding the lock of the indexer, so
+	 * documents may be added, deleted and searched meanwhile; documents added meanwhile are left for the next flush.
+	 * Waits for a flush that is running already.
+	 *
+	 * @throws IOException If the segment cannot be written. The documents stay in the buffer.
+	 */
+	public void flush() throws IOException
+	{
+		int numberOfDocuments;
+		String[] terms;
+		ArrayList<DocumentTermList> flushedRows;
+		ArrayList<Document> flushedDocuments;
+		long flushedTokens;
+		boolean headersSkipped;
+		String segmentName;
+		synchronized (this)
+		{
+			boolean interrupted = false;
+			while (flushing)
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true; // the running flush ends anyway
+				}
+			}
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+			if (rows.isEmpty())
+			{
+				return;
+			}
+			// the rows are not modified once added, the lists are copied since documents are added meanwhile
+			numberOfDocuments = rows.size();
+			terms = getTerms();
+			flushedRows = new ArrayList<DocumentTermList>(rows);
+			flushedDocuments = new ArrayList<Document>(documents);
+			flushedTokens = numberOfTokens;
+			headersSkipped = skipHeaders;
+			segmentName = SegmentManifest.segmentName(indexName, SegmentManifest.read(directory, indexName).reserveSegmentNumber());
+			flushing = true;
+		}
+
+		SegmentManifest manifest;
+		File tmpDirectory = new File("output" + File.separator + "tmp" + File.separator + "nrt_" + segmentName);
+		tmpDirectory.mkdirs();
+		try
+		{
+			DocumentTable documentTable = new DocumentTable(tmpDirectory);
+			documentTable.open();
+			ArrayList<File> blockMatrixFiles = new ArrayList<File>();
+			BlockMatrix blockMatrix = new BlockMatrix(BlockIndexer.BLOCK_SIZE_IN_BYTES / BlockIndexer.BYTES_PER_BLOCK_ENTRY);
+			for (int i = 0; i < numberOfDocuments; i++)
+			{
+				Document document = flushedDocuments.get(i);
+				Document segmentDocument = new Document(i + 1, document.getCategory(), document.getName());
+				segmentDocument.setHeaderLength(document.getHeaderLength());
+				documentTable.add(segmentDocument);
+				blockMatrix.addDoc(i + 1);
+				for (Map.Entry<Integer, Float> entry : flushedRows.get(i).getDocTermEntries().entrySet())
+				{
+					for (int tf = (int)entry.getValue().floatValue(); tf > 0; tf--) // the block matrix counts occurrences
+					{
+						blockMatrix.add(entry.getKey());
+					}
+				}
+				if ((long)blockMatrix.size() * BlockIndexer.BYTES_PER_BLOCK_ENTRY >= BlockIndexer.BLOCK_SIZE_IN_BYTES) // only full rows are written
+				{
+					writeBlockMatrix(blockMatrix, tmpDirectory, blockMatrixFiles);
+				}
+			}
+			if (blockMatrix.getNumberOfRows() > 0)
+			{
+				writeBlockMatrix(blockMatrix, tmpDirectory, blockMatrixFiles);
+			}
+			documentTable.finish();
+
+			Vocabulary segmentVocabulary = countTerms(terms, flushedRows);
+			CollectionStatistics collectionStatistics = new CollectionStatistics(numberOfDocuments, flushedTokens, segmentVocabulary.size(), flushedTokens / numberOfDocuments);
+			collectionStatistics.setHeadersSkipped(headersSkipped);
+			if (!new BlockIndexer().writeIndex(directory, new ThresholdVariant(segmentName, 0, Integer.MAX_VALUE), segmentVocabulary, collectionStatistics, blockMatrixFiles, documentTable))
+			{
+				throw new IOException("Error writing the segment " + directory + segmentName + ".");
+			}
+			manifest = commit(segmentName, numberOfDocuments, flushedTokens);
+		}
+		catch (IOException e)
+		{
+			for (File file : SegmentManifest.getSegmentFiles(directory, segmentName))
+			{
+				file.delete();
+			}
+			throw e;
+		}
+		finally
+		{
+			for (File file : tmpDirectory.listFiles())
+			{
+				file.delete();
+			}
+			tmpDirectory.delete();
+			synchronized (this)
+			{
+				flushing = false;
+				notifyAll();
+			}
+		}
+
+		System.out.println("Flushed " + numberOfDocuments + " documents to segment " + directory + segmentName + ".");
+	}
+
+	/**
+	 * Appends the segment written from the first documents of the buffer to the manifest and removes them from the
+	 * buffer. Documents deleted while the segment was written are deleted in its live docs.
+	 *
+	 * @return The manifest after the segment was added.
+	 */
+	private synchronized SegmentManifest commit(String segmentName, int numberOfDocuments, long flushedTokens) throws IOException
+	{
+		LiveDocs liveDocs = new LiveDocs(numberOfDocuments);
+		for (int docID = deletedDocuments.nextSetBit(1); docID >= 0 && docID <= numberOfDocuments; docID = deletedDocuments.nextSetBit(docID + 1))
+		{
+			liveDocs.delete(docID);
+		}
+		if (liveDocs.getNumberOfDeletedDocuments() > 0)
+		{
+			liveDocs.write(directory, segmentName);
+		}
+		SegmentManifest manifest = SegmentManifest.appendSegment(directory, indexName, segmentName, numberOfDocuments, liveDocs.getNumberOfDeletedDocuments());
+
+		// the documents added meanwhile become the buffer, with a vocabulary of their terms only
+		Vocabulary remainingVocabulary = new Vocabulary(4096); // will grow as needed
+		ArrayList<DocumentTermList> remainingRows = new ArrayList<DocumentTermList>(rows.size() - numberOfDocuments);
+		for (int i = numberOfDocuments; i < rows.size(); i++)
+		{
+			int bufferDocID = i - numberOfDocuments + 1;
+			DocumentTermList row = new DocumentTermList();
+			for (Map.Entry<Integer, Float> entry : rows.get(i).getDocTermEntries().entrySet())
+			{
+				String term = vocabulary.getTerm(entry.getKey());
+				int termID = -1;
+				for (int tf = (int)entry.getValue().floatValue(); tf > 0; tf--) // counts the occurrences like addDocument
+				{
+					termID = remainingVocabulary.add(term, bufferDocID).getTermID();
+				}
+				row.add(termID, entry.getValue());
+			}
+			row.sortTermsByID();
+			remainingRows.add(row);
+		}
+		ArrayList<Document> remainingDocuments = new ArrayList<Document>(documents.subList(numberOfDocuments, documents.size()));
+		BitSet remainingDeletedDocuments = deletedDocuments.get(numberOfDocuments, Math.max(numberOfDocuments, deletedDocuments.length()));
+		long remainingTokens = numberOfTokens - flushedTokens;
+
+		clearBuffer(manifest.getDocIDBase(manifest.size()));
+		vocabulary = remainingVocabulary;
+		rows = remainingRows;
+		documents = remainingDocuments;
+		deletedDocuments = remainingDeletedDocuments;
+		numberOfTokens = remainingTokens;
+		return manifest;
+	}
+
+	/**
+	 * @return A vocabulary of the given terms, with the same termIDs, and their document and collection frequencies in
+	 * the given rows.
+	 */
+	private static Vocabulary countTerms(String[] terms, List<DocumentTermList> rows)
+	{
+		Vocabulary vocabulary = new Vocabulary(Math.max(terms.length, 1024));
+		for (String term : terms)
+		{
+			vocabulary.addSilent(term);
+		}
+		for (int i = 0; i < rows.size(); i++)
+		{
+			for (Map.Entry<Integer, Float> entry : rows.get(i).getDocTermEntries().entrySet())
+			{
+				for (int tf = (int)entry.getValue().floatValue(); tf > 0; tf--)
+				{
+					vocabulary.add(terms[entry.getKey()], i + 1);
+				}
+			}
+		}
+		vocabulary.setTotalNumberOfDocuments(rows.size());
+		return vocabulary;
+	}
+
+	/**
+	 * Stops the flush thread, after the flush it may be running, and flushes the remaining documents.
+	 */
+	public void close() throws IOException
+	{
+		closed = true;
+		Thread thread;
+		synchronized (this)
+		{
+			thread = flushThread;
+			flushThread = null;
+			notifyAll();
+		}
+		if (thread != null)
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+	}
+
+	public String getDirectory()
+	{
+		return directory;
+	}
+
+	public String getIndexName()
+	{
+		return indexName;
+	}
+
+	/**
+	 * @return The number of documents in the buffer.
+	 */
+	public synchronized int getNumberOfBufferedDocuments()
+	{
+		return rows.size();
+	}
+
+	/**
+	 * @return The terms of the buffer, indexed by termID.
+	 */
+	private String[] getTerms()
+	{
+		String[] terms = new String[vocabulary.size()];
+		for (int termID = 0; termID < terms.length; termID++)
+		{
+			terms[termID] = vocabulary.getTerm(termID);
+		}
+		return terms;
+	}
+
+	private void clearBuffer(int _docIDBase)
+	{
+		vocabulary = new Vocabulary(4096); // will grow as needed
+		rows = new ArrayList<DocumentTermList>();
+		documents = new ArrayList<Document>();
+		deletedDocuments = new BitSet();
+		numberOfTokens = 0;
+		docIDBase = _docIDBase;
+		generation++;
+	}
+
+	private static void writeBlockMatrix(BlockMatrix blockMatrix, File tmpDirectory, ArrayList<File> blockMatrixFiles) throws IOException
+	{
+		File blockOutputFile = new File(tmpDirectory, "nrt" + blockMatrixFiles.size() + ".mat");
+		blockMatrixFiles.add(blockOutputFile);
+		blockMatrix.sortRows();
+		new BufferedBlockMatrixWriter(blockOutputFile, blockMatrix).writeToFile();
+		blockMatrix.clear();
+	}
+
+	/**
+	 * The in-memory segment of a {@link NearRealTimeIndexer} at one moment. The termIDs of the rows refer to
+	 * {@link #getTerms()}, the docIDs of the documents start after {@link #getDocIDBase()}.
+	 */
+	public static class Snapshot
+	{
+		private SegmentManifest manifest;
+		private String[] terms;
+		private List<DocumentTermList> rows;
+		private List<Document> documents;
+		private BitSet deletedDocuments;
+		private long numberOfTokens;
+		private boolean headersSkipped;
+		private long generation;
+
+		Snapshot(SegmentManifest _manifest, String[] _terms, List<DocumentTermList> _rows, List<Document> _documents, BitSet _deletedDocuments, long _numberOfTokens, boolean _headersSkipped, long _generation)
+		{
+			this.manifest = _manifest;
+			this.terms = _terms;
+			this.rows = Collections.unmodifiableList(_rows);
+			this.documents = Collections.unmodifiableList(_documents);
+			this.deletedDocuments = _deletedDocuments;
+			this.numberOfTokens = _numberOfTokens;
+			this.headersSkipped = _headersSkipped;
+			this.generation = _generation;
+		}
+
+		/**
+		 * @return The on-disk segments when the snapshot was taken, the buffered documents follow their documents.
+		 */
+		public SegmentManifest getManifest()
+		{
+			return manifest;
+		}
+
+		/**
+		 * @return The number of documents in the on-disk segments when the snapshot was taken.
+		 */
+		public int getDocIDBase()
+		{
+			return manifest.getDocIDBase(manifest.size());
+		}
+
+		/**
+		 * @return The terms of the in-memory segment, indexed by termID.
+		 */
+		public String[] getTerms()
+		{
+			return terms;
+		}
+
+		/**
+		 * @return The term frequencies of every buffered document, sorted by termID. Must not be modified.
+		 */
+		public List<DocumentTermList> getRows()
+		{
+			return rows;
+		}
+
+		/**
+		 * @return The buffered documents, in the order of {@link #getRows()}.
+		 */
+		public List<Document> getDocuments()
+		{
+			return documents;
+		}
+
+		/**
+		 * @return The deleted buffered documents, by their docID in the buffer (starting at 1). Must not be modified.
+		 */
+		public BitSet getDeletedDocuments()
+		{
+			return deletedDocuments;
+		}
+
+		public long getNumberOfTokens()
+		{
+			return numberOfTokens;
+		}
+
+		public boolean isHeadersSkipped()
+		{
+			return headersSkipped;
+		}
+
+		public long getGeneration()
+		{
+			return generation;
+		}
+	}
+
+	/**
+	 * A collection of one document, to tokenize it with a {@link CollectionTokenStream}.
+	 */
+	private static class SingleDocumentReader implements ICollectionReader
+	{
+		private String category;
+		private String name;
+		private byte[] content;
+		private boolean read = false;
+
+		SingleDocumentReader(String _category, String _name, byte[] _content)
+		{
+			this.category = _category;
+			this.name = _name;
+			this.content = _content;
+		}
+
+		@Override
+		public boolean nextDocument()
+		{
+			if (read)
+			{
+				return false;
+			}
+			read = true;
+			return true;
+		}
+
+		@Override
+		public String getCategory()
+		{
+			return category;
+		}
+
+		@Override
+		public String getName()
+		{
+			return name;
+		}
+
+		@Override
+		public byte[] getContent()
+		{
+			return content;
+		}
+
+		@Override
+		public int getContentLength()
+		{
+			return content.length;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
@@ -0,0 +1,371 @@
+package indexing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import dao.Document;
+
+/**
+ * Tokenizes the documents of a collection on several threads, as a replacement for a {@link CollectionTokenStream} of
+ * the same reader. The calling thread only takes the documents from the reader (which may prefetch them, see
+ * {@link DirectoryCollectionReader}) and hands batches of DOCUMENTS_PER_TASK documents to the worker threads. Every
+ * worker tokenizes its batch with a CollectionTokenStream and an analyzer (and stem cache) of its own, and the tokens
+ * of the batches are handed out in the order the documents were read. So the docIDs, terms and positions are exactly
+ * the ones of a single CollectionTokenStream, no matter how many threads are used. Only a bounded number of batches
+ * are in flight at any time.
+ *
+ * Like the CollectionTokenStream, the stream closes the reader once all documents have been read.
+ *
+ * Note that ParallelTokenStream is NOT thread safe, meaning that methods should never be called concurrently!
+ */
+public class ParallelTokenStream implements ITokenCursor
+{
+	public static final int DOCUMENTS_PER_TASK = 64;
+	public static final int TASKS_PER_THREAD = 2; // number of batches in flight per thread
+
+	private ICollectionReader reader;
+	private boolean readerExhausted;
+	private int docID; // the docID of the last document read
+
+	private boolean useStemming;
+	private int stemCacheSize;
+	private boolean skipMetaData;
+	private final CopyOnWriteArrayList<TermAnalyzer> analyzers = new CopyOnWriteArrayList<TermAnalyzer>(); // of all workers
+	private final ThreadLocal<TermAnalyzer> analyzer = new ThreadLocal<TermAnalyzer>();
+
+	private ExecutorService executor;
+	private int numberOfThreads;
+	private LinkedList<Future<TokenBatch>> pending = new LinkedList<Future<TokenBatch>>();
+
+	private TokenBatch batch; // the batch of the current token
+	private int token; // the current token in the batch
+
+	/**
+	 * Constructor. No document is read before {@link #advance()} is called.
+	 *
+	 * @param _reader The collection to tokenize.
+	 * @param _useStemming Whether the terms are stemmed.
+	 * @param _stemCacheSize The size of the stem cache of each thread, see {@link TermAnalyzer#TermAnalyzer(boolean, int)}.
+	 * @param _numberOfThreads The number of threads that tokenize the documents.
+	 */
+	public ParallelTokenStream(ICollectionReader _reader, boolean _useStemming, int _stemCacheSize, int _numberOfThreads)
+	{
+		if (_numberOfThreads < 1)
+		{
+			throw new IllegalArgumentException("At least one thread is needed to tokenize a collection: " + _numberOfThreads);
+		}
+		this.reader = _reader;
+		this.useStemming = _useStemming;
+		this.stemCacheSize = _stemCacheSize;
+		this.numberOfThreads = _numberOfThreads;
+
+		executor = Executors.newFixedThreadPool(_numberOfThreads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "ParallelTokenStream");
+				thread.setDaemon(true); // never keeps the program alive if the stream is not read to its end
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Sets whether the header of each document is skipped, see {@link CollectionTokenStream#setSkipMetaData(boolean)}.
+	 */
+	public void setSkipMetaData(boolean skip)
+	{
+		this.skipMetaData = skip;
+	}
+
+	/**
+	 * @return A one line summary of the hits and misses of the stem caches of all threads.
+	 */
+	public String getStemCacheStatistics()
+	{
+		long hits = 0;
+		long misses = 0;
+		int size = 0;
+		for (TermAnalyzer threadAnalyzer : analyzers)
+		{
+			hits += threadAnalyzer.getStemCache().getHits();
+			misses += threadAnalyzer.getStemCache().getMisses();
+			size = threadAnalyzer.getStemCache().getSize();
+		}
+		long lookups = hits + misses;
+		return "Stem caches of " + analyzers.size() + " threads (" + size + " slots each): " + hits + " hits, " + misses + " misses ("
+				+ (lookups == 0 ? 0 : Math.round(100.0 * hits / lookups)) + "% hits)";
+	}
+
+	@Override
+	public boolean advance()
+	{
+		if (batch != null && ++token < batch.size)
+		{
+			return true;
+		}
+
+		while (true)
+		{
+			submitBatches();
+			if (pending.isEmpty())
+			{
+				batch = null;
+				executor.shutdown();
+				return false;
+			}
+			batch = getBatch(pending.removeFirst());
+			token = 0;
+			if (batch.size > 0)
+			{
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Reads documents from the reader and submits them in batches until enough batches are in flight.
+	 */
+	private void submitBatches()
+	{
+		while (!readerExhausted && pending.size() < numberOfThreads * TASKS_PER_THREAD)
+		{
+			final BatchReader batchReader = new BatchReader();
+			final int docIDBase = docID;
+			while (batchReader.size() < DOCUMENTS_PER_TASK && readDocument(batchReader))
+			{
+				docID++;
+			}
+			if (batchReader.size() == 0)
+			{
+				return;
+			}
+
+			pending.add(executor.submit(new Callable<TokenBatch>()
+			{
+				@Override
+				public TokenBatch call()
+				{
+					return tokenize(batchReader, docIDBase);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Copies the next document of the reader to the given batch.
+	 *
+	 * @return Whether there was a next document.
+	 */
+	private boolean readDocument(BatchReader batchReader)
+	{
+		try
+		{
+			if (!reader.nextDocument())
+			{
+				readerExhausted = true;
+				reader.close();
+				return false;
+			}
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error reading the collection, no documents after docID "+docID+" are tokenized! -- Stack Trace follows.");
+			ioe.printStackTrace();
+			readerExhausted = true;
+			reader.close();
+			return false;
+		}
+		batchReader.add(reader.getCategory(), reader.getName(), Arrays.copyOf(reader.getContent(), reader.getContentLength())); // the reader may reuse its buffer
+		return true;
+	}
+
+	/**
+	 * Tokenizes the documents of a batch, called by the worker threads.
+	 *
+	 * @param docIDBase The docID of the document before the first document of the batch.
+	 */
+	private TokenBatch tokenize(BatchReader batchReader, int docIDBase)
+	{
+		TermAnalyzer threadAnalyzer = analyzer.get();
+		if (threadAnalyzer == null)
+		{
+			threadAnalyzer = new TermAnalyzer(useStemming, stemCacheSize);
+			analyzer.set(threadAnalyzer);
+			analyzers.add(threadAnalyzer);
+		}
+
+		CollectionTokenStream tokenStream = new CollectionTokenStream(batchReader, threadAnalyzer);
+		tokenStream.setSkipMetaData(skipMetaData);
+		tokenStream.setDocIDBase(docIDBase);
+
+		TokenBatch tokens = new TokenBatch();
+		while (tokenStream.advance())
+		{
+			tokens.add(tokenStream.getTermBuffer(), tokenStream.getTermOffset(), tokenStream.getTermLength(), tokenStream.getPosition(), tokenStream.getDocument());
+		}
+		return tokens;
+	}
+
+	private static TokenBatch getBatch(Future<TokenBatch> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while tokenizing the collection!", ie);
+		}
+		catch (ExecutionException ee)
+		{
+			throw new RuntimeException("Error tokenizing the collection!", ee.getCause()); // a missing batch would silently change the index
+		}
+	}
+
+	@Override
+	public char[] getTermBuffer()
+	{
+		return batch.terms;
+	}
+
+	@Override
+	public int getTermOffset()
+	{
+		return token == 0 ? 0 : batch.termEnds[token - 1];
+	}
+
+	@Override
+	public int getTermLength()
+	{
+		return batch.termEnds[token] - getTermOffset();
+	}
+
+	@Override
+	public int getPosition()
+	{
+		return batch.positions[token];
+	}
+
+	@Override
+	public int getDocID()
+	{
+		return batch.documents[token].getId();
+	}
+
+	@Override
+	public Document getDocument()
+	{
+		return batch.documents[token];
+	}
+
+	/**
+	 * The tokens of a batch of documents: the terms one after the other in one char array, with the end of every
+	 * term, its position and its document.
+	 */
+	private static class TokenBatch
+	{
+		char[] terms = new char[4096];
+		int length;
+		int[] termEnds = new int[512];
+		int[] positions = new int[512];
+		Document[] documents = new Document[512];
+		int size;
+
+		void add(char[] buffer, int offset, int termLength, int position, Document document)
+		{
+			if (length + termLength > terms.length)
+			{
+				terms = Arrays.copyOf(terms, Math.max(terms.length * 2, length + termLength));
+			}
+			System.arraycopy(buffer, offset, terms, length, termLength);
+			length += termLength;
+
+			if (size == termEnds.length)
+			{
+				termEnds = Arrays.copyOf(termEnds, size * 2);
+				positions = Arrays.copyOf(positions, size * 2);
+				documents = Arrays.copyOf(documents, size * 2);
+			}
+			termEnds[size] = length;
+			positions[size] = position;
+			documents[size] = document;
+			size++;
+		}
+	}
+
+	/**
+	 * The documents of a batch, copied from the reader of the collection.
+	 */
+	private static class BatchReader implements ICollectionReader
+	{
+		private ArrayList<String> categories = new ArrayList<String>(DOCUMENTS_PER_TASK);
+		private ArrayList<String> names = new ArrayList<String>(DOCUMENTS_PER_TASK);
+		private ArrayList<byte[]> contents = new ArrayList<byte[]>(DOCUMENTS_PER_TASK);
+		private int current = -1;
+
+		void add(String category, String name, byte[] content)
+		{
+			categories.add(category);
+			names.add(name);
+			contents.add(content);
+		}
+
+		int size()
+		{
+			return contents.size();
+		}
+
+		@Override
+		public boolean nextDocument()
+		{
+			if (current + 1 >= contents.size())
+			{
+				return false;
+			}
+			current++;
+			return true;
+		}
+
+		@Override
+		public String getCategory()
+		{
+			return categories.get(current);
+		}
+
+		@Override
+		public String getName()
+		{
+			return names.get(current);
+		}
+
+		@Override
+		public byte[] getContent()
+		{
+			return contents.get(current);
+		}
+
+		@Override
+		public int getContentLength()
+		{
+			return contents.get(current).length;
+		}
+
+		@Override
+		public void close()
+		{
+			contents.clear(); // the tokens do not refer to the bytes, they can be collected
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package indexing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes the positions of the terms in the documents of a collection while it is tokenized, for phrase and proximity
+ * queries (see retrieval.PositionalIndex). The position of a token is the number of words before it in its document
+ * (see {@link ITokenCursor#getPosition()}). Words that are too short to be indexed (see {@link TermAnalyzer}) are
+ * counted as well, so they leave a gap and two terms only have consecutive positions if they are adjacent words in
+ * the text. The positions are kept apart from the ARFF index, so an index without positions and all queries without phrases
+ * do not pay for them. Two files are written:
+ *
+ * <ul>
+ * <li><code>&lt;index&gt;.pos</code>: the entries of all documents in docID order. Per document, there is one entry
+ * per term, ordered by termID: the gap to the termID of the previous entry (the first one as gap to 0), the number of
+ * positions, the number of bytes of the positions and the positions, each as gap to the previous position (the first
+ * one as gap to 0). All numbers are variable-length encoded like the docID gaps of retrieval.VarintPostings, so most
+ * take a single byte. The byte count allows to skip the positions of terms that are not looked for.</li>
+ * <li><code>&lt;index&gt;.posx</code>: one byte offset (long) into the .pos file per docID, plus a final offset,
+ * such that the entries of document d are found between the offsets d and d+1.</li>
+ * </ul>
+ *
+ * The tokens of a document are buffered until the next document starts, so the memory needed is bounded by the
+ * longest document.
+ */
+public class PositionalIndexWriter
+{
+	public static final String POSITIONS_SUFFIX = ".pos";
+	public static final String OFFSETS_SUFFIX = ".posx";
+
+	private File positionsFile;
+	private File offsetsFile;
+
+	private DataOutputStream positionsOut;
+	private DataOutputStream offsetsOut;
+
+	private int currentDocID; // the document whose tokens are buffered, -1 if none
+	private long[] currentTokens; // termID in the high, position in the low 32 bits, so sorting orders by termID, then position
+	private int currentSize;
+	private byte[] positionBuffer; // the encoded positions of one term
+
+	private int nextOffsetDocID; // the next docID whose offset has to be written
+	private long currentOffset;
+
+	/**
+	 * Creates a PositionalIndexWriter, does not write to the disk.
+	 *
+	 * @param _directory The directory of the index.
+	 * @param _indexName The name of the index, used as prefix of the file names.
+	 */
+	public PositionalIndexWriter(String _directory, String _indexName)
+	{
+		this.positionsFile = new File(_directory + _indexName + POSITIONS_SUFFIX);
+		this.offsetsFile = new File(_directory + _indexName + OFFSETS_SUFFIX);
+
+		currentDocID = -1;
+		currentTokens = new long[1024];
+		currentSize = 0;
+		positionBuffer = new byte[64];
+		nextOffsetDocID = 0;
+		currentOffset = 0;
+	}
+
+	/**
+	 * @return The files of the positional index with the given name.
+	 */
+	public static File[] getFiles(String directory, String indexName)
+	{
+		return new File[] { new File(directory + indexName + POSITIONS_SUFFIX), new File(directory + indexName + OFFSETS_SUFFIX) };
+	}
+
+	/**
+	 * Opens the files.
+	 *
+	 * @throws IOException
+	 */
+	public void init() throws IOException
+	{
+		positionsFile.getParentFile().mkdirs();
+
+		positionsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(positionsFile)));
+		offsetsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsFile)));
+	}
+
+	/**
+	 * Adds the next token of the collection. The tokens have to be added in the order of the collection, the
+	 * documents in increasing docID order.
+	 *
+	 * @param docID The document of the token.
+	 * @param termID The term of the token.
+	 * @param position The position of the token in its document, see {@link ITokenCursor#getPosition()}.
+	 * @throws IOException
+	 */
+	public void add(int docID, int termID, int position) throws IOException
+	{
+		if (docID != currentDocID)
+		{
+			writeCurrentDocument();
+			currentDocID = docID;
+		}
+		if (currentSize == currentTokens.length)
+		{
+			currentTokens = Arrays.copyOf(currentTokens, currentSize * 2);
+		}
+		currentTokens[currentSize] = ((long)termID << 32) | position;
+		currentSize++;
+	}
+
+	/**
+	 * Writes the buffered document (if any).
+	 */
+	private void writeCurrentDocument() throws IOException
+	{
+		if (currentDocID < 0)
+		{
+			return;
+		}
+
+		while (nextOffsetDocID <= currentDocID) // documents without tokens get an empty range
+		{
+			offsetsOut.writeLong(currentOffset);
+			nextOffsetDocID++;
+		}
+
+		Arrays.sort(currentTokens, 0, currentSize);
+
+		int previousTermID = 0;
+		int start = 0;
+		while (start < currentSize)
+		{
+			int termID = (int)(currentTokens[start] >>> 32);
+			int end = start + 1;
+			while (end < currentSize && (int)(currentTokens[end] >>> 32) == termID)
+			{
+				end++;
+			}
+
+			int length = 0;
+			int previousPosition = 0;
+			for (int i = start; i < end; i++)
+			{
+				int position = (int)currentTokens[i];
+				if (positionBuffer.length - length < 5)
+				{
+					positionBuffer = Arrays.copyOf(positionBuffer, positionBuffer.length * 2);
+				}
+				length = writeVarint(positionBuffer, length, position - previousPosition);
+				previousPosition = position;
+			}
+
+			writeVarint(termID - previousTermID);
+			writeVarint(end - start);
+			writeVarint(length);
+			positionsOut.write(positionBuffer, 0, length);
+			currentOffset += length;
+
+			previousTermID = termID;
+			start = end;
+		}
+
+		currentDocID = -1;
+		currentSize = 0;
+	}
+
+	private void writeVarint(int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			positionsOut.write((value & 0x7F) | 0x80);
+			currentOffset++;
+			value >>>= 7;
+		}
+		positionsOut.write(value);
+		currentOffset++;
+	}
+
+	/**
+	 * Encodes the value into the buffer at the given offset.
+	 *
+	 * @return The offset after the value.
+	 */
+	private static int writeVarint(byte[] buffer, int offset, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			buffer[offset++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[offset++] = (byte)value;
+		return offset;
+	}
+
+	/**
+	 * @return The number of bytes written to the .pos file so far.
+	 */
+	public long getSizeInBytes()
+	{
+		return currentOffset;
+	}
+
+	/**
+	 * Writes the last document and the final offset and closes the files.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		writeCurrentDocument();
+		offsetsOut.writeLong(currentOffset); // end of the last document
+
+		positionsOut.close();
+		offsetsOut.close();
+	}
+
+	/**
+	 * Closes the files after an error, ignoring any further errors, and deletes them.
+	 */
+	public void abort()
+	{
+		try
+		{
+			positionsOut.close();
+			offsetsOut.close();
+		}
+		catch (IOException e)
+		{
+		}
+		positionsFile.delete();
+		offsetsFile.delete();
+	}
+}
@@ -0,0 +1,424 @@
+package indexing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import dao.CollectionStatistics;
+
+/**
+ * The list of segments an index consists of, stored in <code>&lt;indexName&gt;.segments</code> next to the files
+ * of the segments. A segment is a complete index of its own (ARFF files, statistics, forward index, meta data) that is
+ * never modified once written; adding documents to an index writes a new segment and appends it to the manifest, see
+ * {@link BlockIndexer#setAppendSegment(boolean)}. The docIDs of a segment start at 1, the search engine maps them to
+ * global docIDs by adding the number of documents of all previous segments.
+ *
+ * The file contains one line per segment, in the order the segments were added: the name of the segment, its
+ * number of documents and, if documents of the segment have been deleted (see {@link LiveDocs}), its number of deleted
+ * documents, separated by blanks. Since every deletion changes the manifest, a search engine can tell from the
+ * manifest alone whether it is up to date.
+ *
+ * Within one JVM, changes of a manifest go through {@link #appendSegment(String, String, String, int, int)},
+ * {@link #replaceSegments(String, String, List, String, int, int)} and
+ * {@link #setDeletions(String, String, String, LiveDocs)}, which re-read the manifest under a lock, so segments added
+ * by the indexer, merges committed by a {@link MergeScheduler} and deletions do not overwrite each other. Segment numbers
+ * are handed out by {@link #reserveSegmentNumber()} for the same reason.
+ */
+public class SegmentManifest
+{
+	public static final String SUFFIX = ".segments";
+	public static final String SEGMENT_INFIX = "_seg";
+	public static final String[] SEGMENT_FILE_SUFFIXES = { "_tf.arff.gz", "_tfidf.arff.gz", "_tf.arff.gz" + BufferedArffMatrixWriter.ROW_INDEX_SUFFIX, "_tfidf.arff.gz" + BufferedArffMatrixWriter.ROW_INDEX_SUFFIX, ".stat", DocumentMetadataWriter.METADATA_SUFFIX, ForwardIndexWriter.FORWARD_INDEX_SUFFIX, ForwardIndexWriter.OFFSETS_SUFFIX, PositionalIndexWriter.POSITIONS_SUFFIX, PositionalIndexWriter.OFFSETS_SUFFIX, LiveDocs.SUFFIX };
+
+	static final Object LOCK = new Object(); // guards all changes of manifests and live docs
+	private static final HashMap<String, Integer> reservedSegmentNumbers = new HashMap<String, Integer>(); // manifest path -> next free segment number
+
+	private File file;
+	private String indexName;
+	private ArrayList<String> segmentNames = new ArrayList<String>();
+	private ArrayList<Integer> segmentSizes = new ArrayList<Integer>();
+	private ArrayList<Integer> segmentDeletions = new ArrayList<Integer>();
+
+	private SegmentManifest(File _file, String _indexName)
+	{
+		this.file = _file;
+		this.indexName = _indexName;
+	}
+
+	/**
+	 * @return Whether the index with the given name in the given directory consists of segments.
+	 */
+	public static boolean exists(String directory, String indexName)
+	{
+		return new File(directory + indexName + SUFFIX).exists();
+	}
+
+	/**
+	 * Reads the manifest of the given index. If there is none, an empty manifest is returned, unless an index with
+	 * that name has been built by a single run before: that index then becomes the first segment, so documents can be
+	 * added to any existing index.
+	 *
+	 * @throws IOException If the manifest cannot be read or is invalid.
+	 */
+	public static SegmentManifest read(String directory, String indexName) throws IOException
+	{
+		SegmentManifest manifest = new SegmentManifest(new File(directory + indexName + SUFFIX), indexName);
+
+		if (!manifest.file.exists())
+		{
+			File statisticsFile = new File(directory + indexName + ".stat");
+			if (statisticsFile.exists())
+			{
+				CollectionStatistics statistics = new CollectionStatistics();
+				statistics.readFromFile(statisticsFile);
+				manifest.add(indexName, statistics.getNumberOfDocuments());
+			}
+			return manifest;
+		}
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest.file), "UTF-8"));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if (line.length() == 0)
+				{
+					continue;
+				}
+				String[] fields = line.split(" ");
+				try
+				{
+					if (fields.length > 3)
+					{
+						throw new IllegalArgumentException("too many fields");
+					}
+					manifest.add(fields[0], Integer.parseInt(fields[1]));
+					if (fields.length == 3)
+					{
+						manifest.setNumberOfDeletedDocuments(manifest.size() - 1, Integer.parseInt(fields[2]));
+					}
+				}
+				catch (RuntimeException e) // missing, superfluous or invalid fields
+				{
+					throw new IOException("Invalid line in " + manifest.file.getPath() + ": " + line);
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return manifest;
+	}
+
+	/**
+	 * @return The name of the next segment of the index, <code>&lt;indexName&gt;_seg&lt;N&gt;</code>.
+	 */
+	public String nextSegmentName()
+	{
+		return segmentName(indexName, getNextSegmentNumber());
+	}
+
+	/**
+	 * @return The number of the next segment, which is never used by any segment of the index yet.
+	 */
+	public int getNextSegmentNumber()
+	{
+		int next = 0;
+		String prefix = indexName + SEGMENT_INFIX;
+		for (String segmentName : segmentNames)
+		{
+			if (segmentName.startsWith(prefix))
+			{
+				try
+				{
+					next = Math.max(next, Integer.parseInt(segmentName.substring(prefix.length())) + 1);
+				}
+				catch (NumberFormatException e)
+				{
+					// not one of our names
+				}
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Reserves the next segment number of the index, so that two segments written at the same time (e.g. by the
+	 * indexer and by a merge) do not get the same name.
+	 */
+	public int reserveSegmentNumber()
+	{
+		synchronized (LOCK)
+		{
+			String key = file.getAbsolutePath();
+			Integer reserved = reservedSegmentNumbers.get(key);
+			int number = Math.max(getNextSegmentNumber(), reserved == null ? 0 : reserved);
+			reservedSegmentNumbers.put(key, number + 1);
+			return number;
+		}
+	}
+
+	/**
+	 * @return The name of the segment with the given number of the given index.
+	 */
+	public static String segmentName(String indexName, int segmentNumber)
+	{
+		return indexName + SEGMENT_INFIX + String.format("%04d", segmentNumber);
+	}
+
+	/**
+	 * Appends a segment. The manifest is not written before {@link #write()} is called.
+	 */
+	public void add(String segmentName, int numberOfDocuments)
+	{
+		if (numberOfDocuments < 0)
+		{
+			throw new IllegalArgumentException("Invalid number of documents of segment " + segmentName + ": " + numberOfDocuments);
+		}
+		segmentNames.add(segmentName);
+		segmentSizes.add(numberOfDocuments);
+		segmentDeletions.add(0);
+	}
+
+	/**
+	 * Writes the manifest. The file is replaced by an atomic move, so a search engine opening the index concurrently
+	 * sees either the old or the new list of segments. The files of segments that are no longer listed may be deleted
+	 * right after, so a reader of the old list has to read the manifest again if a file of a segment is missing.
+	 *
+	 * @throws IOException If the file cannot be written, or the file system cannot replace it atomically.
+	 */
+	public void write() throws IOException
+	{
+		File tmpFile = new File(file.getPath() + ".tmp");
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+		try
+		{
+			for (int i = 0; i < segmentNames.size(); i++)
+			{
+				out.write(segmentNames.get(i) + " " + segmentSizes.get(i) + (segmentDeletions.get(i) > 0 ? " " + segmentDeletions.get(i) : "") + "\n");
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Appends a segment without deletions to the manifest of the given index and writes the manifest.
+	 *
+	 * @return The manifest after the segment was added.
+	 */
+	public static SegmentManifest appendSegment(String directory, String indexName, String segmentName, int numberOfDocuments) throws IOException
+	{
+		return appendSegment(directory, indexName, segmentName, numberOfDocuments, 0);
+	}
+
+	/**
+	 * Appends a segment to the manifest of the given index and writes the manifest.
+	 *
+	 * @param numberOfDeletedDocuments The number of documents deleted by the live docs of the segment, which have been
+	 * written already.
+	 * @return The manifest after the segment was added.
+	 */
+	public static SegmentManifest appendSegment(String directory, String indexName, String segmentName, int numberOfDocuments, int numberOfDeletedDocuments) throws IOException
+	{
+		synchronized (LOCK)
+		{
+			SegmentManifest manifest = read(directory, indexName);
+			manifest.add(segmentName, numberOfDocuments);
+			manifest.setNumberOfDeletedDocuments(manifest.size() - 1, numberOfDeletedDocuments);
+			manifest.write();
+			return manifest;
+		}
+	}
+
+	/**
+	 * Replaces consecutive segments of the given index by the segment they were merged into and writes the manifest.
+	 * The merged segment has to contain the live documents of the replaced segments in their order, so the documents
+	 * keep their order; only the docIDs following purged (deleted) documents change.
+	 *
+	 * @param numberOfDeletedDocuments The number of documents deleted by the live docs of the merged segment, i.e. of
+	 * the documents deleted while the merge was running.
+	 * @return The manifest after the segments were replaced.
+	 * @throws IOException If the manifest cannot be written or does not contain the segments (consecutively).
+	 */
+	public static SegmentManifest replaceSegments(String directory, String indexName, List<String> mergedSegments, String segmentName, int numberOfDocuments, int numberOfDeletedDocuments) throws IOException
+	{
+		synchronized (LOCK)
+		{
+			SegmentManifest manifest = read(directory, indexName);
+			int first = manifest.segmentNames.indexOf(mergedSegments.get(0));
+			if (first < 0 || first + mergedSegments.size() > manifest.size() || !manifest.segmentNames.subList(first, first + mergedSegments.size()).equals(mergedSegments))
+			{
+				throw new IOException("The index " + directory + indexName + " does not contain the segments " + mergedSegments + " anymore.");
+			}
+			manifest.segmentNames.subList(first, first + mergedSegments.size()).clear();
+			manifest.segmentSizes.subList(first, first + mergedSegments.size()).clear();
+			manifest.segmentDeletions.subList(first, first + mergedSegments.size()).clear();
+			manifest.segmentNames.add(first, segmentName);
+			manifest.segmentSizes.add(first, numberOfDocuments);
+			manifest.segmentDeletions.add(first, numberOfDeletedDocuments);
+			manifest.write();
+			return manifest;
+		}
+	}
+
+	/**
+	 * Writes the live docs of a segment of the given index and records its number of deleted documents in the manifest.
+	 *
+	 * @return The manifest after the deletions were recorded.
+	 * @throws IOException If the files cannot be written or the index does not contain the segment (anymore).
+	 */
+	public static SegmentManifest setDeletions(String directory, String indexName, String segmentName, LiveDocs liveDocs) throws IOException
+	{
+		synchronized (LOCK)
+		{
+			SegmentManifest manifest = read(directory, indexName);
+			int segment = manifest.segmentNames.indexOf(segmentName);
+			if (segment < 0)
+			{
+				throw new IOException("The index " + directory + indexName + " does not contain the segment " + segmentName + " anymore.");
+			}
+			liveDocs.write(directory, segmentName);
+			manifest.setNumberOfDeletedDocuments(segment, liveDocs.getNumberOfDeletedDocuments());
+			manifest.write();
+			return manifest;
+		}
+	}
+
+	/**
+	 * Deletes the manifest of the given index and the files of its segments, except for the segment named like the
+	 * index itself (an index built by a single run before the first segment was added). Called before an index is
+	 * rebuilt by a single run, so the old segments are not searched together with the new index.
+	 *
+	 * @return The number of segments whose files were deleted.
+	 * @throws IOException If the manifest cannot be read or deleted.
+	 */
+	public static int deleteSegments(String directory, String indexName) throws IOException
+	{
+		synchronized (LOCK)
+		{
+			if (!exists(directory, indexName))
+			{
+				return 0;
+			}
+			SegmentManifest manifest = read(directory, indexName);
+			Files.delete(manifest.file.toPath()); // first, so no reader opens a segment that is about to be deleted
+
+			int deleted = 0;
+			for (String segmentName : manifest.segmentNames)
+			{
+				if (segmentName.equals(indexName))
+				{
+					continue;
+				}
+				for (File file : getSegmentFiles(directory, segmentName))
+				{
+					file.delete();
+				}
+				deleted++;
+			}
+			return deleted;
+		}
+	}
+
+	/**
+	 * @return The files of the given segment that exist.
+	 */
+	public static ArrayList<File> getSegmentFiles(String directory, String segmentName)
+	{
+		ArrayList<File> files = new ArrayList<File>(SEGMENT_FILE_SUFFIXES.length);
+		for (String suffix : SEGMENT_FILE_SUFFIXES)
+		{
+			File file = new File(directory + segmentName + suffix);
+			if (file.exists())
+			{
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * @return Whether the given manifest lists the same segments, in the same order, with the same deletions.
+	 */
+	public boolean hasSameSegments(SegmentManifest other)
+	{
+		return hasSameDocuments(other) && segmentDeletions.equals(other.segmentDeletions);
+	}
+
+	/**
+	 * @return Whether the given manifest lists the same segments, in the same order, regardless of their deletions.
+	 */
+	public boolean hasSameDocuments(SegmentManifest other)
+	{
+		return segmentNames.equals(other.segmentNames) && segmentSizes.equals(other.segmentSizes);
+	}
+
+	public int size()
+	{
+		return segmentNames.size();
+	}
+
+	public String getSegmentName(int segment)
+	{
+		return segmentNames.get(segment);
+	}
+
+	public int getNumberOfDocuments(int segment)
+	{
+		return segmentSizes.get(segment);
+	}
+
+	/**
+	 * @return The number of deleted documents of the given segment, see {@link LiveDocs}.
+	 */
+	public int getNumberOfDeletedDocuments(int segment)
+	{
+		return segmentDeletions.get(segment);
+	}
+
+	public int getNumberOfLiveDocuments(int segment)
+	{
+		return segmentSizes.get(segment) - segmentDeletions.get(segment);
+	}
+
+	private void setNumberOfDeletedDocuments(int segment, int numberOfDeletedDocuments)
+	{
+		if (numberOfDeletedDocuments < 0 || numberOfDeletedDocuments > segmentSizes.get(segment))
+		{
+			throw new IllegalArgumentException("Invalid number of deleted documents of segment " + segmentNames.get(segment) + ": " + numberOfDeletedDocuments);
+		}
+		segmentDeletions.set(segment, numberOfDeletedDocuments);
+	}
+
+	/**
+	 * @return The number of documents of all segments before the given one, i.e. the offset of its docIDs.
+	 */
+	public int getDocIDBase(int segment)
+	{
+		int base = 0;
+		for (int i = 0; i < segment; i++)
+		{
+			base += segmentSizes.get(i);
+		}
+		return base;
+	}
+}
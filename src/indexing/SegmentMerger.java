@@ -0,0 +1,370 @@
+package indexing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
+
+import retrieval.ArffDocumentRow;
+import retrieval.DocumentMetadataStore;
+
+import dao.BlockMatrix;
+import dao.CollectionStatistics;
+import dao.Document;
+import dao.DocumentTable;
+import dao.Vocabulary;
+import dao.VocabularyEntry;
+
+/**
+ * Merges consecutive segments of an index (see {@link SegmentManifest}) into one new segment. The rows of the plain tf
+ * files of the segments are read one after another, their termIDs are mapped to a vocabulary shared by all segments and
+ * their docIDs are shifted by the documents of the previous segments, so the documents keep their order. The rows are
+ * collected in block matrices, which {@link BlockIndexer#writeIndex} merges and writes like the blocks of a collection,
+ * i.e. the merged segment has the same files as any other index.
+ *
+ * Documents deleted when the merge starts (see {@link LiveDocs}) are left out, the docIDs of the following documents
+ * are compacted. Documents deleted while the merge runs are deleted in the merged segment by
+ * {@link #carryOverDeletions(String)}, before the merge is committed.
+ *
+ * The term frequency thresholds of the segments have been applied when they were written, so the merged segment is
+ * written without thresholds. All files of the segments are read through the rate limiter, if there is one.
+ */
+public class SegmentMerger
+{
+	private String directory;
+	private IORateLimiter rateLimiter; // null: merges are not throttled
+	private File tmpDirectory;
+
+	private long bytesRead = 0;
+	private long bytesWritten = 0;
+
+	private ArrayList<String> mergedSegments = new ArrayList<String>(); // the segments of the last merge
+	private ArrayList<LiveDocs> mergedLiveDocs = new ArrayList<LiveDocs>(); // their live docs when the merge started
+	private ArrayList<int[]> docIDMaps = new ArrayList<int[]>(); // their docIDs -> docIDs of the merged segment, 0 if deleted
+	private int mergedNumberOfDocuments;
+
+	/**
+	 * @param _directory The directory of the index, e.g. "output/stemming/".
+	 * @param _rateLimiter Limits the rate at which the segments are read, null for no limit.
+	 * @param _tmpDirectory The directory of the block matrices and the document table of the merge, which is deleted
+	 * afterwards. Merges that run at the same time need different directories.
+	 */
+	public SegmentMerger(String _directory, IORateLimiter _rateLimiter, File _tmpDirectory)
+	{
+		this.directory = _directory;
+		this.rateLimiter = _rateLimiter;
+		this.tmpDirectory = _tmpDirectory;
+	}
+
+	/**
+	 * Merges the given segments into a new segment. The manifest is not changed.
+	 *
+	 * @param manifest The segments of the index.
+	 * @param first The position of the first segment to merge.
+	 * @param count The number of segments to merge.
+	 * @param segmentName The name of the new segment.
+	 * @return The number of documents of the new segment, i.e. the number of live documents of the merged segments.
+	 * @throws IOException If a segment cannot be read or the new segment cannot be written. Files of the new segment
+	 * written so far are deleted.
+	 */
+	public int merge(SegmentManifest manifest, int first, int count, String segmentName) throws IOException
+	{
+		mergedSegments.clear();
+		mergedLiveDocs.clear();
+		docIDMaps.clear();
+		tmpDirectory.mkdirs();
+		DocumentTable documents = new DocumentTable(tmpDirectory);
+		ArrayList<File> blockMatrixFiles = new ArrayList<File>();
+		try
+		{
+			documents.open();
+
+			Vocabulary vocabulary = new Vocabulary(65536); // will grow as needed
+			BlockMatrix blockMatrix = new BlockMatrix(BlockIndexer.BLOCK_SIZE_IN_BYTES / BlockIndexer.BYTES_PER_BLOCK_ENTRY);
+			long numberOfTokens = 0;
+			boolean headersSkipped = false;
+
+			int docIDBase = 0;
+			for (int segment = first; segment < first + count; segment++)
+			{
+				String segmentToMerge = manifest.getSegmentName(segment);
+				File statisticsFile = new File(directory + segmentToMerge + ".stat");
+				CollectionStatistics segmentStatistics = new CollectionStatistics();
+				segmentStatistics.readFromFile(statisticsFile);
+				bytesRead += statisticsFile.length();
+				numberOfTokens += segmentStatistics.getNumberOfTokens();
+				headersSkipped |= segmentStatistics.isHeadersSkipped();
+
+				LiveDocs liveDocs = LiveDocs.read(directory, segmentToMerge, manifest.getNumberOfDocuments(segment));
+				int[] docIDMap = new int[liveDocs.getNumberOfDocuments() + 1];
+				for (int docID = 1; docID <= liveDocs.getNumberOfDocuments(); docID++)
+				{
+					if (liveDocs.isLive(docID))
+					{
+						docIDMap[docID] = ++docIDBase;
+					}
+				}
+				mergedSegments.add(segmentToMerge);
+				mergedLiveDocs.add(liveDocs);
+				docIDMaps.add(docIDMap);
+
+				boolean documentsAdded = addDocuments(segmentToMerge, docIDMap, documents);
+				numberOfTokens -= readRows(segmentToMerge, docIDMap, liveDocs.getNumberOfDeletedDocuments() > 0, vocabulary, blockMatrix, blockMatrixFiles, documentsAdded ? null : documents);
+			}
+			if (blockMatrix.getNumberOfRows() > 0)
+			{
+				writeBlockMatrix(blockMatrix, blockMatrixFiles);
+			}
+			blockMatrix = null;
+			documents.finish();
+
+			int numberOfDocuments = docIDBase;
+			if (numberOfDocuments == 0)
+			{
+				throw new IOException("The segments to merge do not contain any live documents.");
+			}
+			mergedNumberOfDocuments = numberOfDocuments;
+			vocabulary.setTotalNumberOfDocuments(numberOfDocuments);
+			CollectionStatistics collectionStatistics = new CollectionStatistics(numberOfDocuments, numberOfTokens, vocabulary.size(), numberOfTokens / numberOfDocuments);
+			collectionStatistics.setHeadersSkipped(headersSkipped);
+
+			if (!new BlockIndexer().writeIndex(directory, new ThresholdVariant(segmentName, 0, Integer.MAX_VALUE), vocabulary, collectionStatistics, blockMatrixFiles, documents))
+			{
+				throw new IOException("Error writing the merged segment " + directory + segmentName + ".");
+			}
+			for (File file : SegmentManifest.getSegmentFiles(directory, segmentName))
+			{
+				bytesWritten += file.length();
+			}
+			return numberOfDocuments;
+		}
+		catch (IOException e)
+		{
+			for (File file : SegmentManifest.getSegmentFiles(directory, segmentName))
+			{
+				file.delete();
+			}
+			throw e;
+		}
+		finally
+		{
+			for (File file : tmpDirectory.listFiles())
+			{
+				file.delete();
+			}
+			tmpDirectory.delete();
+		}
+	}
+
+	/**
+	 * Marks the documents of the merged segments that were deleted after the last merge started in the live docs of
+	 * the merged segment. Has to be called under the lock of the manifests, right before the merge is committed, so no
+	 * deletion gets lost.
+	 *
+	 * @param segmentName The name of the merged segment.
+	 * @return The number of documents deleted in the merged segment.
+	 */
+	public int carryOverDeletions(String segmentName) throws IOException
+	{
+		LiveDocs mergedSegmentLiveDocs = null;
+		for (int i = 0; i < mergedSegments.size(); i++)
+		{
+			LiveDocs before = mergedLiveDocs.get(i);
+			LiveDocs now = LiveDocs.read(directory, mergedSegments.get(i), before.getNumberOfDocuments());
+			if (now.getNumberOfDeletedDocuments() == before.getNumberOfDeletedDocuments())
+			{
+				continue; // documents cannot be undeleted
+			}
+			int[] docIDMap = docIDMaps.get(i);
+			for (int docID = now.nextDeletedDocument(1); docID >= 0; docID = now.nextDeletedDocument(docID + 1))
+			{
+				if (before.isLive(docID))
+				{
+					if (mergedSegmentLiveDocs == null)
+					{
+						mergedSegmentLiveDocs = new LiveDocs(mergedNumberOfDocuments);
+					}
+					mergedSegmentLiveDocs.delete(docIDMap[docID]);
+				}
+			}
+		}
+		if (mergedSegmentLiveDocs == null)
+		{
+			return 0;
+		}
+		mergedSegmentLiveDocs.write(directory, segmentName);
+		return mergedSegmentLiveDocs.getNumberOfDeletedDocuments();
+	}
+
+	/**
+	 * Adds the live documents of the given segment to the document table, if the segment has a meta data file.
+	 *
+	 * @param docIDMap The docID in the merged segment of every docID of the segment, 0 for deleted documents.
+	 * @return Whether the documents were added.
+	 */
+	private boolean addDocuments(String segment, int[] docIDMap, DocumentTable documents) throws IOException
+	{
+		if (!DocumentMetadataStore.exists(directory, segment))
+		{
+			return false;
+		}
+		DocumentMetadataStore metadataStore = DocumentMetadataStore.open(directory, segment);
+		long length = new File(directory + segment + DocumentMetadataWriter.METADATA_SUFFIX).length();
+		bytesRead += length;
+		if (rateLimiter != null)
+		{
+			rateLimiter.acquire(length); // the file is mapped, it is read as a whole
+		}
+		for (int docID = 1; docID < docIDMap.length; docID++)
+		{
+			String category = metadataStore.getDocumentClass(docID);
+			if (category != null && docIDMap[docID] > 0)
+			{
+				Document document = new Document(docIDMap[docID], category, metadataStore.getDocumentName(docID));
+				document.setHeaderLength(metadataStore.getHeaderLength(docID));
+				documents.add(document);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the rows of the live documents of the plain tf file of the given segment to the block matrix, writing it to
+	 * disk whenever it is full.
+	 *
+	 * @param docIDMap The docID in the merged segment of every docID of the segment, 0 for deleted documents.
+	 * @param hasDeletions Whether the segment has deleted documents. Their terms are only added to the merged
+	 * vocabulary if they occur in a live document.
+	 * @param documents The document table to add the documents of the rows to, null if they have been added already.
+	 * @return The number of tokens of the deleted documents, as far as they are recorded in the rows.
+	 */
+	private long readRows(String segment, int[] docIDMap, boolean hasDeletions, Vocabulary vocabulary, BlockMatrix blockMatrix, ArrayList<File> blockMatrixFiles, DocumentTable documents) throws IOException
+	{
+		long deletedTokens = 0;
+		File file = new File(directory + segment + "_tf.arff.gz");
+		bytesRead += file.length();
+		InputStream in = new FileInputStream(file);
+		if (rateLimiter != null)
+		{
+			in = rateLimiter.wrap(in);
+		}
+		Scanner scanner = new Scanner(new GZIPInputStream(in));
+		try
+		{
+			ArrayList<String> terms = readVocabulary(scanner);
+			int[] termIDs = new int[terms.size()]; // segment termID -> merged termID, -1 if not added yet
+			for (int termID = 0; termID < termIDs.length; termID++)
+			{
+				termIDs[termID] = hasDeletions ? -1 : vocabulary.addSilent(terms.get(termID)).getTermID();
+			}
+
+			ArffDocumentRow row = new ArffDocumentRow();
+			while (scanner.hasNext())
+			{
+				String line = scanner.nextLine();
+				if (!row.parse(line, true))
+				{
+					throw new IOException("Invalid line in " + directory + segment + "_tf.arff.gz: " + line);
+				}
+				if (row.docID >= docIDMap.length)
+				{
+					throw new IOException("Invalid docID " + row.docID + " in " + directory + segment + "_tf.arff.gz, the segment has " + (docIDMap.length - 1) + " documents.");
+				}
+				int docID = docIDMap[row.docID];
+				if (docID == 0) // deleted
+				{
+					deletedTokens += row.documentLength;
+					continue;
+				}
+				if (documents != null)
+				{
+					documents.add(new Document(docID, row.getDocumentClass(), row.getDocumentName()));
+				}
+
+				blockMatrix.addDoc(docID);
+				for (int i = 0; i < row.numberOfEntries; i++)
+				{
+					int termID = termIDs[row.termIDs[i]];
+					if (termID < 0)
+					{
+						termID = vocabulary.addSilent(terms.get(row.termIDs[i])).getTermID();
+						termIDs[row.termIDs[i]] = termID;
+					}
+					VocabularyEntry entry = vocabulary.get(termID);
+					entry.increaseDocFrequencyByOne(docID);
+					for (int tf = (int)row.values[i]; tf > 0; tf--) // the block matrix counts occurrences
+					{
+						blockMatrix.add(termID);
+						entry.increaseCollectionFrequencyByOne();
+					}
+				}
+
+				if ((long)blockMatrix.size() * BlockIndexer.BYTES_PER_BLOCK_ENTRY >= BlockIndexer.BLOCK_SIZE_IN_BYTES) // only full rows are written, so no document spans two blocks
+				{
+					writeBlockMatrix(blockMatrix, blockMatrixFiles);
+				}
+			}
+		}
+		finally
+		{
+			scanner.close();
+		}
+		return deletedTokens;
+	}
+
+	/**
+	 * Reads the vocabulary from the ARFF header of a segment, leaving the scanner at the first row.
+	 *
+	 * @return The terms of the segment, indexed by termID.
+	 */
+	private static ArrayList<String> readVocabulary(Scanner scanner)
+	{
+		ArrayList<String> terms = new ArrayList<String>(1024);
+		int attributeCounter = 0;
+		while (scanner.hasNext())
+		{
+			String line = scanner.nextLine();
+			if (line.equalsIgnoreCase("@data"))
+			{
+				break;
+			}
+			if (line.regionMatches(true, 0, "@attribute ", 0, 11))
+			{
+				if (attributeCounter >= IIndexer.META_FIELD_COUNT) // the terms follow the meta fields
+				{
+					terms.add(line.substring(11, line.length() - 8)); // - length of " NUMERIC" == 8
+				}
+				attributeCounter++;
+			}
+		}
+		return terms;
+	}
+
+	private void writeBlockMatrix(BlockMatrix blockMatrix, ArrayList<File> blockMatrixFiles) throws IOException
+	{
+		File blockOutputFile = new File(tmpDirectory, "merge" + blockMatrixFiles.size() + ".mat");
+		blockMatrixFiles.add(blockOutputFile);
+		blockMatrix.sortRows();
+		new BufferedBlockMatrixWriter(blockOutputFile, blockMatrix).writeToFile();
+		blockMatrix.clear();
+	}
+
+	/**
+	 * @return The number of bytes of the segments read by this merger.
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/**
+	 * @return The number of bytes of the segment written by this merger.
+	 */
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+}
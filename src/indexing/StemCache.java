@@ -0,0 +1,198 @@
+package indexing;
+
+/**
+ * A bounded cache from surface forms to their stems, put in front of the Porter {@link Stemmer}. Term frequencies are
+ * Zipfian, so a few thousand surface forms make up most of the tokens of a collection, and stemming each of them once
+ * instead of once per occurrence removes most of the cost of stemming.
+ *
+ * The cache is keyed on the raw characters of a term (before lower casing), so a term given as a slice of a char array
+ * can be looked up without creating a String. It is direct mapped: every surface form has exactly one slot, chosen by
+ * its hash, and a miss replaces whatever was in that slot. This needs no bookkeeping per hit, and frequent forms that
+ * get replaced are put back on their next occurrence. Terms longer than {@link #MAX_TERM_LENGTH} are not cached, which
+ * bounds the memory of the cache to roughly <code>size * 4 * MAX_TERM_LENGTH</code> bytes.
+ *
+ * Note that a StemCache is NOT thread safe.
+ */
+public class StemCache
+{
+	public static final int DEFAULT_SIZE = 16 * 1024; // number of slots
+	public static final int MAX_TERM_LENGTH = 32; // longer terms are stemmed without being cached
+
+	private Stemmer stemmer;
+	private int mask; // size - 1, the size is a power of two
+
+	private int[] hashes;
+	private char[][] keys; // the surface forms, allocated on first use of a slot and then reused
+	private int[] keyLengths; // 0 for empty slots
+	private char[][] stems;
+	private int[] stemLengths;
+	private String[] stemStrings; // created on the first call of stemToString() for the slot
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param _size The number of cached surface forms, rounded up to the next power of two. 0 disables the cache, every
+	 * term is then passed to the stemmer.
+	 */
+	public StemCache(int _size)
+	{
+		if (_size < 0)
+		{
+			throw new IllegalArgumentException("The size of the stem cache must not be negative: " + _size);
+		}
+
+		this.stemmer = new Stemmer();
+
+		int size = 0;
+		if (_size > 0)
+		{
+			size = 1;
+			while (size < _size)
+			{
+				size *= 2;
+			}
+		}
+		this.mask = size - 1;
+
+		hashes = new int[size];
+		keys = new char[size][];
+		keyLengths = new int[size];
+		stems = new char[size][];
+		stemLengths = new int[size];
+		stemStrings = new String[size];
+	}
+
+	/**
+	 * Stems the given term (converting it to lower case) and writes the stem to <code>target</code>. Since stemming
+	 * never makes a term longer, <code>target</code> must have room for <code>length</code> characters.
+	 *
+	 * @return The length of the stem.
+	 */
+	public int stem(char[] chars, int offset, int length, char[] target)
+	{
+		int slot = lookup(chars, offset, length);
+		if (slot < 0)
+		{
+			System.arraycopy(stemmer.getResultBuffer(), 0, target, 0, stemmer.getResultLength());
+			return stemmer.getResultLength();
+		}
+		System.arraycopy(stems[slot], 0, target, 0, stemLengths[slot]);
+		return stemLengths[slot];
+	}
+
+	/**
+	 * Same as {@link #stem(char[], int, int, char[])}, but returns the stem as a String. The Strings are cached as well.
+	 */
+	public String stemToString(char[] chars, int offset, int length)
+	{
+		int slot = lookup(chars, offset, length);
+		if (slot < 0)
+		{
+			return stemmer.toString();
+		}
+		if (stemStrings[slot] == null)
+		{
+			stemStrings[slot] = new String(stems[slot], 0, stemLengths[slot]);
+		}
+		return stemStrings[slot];
+	}
+
+	/**
+	 * Finds the slot of the given term, stemming it and filling the slot on a miss.
+	 *
+	 * @return The slot holding the stem of the term, or -1 if the term is not cached, in which case the stem is left in
+	 * the result buffer of the stemmer.
+	 */
+	private int lookup(char[] chars, int offset, int length)
+	{
+		if (mask < 0 || length > MAX_TERM_LENGTH)
+		{
+			misses++;
+			runStemmer(chars, offset, length);
+			return -1;
+		}
+
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++)
+		{
+			hash = 31 * hash + chars[i];
+		}
+		int slot = (hash ^ (hash >>> 16)) & mask;
+
+		if (keyLengths[slot] == length && hashes[slot] == hash && equals(keys[slot], chars, offset, length))
+		{
+			hits++;
+			return slot;
+		}
+
+		misses++;
+		runStemmer(chars, offset, length);
+
+		if (keys[slot] == null)
+		{
+			keys[slot] = new char[MAX_TERM_LENGTH];
+			stems[slot] = new char[MAX_TERM_LENGTH];
+		}
+		System.arraycopy(chars, offset, keys[slot], 0, length);
+		System.arraycopy(stemmer.getResultBuffer(), 0, stems[slot], 0, stemmer.getResultLength());
+		hashes[slot] = hash;
+		keyLengths[slot] = length;
+		stemLengths[slot] = stemmer.getResultLength();
+		stemStrings[slot] = null;
+
+		return slot;
+	}
+
+	private void runStemmer(char[] chars, int offset, int length)
+	{
+		stemmer.add(chars, offset, length); // this will also convert the term to lower case
+		stemmer.stem();
+	}
+
+	private static boolean equals(char[] key, char[] chars, int offset, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			if (key[i] != chars[offset + i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of slots of this cache, 0 if it is disabled.
+	 */
+	public int getSize()
+	{
+		return mask + 1;
+	}
+
+	/**
+	 * @return The number of terms whose stem was found in the cache.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return The number of terms that had to be passed to the stemmer.
+	 */
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return A one line summary of the hits and misses, e.g. for the console output of the indexer.
+	 */
+	public String getStatistics()
+	{
+		long lookups = hits + misses;
+		return "Stem cache (" + getSize() + " slots): " + hits + " hits, " + misses + " misses ("
+				+ (lookups == 0 ? 0 : Math.round(100.0 * hits / lookups)) + "% hits)";
+	}
+}
@@ -0,0 +1,280 @@
+package indexing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the regular files of a tar archive (optionally gzip compressed, i.e. .tar.gz or .tgz) as documents, in the
+ * order they are stored in the archive. Supports ustar archives, including the long file names of GNU tar and the
+ * path records of pax extended headers. Categories and names are those of {@link ZipCollectionReader}.
+ *
+ * Tar archives can only be read sequentially, so unlike with a zip file, every document is read whether it is needed
+ * or not.
+ */
+public class TarCollectionReader implements ICollectionReader
+{
+	public static final int BLOCK_SIZE = 512; // headers and the contents of files are padded to multiples of this
+	public static final int INITIAL_BUFFER_SIZE_IN_BYTES = 64 * 1024; // grows to the size of the largest file
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private DataInputStream in;
+	private boolean closed;
+
+	private byte[] header = new byte[BLOCK_SIZE];
+	private String currentPath;
+	private byte[] content;
+	private int contentLength;
+
+	/**
+	 * Opens the given tar archive. Archives whose name ends with ".gz" or ".tgz" are decompressed on the fly.
+	 *
+	 * @throws IOException If the archive cannot be opened.
+	 */
+	public TarCollectionReader(File _tarFile) throws IOException
+	{
+		InputStream is = new FileInputStream(_tarFile);
+		String name = _tarFile.getName().toLowerCase();
+		if (name.endsWith(".gz") || name.endsWith(".tgz"))
+		{
+			is = new GZIPInputStream(is, 64 * 1024);
+		}
+		in = new DataInputStream(new BufferedInputStream(is, 64 * 1024));
+		content = new byte[INITIAL_BUFFER_SIZE_IN_BYTES];
+	}
+
+	@Override
+	public boolean nextDocument() throws IOException
+	{
+		if (closed)
+		{
+			return false;
+		}
+
+		String longPath = null; // set by a GNU long name or pax header for the next entry
+		while (true)
+		{
+			if (!readHeader())
+			{
+				close();
+				return false;
+			}
+
+			long size = parseSize();
+			if (size < 0 || size > Integer.MAX_VALUE - BLOCK_SIZE)
+			{
+				throw new IOException("Invalid size of tar entry " + parseString(0, 100) + ": " + size);
+			}
+			readContent((int)size);
+
+			byte type = header[156];
+			if (type == 'L') // GNU tar, the content is the name of the next entry
+			{
+				longPath = new String(content, 0, contentLength, UTF8);
+				int end = longPath.indexOf('\0');
+				if (end >= 0)
+				{
+					longPath = longPath.substring(0, end);
+				}
+			}
+			else if (type == 'x') // pax extended header for the next entry
+			{
+				String path = parsePaxPath();
+				if (path != null)
+				{
+					longPath = path;
+				}
+			}
+			else if (type == '0' || type == 0 || type == '7') // regular files
+			{
+				if (longPath != null)
+				{
+					currentPath = longPath;
+				}
+				else
+				{
+					String prefix = parseString(345, 155);
+					currentPath = parseString(0, 100);
+					if (prefix.length() > 0)
+					{
+						currentPath = prefix + "/" + currentPath;
+					}
+				}
+				return true;
+			}
+			else // directories, links, global pax headers, ...
+			{
+				longPath = null;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next header block.
+	 *
+	 * @return False if the end of the archive has been reached.
+	 */
+	private boolean readHeader() throws IOException
+	{
+		try
+		{
+			in.readFully(header);
+		}
+		catch (EOFException eofe)
+		{
+			return false; // archive without end marker
+		}
+		for (int i = 0; i < BLOCK_SIZE; i++)
+		{
+			if (header[i] != 0)
+			{
+				return true;
+			}
+		}
+		return false; // an empty block marks the end of the archive
+	}
+
+	/**
+	 * Reads the given number of bytes into <code>content</code> and skips the padding of the last block.
+	 */
+	private void readContent(int size) throws IOException
+	{
+		if (size > content.length)
+		{
+			content = new byte[size];
+		}
+		in.readFully(content, 0, size);
+		contentLength = size;
+
+		int padding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+		while (padding > 0)
+		{
+			int skipped = in.skipBytes(padding);
+			if (skipped <= 0)
+			{
+				throw new EOFException("Unexpected end of the tar archive");
+			}
+			padding -= skipped;
+		}
+	}
+
+	/**
+	 * @return The size field of the current header, either octal or (GNU tar, for large files) base-256.
+	 */
+	private long parseSize()
+	{
+		if ((header[124] & 0x80) != 0)
+		{
+			long size = 0;
+			for (int i = 125; i < 136; i++)
+			{
+				size = (size << 8) | (header[i] & 0xFF);
+			}
+			return size;
+		}
+
+		long size = 0;
+		for (int i = 124; i < 136; i++)
+		{
+			byte b = header[i];
+			if (b >= '0' && b <= '7')
+			{
+				size = size * 8 + (b - '0');
+			}
+			else if (b == 0 || (b == ' ' && size > 0))
+			{
+				break;
+			}
+		}
+		return size;
+	}
+
+	private String parseString(int offset, int maxLength)
+	{
+		int end = offset;
+		while (end < offset + maxLength && header[end] != 0)
+		{
+			end++;
+		}
+		return new String(header, offset, end - offset, UTF8);
+	}
+
+	/**
+	 * @return The path record of the pax extended header in <code>content</code> or null if it has none. The records
+	 * have the form "&lt;length&gt; &lt;key&gt;=&lt;value&gt;\n", where length is the number of bytes of the record.
+	 */
+	private String parsePaxPath()
+	{
+		int pos = 0;
+		while (pos < contentLength)
+		{
+			int length = 0;
+			int keyStart = pos;
+			while (keyStart < contentLength && content[keyStart] >= '0' && content[keyStart] <= '9')
+			{
+				length = length * 10 + (content[keyStart++] - '0');
+			}
+			keyStart++; // the space
+			if (length <= 0 || pos + length > contentLength)
+			{
+				return null; // malformed
+			}
+			String record = new String(content, keyStart, pos + length - 1 - keyStart, UTF8);
+			if (record.startsWith("path="))
+			{
+				return record.substring(5);
+			}
+			pos += length;
+		}
+		return null;
+	}
+
+	@Override
+	public String getCategory()
+	{
+		return ZipCollectionReader.categoryOf(currentPath);
+	}
+
+	@Override
+	public String getName()
+	{
+		return ZipCollectionReader.nameOf(currentPath);
+	}
+
+	@Override
+	public byte[] getContent()
+	{
+		return content;
+	}
+
+	@Override
+	public int getContentLength()
+	{
+		return contentLength;
+	}
+
+	@Override
+	public void close()
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		try
+		{
+			in.close();
+		}
+		catch (IOException ioe)
+		{
+			// ignore
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package indexing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The term rules of the indexer in one place: which characters start and continue a term, which terms are too short
+ * to be kept and how a term is normalized (lower case, optionally stemmed). {@link ZipTokenStream} applies these rules
+ * to the documents of a collection, {@link #analyze(Reader)} applies them to arbitrary text held in main memory, e.g.
+ * a query typed by a user, so both end up with the same terms.
+ *
+ * Stems are looked up in a {@link StemCache} first, so each surface form only passes the Stemmer once (as long as it
+ * stays in the cache).
+ *
+ * Note that a TermAnalyzer is NOT thread safe, since it reuses its StemCache and its term buffer.
+ */
+public class TermAnalyzer
+{
+	public static final int MIN_TERM_LENGTH = 4; // shorter terms are discarded
+
+	private boolean useStemming;
+	private StemCache stemCache;
+	private char[] termBuffer; // see normalizeToBuffer()
+
+	/**
+	 * Creates an analyzer with a stem cache of the default size.
+	 */
+	public TermAnalyzer(boolean _useStemming)
+	{
+		this(_useStemming, StemCache.DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param _useStemming Whether terms are stemmed.
+	 * @param _stemCacheSize The number of surface forms kept in the stem cache, 0 to stem every term.
+	 */
+	public TermAnalyzer(boolean _useStemming, int _stemCacheSize)
+	{
+		this.useStemming = _useStemming;
+		this.stemCache = new StemCache(_useStemming ? _stemCacheSize : 0);
+		this.termBuffer = new char[64];
+	}
+
+	/**
+	 * @return Whether terms are stemmed.
+	 */
+	public boolean usesStemming()
+	{
+		return useStemming;
+	}
+
+	/**
+	 * @return Whether a term may start with the given character. Every term starts with a proper letter.
+	 */
+	public static boolean isTermStart(char currentChar)
+	{
+		return Character.isLetter((int)currentChar);
+	}
+
+	/**
+	 * @param currentChar The character following the previous character of a term.
+	 * @param nextChar The character after <code>currentChar</code> (any delimiter at the end of the text).
+	 * @return Whether <code>currentChar</code> continues the term. Letters, digits and '@' do, '.' and '-' only if
+	 * they are followed by a letter.
+	 */
+	public static boolean isTermPart(char currentChar, char nextChar)
+	{
+		return Character.isLetter((int)currentChar) || Character.isDigit((int)currentChar) || currentChar == '@' || (currentChar == '.' && Character.isLetter((int)nextChar)) || (currentChar == '-' && Character.isLetter((int)nextChar));
+	}
+
+	/**
+	 * Converts the given characters to a term: lower case and, if stemming is used, stemmed.
+	 */
+	public String normalize(char[] chars, int offset, int length)
+	{
+		if (useStemming)
+		{
+			return stemCache.stemToString(chars, offset, length); // this will also convert the term to lower case
+		}
+		return new String(chars, offset, length).toLowerCase();
+	}
+
+	/**
+	 * Same as {@link #normalize(char[], int, int)}, but writes the term to the buffer returned by
+	 * {@link #getTermBuffer()} instead of creating a String. The buffer is overwritten by the next call, so the
+	 * indexer can process a token without any allocation. Terms that contain non-ASCII characters are lower cased
+	 * via String.toLowerCase() like before, since these may change their length.
+	 *
+	 * @return The length of the term, which starts at position 0 of the term buffer.
+	 */
+	public int normalizeToBuffer(char[] chars, int offset, int length)
+	{
+		if (termBuffer.length < length)
+		{
+			termBuffer = new char[length * 2];
+		}
+
+		if (useStemming)
+		{
+			return stemCache.stem(chars, offset, length, termBuffer); // this will also convert the term to lower case
+		}
+
+		for (int i = 0; i < length; i++)
+		{
+			char c = chars[offset + i];
+			if (c >= 128)
+			{
+				String term = new String(chars, offset, length).toLowerCase();
+				return copyToTermBuffer(term.toCharArray(), 0, term.length());
+			}
+			termBuffer[i] = (c >= 'A' && c <= 'Z') ? (char)(c + ('a' - 'A')) : c;
+		}
+		return length;
+	}
+
+	private int copyToTermBuffer(char[] chars, int offset, int length)
+	{
+		if (termBuffer.length < length)
+		{
+			termBuffer = new char[length * 2];
+		}
+		System.arraycopy(chars, offset, termBuffer, 0, length);
+		return length;
+	}
+
+	/**
+	 * @return The stem cache of this analyzer, e.g. to report its hits and misses.
+	 */
+	public StemCache getStemCache()
+	{
+		return stemCache;
+	}
+
+	/**
+	 * @return The buffer written by {@link #normalizeToBuffer(char[], int, int)}.
+	 */
+	public char[] getTermBuffer()
+	{
+		return termBuffer;
+	}
+
+	/**
+	 * Splits the given text into terms.
+	 */
+	public ArrayList<String> analyze(String text)
+	{
+		return analyze(text.toCharArray(), text.length(), null);
+	}
+
+	/**
+	 * Splits the given text into terms and adds the position of every term to <code>positions</code>: the number of
+	 * words before it, including the discarded ones, like {@link ITokenCursor#getPosition()} for the documents of a
+	 * collection.
+	 */
+	public ArrayList<String> analyze(String text, List<Integer> positions)
+	{
+		return analyze(text.toCharArray(), text.length(), positions);
+	}
+
+	/**
+	 * Reads the given stream to its end and splits it into terms. The text is kept in main memory, so this is meant
+	 * for queries and single documents, not for whole collections.
+	 *
+	 * @throws IOException
+	 */
+	public ArrayList<String> analyze(Reader in) throws IOException
+	{
+		char[] text = new char[1024];
+		int length = 0;
+		int read;
+		while ((read = in.read(text, length, text.length - length)) > -1)
+		{
+			length += read;
+			if (length == text.length)
+			{
+				char[] newText = new char[text.length * 2];
+				System.arraycopy(text, 0, newText, 0, length);
+				text = newText;
+			}
+		}
+		return analyze(text, length, null);
+	}
+
+	private ArrayList<String> analyze(char[] text, int length, List<Integer> positions)
+	{
+		ArrayList<String> terms = new ArrayList<String>();
+		int wordsRead = 0;
+
+		int pos = 0;
+		while (pos < length)
+		{
+			if (!isTermStart(text[pos]))
+			{
+				pos++;
+				continue;
+			}
+
+			int end = pos + 1;
+			while (end < length && isTermPart(text[end], end + 1 < length ? text[end + 1] : ' '))
+			{
+				end++;
+			}
+
+			if (end - pos >= MIN_TERM_LENGTH)
+			{
+				terms.add(normalize(text, pos, end - pos));
+				if (positions != null)
+				{
+					positions.add(wordsRead);
+				}
+			}
+			// else: discard short words, but count them
+			wordsRead++;
+			pos = end + 1;
+		}
+
+		return terms;
+	}
+}
@@ -0,0 +1,53 @@
+package indexing;
+
+/**
+ * One index built from a collection: its name and the term frequency thresholds applied to its entries. Several
+ * variants of a collection (e.g. "large", "medium" and "small") can be built by one run of the {@link BlockIndexer},
+ * see {@link BlockIndexer#addThresholdVariant(String, int, int)}.
+ */
+public class ThresholdVariant
+{
+	private String indexName;
+	private int lowTfThreshold;
+	private int highTfThreshold;
+
+	/**
+	 * @param _indexName The name of the index, used to name its files.
+	 * @param _lowTfThreshold Entries with a term frequency up to this value are removed, 0 keeps all.
+	 * @param _highTfThreshold Entries with a term frequency of this value and above are removed, Integer.MAX_VALUE
+	 * keeps all.
+	 */
+	public ThresholdVariant(String _indexName, int _lowTfThreshold, int _highTfThreshold)
+	{
+		if (_lowTfThreshold < 0 || _highTfThreshold < _lowTfThreshold)
+		{
+			throw new IllegalArgumentException("Invalid thresholds for index " + _indexName + ": " + _lowTfThreshold + ", " + _highTfThreshold);
+		}
+		this.indexName = _indexName;
+		this.lowTfThreshold = _lowTfThreshold;
+		this.highTfThreshold = _highTfThreshold;
+	}
+
+	public String getIndexName()
+	{
+		return indexName;
+	}
+
+	public int getLowTfThreshold()
+	{
+		return lowTfThreshold;
+	}
+
+	public int getHighTfThreshold()
+	{
+		return highTfThreshold;
+	}
+
+	/**
+	 * @return Whether any entries are removed by the thresholds.
+	 */
+	public boolean hasThresholds()
+	{
+		return lowTfThreshold > 0 || highTfThreshold < Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,154 @@
+package indexing;
+
+import java.io.File;
+import java.io.IOException;
+
+import dao.CollectionStatistics;
+import dao.DocumentTable;
+import dao.DocumentTermMatrix;
+import dao.Vocabulary;
+
+/**
+ * Writes the files of one {@link ThresholdVariant} of an index while the block matrices are merged: the tf and
+ * tf-idf ARFF files, the forward index, and once the merge is done the collection statistics and the document meta
+ * data. All variants of an analysis share the vocabulary and the document table, they only differ in the entries
+ * removed by their thresholds.
+ */
+public class ThresholdVariantWriter
+{
+	private ThresholdVariant variant;
+	private String directory;
+	private Vocabulary vocabulary;
+	private DocumentTable documents;
+
+	private File idfIndex;
+	private File tfIndex;
+	private BufferedArffMatrixWriter idfArffWriter;
+	private BufferedArffMatrixWriter tfArffWriter;
+	private ForwardIndexWriter forwardIndexWriter;
+
+	private int thresholdedItemsCounter = 0;
+
+	/**
+	 * Creates the writer, does not write to the disk.
+	 *
+	 * @param _directory The output directory of the analysis (e.g. "output/stemming/").
+	 */
+	public ThresholdVariantWriter(ThresholdVariant _variant, String _directory, Vocabulary _vocabulary, DocumentTable _documents)
+	{
+		this.variant = _variant;
+		this.directory = _directory;
+		this.vocabulary = _vocabulary;
+		this.documents = _documents;
+
+		idfIndex = new File(directory + variant.getIndexName() + "_tfidf.arff.gz");
+		tfIndex = new File(directory + variant.getIndexName() + "_tf.arff.gz");
+		idfArffWriter = new BufferedArffMatrixWriter(idfIndex, vocabulary, documents);
+		tfArffWriter = new BufferedArffMatrixWriter(tfIndex, vocabulary, documents);
+		forwardIndexWriter = new ForwardIndexWriter(directory, variant.getIndexName());
+	}
+
+	public ThresholdVariant getVariant()
+	{
+		return variant;
+	}
+
+	/**
+	 * Opens the files and writes the ARFF headers.
+	 *
+	 * @throws IOException
+	 */
+	public void init() throws IOException
+	{
+		idfArffWriter.init(); // open File and write Header + vocabulary
+		tfArffWriter.init();
+		forwardIndexWriter.init();
+	}
+
+	/**
+	 * Writes the next part of the merged matrix. The forward index gets the raw term frequencies, the ARFF files the
+	 * entries left after thresholding. Note that the matrix is modified (thresholds, tf-idf values), so every variant
+	 * needs a copy of its own.
+	 *
+	 * @throws IOException
+	 */
+	public void writeNextPart(DocumentTermMatrix matrix) throws IOException
+	{
+		forwardIndexWriter.writeNextPart(matrix); // raw term frequencies, before thresholding
+		if (variant.hasThresholds())
+		{
+			thresholdedItemsCounter += matrix.applyTfThresholds(variant.getLowTfThreshold(), variant.getHighTfThreshold());
+		}
+		tfArffWriter.writeNextPart(matrix);
+		matrix.calculateIdfs(vocabulary);
+		idfArffWriter.writeNextPart(matrix);
+	}
+
+	/**
+	 * Closes the files.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		tfArffWriter.close();
+		idfArffWriter.close();
+		forwardIndexWriter.close();
+	}
+
+	/**
+	 * Closes the files after an error, ignoring any further errors.
+	 */
+	public void abort()
+	{
+		try
+		{
+			close();
+		}
+		catch (IOException e)
+		{
+		}
+	}
+
+	/**
+	 * @return The number of entries removed by the thresholds so far.
+	 */
+	public int getThresholdedItemsCounter()
+	{
+		return thresholdedItemsCounter;
+	}
+
+	/**
+	 * Writes the collection statistics (those of the analysis, minus the entries removed by the thresholds) and the
+	 * document meta data of the variant. Has to be called after {@link #close()}.
+	 *
+	 * @param analysisStatistics The statistics of the analysis before thresholding.
+	 */
+	public void writeMetadata(CollectionStatistics analysisStatistics)
+	{
+		long numberOfTokens = analysisStatistics.getNumberOfTokens() - thresholdedItemsCounter;
+		CollectionStatistics collectionStatistics = new CollectionStatistics(analysisStatistics.getNumberOfDocuments(), numberOfTokens,
+				analysisStatistics.getNumberOfUniqueTerms(), numberOfTokens / analysisStatistics.getNumberOfDocuments());
+		collectionStatistics.setHeadersSkipped(analysisStatistics.isHeadersSkipped());
+		collectionStatistics.setFile(new File(directory + variant.getIndexName() + ".stat"));
+		collectionStatistics.writeToFile();
+
+		try
+		{
+			DocumentMetadataWriter.write(directory, variant.getIndexName(), documents);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Error writing the document meta data to " + directory + variant.getIndexName() + DocumentMetadataWriter.METADATA_SUFFIX + "! -- Stack Trace follows.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return The files written by this writer, for error messages.
+	 */
+	public String getFileNames()
+	{
+		return idfIndex.getPath() + ", " + tfIndex.getPath() + ", " + directory + variant.getIndexName() + ForwardIndexWriter.FORWARD_INDEX_SUFFIX;
+	}
+}
@@ -0,0 +1,113 @@
+package indexing;
+
+import java.util.Set;
+
+/**
+ * Decides which segments of an index are merged (see {@link MergeScheduler}). Segments are put into tiers by their
+ * number of documents: tier 0 holds segments of up to {@link #getFloorSegmentSize()} documents, every further tier
+ * segments up to {@link #getSegmentsPerTier()} times larger. Once an index has <code>segmentsPerTier</code>
+ * consecutive segments of the same tier, they are merged into one segment of the next tier, so the number of segments
+ * grows only logarithmically with the size of the index, and every document is merged about once per tier.
+ *
+ * Only consecutive segments are merged, since the docIDs of the documents of an index follow the order of its
+ * segments and a merge must not change the order of the documents. Of all candidate merges, the one with the fewest
+ * documents is chosen. Segments are sized by their live documents, so a segment with many deletions (see
+ * {@link LiveDocs}) falls back to a lower tier and is merged, and its deleted documents purged, sooner.
+ */
+public class TieredMergePolicy
+{
+	public static final int DEFAULT_SEGMENTS_PER_TIER = 4;
+	public static final int DEFAULT_FLOOR_SEGMENT_SIZE = 1000; // number of documents
+
+	private int segmentsPerTier = DEFAULT_SEGMENTS_PER_TIER;
+	private int floorSegmentSize = DEFAULT_FLOOR_SEGMENT_SIZE;
+	private int maxMergedSegmentSize = Integer.MAX_VALUE;
+
+	/**
+	 * Sets the number of segments of a tier that are merged into one segment of the next tier.
+	 */
+	public void setSegmentsPerTier(int _segmentsPerTier)
+	{
+		if (_segmentsPerTier < 2)
+		{
+			throw new IllegalArgumentException("At least two segments per tier are needed: " + _segmentsPerTier);
+		}
+		this.segmentsPerTier = _segmentsPerTier;
+	}
+
+	public int getSegmentsPerTier()
+	{
+		return segmentsPerTier;
+	}
+
+	/**
+	 * Sets the number of documents up to which segments are considered to be of the same (smallest) size.
+	 */
+	public void setFloorSegmentSize(int _floorSegmentSize)
+	{
+		if (_floorSegmentSize < 1)
+		{
+			throw new IllegalArgumentException("The floor segment size must be positive: " + _floorSegmentSize);
+		}
+		this.floorSegmentSize = _floorSegmentSize;
+	}
+
+	public int getFloorSegmentSize()
+	{
+		return floorSegmentSize;
+	}
+
+	/**
+	 * Sets the maximum number of documents of a merged segment, larger segments are not created by merges.
+	 */
+	public void setMaxMergedSegmentSize(int _maxMergedSegmentSize)
+	{
+		this.maxMergedSegmentSize = _maxMergedSegmentSize;
+	}
+
+	/**
+	 * @return The tier of a segment with the given number of documents.
+	 */
+	public int getTier(int numberOfDocuments)
+	{
+		int tier = 0;
+		long maxSize = floorSegmentSize;
+		while (numberOfDocuments > maxSize)
+		{
+			maxSize *= segmentsPerTier;
+			tier++;
+		}
+		return tier;
+	}
+
+	/**
+	 * Finds the next merge of the given index.
+	 *
+	 * @param manifest The segments of the index.
+	 * @param excludedSegments Segments that must not be merged, e.g. because they are being merged already.
+	 * @return The position of the first segment to merge and the number of segments, null if no merge is needed.
+	 */
+	public int[] findMerge(SegmentManifest manifest, Set<String> excludedSegments)
+	{
+		int[] bestMerge = null;
+		long bestSize = Long.MAX_VALUE;
+
+		for (int first = 0; first + segmentsPerTier <= manifest.size(); first++)
+		{
+			int tier = getTier(manifest.getNumberOfLiveDocuments(first));
+			long size = 0;
+			boolean candidate = true;
+			for (int i = first; i < first + segmentsPerTier && candidate; i++)
+			{
+				candidate = !excludedSegments.contains(manifest.getSegmentName(i)) && getTier(manifest.getNumberOfLiveDocuments(i)) == tier;
+				size += manifest.getNumberOfLiveDocuments(i);
+			}
+			if (candidate && size <= maxMergedSegmentSize && size < bestSize)
+			{
+				bestMerge = new int[] { first, segmentsPerTier };
+				bestSize = size;
+			}
+		}
+		return bestMerge;
+	}
+}
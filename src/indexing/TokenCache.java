@@ -0,0 +1,100 @@
+package indexing;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Names and identifies the token caches of collections, see {@link TokenCacheWriter} and {@link TokenCacheReader}.
+ *
+ * A token cache holds the analyzed tokens of a collection as termIDs, together with the terms and the document meta
+ * data, so a collection can be indexed again (e.g. with other thresholds) without reading and tokenizing it again.
+ * Since the tokens depend on the analysis, there is one cache per collection for stemmed and for unstemmed terms,
+ * with and without the headers of the documents.
+ *
+ * The format of a cache file is
+ * <ul>
+ * <li>a header: {@link #MAGIC} (int), {@link #VERSION} (int), whether stemming was used and whether the headers were
+ * skipped (one byte each) and the signature of the collection (see {@link #getSignature(File[])}, a string),</li>
+ * <li>one record per document containing at least one token: the difference of its docID to the docID of the
+ * previous record (varint, at least 1), category and name (strings), header length and number of tokens (varints),
+ * followed by the tokens: the termID (varint) and the position of the token (see {@link ITokenCursor#getPosition()})
+ * as gap to the position of the previous token of the document, the first one as gap to 0 (varint). The termIDs are
+ * assigned in the order the terms first occur, and a termID that occurs for the first time is directly followed by
+ * its term (a string), before the position,</li>
+ * <li>an end marker (varint 0).</li>
+ * </ul>
+ * Strings are stored as their number of UTF-8 bytes (varint) followed by the bytes. Varints store 7 bits per byte,
+ * least significant first, with the highest bit set on all bytes but the last.
+ */
+public class TokenCache
+{
+	public static final int MAGIC = 0x544F4B43; // "TOKC"
+	public static final int VERSION = 2; // has to be increased whenever the tokens of a document change
+	public static final String SUFFIX = ".tokens";
+
+	private TokenCache()
+	{
+	}
+
+	/**
+	 * @return The cache file for the given collections and analysis in <code>directory</code>. Different collections
+	 * get different files, so one directory can hold the caches of several collections.
+	 *
+	 * @throws IOException If the canonical path of a collection cannot be determined.
+	 */
+	public static File getFile(File directory, File[] collections, boolean useStemming, boolean skipHeaders) throws IOException
+	{
+		String name = String.format("%08x", getSignature(collections).hashCode());
+		name += useStemming ? "_stemming" : "_no_stemming";
+		if (skipHeaders)
+		{
+			name += "_skipheaders";
+		}
+		return new File(directory, name + SUFFIX);
+	}
+
+	/**
+	 * Describes the given collections by their paths, sizes and modification times, so that a cache can tell whether
+	 * it still belongs to the collections. Directories are described by the number, total size and latest modification
+	 * time of their files. The paths are canonical, so a collection gets the same signature no matter from which
+	 * directory or through which relative path it is given.
+	 *
+	 * @throws IOException If the canonical path of a collection cannot be determined.
+	 */
+	public static String getSignature(File[] collections) throws IOException
+	{
+		StringBuilder signature = new StringBuilder();
+		for (File collection : collections)
+		{
+			File canonicalCollection = collection.getCanonicalFile();
+			long[] stats = new long[3]; // number of files, total size, latest modification time
+			addStatistics(canonicalCollection, stats);
+			signature.append(canonicalCollection.getPath()).append('|').append(stats[0]).append('|').append(stats[1]).append('|').append(stats[2]).append('\n');
+		}
+		return signature.toString();
+	}
+
+	private static void addStatistics(File file, long[] stats)
+	{
+		if (file.isDirectory())
+		{
+			File[] entries = file.listFiles();
+			if (entries != null)
+			{
+				for (File entry : entries)
+				{
+					if (!entry.getName().startsWith(".")) // hidden files are not indexed, see DirectoryCollectionReader
+					{
+						addStatistics(entry, stats);
+					}
+				}
+			}
+		}
+		else
+		{
+			stats[0]++;
+			stats[1] += file.length();
+			stats[2] = Math.max(stats[2], file.lastModified());
+		}
+	}
+}
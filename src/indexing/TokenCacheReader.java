@@ -0,0 +1,234 @@
+package indexing;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import dao.Document;
+
+/**
+ * Reads the tokens of a collection from its token cache (see {@link TokenCache} for the format), as a replacement
+ * for the {@link CollectionTokenStream} of the collection. The terms are kept as char arrays indexed by their termID
+ * in the cache, so reading a token is decoding one varint; no text is inflated, tokenized or stemmed.
+ *
+ * Note that TokenCacheReader is NOT thread safe, meaning that methods should never be called concurrently!
+ */
+public class TokenCacheReader implements ITokenCursor
+{
+	public static final int BUFFER_SIZE_IN_BYTES = 256 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File cacheFile;
+	private InputStream in;
+	private byte[] buffer;
+	private int bufferPosition;
+	private int bufferLength;
+	private boolean exhausted;
+
+	private ArrayList<char[]> terms; // indexed by termID
+	private int docID; // the docID of the current record
+	private Document currentDocument;
+	private int remainingTokens; // the number of tokens of the current document not read yet
+	private char[] currentTerm;
+	private int currentPosition;
+
+	/**
+	 * Opens the given cache and checks that it belongs to the given collection and analysis.
+	 *
+	 * @param _cacheFile The cache file, see {@link TokenCache#getFile(File, File[], boolean, boolean)}.
+	 * @param _signature The signature of the collection, see {@link TokenCache#getSignature(File[])}.
+	 * @throws IOException If the cache cannot be read, or if it does not belong to the collection and analysis, i.e.
+	 * if it is out of date.
+	 */
+	public TokenCacheReader(File _cacheFile, String _signature, boolean _useStemming, boolean _skipHeaders) throws IOException
+	{
+		this.cacheFile = _cacheFile;
+		in = new FileInputStream(_cacheFile);
+		buffer = new byte[BUFFER_SIZE_IN_BYTES];
+		terms = new ArrayList<char[]>(65536);
+
+		try
+		{
+			int magic = (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+			int version = (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+			if (magic != TokenCache.MAGIC || version != TokenCache.VERSION)
+			{
+				throw new IOException(_cacheFile.getPath() + " is not a token cache of version " + TokenCache.VERSION);
+			}
+			if ((readByte() == 1) != _useStemming || (readByte() == 1) != _skipHeaders)
+			{
+				throw new IOException(_cacheFile.getPath() + " was built with a different analysis");
+			}
+			if (!readString().equals(_signature))
+			{
+				throw new IOException(_cacheFile.getPath() + " is out of date, the collection has changed");
+			}
+		}
+		catch (IOException ioe)
+		{
+			close();
+			throw ioe;
+		}
+	}
+
+	@Override
+	public boolean advance()
+	{
+		try
+		{
+			while (remainingTokens == 0)
+			{
+				if (exhausted || !readDocument())
+				{
+					currentDocument = null;
+					return false;
+				}
+			}
+
+			int termID = readVarInt();
+			if (termID == terms.size()) // first occurrence of the term
+			{
+				terms.add(readString().toCharArray());
+			}
+			currentTerm = terms.get(termID);
+			currentPosition += readVarInt();
+			remainingTokens--;
+			return true;
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error reading the token cache "+cacheFile.getPath()+", no tokens after docID "+docID+" are read! -- Stack Trace follows.");
+			ioe.printStackTrace();
+			close();
+			currentDocument = null;
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the header of the next record.
+	 *
+	 * @return False if the end marker has been reached.
+	 */
+	private boolean readDocument() throws IOException
+	{
+		int docIDDifference = readVarInt();
+		if (docIDDifference == 0)
+		{
+			close();
+			return false;
+		}
+		docID += docIDDifference;
+		String category = readString();
+		String name = readString();
+		currentDocument = new Document(docID, category, name);
+		currentDocument.setHeaderLength(readVarInt());
+		remainingTokens = readVarInt();
+		currentPosition = 0;
+		return true;
+	}
+
+	@Override
+	public char[] getTermBuffer()
+	{
+		return currentTerm;
+	}
+
+	@Override
+	public int getTermOffset()
+	{
+		return 0;
+	}
+
+	@Override
+	public int getTermLength()
+	{
+		return currentTerm.length;
+	}
+
+	@Override
+	public int getPosition()
+	{
+		return currentPosition;
+	}
+
+	@Override
+	public int getDocID()
+	{
+		return currentDocument.getId();
+	}
+
+	@Override
+	public Document getDocument()
+	{
+		return currentDocument;
+	}
+
+	private int readByte() throws IOException
+	{
+		if (bufferPosition == bufferLength)
+		{
+			bufferLength = in.read(buffer, 0, buffer.length);
+			bufferPosition = 0;
+			if (bufferLength <= 0)
+			{
+				bufferLength = 0;
+				throw new EOFException("Unexpected end of the token cache " + cacheFile.getPath());
+			}
+		}
+		return buffer[bufferPosition++] & 0xFF;
+	}
+
+	private int readVarInt() throws IOException
+	{
+		int value = 0;
+		int shift = 0;
+		int b;
+		do
+		{
+			b = readByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		return value;
+	}
+
+	private String readString() throws IOException
+	{
+		int length = readVarInt();
+		if (bufferLength - bufferPosition >= length)
+		{
+			String s = new String(buffer, bufferPosition, length, UTF8);
+			bufferPosition += length;
+			return s;
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			bytes[i] = (byte)readByte();
+		}
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Closes the cache file. Called automatically once all tokens have been read.
+	 */
+	public void close()
+	{
+		exhausted = true;
+		try
+		{
+			in.close();
+		}
+		catch (IOException ioe)
+		{
+			// ignore
+		}
+	}
+}
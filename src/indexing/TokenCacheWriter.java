@@ -0,0 +1,178 @@
+package indexing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import dao.Document;
+import dao.Vocabulary;
+
+/**
+ * Writes the token cache of a collection (see {@link TokenCache} for the format) while the vocabulary is built. The
+ * tokens of a document are held back until the next document starts, since a record starts with the number of its
+ * tokens. The cache is written to a temporary file that replaces the cache file only once it is complete, so an
+ * interrupted run never leaves a truncated cache behind.
+ */
+public class TokenCacheWriter
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File cacheFile;
+	private File temporaryFile;
+	private DataOutputStream out;
+	private boolean aborted;
+
+	private Document currentDocument; // the document held back, null if none
+	private int[] currentTermIDs;
+	private int[] currentPositions;
+	private int currentSize;
+	private int lastDocID; // the docID of the last record written
+	private int numberOfTerms; // the number of terms written so far, which is also the next new termID
+
+	/**
+	 * Opens the temporary file and writes the header.
+	 *
+	 * @param _cacheFile The cache file, see {@link TokenCache#getFile(File, File[], boolean, boolean)}.
+	 * @param _signature The signature of the collection, see {@link TokenCache#getSignature(File[])}.
+	 * @throws IOException
+	 */
+	public TokenCacheWriter(File _cacheFile, String _signature, boolean _useStemming, boolean _skipHeaders) throws IOException
+	{
+		this.cacheFile = _cacheFile;
+		this.temporaryFile = new File(_cacheFile.getPath() + ".tmp");
+		if (cacheFile.getParentFile() != null)
+		{
+			cacheFile.getParentFile().mkdirs();
+		}
+
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 64 * 1024));
+		out.writeInt(TokenCache.MAGIC);
+		out.writeInt(TokenCache.VERSION);
+		out.writeByte(_useStemming ? 1 : 0);
+		out.writeByte(_skipHeaders ? 1 : 0);
+		writeString(_signature);
+
+		currentTermIDs = new int[1024];
+		currentPositions = new int[1024];
+	}
+
+	/**
+	 * Adds the next token of the collection. The tokens have to be added in the order of the collection, and the
+	 * termIDs have to be assigned by <code>vocabulary</code> in the order the terms first occur.
+	 *
+	 * @param document The document of the token.
+	 * @param termID The termID of the token.
+	 * @param position The position of the token in its document, see {@link ITokenCursor#getPosition()}.
+	 * @param vocabulary The vocabulary the token has been added to, used to look up new terms.
+	 * @throws IOException
+	 */
+	public void add(Document document, int termID, int position, Vocabulary vocabulary) throws IOException
+	{
+		if (document != currentDocument)
+		{
+			writeCurrentDocument(vocabulary);
+			currentDocument = document;
+		}
+		if (currentSize == currentTermIDs.length)
+		{
+			currentTermIDs = Arrays.copyOf(currentTermIDs, currentSize * 2);
+			currentPositions = Arrays.copyOf(currentPositions, currentSize * 2);
+		}
+		currentTermIDs[currentSize] = termID;
+		currentPositions[currentSize] = position;
+		currentSize++;
+	}
+
+	private void writeCurrentDocument(Vocabulary vocabulary) throws IOException
+	{
+		if (currentDocument == null)
+		{
+			return;
+		}
+
+		writeVarInt(currentDocument.getId() - lastDocID);
+		writeString(currentDocument.getCategory());
+		writeString(currentDocument.getName());
+		writeVarInt(currentDocument.getHeaderLength());
+		writeVarInt(currentSize);
+		int previousPosition = 0;
+		for (int i = 0; i < currentSize; i++)
+		{
+			int termID = currentTermIDs[i];
+			writeVarInt(termID);
+			if (termID == numberOfTerms) // first occurrence of the term
+			{
+				writeString(vocabulary.getTerm(termID));
+				numberOfTerms++;
+			}
+			writeVarInt(currentPositions[i] - previousPosition);
+			previousPosition = currentPositions[i];
+		}
+
+		lastDocID = currentDocument.getId();
+		currentDocument = null;
+		currentSize = 0;
+	}
+
+	/**
+	 * Writes the last document and the end marker and replaces the cache file by the temporary file. Does nothing if
+	 * the writer has been aborted.
+	 *
+	 * @param vocabulary The vocabulary of the collection.
+	 * @throws IOException
+	 */
+	public void close(Vocabulary vocabulary) throws IOException
+	{
+		if (aborted)
+		{
+			return;
+		}
+		writeCurrentDocument(vocabulary);
+		writeVarInt(0);
+		out.close();
+
+		cacheFile.delete();
+		if (!temporaryFile.renameTo(cacheFile))
+		{
+			throw new IOException("Could not rename " + temporaryFile.getPath() + " to " + cacheFile.getPath());
+		}
+	}
+
+	/**
+	 * Closes and deletes the temporary file, e.g. after an error.
+	 */
+	public void abort()
+	{
+		aborted = true;
+		try
+		{
+			out.close();
+		}
+		catch (IOException e)
+		{
+			// ignore
+		}
+		temporaryFile.delete();
+	}
+
+	private void writeVarInt(int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private void writeString(String s) throws IOException
+	{
+		byte[] bytes = s.getBytes(UTF8);
+		writeVarInt(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -0,0 +1,199 @@
+package indexing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the files of a zip file as documents, in the order of the entries of the zip file. Every file is inflated as
+ * a whole into a buffer that grows to the size of the largest file. The category of a document is the name of the
+ * directory that contains it, e.g. "alt.atheism" for "20_newsgroups_subset/alt.atheism/51060".
+ */
+public class ZipCollectionReader implements ICollectionReader
+{
+	public static final int INITIAL_BUFFER_SIZE_IN_BYTES = 64 * 1024; // grows to the size of the largest file
+
+	private ZipFile zipFile;
+	private Enumeration<? extends ZipEntry> fileEntries;
+	private boolean closed;
+
+	private ArrayList<String> filesToRead;
+	private int nextFileToRead; // index into filesToRead
+
+	private ZipEntry currentEntry;
+	private byte[] content;
+	private int contentLength;
+
+	/**
+	 * Opens the given zip file.
+	 *
+	 * @throws IOException If the zip file cannot be opened.
+	 */
+	public ZipCollectionReader(File _zipFile) throws IOException
+	{
+		zipFile = new ZipFile(_zipFile);
+		fileEntries = zipFile.entries(); // a list of all files in the zip file (this is an unordered list!)
+		filesToRead = new ArrayList<String>(0);
+		content = new byte[INITIAL_BUFFER_SIZE_IN_BYTES];
+	}
+
+	/**
+	 * Restricts the reader to the given files of the zip file, which are read in the given order. Has to be called
+	 * before the first document is read.
+	 */
+	public void restrictToFiles(String[] files)
+	{
+		filesToRead = new ArrayList<String>(files.length);
+		for (String file : files)
+		{
+			filesToRead.add(file);
+		}
+		nextFileToRead = 0;
+	}
+
+	@Override
+	public boolean nextDocument() throws IOException
+	{
+		if (closed)
+		{
+			return false;
+		}
+
+		currentEntry = nextFileEntry();
+		contentLength = 0;
+		if (currentEntry == null)
+		{
+			close();
+			return false;
+		}
+
+		try
+		{
+			InputStream is = zipFile.getInputStream(currentEntry);
+			try
+			{
+				if (currentEntry.getSize() > content.length)
+				{
+					content = new byte[(int)currentEntry.getSize()];
+				}
+
+				int read;
+				while ((read = is.read(content, contentLength, content.length - contentLength)) > -1)
+				{
+					contentLength += read;
+					if (contentLength == content.length)
+					{
+						content = Arrays.copyOf(content, content.length * 2);
+					}
+				}
+			}
+			finally
+			{
+				is.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error reading "+currentEntry.getName()+", only the part read so far is tokenized! -- Stack Trace follows.");
+			ioe.printStackTrace();
+		}
+		return true;
+	}
+
+	/**
+	 * @return The next non-directory entry of the zip file to read or null if there are no remaining files.
+	 */
+	private ZipEntry nextFileEntry()
+	{
+		if (filesToRead.size() > 0)
+		{
+			while (nextFileToRead < filesToRead.size())
+			{
+				ZipEntry entry = zipFile.getEntry(filesToRead.get(nextFileToRead++));
+				if (entry != null && !entry.isDirectory())
+				{
+					return entry;
+				}
+			}
+			return null;
+		}
+
+		while (fileEntries.hasMoreElements())
+		{
+			ZipEntry entry = fileEntries.nextElement();
+			if (!entry.isDirectory()) // disregard directory entries
+			{
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String getCategory()
+	{
+		return categoryOf(currentEntry.getName());
+	}
+
+	@Override
+	public String getName()
+	{
+		return nameOf(currentEntry.getName());
+	}
+
+	@Override
+	public byte[] getContent()
+	{
+		return content;
+	}
+
+	@Override
+	public int getContentLength()
+	{
+		return contentLength;
+	}
+
+	@Override
+	public void close()
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		try
+		{
+			zipFile.close();
+		}
+		catch (IOException ioe)
+		{
+			// ignore
+		}
+	}
+
+	/**
+	 * @return The name of the directory containing the file with the given path ('/' separated), "" if there is none.
+	 */
+	static String categoryOf(String path)
+	{
+		int end = path.lastIndexOf('/');
+		if (end < 0)
+		{
+			return "";
+		}
+		return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+	}
+
+	/**
+	 * @return The file name of the given path ('/' separated).
+	 */
+	static String nameOf(String path)
+	{
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+}
@@ -1,12 +1,23 @@
 package main;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
 
+import dao.RetrievalResult;
+
+import retrieval.ConjunctiveEvaluator;
 import retrieval.CosineSimilarityScoringMethod;
 import retrieval.DFRScoringMethod;
 import retrieval.IScoringMethod;
+import retrieval.QueryReducer;
 import retrieval.SearchEngine;
+import retrieval.TermAtATimeEvaluator;
+import retrieval.WandEvaluator;
 
 import indexing.*;
 
@@ -16,14 +27,25 @@ public class Main
 	 * @param args
 	 *            A String array of command line arguments.
 	 * 
-	 *            - args[0]: Action: "index" or "retrieve" 
+	 *            - args[0]: Action: "index", "retrieve", "query" or "delete" 
 	 *            
 	 *            in case of action == "index": 
-	 *            - args[1]: Path to the archive of documents to index (a .zip file) 
+	 *            - args[1]: Path to the collection to index: a directory tree, a .zip or .tar(.gz) archive or a file of concatenated (mbox style) documents. Several collections are separated by the path separator (':' or ';')
 	 *            - args[2]: Name of the index to create 
-	 *            - args[3]: "true" or "false" (defaults to "false"), whether or not to use Stemming 
+	 *            - args[3]: "true" or "false" (defaults to "false"), whether or not to use Stemming, or "both" to build a stemmed and an unstemmed index in one run
 	 *            - args[4]: Integer value (defaults to "0"), specifying the low threshold, i.e. the lowest allowed term frequency 
-	 *            - args[5]: Integer value (defaults to "Integer.MAX_VALUE"), specifying the high threshold, i.e. the highest allowed term frequency 
+	 *            - args[5]: Integer value or "max" (defaults to "Integer.MAX_VALUE"), specifying the high threshold, i.e. the highest allowed term frequency 
+	 *            - optional stemcache=N: number of surface forms whose stems are cached, 0 stems every token (defaults to 16384)
+	 *            - optional skipheaders=true|false: whether the header of each document (up to the first blank line) is left out of the index (defaults to false)
+	 *            - optional threads=N: number of threads that read directory trees and tokenize the documents (defaults to the number of processors), the index does not depend on it
+	 *            - optional variants=NAME:LOW:HIGH[,NAME:LOW:HIGH...]: further indexes built in the same run, with their own thresholds ("max" for no high threshold)
+	 *            - optional tokencache=DIR: directory of the token caches; a collection is tokenized once, later runs (e.g. with other thresholds) read the cached tokens (off by default)
+	 *            - optional append=true|false: add the collection to the index as a new segment instead of replacing the index (defaults to false)
+	 *            - optional merge=true|false: merge the segments of the index and its variants with a tiered merge policy after indexing (defaults to false)
+	 *            - optional mergefactor=N: number of segments of the same size that are merged into one (defaults to 4)
+	 *            - optional mergefloor=N: number of documents up to which segments count as the same (smallest) size (defaults to 1000)
+	 *            - optional mergerate=F: maximum rate in MB/s at which merges read segments, 0 for no limit (defaults to 0)
+	 *            - optional positions=true|false: store the positions of the terms in the documents, needed for phrase queries (defaults to false, not available with append=true)
 	 *            
 	 *            in case of action == "retrieve"
 	 *            - args[1]: Scoring Method {"cosine", "dfr"} 
@@ -31,6 +53,33 @@ public class Main
 	 *            - args[3]: Path to the collection file (a .zip file) 
 	 *            - args[4]: name of the query file (contains names of the query documents within the zipped collection file) 
 	 *            - args[5]: "true" or "false" (defaults to "false"), whether or not to use Stemming
+	 *            
+	 *            in case of action == "query" (free text queries, one per line, are read from standard input)
+	 *            - args[1]: Scoring Method {"cosine", "dfr"} 
+	 *            - args[2]: Name of the index to use {"large", "medium", "small"} 
+	 *            - args[3]: "true" or "false" (defaults to "true"), whether or not to use Stemming
+	 *            
+	 *            optional settings for action == "retrieve" and "query", given as name=value pairs after the regular arguments:
+	 *            - engine=scan|taat|and|wand: scan the ARFF index for every query (default), or evaluate on the inverted index term-at-a-time, document-at-a-time on the documents containing all query terms (and), or document-at-a-time with WAND pruning (wand, same results as taat)
+	 *            - accumulators=N: (taat only) maximum number of score accumulators, unlimited by default
+	 *            - strategy=quit|continue: (taat only) what to do once the accumulator limit has been reached, defaults to continue
+	 *            - threads=N: number of threads used to evaluate a single query, defaults to 1
+	 *            - postings=arrays|hybrid: keep the postings of the inverted index as plain arrays (default) or compress them, as bitmaps for dense terms and as variable-length gaps for sparse terms
+	 *            - maxterms=N: reduce every query to its N terms with the highest tf*idf
+	 *            - termweight=F: reduce every query to the terms with the highest tf*idf that make up the fraction F of its total tf*idf
+	 *            - report=reduction: instead of writing result files, compare full and reduced queries (time and overlap of the results)
+	 *            - stemcache=N: number of surface forms whose stems are cached by query analysis, 0 stems every term (defaults to 16384)
+	 *            
+	 *            optional settings for action == "query" only:
+	 *            - refresh=N: accept input lines "add <file>", "update <file>" and "delete <category>/<name>", which add the file to the index as a new document, replace the documents of the same name by it or delete documents; changes are searchable at most N milliseconds after they were made (0: at once)
+	 *            - flush=N: interval in milliseconds at which added documents are written to a new segment of the index (defaults to 60000), the rest is written at the end of the input
+	 *            - skipheaders=true|false: whether the header of added documents is left out (defaults to false)
+	 *            - boolean=ranked|filter: input lines are boolean queries (words and "phrases" combined by AND, OR, NOT and parentheses, see {@link retrieval.BooleanQueryParser}); ranked scores the matching documents, filter lists the first matches in docID order without scoring them
+	 *            
+	 *            in case of action == "delete" (documents are marked as deleted, merges remove them from the index)
+	 *            - args[1]: Name of the index
+	 *            - args[2]: "true" or "false", whether the index is stemmed
+	 *            - args[3...]: The documents to delete, each given as <category>/<name> or as docID
 	 * 
 	 *            If the args array is too long and/or contains invalid arguments,
 	 *            a usage message is shown and the program terminates.
@@ -38,11 +87,15 @@ public class Main
 	public static void main(String[] args) {
 
 		try {
+			HashMap<String, String> options = new HashMap<String, String>();
+			args = extractOptions(args, options);
+			
 			if (args.length > 0) {
 				if (args[0].equals("index")) {
 					String collectionFilePath = "";
 					String indexName = "";
 					boolean useStemming = false;
+					boolean bothStemmingVariants = false;
 					int lowThresh = 0;
 					int highThresh = Integer.MAX_VALUE;
 
@@ -55,15 +108,17 @@ public class Main
 							collectionFilePath = args[1];
 							indexName = args[2];
 							useStemming = Boolean.parseBoolean(args[3]);
+							bothStemmingVariants = args[3].equals("both");
 							break;
 						case 6: // user specified low/high thresholds
 							collectionFilePath = args[1];
 							indexName = args[2];
 							useStemming = Boolean.parseBoolean(args[3]);
+							bothStemmingVariants = args[3].equals("both");
 
 							try {
 								lowThresh = Integer.parseInt(args[4]);
-								highThresh = Integer.parseInt(args[5]);
+								highThresh = parseThreshold(args[5]);
 
 								if (!(lowThresh >= 0 && highThresh >= 0 && highThresh >= lowThresh)) {
 									throw new IllegalArgumentException(
@@ -83,25 +138,68 @@ public class Main
 					indexer.setUseStemming(useStemming);
 					indexer.setLowTfThreshold(lowThresh);
 					indexer.setHighTfThreshold(highThresh);
-					indexer.indexZipFile(new File(collectionFilePath), indexName);
+					indexer.setBuildBothStemmingVariants(bothStemmingVariants);
+					ArrayList<String> indexNames = new ArrayList<String>();
+					indexNames.add(args[2]);
+					if (options.containsKey("variants")) {
+						indexNames.addAll(addThresholdVariants(indexer, options.get("variants")));
+					}
+					if (options.containsKey("stemcache")) {
+						indexer.setStemCacheSize(parseStemCacheSize(options.get("stemcache")));
+					}
+					if (options.containsKey("skipheaders")) {
+						indexer.setSkipHeaders(Boolean.parseBoolean(options.get("skipheaders")));
+					}
+					if (options.containsKey("threads")) {
+						try {
+							indexer.setNumberOfThreads(Integer.parseInt(options.get("threads")));
+						}
+						catch (NumberFormatException nfe) {
+							throw new IllegalArgumentException("invalid argument: threads has to be numeric");
+						}
+					}
+					
+					if (options.containsKey("tokencache")) {
+						indexer.setTokenCacheDirectory(new File(options.get("tokencache")));
+					}
+					if (options.containsKey("append")) {
+						indexer.setAppendSegment(Boolean.parseBoolean(options.get("append")));
+					}
+					if (Boolean.parseBoolean(options.get("positions"))) {
+						if (Boolean.parseBoolean(options.get("append"))) {
+							throw new IllegalArgumentException("invalid arguments: positions are only stored for an index built in one run, not with append=true");
+						}
+						indexer.setStorePositions(true);
+					}
+					
+					String[] collectionPaths = collectionFilePath.split(File.pathSeparator);
+					File[] collections = new File[collectionPaths.length];
+					for (int i = 0; i < collectionPaths.length; i++) {
+						collections[i] = new File(collectionPaths[i]);
+					}
+					indexer.indexFiles(collections, indexName);
+					
+					if (Boolean.parseBoolean(options.get("merge"))) {
+						ArrayList<String> directories = new ArrayList<String>();
+						if (useStemming || bothStemmingVariants) {
+							directories.add("output"+File.separator+"stemming"+File.separator);
+						}
+						if (!useStemming || bothStemmingVariants) {
+							directories.add("output"+File.separator+"no_stemming"+File.separator);
+						}
+						for (String directory : directories) {
+							for (String name : indexNames) {
+								mergeSegments(directory, name, options);
+							}
+						}
+					}
 				}
 				else if (args[0].equals("retrieve")) {
 					String indexName = "";
 					String queryFile = "";
 					String collectionFilePath = "";
 					boolean useStemming = true;
-					IScoringMethod method;
-
-					String methodString = args[1];
-					if (methodString.equals("cosine")) {
-						method = new CosineSimilarityScoringMethod();
-					}
-					else if (methodString.equals("dfr")) {
-						method = new DFRScoringMethod();
-					}
-					else {
-						throw new IllegalArgumentException("Illegal method " + methodString + "!");
-					}
+					IScoringMethod method = parseScoringMethod(args[1]);
 
 					switch (args.length) {
 						case 6: // user specified stemming
@@ -124,14 +222,74 @@ public class Main
 					try {
 						SearchEngine searchEngine = new SearchEngine(indexName, useStemming);
 						searchEngine.setScoringMethod(method);
-						searchEngine.retrieveAndWriteQueries(10, new File(collectionFilePath), new File(queryFile));
+						configureEvaluation(searchEngine, options);
+						
+						if (options.containsKey("report")) {
+							if (!options.get("report").equals("reduction")) {
+								throw new IllegalArgumentException("Illegal report " + options.get("report") + "!");
+							}
+							searchEngine.compareQueryReduction(10, new File(collectionFilePath), new File(queryFile));
+						}
+						else {
+							searchEngine.retrieveAndWriteQueries(10, new File(collectionFilePath), new File(queryFile));
+						}
+					}
+					catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+				else if (args[0].equals("query")) {
+					boolean useStemming = true;
+					
+					switch (args.length) {
+						case 3:
+							break;
+						case 4: // user specified stemming
+							useStemming = Boolean.parseBoolean(args[3]);
+							break;
+						default:
+							throw new IllegalArgumentException("invalid number of arguments");
+					}
+					IScoringMethod method = parseScoringMethod(args[1]);
+					String booleanMode = options.get("boolean");
+					if (booleanMode != null && !booleanMode.equals("ranked") && !booleanMode.equals("filter")) {
+						throw new IllegalArgumentException("Illegal boolean query mode " + booleanMode + "!");
+					}
+					
+					try {
+						SearchEngine searchEngine = new SearchEngine(args[2], useStemming);
+						searchEngine.setScoringMethod(method);
+						configureEvaluation(searchEngine, options);
+						NearRealTimeIndexer feed = null;
+						if (options.containsKey("refresh")) {
+							feed = openFeed(searchEngine, args[2], useStemming, options);
+						}
+						answerQueries(searchEngine, feed, booleanMode, new BufferedReader(new InputStreamReader(System.in)));
+						if (feed != null) {
+							feed.close();
+						}
+					}
+					catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+				else if (args[0].equals("delete")) {
+					if (args.length < 4) {
+						throw new IllegalArgumentException("invalid number of arguments");
+					}
+					String directory = "output"+File.separator+(Boolean.parseBoolean(args[2]) ? "stemming" : "no_stemming")+File.separator;
+					DocumentDeleter deleter = new DocumentDeleter(directory, args[1]);
+					try {
+						for (int i = 3; i < args.length; i++) {
+							deleteDocuments(deleter, args[i]);
+						}
 					}
 					catch (IOException e) {
 						e.printStackTrace();
 					}
 				}
 				else {
-					throw new IllegalArgumentException("wrong argument: action. must be either \"index\" or \"retrieve\"");
+					throw new IllegalArgumentException("wrong argument: action. must be either \"index\", \"retrieve\", \"query\" or \"delete\"");
 				}
 			}
 			else {
@@ -143,15 +301,352 @@ public class Main
 			System.out.println("Invalid command line arguments!");
 			System.out.println(e.getMessage());
 			System.out.println("Usage for building an index:");
-			System.out.println("ir-exercise02-tu-vienna-2013-grp-h.jar index <collectionFilePath> <indexName> [<useStemming{\"true\"/\"false\"}> <lowThresh> <highThresh>]");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h.jar index <collectionPath["+File.pathSeparator+"collectionPath...]> <indexName> [<useStemming{\"true\"/\"false\"/\"both\"}> <lowThresh> <highThresh>] [variants=<name>:<lowThresh>:<highThresh>[,...]] [stemcache=<N>] [skipheaders={true|false}] [threads=<N>] [tokencache=<directory>] [append={true|false}] [merge={true|false}] [mergefactor=<N>] [mergefloor=<N>] [mergerate=<F>] [positions={true|false}]");
 			System.out.println("Usage for querying an index:");
-			System.out.println("ir-exercise02-tu-vienna-2013-grp-h retrieve <method{\"cosine\"/\"dfr\"}> <index{\"large\"/\"medium\"/\"small\"}> <collectionFilePath> <queryFile> [<useStemming{\"true\"/\"false\"}>]");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h retrieve <method{\"cosine\"/\"dfr\"}> <index{\"large\"/\"medium\"/\"small\"}> <collectionFilePath> <queryFile> [<useStemming{\"true\"/\"false\"}>] [engine={scan|taat|and|wand}] [accumulators=<N>] [strategy={quit|continue}] [threads=<N>] [postings={arrays|hybrid}] [maxterms=<N>] [termweight=<F>] [report=reduction] [stemcache=<N>]");
+			System.out.println();
+			System.out.println("Usage for interactive querying (one query per line on standard input):");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h query <method{\"cosine\"/\"dfr\"}> <index{\"large\"/\"medium\"/\"small\"}> [<useStemming{\"true\"/\"false\"}>] [engine={scan|taat|and|wand}] [accumulators=<N>] [strategy={quit|continue}] [threads=<N>] [postings={arrays|hybrid}] [maxterms=<N>] [termweight=<F>] [stemcache=<N>] [refresh=<N> [flush=<N>] [skipheaders={true|false}]] [boolean={ranked|filter}]");
+			System.out.println();
+			System.out.println("Usage for deleting documents from an index:");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h delete <indexName> <useStemming{\"true\"/\"false\"}> <category/name|docID> [<category/name|docID>...]");
 			System.out.println();
 			System.out.println("Example 1: How to perform searches on all query topics in \"query.txt\" by stemming the query and, using the \"large\", stemmed index, plus writing the output to files according to the naming scheme provided in the task description:");
 			System.out.println("ir-exercise02-tu-vienna-2013-grp-h retrieve dfr large resources/20_newsgroups_subset.zip queries.txt true");
 			System.out.println();
 			System.out.println("Example 2: How to build a new index for any given dataset:");
 			System.out.println("ir-exercise02-tu-vienna-2013-grp-h index resources/20_newsgroups_subset.zip large true 1 1000");
+			System.out.println();
+			System.out.println("Example 3: How to build the stemmed and unstemmed large, medium and small indexes in one run:");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h index resources/20_newsgroups_subset.zip large both 0 max variants=medium:1:1000,small:2:100");
+			System.out.println();
+			System.out.println("Example 4: How to add the documents of another day to the \"large\" stemmed index:");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h index resources/newsgroups_day2.zip large true append=true");
+			System.out.println();
+			System.out.println("Example 5: Like example 4, but merge the segments of the index once 4 of about the same size have accumulated, reading at most 20 MB/s:");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h index resources/newsgroups_day2.zip large true append=true merge=true mergefactor=4 mergerate=20");
+			System.out.println();
+			System.out.println("Example 6: How to search newly posted messages of the \"large\" stemmed index within one second (input lines \"add <file>\" add a message, the rest are queries):");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h query dfr large true refresh=1000 flush=60000");
+			System.out.println();
+			System.out.println("Example 7: How to delete two messages from the \"large\" stemmed index:");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h delete large true misc.forsale/76927 sci.med/59284");
+			System.out.println();
+			System.out.println("Example 8: How to list the messages of the \"large\" stemmed index that contain \"encryption\" and \"chip\" but not \"clipper\" (entered on standard input):");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h query dfr large true boolean=filter");
+			System.out.println("encryption chip NOT clipper");
+			System.out.println();
+			System.out.println("Example 9: How to build the \"large\" stemmed index with positions and search it for a phrase and for two words at most 5 words apart:");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h index resources/20_newsgroups_subset.zip large true positions=true");
+			System.out.println("ir-exercise02-tu-vienna-2013-grp-h query dfr large true boolean=ranked");
+			System.out.println("\"space shuttle\" OR \"orbit launch\"~5");
+		}
+	}
+
+	private static IScoringMethod parseScoringMethod(String methodString) {
+		if (methodString.equals("cosine")) {
+			return new CosineSimilarityScoringMethod();
+		}
+		else if (methodString.equals("dfr")) {
+			return new DFRScoringMethod();
+		}
+		throw new IllegalArgumentException("Illegal method " + methodString + "!");
+	}
+	
+	/**
+	 * Parses a list of threshold variants of the form name:low:high[,name:low:high...] and adds them to the indexer.
+	 * 
+	 * @return The names of the variants.
+	 */
+	private static ArrayList<String> addThresholdVariants(BlockIndexer indexer, String variants) {
+		ArrayList<String> names = new ArrayList<String>();
+		for (String variant : variants.split(",")) {
+			String[] parts = variant.split(":");
+			if (parts.length != 3 || parts[0].length() == 0) {
+				throw new IllegalArgumentException("invalid argument: variants have to be given as <name>:<lowThresh>:<highThresh>");
+			}
+			try {
+				int lowThresh = Integer.parseInt(parts[1]);
+				int highThresh = parseThreshold(parts[2]);
+				if (!(lowThresh >= 0 && highThresh >= lowThresh)) {
+					throw new IllegalArgumentException("invalid arguments: the thresholds of variant " + parts[0] + " have to be positive numbers and highTresh has to be greater than or equal lowThresh");
+				}
+				indexer.addThresholdVariant(parts[0], lowThresh, highThresh);
+				names.add(parts[0]);
+			}
+			catch (NumberFormatException nfe) {
+				throw new IllegalArgumentException("invalid arguments: the thresholds of variant " + parts[0] + " have to be numeric");
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * Merges the segments of the given index with a {@link MergeScheduler}, as configured by the merge options, and
+	 * waits for the merges.
+	 */
+	private static void mergeSegments(String directory, String indexName, HashMap<String, String> options) {
+		if (!SegmentManifest.exists(directory, indexName)) {
+			return;
+		}
+		TieredMergePolicy mergePolicy = new TieredMergePolicy();
+		MergeScheduler mergeScheduler = new MergeScheduler(directory, indexName, 1);
+		try {
+			if (options.containsKey("mergefactor")) {
+				mergePolicy.setSegmentsPerTier(Integer.parseInt(options.get("mergefactor")));
+			}
+			if (options.containsKey("mergefloor")) {
+				mergePolicy.setFloorSegmentSize(Integer.parseInt(options.get("mergefloor")));
+			}
+			if (options.containsKey("mergerate")) {
+				mergeScheduler.setMaxMegabytesPerSecond(Double.parseDouble(options.get("mergerate")));
+			}
+		}
+		catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("invalid arguments: mergefactor, mergefloor and mergerate have to be numeric");
+		}
+		mergeScheduler.setMergePolicy(mergePolicy);
+		
+		mergeScheduler.maybeMerge();
+		try {
+			mergeScheduler.close();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		System.out.println(mergeScheduler.getStatistics());
+	}
+	
+	/**
+	 * @return The given high threshold, Integer.MAX_VALUE for "max".
+	 */
+	private static int parseThreshold(String thresholdString) {
+		if (thresholdString.equals("max")) {
+			return Integer.MAX_VALUE;
+		}
+		return Integer.parseInt(thresholdString);
+	}
+	
+	private static int parseStemCacheSize(String sizeString) {
+		try {
+			int size = Integer.parseInt(sizeString);
+			if (size < 0) {
+				throw new IllegalArgumentException("invalid argument: stemcache has to be a positive number or 0");
+			}
+			return size;
+		}
+		catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("invalid argument: stemcache has to be numeric");
+		}
+	}
+	
+	/**
+	 * Opens a near-real-time indexer on the given index, as configured by the options refresh, flush and skipheaders, 
+	 * and makes the search engine search its buffered documents.
+	 */
+	private static NearRealTimeIndexer openFeed(SearchEngine searchEngine, String indexName, boolean useStemming, HashMap<String, String> options) throws IOException {
+		long refreshInterval;
+		long flushInterval = NearRealTimeIndexer.DEFAULT_FLUSH_INTERVAL;
+		try {
+			refreshInterval = Long.parseLong(options.get("refresh"));
+			if (options.containsKey("flush")) {
+				flushInterval = Long.parseLong(options.get("flush"));
+			}
+		}
+		catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("invalid arguments: refresh and flush have to be numeric");
+		}
+		
+		String directory = "output"+File.separator+(useStemming ? "stemming" : "no_stemming")+File.separator;
+		NearRealTimeIndexer feed = new NearRealTimeIndexer(directory, indexName, useStemming);
+		if (options.containsKey("skipheaders")) {
+			feed.setSkipHeaders(Boolean.parseBoolean(options.get("skipheaders")));
+		}
+		searchEngine.setNearRealTimeIndexer(feed, refreshInterval);
+		feed.startFlushing(flushInterval);
+		return feed;
+	}
+	
+	/**
+	 * Deletes the documents given as "category/name" or as docID and reports the result.
+	 */
+	private static void deleteDocuments(DocumentDeleter deleter, String document) throws IOException {
+		if (document.matches("[0-9]+")) {
+			boolean deleted = deleter.deleteDocument(Integer.parseInt(document));
+			System.out.println(deleted ? "Deleted document "+document+"." : "Document "+document+" has been deleted already.");
+			return;
+		}
+		int separator = document.lastIndexOf('/');
+		if (separator <= 0 || separator == document.length() - 1) {
+			throw new IllegalArgumentException("invalid argument: documents have to be given as <category>/<name> or as docID");
+		}
+		int deleted = deleter.deleteDocuments(document.substring(0, separator), document.substring(separator + 1));
+		System.out.println(deleted > 0 ? "Deleted "+deleted+" document(s) "+document+"." : "The index contains no document "+document+".");
+	}
+	
+	/**
+	 * Reads one free text query per line and prints its top 10 documents, until the end of the input. If a 
+	 * near-real-time indexer is given, lines of the form "add &lt;file&gt;" add the file as a new document instead, its 
+	 * category being the name of the directory that contains it, "update &lt;file&gt;" replaces the documents of the 
+	 * same category and name by the file and "delete &lt;category&gt;/&lt;name&gt;" deletes documents.
+	 * 
+	 * @param booleanMode "ranked" or "filter" if the queries are boolean queries (see {@link retrieval.BooleanQueryParser}), null 
+	 * for free text queries.
+	 */
+	private static void answerQueries(SearchEngine searchEngine, NearRealTimeIndexer feed, String booleanMode, BufferedReader in) throws IOException {
+		System.out.println("Enter one "+(booleanMode != null ? "boolean " : "")+"query per line"+(feed != null ? ", \"add <file>\" or \"update <file>\" to add or replace a document or \"delete <category>/<name>\" to delete one" : "")+", end the input to quit.");
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.trim().length() == 0) {
+				continue;
+			}
+			if (feed != null && (line.startsWith("add ") || line.startsWith("update "))) {
+				boolean update = line.startsWith("update ");
+				File file = new File(line.substring(update ? 7 : 4).trim());
+				try {
+					String category = file.getAbsoluteFile().getParentFile().getName();
+					byte[] content = Files.readAllBytes(file.toPath());
+					int docID = update ? feed.updateDocument(category, file.getName(), content) : feed.addDocument(category, file.getName(), content);
+					System.out.println((update ? "Updated " : "Added ")+category+"/"+file.getName()+" as document "+docID+".");
+				}
+				catch (IOException ioe) {
+					System.err.println("Error adding "+file.getPath()+"! -- Stack Trace follows.");
+					ioe.printStackTrace();
+				}
+				System.out.println();
+				continue;
+			}
+			if (feed != null && line.startsWith("delete ")) {
+				String document = line.substring(7).trim();
+				int separator = document.lastIndexOf('/');
+				if (separator <= 0) {
+					System.out.println("Documents are deleted by \"delete <category>/<name>\".");
+				}
+				else {
+					try {
+						int deleted = feed.deleteDocuments(document.substring(0, separator), document.substring(separator + 1));
+						System.out.println(deleted > 0 ? "Deleted "+deleted+" document(s) "+document+"." : "The index contains no document "+document+".");
+					}
+					catch (IOException ioe) {
+						System.err.println("Error deleting "+document+"! -- Stack Trace follows.");
+						ioe.printStackTrace();
+					}
+				}
+				System.out.println();
+				continue;
+			}
+			ArrayList<RetrievalResult> results;
+			if (booleanMode != null) {
+				try {
+					results = searchEngine.retrieveBoolean(10, line, booleanMode.equals("ranked"));
+				}
+				catch (IllegalArgumentException iae) {
+					System.out.println("Invalid query: "+iae.getMessage());
+					System.out.println();
+					continue;
+				}
+				if (!results.isEmpty()) {
+					System.out.println(searchEngine.getLastNumberOfMatches()+" matching document(s).");
+				}
+			}
+			else {
+				results = searchEngine.retrieveTop(10, line);
+			}
+			if (results.isEmpty()) {
+				System.out.println("No matching documents.");
+			}
+			int rank = 1;
+			for (RetrievalResult result : results) {
+				System.out.println((rank++) + "\t" + result.getDocumentClass() + "/" + result.getDocumentName() + ("filter".equals(booleanMode) ? "" : "\t" + result.getSimilarity()));
+			}
+			System.out.println();
+		}
+	}
+	
+	/**
+	 * Removes all arguments of the form name=value from the given array and stores them in <code>options</code>.
+	 * 
+	 * @return The remaining (positional) arguments.
+	 */
+	private static String[] extractOptions(String[] args, HashMap<String, String> options) {
+		ArrayList<String> remaining = new ArrayList<String>(args.length);
+		for (String arg : args) {
+			int separationIndex = arg.indexOf('=');
+			if (separationIndex > 0) {
+				options.put(arg.substring(0, separationIndex), arg.substring(separationIndex + 1));
+			}
+			else {
+				remaining.add(arg);
+			}
+		}
+		return remaining.toArray(new String[remaining.size()]);
+	}
+	
+	/**
+	 * Sets up the query evaluation of the given search engine according to the optional settings.
+	 */
+	private static void configureEvaluation(SearchEngine searchEngine, HashMap<String, String> options) {
+		if (options.containsKey("threads")) {
+			searchEngine.setNumberOfThreads(Integer.parseInt(options.get("threads")));
+		}
+		
+		if (options.containsKey("stemcache")) {
+			searchEngine.setStemCacheSize(parseStemCacheSize(options.get("stemcache")));
+		}
+		
+		if (options.containsKey("postings")) {
+			String postings = options.get("postings");
+			if (postings.equals("hybrid")) {
+				searchEngine.setCompressPostings(true);
+			}
+			else if (!postings.equals("arrays")) {
+				throw new IllegalArgumentException("Illegal postings format " + postings + "!");
+			}
+		}
+		
+		if (options.containsKey("maxterms") || options.containsKey("termweight")) {
+			QueryReducer reducer = new QueryReducer();
+			if (options.containsKey("maxterms")) {
+				reducer.setMaxTerms(Integer.parseInt(options.get("maxterms")));
+			}
+			if (options.containsKey("termweight")) {
+				reducer.setWeightFraction(Double.parseDouble(options.get("termweight")));
+			}
+			searchEngine.setQueryReducer(reducer);
+		}
+		else if (options.containsKey("report")) {
+			throw new IllegalArgumentException("report=reduction requires maxterms and/or termweight");
+		}
+		
+		String engine = options.containsKey("engine") ? options.get("engine") : "scan";
+		
+		if (engine.equals("taat")) {
+			TermAtATimeEvaluator evaluator = new TermAtATimeEvaluator();
+			if (options.containsKey("accumulators")) {
+				evaluator.setAccumulatorLimit(Integer.parseInt(options.get("accumulators")));
+			}
+			if (options.containsKey("strategy")) {
+				String strategy = options.get("strategy");
+				if (strategy.equals("quit")) {
+					evaluator.setLimitingStrategy(TermAtATimeEvaluator.LimitingStrategy.QUIT);
+				}
+				else if (strategy.equals("continue")) {
+					evaluator.setLimitingStrategy(TermAtATimeEvaluator.LimitingStrategy.CONTINUE);
+				}
+				else {
+					throw new IllegalArgumentException("Illegal accumulator strategy " + strategy + "!");
+				}
+			}
+			searchEngine.setQueryEvaluator(evaluator);
+		}
+		else if (engine.equals("and")) {
+			searchEngine.setQueryEvaluator(new ConjunctiveEvaluator());
+		}
+		else if (engine.equals("wand")) {
+			searchEngine.setQueryEvaluator(new WandEvaluator());
+		}
+		else if (!engine.equals("scan")) {
+			throw new IllegalArgumentException("Illegal engine " + engine + "!");
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package retrieval;
+
+/**
+ * A dense array of score accumulators, one per docID, plus the list of docIDs whose accumulator has been touched 
+ * since the last {@link #reset()}. Resetting only clears the touched entries, so an instance can be reused for 
+ * many queries without refilling the whole array.
+ *
+ * The scores are added up in double precision like by the sequential scan of the index, so the order in which the
+ * terms are added does not change the ranking of documents with nearly equal scores.
+ */
+public class Accumulators {
+	public double[] scores;
+	public boolean[] active;
+	public int[] touched;
+	public int size; // number of valid entries in touched
+
+	public Accumulators(int capacity) {
+		scores = new double[capacity];
+		active = new boolean[capacity];
+		touched = new int[capacity];
+		size = 0;
+	}
+
+	public int capacity() {
+		return scores.length;
+	}
+
+	/**
+	 * Marks the accumulator of the given document as in use.
+	 */
+	public void activate(int docID) {
+		active[docID] = true;
+		touched[size++] = docID;
+	}
+
+	/**
+	 * Clears all touched accumulators.
+	 */
+	public void reset() {
+		for (int i = 0; i < size; i++) {
+			scores[touched[i]] = 0.0;
+			active[touched[i]] = false;
+		}
+		size = 0;
+	}
+}
@@ -0,0 +1,128 @@
+package retrieval;
+
+import indexing.IIndexer;
+
+/**
+ * Parser for a single row of the @DATA section of our sparse ARFF indices, i.e. a line of the form
+ * <code>{0 docID,1 class,2 name,termID+3 value,...}</code>. The term arrays are reused (and grown as needed)
+ * between calls of {@link #parse(String, boolean)}, so scanning a whole index does not allocate per term.
+ * Class and name of the document are only cut out of the line when they are asked for.
+ */
+public class ArffDocumentRow {
+	public int docID;
+
+	private String line;
+	private int documentClassStart; // -1 if the row has no class
+	private int documentClassEnd;
+	private int documentNameStart; // -1 if the row has no name
+	private int documentNameEnd;
+
+	public int[] termIDs; // already reduced by IIndexer.META_FIELD_COUNT
+	public float[] values;
+	public int numberOfEntries;
+
+	public int documentLength; // sum of the values for plain tf indices, number of entries otherwise
+
+	public ArffDocumentRow() {
+		termIDs = new int[256];
+		values = new float[256];
+	}
+
+	/**
+	 * Parses the given line into this row.
+	 *
+	 * @param line A line of the @DATA section.
+	 * @param plainTf Whether the values are plain term frequencies (affects {@link #documentLength}).
+	 * @return false if the line is not a valid sparse instance.
+	 */
+	public boolean parse(String line, boolean plainTf) {
+		this.line = line;
+		docID = -1;
+		documentClassStart = -1;
+		documentNameStart = -1;
+		numberOfEntries = 0;
+		documentLength = 0;
+
+		if (line.length() == 0 || line.charAt(0) != '{') {
+			return false;
+		}
+
+		int attributeBeginning = 1;
+		int attributeMiddle = line.indexOf(' ', attributeBeginning);
+		int attributeEnd = line.indexOf(',', attributeMiddle);
+
+		if (attributeMiddle == -1 || attributeEnd == -1 || attributeMiddle > attributeEnd) {
+			return false;
+		}
+
+		while(attributeMiddle != -1 && attributeEnd != -1 && attributeMiddle < attributeEnd) {
+			int attributeId = Integer.parseInt(line.substring(attributeBeginning, attributeMiddle));
+
+			switch(attributeId) {
+				case 0: // docID
+					docID = Integer.parseInt(line.substring(attributeMiddle+1, attributeEnd));
+					break;
+				case 1:	// docClass
+					documentClassStart = attributeMiddle+1;
+					documentClassEnd = attributeEnd;
+					break;
+				case 2: // docName
+					documentNameStart = attributeMiddle+1;
+					documentNameEnd = attributeEnd;
+					break;
+				default:
+					float value = Float.parseFloat(line.substring(attributeMiddle+1, attributeEnd));
+					documentLength += (plainTf?value:1);
+					add(attributeId-IIndexer.META_FIELD_COUNT, value);
+			}
+
+			attributeBeginning = attributeEnd + 1;
+			attributeMiddle = line.indexOf(' ', attributeBeginning);
+			attributeEnd = line.indexOf(',', attributeMiddle);
+			if (attributeEnd == -1) {
+				attributeEnd = line.indexOf('}');
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The class of the document, null if the row does not contain one.
+	 */
+	public String getDocumentClass() {
+		return documentClassStart < 0 ? null : line.substring(documentClassStart, documentClassEnd);
+	}
+
+	/**
+	 * @return The name of the document, null if the row does not contain one.
+	 */
+	public String getDocumentName() {
+		return documentNameStart < 0 ? null : line.substring(documentNameStart, documentNameEnd);
+	}
+
+	private void add(int termID, float value) {
+		if (numberOfEntries == termIDs.length) {
+			int[] newTermIDs = new int[termIDs.length * 2];
+			float[] newValues = new float[values.length * 2];
+			System.arraycopy(termIDs, 0, newTermIDs, 0, numberOfEntries);
+			System.arraycopy(values, 0, newValues, 0, numberOfEntries);
+			termIDs = newTermIDs;
+			values = newValues;
+		}
+		termIDs[numberOfEntries] = termID;
+		values[numberOfEntries] = value;
+		numberOfEntries++;
+	}
+
+	/**
+	 * @return The euclidean length of the term vector of this row.
+	 */
+	public double getVectorLength() {
+		double length = 0.0;
+		for (int i = 0; i < numberOfEntries; i++) {
+			length += values[i] * values[i];
+		}
+		return Math.sqrt(length);
+	}
+}
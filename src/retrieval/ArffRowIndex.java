@@ -0,0 +1,235 @@
+package retrieval;
+
+import indexing.BufferedArffMatrixWriter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read access to the row index written next to an ARFF file by {@link BufferedArffMatrixWriter}: for every row of
+ * the file, the docID, the offset of the gzip member ("block") holding the row and the offset of the row in the
+ * decompressed block. The row index is memory mapped, the blocks are listed when it is opened.
+ *
+ * This allows to read the row of a single document without decompressing the file up to it, and to split the rows
+ * of a file into blocks that can be decompressed independently of each other.
+ */
+public class ArffRowIndex {
+	private File arffFile;
+	private ByteBuffer rows;
+	private int numberOfRows;
+	private long[] blockOffsets; // plus the length of the file as end of the last block
+	private int[] firstRows; // plus the number of rows
+
+	private ArffRowIndex() {
+	}
+
+	/**
+	 * @return Whether the given ARFF file has a row index, i.e. was written as blocks.
+	 */
+	public static boolean exists(File arffFile) {
+		return new File(arffFile.getPath() + BufferedArffMatrixWriter.ROW_INDEX_SUFFIX).exists();
+	}
+
+	/**
+	 * Maps the row index of the given ARFF file.
+	 *
+	 * @throws IOException If the row index cannot be read.
+	 */
+	public static ArffRowIndex open(File arffFile) throws IOException {
+		ArffRowIndex index = new ArffRowIndex();
+		index.arffFile = arffFile;
+
+		File file = new File(arffFile.getPath() + BufferedArffMatrixWriter.ROW_INDEX_SUFFIX);
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File "+file.getPath()+" is too large to be mapped!");
+			}
+			index.rows = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // the mapping stays valid after closing the file
+		}
+		finally {
+			randomAccessFile.close();
+		}
+		index.numberOfRows = index.rows.limit() / BufferedArffMatrixWriter.BYTES_PER_ROW;
+
+		ArrayList<Long> blockOffsets = new ArrayList<Long>();
+		ArrayList<Integer> firstRows = new ArrayList<Integer>();
+		for (int row = 0; row < index.numberOfRows; row++) {
+			if (row == 0 || index.getBlockOffset(row) != index.getBlockOffset(row - 1)) {
+				blockOffsets.add(index.getBlockOffset(row));
+				firstRows.add(row);
+			}
+		}
+		index.blockOffsets = new long[blockOffsets.size() + 1];
+		index.firstRows = new int[firstRows.size() + 1];
+		for (int block = 0; block < blockOffsets.size(); block++) {
+			index.blockOffsets[block] = blockOffsets.get(block);
+			index.firstRows[block] = firstRows.get(block);
+		}
+		index.blockOffsets[blockOffsets.size()] = arffFile.length();
+		index.firstRows[firstRows.size()] = index.numberOfRows;
+		return index;
+	}
+
+	public File getArffFile() {
+		return arffFile;
+	}
+
+	public int getNumberOfRows() {
+		return numberOfRows;
+	}
+
+	public int getDocID(int row) {
+		return rows.getInt(row * BufferedArffMatrixWriter.BYTES_PER_ROW);
+	}
+
+	/**
+	 * @return The offset of the block holding the given row in the ARFF file.
+	 */
+	public long getBlockOffset(int row) {
+		return rows.getLong(row * BufferedArffMatrixWriter.BYTES_PER_ROW + 4);
+	}
+
+	/**
+	 * @return The offset of the given row in its decompressed block.
+	 */
+	public int getOffsetInBlock(int row) {
+		return rows.getInt(row * BufferedArffMatrixWriter.BYTES_PER_ROW + 12);
+	}
+
+	/**
+	 * @return The row of the given document, -1 if the file has no row for it.
+	 */
+	public int findRow(int docID) {
+		int low = 0;
+		int high = numberOfRows - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middleDocID = getDocID(middle);
+			if (middleDocID < docID) {
+				low = middle + 1;
+			}
+			else if (middleDocID > docID) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The number of blocks holding rows, the header of the file is not counted.
+	 */
+	public int getNumberOfBlocks() {
+		return blockOffsets.length - 1;
+	}
+
+	/**
+	 * @return The offset of the given block in the ARFF file.
+	 */
+	public long getBlockStart(int block) {
+		return blockOffsets[block];
+	}
+
+	/**
+	 * @return The offset of the first byte after the given block in the ARFF file.
+	 */
+	public long getBlockEnd(int block) {
+		return blockOffsets[block + 1];
+	}
+
+	/**
+	 * @return The first row of the given block.
+	 */
+	public int getFirstRow(int block) {
+		return firstRows[block];
+	}
+
+	/**
+	 * @return The number of rows of the given block.
+	 */
+	public int getNumberOfRows(int block) {
+		return firstRows[block + 1] - firstRows[block];
+	}
+
+	/**
+	 * @return The block holding the given row.
+	 */
+	public int getBlock(int row) {
+		int low = 0;
+		int high = getNumberOfBlocks() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (firstRows[middle] <= row) {
+				low = middle;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Reads the compressed bytes of the given block, e.g. to decompress them in another thread.
+	 *
+	 * @throws IOException If the ARFF file cannot be read.
+	 */
+	public byte[] readBlock(int block) throws IOException {
+		byte[] bytes = new byte[(int)(getBlockEnd(block) - getBlockStart(block))];
+		RandomAccessFile randomAccessFile = new RandomAccessFile(arffFile, "r");
+		try {
+			randomAccessFile.seek(getBlockStart(block));
+			randomAccessFile.readFully(bytes);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Decompresses a block read by {@link #readBlock(int)}.
+	 *
+	 * @return A reader of the rows of the block, one per line.
+	 * @throws IOException If the block is not a valid gzip member.
+	 */
+	public static BufferedReader openBlock(byte[] block) throws IOException {
+		return new BufferedReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(block), 8192)));
+	}
+
+	/**
+	 * Reads the row of the given document, by decompressing only the block holding it.
+	 *
+	 * @return The row, as written to the ARFF file, or null if the file has no row for the document.
+	 * @throws IOException If the ARFF file cannot be read.
+	 */
+	public String readRow(int docID) throws IOException {
+		int row = findRow(docID);
+		if (row < 0) {
+			return null;
+		}
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(readBlock(getBlock(row))), 8192);
+		long skipped = 0;
+		while (skipped < getOffsetInBlock(row)) { // the offset counts bytes, not characters
+			long n = in.skip(getOffsetInBlock(row) - skipped);
+			if (n <= 0) {
+				throw new IOException("Invalid row offset in the row index of "+arffFile.getPath());
+			}
+			skipped += n;
+		}
+		return new BufferedReader(new InputStreamReader(in)).readLine();
+	}
+}
@@ -0,0 +1,72 @@
+package retrieval;
+
+/**
+ * A cursor over postings held in plain arrays, as built by {@link InvertedIndex}. {@link #advance(int)} gallops from
+ * the current position (exponential search followed by a binary search), so advancing by a few postings is cheap
+ * and advancing far is logarithmic.
+ */
+public class ArrayPostingsCursor implements IPostingsCursor {
+	private int[] docIDs;
+	private float[] values;
+	private int size;
+	private int position = -1;
+	private int docID = -1;
+
+	/**
+	 * @param _docIDs The docIDs, in increasing order.
+	 * @param _values The values, parallel to the docIDs.
+	 * @param _size The number of valid entries of the arrays.
+	 */
+	public ArrayPostingsCursor(int[] _docIDs, float[] _values, int _size) {
+		this.docIDs = _docIDs;
+		this.values = _values;
+		this.size = _size;
+	}
+
+	public int docID() {
+		return docID;
+	}
+
+	public float value() {
+		return values[position];
+	}
+
+	public int nextDoc() {
+		position++;
+		docID = position < size ? docIDs[position] : NO_MORE_DOCS;
+		return docID;
+	}
+
+	public int advance(int target) {
+		if (target <= docID) {
+			return nextDoc();
+		}
+		int low = position + 1;
+		int step = 1;
+		int high = low;
+		while (high < size && docIDs[high] < target) { // gallop to a bound
+			low = high + 1;
+			high += step;
+			step <<= 1;
+		}
+		if (high > size - 1) {
+			high = size - 1;
+		}
+		while (low <= high) { // first entry >= target within [low, high]
+			int middle = (low + high) >>> 1;
+			if (docIDs[middle] < target) {
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		position = low;
+		docID = position < size ? docIDs[position] : NO_MORE_DOCS;
+		return docID;
+	}
+
+	public int cost() {
+		return size;
+	}
+}
@@ -0,0 +1,261 @@
+package retrieval;
+
+/**
+ * Postings whose docIDs are stored as a compressed bitmap in the style of Roaring bitmaps (Chambi, Lemire et al.,
+ * "Better bitmap performance with Roaring bitmaps", 2016): the docIDs are split by their upper 16 bits into containers
+ * of up to 65536 docIDs, and every container holds the lower 16 bits of its docIDs either as a bitmap or, if that
+ * is smaller, as a sorted array. Unlike in Roaring, a bitmap only reaches up to the largest docID of its container,
+ * so that the bitmaps of small collections do not need 8 kB. The values are kept in an array in docID order, the
+ * position of a docID in it is its rank in the bitmap.
+ *
+ * Dense terms need less than a byte per posting, and {@link IPostingsCursor#advance(int)} finds the container of the
+ * target by binary search and skips words of 64 docIDs at once, so no extra skip data is needed. See
+ * {@link VarintPostings} for sparse terms.
+ */
+public class BitmapPostings implements IPostings {
+	private static final int CONTAINER_OVERHEAD = 8; // bytes for key, first rank and reference of a container
+
+	private char[] keys; // the upper 16 bits of the docIDs of every container
+	private long[][] bitmaps; // per container, null for an array container
+	private char[][] arrays; // per container, null for a bitmap container
+	private int[] firstRanks; // the position of the first posting of every container in values, plus the size
+	private float[] values;
+	private int size;
+	private long sizeInBytes;
+
+	/**
+	 * Encodes the given postings.
+	 *
+	 * @param docIDs The docIDs, in increasing order.
+	 * @param _values The values, parallel to the docIDs. The array is kept, not copied.
+	 * @param _size The number of postings.
+	 */
+	public BitmapPostings(int[] docIDs, float[] _values, int _size) {
+		this.values = _values;
+		this.size = _size;
+
+		int numberOfContainers = 0;
+		for (int i = 0; i < _size; i++) {
+			if (i == 0 || (docIDs[i] >>> 16) != (docIDs[i - 1] >>> 16)) {
+				numberOfContainers++;
+			}
+		}
+		keys = new char[numberOfContainers];
+		bitmaps = new long[numberOfContainers][];
+		arrays = new char[numberOfContainers][];
+		firstRanks = new int[numberOfContainers + 1];
+		sizeInBytes = 4L * _size;
+
+		int start = 0;
+		for (int container = 0; container < numberOfContainers; container++) {
+			int key = docIDs[start] >>> 16;
+			int end = start;
+			while (end < _size && (docIDs[end] >>> 16) == key) {
+				end++;
+			}
+			keys[container] = (char)key;
+			firstRanks[container] = start;
+
+			int cardinality = end - start;
+			int words = ((docIDs[end - 1] & 0xFFFF) >>> 6) + 1;
+			if (8 * words < 2 * cardinality) {
+				long[] bitmap = new long[words];
+				for (int i = start; i < end; i++) {
+					int low = docIDs[i] & 0xFFFF;
+					bitmap[low >>> 6] |= 1L << low;
+				}
+				bitmaps[container] = bitmap;
+				sizeInBytes += 8 * words + CONTAINER_OVERHEAD;
+			}
+			else {
+				char[] array = new char[cardinality];
+				for (int i = start; i < end; i++) {
+					array[i - start] = (char)docIDs[i];
+				}
+				arrays[container] = array;
+				sizeInBytes += 2 * cardinality + CONTAINER_OVERHEAD;
+			}
+			start = end;
+		}
+		firstRanks[numberOfContainers] = _size;
+	}
+
+	/**
+	 * @return The number of bytes the docIDs of the given postings need as bitmap, without creating it.
+	 */
+	public static long encodedSize(int[] docIDs, int size) {
+		long bytes = 0;
+		int start = 0;
+		while (start < size) {
+			int key = docIDs[start] >>> 16;
+			int end = start;
+			while (end < size && (docIDs[end] >>> 16) == key) {
+				end++;
+			}
+			int words = ((docIDs[end - 1] & 0xFFFF) >>> 6) + 1;
+			bytes += Math.min(8 * words, 2 * (end - start)) + CONTAINER_OVERHEAD;
+			start = end;
+		}
+		return bytes;
+	}
+
+	public IPostingsCursor cursor() {
+		return new Cursor();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	/**
+	 * Walks through the containers. In a bitmap container, the bits of the current word that have not been visited
+	 * yet are kept in <code>word</code>, so the next docID is found by counting trailing zeros.
+	 */
+	private class Cursor implements IPostingsCursor {
+		private int container = -1;
+		private int base; // the first docID of the current container
+		private long[] bitmap; // of the current container, null for an array container
+		private char[] array;
+		private int wordIndex;
+		private long word;
+		private int arrayIndex;
+		private int rank = -1; // position of the current posting in values
+		private int docID = -1;
+
+		public int docID() {
+			return docID;
+		}
+
+		public float value() {
+			return values[rank];
+		}
+
+		/**
+		 * Positions the cursor before the first posting of the given container.
+		 */
+		private boolean enterContainer(int _container) {
+			container = _container;
+			if (container >= keys.length) {
+				docID = NO_MORE_DOCS;
+				rank = size;
+				return false;
+			}
+			base = keys[container] << 16;
+			bitmap = bitmaps[container];
+			array = arrays[container];
+			rank = firstRanks[container] - 1;
+			if (bitmap != null) {
+				wordIndex = 0;
+				word = bitmap[0];
+			}
+			else {
+				arrayIndex = -1;
+			}
+			return true;
+		}
+
+		public int nextDoc() {
+			if (docID == NO_MORE_DOCS) {
+				return docID;
+			}
+			if (container < 0 && !enterContainer(0)) {
+				return docID;
+			}
+			while (true) {
+				if (bitmap != null) {
+					while (word == 0 && wordIndex + 1 < bitmap.length) {
+						word = bitmap[++wordIndex];
+					}
+					if (word != 0) {
+						int bit = Long.numberOfTrailingZeros(word);
+						word &= word - 1;
+						rank++;
+						docID = base | (wordIndex << 6) | bit;
+						return docID;
+					}
+				}
+				else if (arrayIndex + 1 < array.length) {
+					arrayIndex++;
+					rank++;
+					docID = base | array[arrayIndex];
+					return docID;
+				}
+				if (!enterContainer(container + 1)) {
+					return docID;
+				}
+			}
+		}
+
+		public int advance(int target) {
+			if (target <= docID) {
+				return nextDoc();
+			}
+			if (container < 0 && !enterContainer(0)) {
+				return docID;
+			}
+
+			int key = target >>> 16;
+			if (keys[container] < key) { // skip whole containers, binary search for the first container >= key
+				int from = container + 1;
+				int to = keys.length - 1;
+				while (from <= to) {
+					int middle = (from + to) >>> 1;
+					if (keys[middle] < key) {
+						from = middle + 1;
+					}
+					else {
+						to = middle - 1;
+					}
+				}
+				if (!enterContainer(from)) {
+					return docID;
+				}
+			}
+			if (keys[container] > key) { // the target falls between two containers
+				return nextDoc();
+			}
+
+			int low = target & 0xFFFF;
+			if (bitmap != null) {
+				int targetWord = low >>> 6;
+				if (targetWord >= bitmap.length) { // beyond the last docID of the container
+					rank = firstRanks[container + 1] - 1;
+					word = 0;
+					wordIndex = bitmap.length - 1;
+					return nextDoc();
+				}
+				while (wordIndex < targetWord) {
+					rank += Long.bitCount(word);
+					word = bitmap[++wordIndex];
+				}
+				long skipped = word & ~(-1L << low); // the bits below the target in its word
+				rank += Long.bitCount(skipped);
+				word &= ~skipped;
+			}
+			else {
+				int from = arrayIndex + 1;
+				int to = array.length - 1;
+				while (from <= to) { // first entry >= low
+					int middle = (from + to) >>> 1;
+					if (array[middle] < low) {
+						from = middle + 1;
+					}
+					else {
+						to = middle - 1;
+					}
+				}
+				rank += from - 1 - arrayIndex;
+				arrayIndex = from - 1;
+			}
+			return nextDoc();
+		}
+
+		public int cost() {
+			return size;
+		}
+	}
+}
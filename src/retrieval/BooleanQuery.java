@@ -0,0 +1,546 @@
+package retrieval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A parsed boolean query (see {@link BooleanQueryParser}): a tree of terms and phrases combined by AND, OR and NOT. The tree
+ * matches documents via {@link #cursor(InvertedIndex)}, a cursor over the docIDs of all documents that satisfy it.
+ * The cursors of the inner nodes never look at the values of the postings, so matching costs no scoring at all.
+ */
+public abstract class BooleanQuery {
+	/**
+	 * @return A new cursor over the docIDs of the documents matching this query, deleted documents included. The
+	 * values of the cursor are meaningless (always 1).
+	 */
+	public abstract IPostingsCursor cursor(InvertedIndex index);
+
+	/**
+	 * Adds the terms that a matching document contains (or may contain) to the given list, i.e. all terms that are
+	 * not negated. These are the terms the matches are ranked by.
+	 */
+	public abstract void collectPositiveTerms(List<String> terms);
+
+	/**
+	 * @return The terms that are not negated, see {@link #collectPositiveTerms(List)}.
+	 */
+	public ArrayList<String> getPositiveTerms() {
+		ArrayList<String> terms = new ArrayList<String>();
+		collectPositiveTerms(terms);
+		return terms;
+	}
+
+	/**
+	 * A single term. Terms that are not in the vocabulary match no document.
+	 */
+	public static class Term extends BooleanQuery {
+		private String term;
+		private int termID; // -1 if the term is not in the vocabulary
+
+		public Term(String _term, int _termID) {
+			this.term = _term;
+			this.termID = _termID;
+		}
+
+		public String getTerm() {
+			return term;
+		}
+
+		@Override
+		public IPostingsCursor cursor(InvertedIndex index) {
+			if (index.getDocumentFrequency(termID) == 0) {
+				return new ArrayPostingsCursor(new int[0], new float[0], 0);
+			}
+			return index.getPostings(termID);
+		}
+
+		@Override
+		public void collectPositiveTerms(List<String> terms) {
+			terms.add(term);
+		}
+
+		@Override
+		public String toString() {
+			return term;
+		}
+	}
+
+	/**
+	 * Matches the documents matching all clauses. Negated clauses are not turned into cursors of their own, the
+	 * documents they match are just excluded from the matches of the other clauses.
+	 */
+	public static class And extends BooleanQuery {
+		private BooleanQuery[] clauses;
+
+		public And(BooleanQuery... _clauses) {
+			this.clauses = _clauses;
+		}
+
+		@Override
+		public IPostingsCursor cursor(InvertedIndex index) {
+			ArrayList<IPostingsCursor> required = new ArrayList<IPostingsCursor>();
+			ArrayList<IPostingsCursor> excluded = new ArrayList<IPostingsCursor>();
+			for (BooleanQuery clause : clauses) {
+				if (clause instanceof Not) {
+					excluded.add(((Not)clause).clause.cursor(index));
+				}
+				else {
+					required.add(clause.cursor(index));
+				}
+			}
+			if (required.isEmpty()) { // NOT a AND NOT b = NOT (a OR b)
+				return new ComplementCursor(new DisjunctionCursor(excluded.toArray(new IPostingsCursor[excluded.size()])), index.getMaxDocID());
+			}
+			return new ConjunctionCursor(required.toArray(new IPostingsCursor[required.size()]), excluded.toArray(new IPostingsCursor[excluded.size()]));
+		}
+
+		@Override
+		public void collectPositiveTerms(List<String> terms) {
+			for (BooleanQuery clause : clauses) {
+				clause.collectPositiveTerms(terms);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return join(clauses, " AND ");
+		}
+	}
+
+	/**
+	 * Matches the documents matching at least one clause.
+	 */
+	public static class Or extends BooleanQuery {
+		private BooleanQuery[] clauses;
+
+		public Or(BooleanQuery... _clauses) {
+			this.clauses = _clauses;
+		}
+
+		@Override
+		public IPostingsCursor cursor(InvertedIndex index) {
+			IPostingsCursor[] cursors = new IPostingsCursor[clauses.length];
+			for (int i = 0; i < clauses.length; i++) {
+				cursors[i] = clauses[i].cursor(index);
+			}
+			return new DisjunctionCursor(cursors);
+		}
+
+		@Override
+		public void collectPositiveTerms(List<String> terms) {
+			for (BooleanQuery clause : clauses) {
+				clause.collectPositiveTerms(terms);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return join(clauses, " OR ");
+		}
+	}
+
+	/**
+	 * Matches the documents not matching the clause. Within an {@link And}, the clause is only checked for the
+	 * candidates of the other clauses; on its own, all other documents of the index are walked.
+	 */
+	public static class Not extends BooleanQuery {
+		private BooleanQuery clause;
+
+		public Not(BooleanQuery _clause) {
+			this.clause = _clause;
+		}
+
+		public BooleanQuery getClause() {
+			return clause;
+		}
+
+		@Override
+		public IPostingsCursor cursor(InvertedIndex index) {
+			return new ComplementCursor(clause.cursor(index), index.getMaxDocID());
+		}
+
+		@Override
+		public void collectPositiveTerms(List<String> terms) {
+			// a matching document does not contain the terms of the clause (unless negated twice)
+		}
+
+		@Override
+		public String toString() {
+			return "NOT " + clause;
+		}
+	}
+
+	/**
+	 * Matches the documents in which the terms occur as a phrase, i.e. in the given order at the same distances as in
+	 * the phrase (consecutive positions unless the phrase contains words too short to be terms, which have to be
+	 * matched by some word of the document), or, with a slop, in any order within a window that contains at most slop
+	 * other words besides them. Like the positions of the documents, the distances count all words. The
+	 * candidates are the documents containing all terms, found like by {@link And}; only their positions are looked
+	 * up in the positional index.
+	 */
+	public static class Phrase extends BooleanQuery {
+		private Term[] terms;
+		private int[] offsets; // the position of each term in the phrase
+		private int slop; // -1 for a phrase
+		private PositionalIndex positionalIndex;
+
+		/**
+		 * @param _terms The terms, in the order of the phrase. A term must not be given twice if there is a slop.
+		 * @param _offsets The position of each term in the phrase, the number of words before it (see
+		 * {@link indexing.TermAnalyzer#analyze(String, List)}). Only used for a phrase, not for a window.
+		 * @param _slop The number of other words allowed within the window of the terms, -1 for a phrase.
+		 * @param _positionalIndex The positions of the terms in the documents of the index.
+		 */
+		public Phrase(Term[] _terms, int[] _offsets, int _slop, PositionalIndex _positionalIndex) {
+			this.terms = _terms;
+			this.offsets = _offsets;
+			this.slop = _slop;
+			this.positionalIndex = _positionalIndex;
+		}
+
+		@Override
+		public IPostingsCursor cursor(InvertedIndex index) {
+			IPostingsCursor[] cursors = new IPostingsCursor[terms.length];
+			int[] termIDs = new int[terms.length];
+			for (int i = 0; i < terms.length; i++) {
+				cursors[i] = terms[i].cursor(index);
+				termIDs[i] = terms[i].termID;
+			}
+			return new PositionsCursor(new ConjunctionCursor(cursors, new IPostingsCursor[0]), positionalIndex, termIDs, offsets, slop);
+		}
+
+		@Override
+		public void collectPositiveTerms(List<String> terms) {
+			for (Term term : this.terms) {
+				term.collectPositiveTerms(terms);
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder("\"");
+			for (int i = 0; i < terms.length; i++) {
+				builder.append(i > 0 ? " " : "").append(terms[i]);
+			}
+			return builder.append("\"").append(slop >= 0 ? "~" + slop : "").toString();
+		}
+	}
+
+	private static String join(BooleanQuery[] clauses, String operator) {
+		StringBuilder builder = new StringBuilder("(");
+		for (int i = 0; i < clauses.length; i++) {
+			builder.append(i > 0 ? operator : "").append(clauses[i]);
+		}
+		return builder.append(")").toString();
+	}
+
+	/**
+	 * Intersects the required cursors, led by the one with the fewest postings: the lead proposes a candidate, the
+	 * others are advanced to it (galloping for array postings, via skip data or bitmaps for compressed ones), and as
+	 * soon as one of them overshoots, the lead is advanced to where that cursor stopped. Candidates contained in an
+	 * excluded cursor are dropped.
+	 */
+	private static class ConjunctionCursor implements IPostingsCursor {
+		private IPostingsCursor[] required; // by increasing cost
+		private IPostingsCursor[] excluded;
+		private int docID = -1;
+
+		ConjunctionCursor(IPostingsCursor[] _required, IPostingsCursor[] _excluded) {
+			this.required = _required;
+			this.excluded = _excluded;
+			Arrays.sort(required, new Comparator<IPostingsCursor>() {
+				public int compare(IPostingsCursor a, IPostingsCursor b) {
+					return Integer.compare(a.cost(), b.cost());
+				}
+			});
+		}
+
+		public int docID() {
+			return docID;
+		}
+
+		public float value() {
+			return 1.0f;
+		}
+
+		public int nextDoc() {
+			return align(required[0].nextDoc());
+		}
+
+		public int advance(int target) {
+			if (target <= docID) {
+				return nextDoc();
+			}
+			return align(required[0].advance(target));
+		}
+
+		/**
+		 * Moves to the first match at or after the given docID of the lead.
+		 */
+		private int align(int candidate) {
+			while (candidate != NO_MORE_DOCS) {
+				int i = 1;
+				for (; i < required.length; i++) {
+					int other = required[i].docID() < candidate ? required[i].advance(candidate) : required[i].docID();
+					if (other > candidate) {
+						candidate = required[0].advance(other);
+						break;
+					}
+				}
+				if (i == required.length) {
+					if (!isExcluded(candidate)) {
+						docID = candidate;
+						return docID;
+					}
+					candidate = required[0].nextDoc();
+				}
+			}
+			docID = NO_MORE_DOCS;
+			return docID;
+		}
+
+		private boolean isExcluded(int candidate) {
+			for (IPostingsCursor cursor : excluded) {
+				if (cursor.docID() < candidate) {
+					cursor.advance(candidate);
+				}
+				if (cursor.docID() == candidate) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public int cost() {
+			return required[0].cost();
+		}
+	}
+
+	/**
+	 * Merges the cursors: the current docID is the smallest docID of all cursors. The number of clauses of a query
+	 * is small, so the cursors are searched linearly instead of being kept in a heap.
+	 */
+	private static class DisjunctionCursor implements IPostingsCursor {
+		private IPostingsCursor[] cursors;
+		private int docID = -1;
+
+		DisjunctionCursor(IPostingsCursor[] _cursors) {
+			this.cursors = _cursors;
+		}
+
+		public int docID() {
+			return docID;
+		}
+
+		public float value() {
+			return 1.0f;
+		}
+
+		public int nextDoc() {
+			int next = NO_MORE_DOCS;
+			for (IPostingsCursor cursor : cursors) {
+				int doc = cursor.docID() <= docID ? cursor.nextDoc() : cursor.docID(); // on the current docID or not started
+				next = Math.min(next, doc);
+			}
+			docID = next;
+			return docID;
+		}
+
+		public int advance(int target) {
+			if (target <= docID) {
+				return nextDoc();
+			}
+			int next = NO_MORE_DOCS;
+			for (IPostingsCursor cursor : cursors) {
+				int doc = cursor.docID() < target ? cursor.advance(target) : cursor.docID();
+				next = Math.min(next, doc);
+			}
+			docID = next;
+			return docID;
+		}
+
+		public int cost() {
+			long cost = 0;
+			for (IPostingsCursor cursor : cursors) {
+				cost += cursor.cost();
+			}
+			return (int)Math.min(cost, Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Walks all docIDs of the index (from 1 to the largest docID) that the given cursor does not contain.
+	 */
+	private static class ComplementCursor implements IPostingsCursor {
+		private IPostingsCursor cursor;
+		private int maxDocID;
+		private int docID = -1;
+
+		ComplementCursor(IPostingsCursor _cursor, int _maxDocID) {
+			this.cursor = _cursor;
+			this.maxDocID = _maxDocID;
+		}
+
+		public int docID() {
+			return docID;
+		}
+
+		public float value() {
+			return 1.0f;
+		}
+
+		public int nextDoc() {
+			return advance(docID + 1);
+		}
+
+		public int advance(int target) {
+			if (docID == NO_MORE_DOCS) {
+				return docID;
+			}
+			int candidate = Math.max(Math.max(target, docID + 1), 1); // docIDs start at 1
+			while (candidate <= maxDocID) {
+				if (cursor.docID() < candidate) {
+					cursor.advance(candidate);
+				}
+				if (cursor.docID() != candidate) {
+					docID = candidate;
+					return docID;
+				}
+				candidate++;
+			}
+			docID = NO_MORE_DOCS;
+			return docID;
+		}
+
+		public int cost() {
+			return Math.max(maxDocID - cursor.cost(), 0);
+		}
+	}
+
+	/**
+	 * Passes on the candidates of the given cursor whose positions contain the phrase or window.
+	 */
+	private static class PositionsCursor implements IPostingsCursor {
+		private IPostingsCursor candidates;
+		private PositionalIndex positionalIndex;
+		private int[] termIDs;
+		private int[] offsets;
+		private int slop;
+		private int docID = -1;
+
+		PositionsCursor(IPostingsCursor _candidates, PositionalIndex _positionalIndex, int[] _termIDs, int[] _offsets, int _slop) {
+			this.candidates = _candidates;
+			this.positionalIndex = _positionalIndex;
+			this.termIDs = _termIDs;
+			this.offsets = _offsets;
+			this.slop = _slop;
+		}
+
+		public int docID() {
+			return docID;
+		}
+
+		public float value() {
+			return 1.0f;
+		}
+
+		public int nextDoc() {
+			return verify(candidates.nextDoc());
+		}
+
+		public int advance(int target) {
+			if (target <= docID) {
+				return nextDoc();
+			}
+			return verify(candidates.advance(target));
+		}
+
+		/**
+		 * Moves to the first candidate at or after the given one whose positions match.
+		 */
+		private int verify(int candidate) {
+			while (candidate != NO_MORE_DOCS) {
+				int[][] positions = positionalIndex.getPositions(candidate, termIDs);
+				if (positions != null && (slop < 0 ? containsPhrase(positions, offsets) : containsWindow(positions, termIDs.length - 1 + slop))) {
+					break;
+				}
+				candidate = candidates.nextDoc();
+			}
+			docID = candidate;
+			return docID;
+		}
+
+		public int cost() {
+			return candidates.cost();
+		}
+	}
+
+	/**
+	 * Intersects the position lists, the positions of term i shifted by its offset: the first term proposes a start
+	 * of the phrase, the other lists are advanced to it, and as soon as one of them overshoots, the start moves to
+	 * where that list stopped.
+	 *
+	 * @param positions The positions of the terms of the phrase, in its order.
+	 * @param offsets The positions of the terms within the phrase, increasing.
+	 * @return Whether there is a start p such that term i occurs at p + offsets[i] - offsets[0] for all terms.
+	 */
+	static boolean containsPhrase(int[][] positions, int[] offsets) {
+		int[] next = new int[positions.length];
+		int start = positions[0][0];
+		while (true) {
+			boolean matched = true;
+			for (int i = 0; i < positions.length; i++) {
+				int[] termPositions = positions[i];
+				int offset = offsets[i] - offsets[0];
+				while (next[i] < termPositions.length && termPositions[next[i]] < start + offset) {
+					next[i]++;
+				}
+				if (next[i] == termPositions.length) {
+					return false;
+				}
+				if (termPositions[next[i]] != start + offset) {
+					start = termPositions[next[i]] - offset;
+					matched = false;
+					break;
+				}
+			}
+			if (matched) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Walks the position lists in parallel, always moving the list with the smallest current position, and checks
+	 * the span of the current positions. This finds the smallest window containing all terms starting at every
+	 * position, stepping once per position of all lists.
+	 *
+	 * @param positions The positions of the (distinct) terms.
+	 * @param maxSpan The largest difference allowed between the first and the last position of the window.
+	 * @return Whether all terms occur within such a window.
+	 */
+	static boolean containsWindow(int[][] positions, int maxSpan) {
+		int[] next = new int[positions.length];
+		while (true) {
+			int first = Integer.MAX_VALUE;
+			int firstTerm = -1;
+			int last = Integer.MIN_VALUE;
+			for (int i = 0; i < positions.length; i++) {
+				int position = positions[i][next[i]];
+				if (position < first) {
+					first = position;
+					firstTerm = i;
+				}
+				last = Math.max(last, position);
+			}
+			if (last - first <= maxSpan) {
+				return true;
+			}
+			if (++next[firstTerm] == positions[firstTerm].length) {
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package retrieval;
+
+import java.util.BitSet;
+
+/**
+ * Evaluates a {@link BooleanQuery} on an inverted index. Only the documents matching the query are visited: without
+ * ranking, the first K matches in docID order are returned without computing any score; with ranking, only the
+ * matches are scored, by the given scoring method on the terms of the query that are not negated. A match is scored
+ * like by {@link DocumentAtATimeEvaluator}, i.e. exactly like by {@link TermAtATimeEvaluator} for a query of these
+ * terms (in double precision, in order of decreasing idf); matches that contain none of them (they
+ * only match because of a NOT) get a score of 0.
+ *
+ * Deleted documents never match. Note that an evaluator counts the matches of the last query, so it must not be
+ * shared by threads.
+ */
+public class BooleanQueryEvaluator {
+	private int numberOfMatches;
+
+	/**
+	 * @param rankingQuery The terms the matches are ranked by, null to return the first K matches in docID order
+	 * (with score 0).
+	 * @return The top K matches.
+	 */
+	public SizedPriorityQueue<Integer> evaluate(InvertedIndex index, IScoringMethod scoringMethod, BooleanQuery query, QueryVector rankingQuery, int K) {
+		SizedPriorityQueue<Integer> results = new SizedPriorityQueue<Integer>(K, true);
+		BitSet deletedDocuments = index.getDeletedDocuments();
+
+		Integer[] order = null;
+		IPostingsCursor[] rankingCursors = null;
+		if (rankingQuery != null) {
+			order = TermAtATimeEvaluator.orderByDecreasingIdf(index, rankingQuery);
+			rankingCursors = DocumentAtATimeEvaluator.openCursors(index, rankingQuery, order);
+		}
+
+		numberOfMatches = 0;
+		IPostingsCursor matches = query.cursor(index);
+		for (int docID = matches.nextDoc(); docID != IPostingsCursor.NO_MORE_DOCS; docID = matches.nextDoc()) {
+			if (deletedDocuments != null && deletedDocuments.get(docID)) {
+				continue;
+			}
+			numberOfMatches++;
+			if (rankingQuery == null) {
+				if (!results.isFull()) {
+					results.add(docID, 0.0);
+				}
+				continue;
+			}
+
+			for (IPostingsCursor cursor : rankingCursors) {
+				if (cursor.docID() < docID) {
+					cursor.advance(docID);
+				}
+			}
+			double similarity = DocumentAtATimeEvaluator.scoreDocument(index, scoringMethod, rankingQuery, order, rankingCursors, docID);
+			DocumentAtATimeEvaluator.collect(results, docID, Double.isNaN(similarity) ? 0.0 : similarity);
+		}
+
+		return results;
+	}
+
+	/**
+	 * @return The number of documents that matched the last query evaluated, not only the top K.
+	 */
+	public int getNumberOfMatches() {
+		return numberOfMatches;
+	}
+}
@@ -0,0 +1,243 @@
+package retrieval;
+
+import java.util.ArrayList;
+
+import dao.Vocabulary;
+import dao.VocabularyEntry;
+import indexing.TermAnalyzer;
+
+/**
+ * Parses boolean queries like <code>(israel OR palestine) AND "peace talks" NOT gaza</code>:
+ *
+ * <pre>
+ * query  := and { "OR" and }
+ * and    := unary { ["AND"] unary }      (adjacent clauses are combined by AND)
+ * unary  := "NOT" unary | "(" query ")" | phrase | word
+ * phrase := '"' words '"' [ "~" slop ]
+ * </pre>
+ *
+ * A phrase matches the documents containing its words at consecutive positions (a word too short to be a term
+ * matches any word), <code>"..."~N</code> the documents containing them in any order within a window of at most N
+ * other words (see {@link BooleanQuery.Phrase}). Phrases
+ * need the positional index of the index (built with positions, see {@link PositionalIndex}).
+ *
+ * The operators have to be written in upper case, so lower case "and", "or" and "not" are ordinary words. A word is
+ * analyzed like the documents of the collection (see {@link TermAnalyzer}): if it falls apart into several terms,
+ * these are combined by AND, and if it yields no term at all (e.g. a word shorter than
+ * {@link TermAnalyzer#MIN_TERM_LENGTH}), the word is left out of the query, as if it had not been given.
+ */
+public class BooleanQueryParser {
+	private TermAnalyzer analyzer;
+	private Vocabulary vocabulary;
+	private PositionalIndex positionalIndex; // null if the index has none
+
+	private ArrayList<String> tokens;
+	private int position;
+
+	/**
+	 * @param _analyzer The analyzer of the query words, it has to use the stemming of the index.
+	 * @param _vocabulary The vocabulary of the index, to look up the termIDs.
+	 */
+	public BooleanQueryParser(TermAnalyzer _analyzer, Vocabulary _vocabulary) {
+		this(_analyzer, _vocabulary, null);
+	}
+
+	/**
+	 * @param _analyzer The analyzer of the query words, it has to use the stemming of the index.
+	 * @param _vocabulary The vocabulary of the index, to look up the termIDs.
+	 * @param _positionalIndex The positional index of the index, for phrases. Null if the index has none, phrases of
+	 * more than one term are rejected then.
+	 */
+	public BooleanQueryParser(TermAnalyzer _analyzer, Vocabulary _vocabulary, PositionalIndex _positionalIndex) {
+		this.analyzer = _analyzer;
+		this.vocabulary = _vocabulary;
+		this.positionalIndex = _positionalIndex;
+	}
+
+	/**
+	 * @return The parsed query.
+	 * @throws IllegalArgumentException If the query is malformed or contains no term at all.
+	 */
+	public BooleanQuery parse(String query) {
+		tokens = tokenize(query);
+		position = 0;
+		BooleanQuery parsed = parseOr();
+		if (position < tokens.size()) {
+			throw new IllegalArgumentException("unexpected \"" + tokens.get(position) + "\"");
+		}
+		if (parsed == null) {
+			throw new IllegalArgumentException("the query contains no searchable term");
+		}
+		return parsed;
+	}
+
+	/**
+	 * Splits the query at white space, parentheses are tokens of their own. A phrase, from its opening to its closing
+	 * quote and including a following slop, is a single token.
+	 */
+	private static ArrayList<String> tokenize(String query) {
+		ArrayList<String> tokens = new ArrayList<String>();
+		StringBuilder token = new StringBuilder();
+		for (int i = 0; i <= query.length(); i++) {
+			char c = i < query.length() ? query.charAt(i) : ' ';
+			if (c == '"' && token.length() == 0) {
+				int end = query.indexOf('"', i + 1);
+				if (end < 0) {
+					throw new IllegalArgumentException("missing closing quote");
+				}
+				token.append(query, i, end + 1);
+				i = end;
+			}
+			else if (Character.isWhitespace(c) || c == '(' || c == ')') {
+				if (token.length() > 0) {
+					tokens.add(token.toString());
+					token.setLength(0);
+				}
+				if (!Character.isWhitespace(c)) {
+					tokens.add(String.valueOf(c));
+				}
+			}
+			else {
+				token.append(c);
+			}
+		}
+		return tokens;
+	}
+
+	private static boolean isOperator(String token) {
+		return token.equals("AND") || token.equals("OR") || token.equals("NOT") || token.equals("(") || token.equals(")");
+	}
+
+	private String peek() {
+		return position < tokens.size() ? tokens.get(position) : null;
+	}
+
+	/**
+	 * @return The parsed clauses combined by OR, null if none of them contains a term.
+	 */
+	private BooleanQuery parseOr() {
+		ArrayList<BooleanQuery> clauses = new ArrayList<BooleanQuery>();
+		add(clauses, parseAnd());
+		while ("OR".equals(peek())) {
+			position++;
+			add(clauses, parseAnd());
+		}
+		if (clauses.size() == 1) {
+			return clauses.get(0);
+		}
+		return clauses.isEmpty() ? null : new BooleanQuery.Or(clauses.toArray(new BooleanQuery[clauses.size()]));
+	}
+
+	private BooleanQuery parseAnd() {
+		ArrayList<BooleanQuery> clauses = new ArrayList<BooleanQuery>();
+		add(clauses, parseUnary());
+		while (peek() != null && !peek().equals("OR") && !peek().equals(")")) {
+			if (peek().equals("AND")) {
+				position++;
+			}
+			add(clauses, parseUnary());
+		}
+		return combineByAnd(clauses);
+	}
+
+	private BooleanQuery parseUnary() {
+		String token = peek();
+		if (token == null) {
+			throw new IllegalArgumentException(position == 0 ? "empty query" : "missing term after \"" + tokens.get(position - 1) + "\"");
+		}
+		position++;
+		if (token.equals("NOT")) {
+			BooleanQuery clause = parseUnary();
+			if (clause == null) {
+				return null;
+			}
+			return clause instanceof BooleanQuery.Not ? ((BooleanQuery.Not)clause).getClause() : new BooleanQuery.Not(clause);
+		}
+		if (token.equals("(")) {
+			BooleanQuery clause = parseOr();
+			if (!")".equals(peek())) {
+				throw new IllegalArgumentException("missing \")\"");
+			}
+			position++;
+			return clause;
+		}
+		if (isOperator(token)) {
+			throw new IllegalArgumentException("unexpected \"" + token + "\"");
+		}
+		if (token.startsWith("\"")) {
+			return parsePhrase(token);
+		}
+		return parseWord(token);
+	}
+
+	/**
+	 * @return The phrase, or the term if the phrase has a single term, null if it has none.
+	 */
+	private BooleanQuery parsePhrase(String token) {
+		int end = token.lastIndexOf('"');
+		int slop = -1;
+		if (end < token.length() - 1) {
+			if (!token.matches(".*\"~[0-9]+")) {
+				throw new IllegalArgumentException("invalid slop \"" + token.substring(end + 1) + "\", expected ~N");
+			}
+			slop = Integer.parseInt(token.substring(end + 2));
+		}
+
+		ArrayList<BooleanQuery.Term> terms = new ArrayList<BooleanQuery.Term>();
+		ArrayList<Integer> offsets = new ArrayList<Integer>();
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		ArrayList<String> phraseTerms = analyzer.analyze(token.substring(1, end), positions);
+		for (int i = 0; i < phraseTerms.size(); i++) {
+			String term = phraseTerms.get(i);
+			boolean duplicate = false;
+			for (BooleanQuery.Term other : terms) {
+				duplicate |= other.getTerm().equals(term);
+			}
+			if (slop >= 0 && duplicate) { // within a window, a term given twice is found once
+				continue;
+			}
+			VocabularyEntry entry = vocabulary.get(term);
+			terms.add(new BooleanQuery.Term(term, entry != null ? entry.getTermID() : -1));
+			offsets.add(positions.get(i));
+		}
+		if (terms.size() <= 1) {
+			return terms.isEmpty() ? null : terms.get(0);
+		}
+		if (positionalIndex == null) {
+			throw new IllegalArgumentException("phrases need an index built with positions=true");
+		}
+		int[] termOffsets = new int[offsets.size()];
+		for (int i = 0; i < termOffsets.length; i++) {
+			termOffsets[i] = offsets.get(i);
+		}
+		return new BooleanQuery.Phrase(terms.toArray(new BooleanQuery.Term[terms.size()]), termOffsets, slop, positionalIndex);
+	}
+
+	/**
+	 * @return The terms of the word combined by AND, null if it has none.
+	 */
+	private BooleanQuery parseWord(String word) {
+		ArrayList<BooleanQuery> terms = new ArrayList<BooleanQuery>();
+		for (String term : analyzer.analyze(word)) {
+			VocabularyEntry entry = vocabulary.get(term);
+			terms.add(new BooleanQuery.Term(term, entry != null ? entry.getTermID() : -1));
+		}
+		return combineByAnd(terms);
+	}
+
+	private static BooleanQuery combineByAnd(ArrayList<BooleanQuery> clauses) {
+		if (clauses.isEmpty()) {
+			return null;
+		}
+		if (clauses.size() == 1) {
+			return clauses.get(0);
+		}
+		return new BooleanQuery.And(clauses.toArray(new BooleanQuery[clauses.size()]));
+	}
+
+	private static void add(ArrayList<BooleanQuery> clauses, BooleanQuery clause) {
+		if (clause != null) {
+			clauses.add(clause);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package retrieval;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Ranked AND: only documents containing all terms of the query are scored. The postings are intersected
+ * document-at-a-time: the cursor of the rarest term proposes a candidate, the other cursors are advanced to it, and
+ * as soon as one of them overshoots, the rarest term is advanced to where that cursor stopped. With skip data (see
+ * {@link VarintPostings}) or bitmaps (see {@link BitmapPostings}), the long postings of frequent terms are mostly
+ * skipped instead of decoded.
+ *
+ * A query term that does not occur in the index matches no document, so the result is empty then.
+ */
+public class ConjunctiveEvaluator extends DocumentAtATimeEvaluator {
+	@Override
+	public SizedPriorityQueue<Integer> evaluate(InvertedIndex index, IScoringMethod scoringMethod, QueryVector query, int K, int fromDocID, int toDocID) {
+		SizedPriorityQueue<Integer> results = new SizedPriorityQueue<Integer>(K, true);
+
+		for (int i = 0; i < query.size(); i++) {
+			if (query.getValue(i) != 0.0f && index.getDocumentFrequency(query.getTermID(i)) == 0) {
+				return results;
+			}
+		}
+		Integer[] order = TermAtATimeEvaluator.orderByDecreasingIdf(index, query);
+		if (order.length == 0) {
+			return results;
+		}
+
+		IPostingsCursor[] cursors = openCursors(index, query, order);
+		IPostingsCursor[] byCost = Arrays.copyOf(cursors, cursors.length);
+		Arrays.sort(byCost, new Comparator<IPostingsCursor>() {
+			public int compare(IPostingsCursor a, IPostingsCursor b) {
+				return Integer.compare(a.cost(), b.cost());
+			}
+		});
+
+		IPostingsCursor lead = byCost[0];
+		int docID = lead.advance(fromDocID);
+		while (docID < toDocID) {
+			int i = 1;
+			for (; i < byCost.length; i++) {
+				int other = byCost[i].docID() < docID ? byCost[i].advance(docID) : byCost[i].docID();
+				if (other > docID) { // not in all postings, continue with the first candidate after it
+					docID = lead.advance(other);
+					break;
+				}
+			}
+			if (i == byCost.length) {
+				collect(results, docID, scoreDocument(index, scoringMethod, query, order, cursors, docID));
+				docID = lead.nextDoc();
+			}
+		}
+
+		return results;
+	}
+}
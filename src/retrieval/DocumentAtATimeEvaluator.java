@@ -0,0 +1,79 @@
+package retrieval;
+
+import java.util.BitSet;
+
+/**
+ * Base class of the evaluators that walk the postings of all query terms in parallel, document by document, and use
+ * {@link IPostingsCursor#advance(int)} to jump over documents that cannot make it into the result. A document is
+ * scored completely once all cursors have been moved to it.
+ *
+ * The score of a document is computed exactly like by {@link TermAtATimeEvaluator}: the contributions of the terms are
+ * added up in double precision in order of decreasing idf, postings with value 0 and deleted documents are skipped, and
+ * documents are offered to the result in increasing docID order. So the result is the same as the one of an
+ * unlimited term-at-a-time evaluation, unless the evaluator leaves documents out on purpose.
+ */
+public abstract class DocumentAtATimeEvaluator implements IRangeQueryEvaluator {
+	@Override
+	public SizedPriorityQueue<Integer> evaluate(InvertedIndex index, IScoringMethod scoringMethod, QueryVector query, int K) {
+		return evaluate(index, scoringMethod, query, K, 0, index.getMaxDocID() + 1);
+	}
+
+	/**
+	 * Scores the given document, on which the cursors positioned at it contribute.
+	 *
+	 * @param order The positions of the query terms of the cursors, in order of decreasing idf.
+	 * @param cursors The cursors of the query terms, parallel to <code>order</code>.
+	 * @return The similarity of the document, NaN if it is deleted or none of its postings has a value.
+	 */
+	static double scoreDocument(InvertedIndex index, IScoringMethod scoringMethod, QueryVector query, Integer[] order, IPostingsCursor[] cursors, int docID) {
+		BitSet deletedDocuments = index.getDeletedDocuments();
+		if (deletedDocuments != null && deletedDocuments.get(docID)) {
+			return Double.NaN;
+		}
+
+		long numberOfTokens = index.getCollectionStatistics().getNumberOfTokens();
+		double score = 0.0;
+		boolean matched = false;
+		for (int i = 0; i < cursors.length; i++) {
+			if (cursors[i].docID() != docID) {
+				continue;
+			}
+			float tfDocument = cursors[i].value();
+			if (tfDocument == 0.0f) {
+				continue;
+			}
+			score += scoringMethod.score(query.getValue(order[i]), tfDocument, 0, numberOfTokens, index.getDocumentLength(docID));
+			matched = true;
+		}
+		if (!matched) {
+			return Double.NaN;
+		}
+
+		double similarity = score;
+		if (scoringMethod.requiresVectorLengths()) {
+			similarity = scoringMethod.useVectorLenghts(similarity, query.getVectorLength(), index.getDocumentVectorLength(docID));
+		}
+		return similarity;
+	}
+
+	/**
+	 * Adds a scored document to the results, unless it is NaN or would be dropped anyway.
+	 */
+	static void collect(SizedPriorityQueue<Integer> results, int docID, double similarity) {
+		if (Double.isNaN(similarity) || (results.isFull() && similarity <= results.getLastPriority())) {
+			return;
+		}
+		results.add(docID, similarity);
+	}
+
+	/**
+	 * @return New cursors over the postings of the query terms at the given positions.
+	 */
+	static IPostingsCursor[] openCursors(InvertedIndex index, QueryVector query, Integer[] order) {
+		IPostingsCursor[] cursors = new IPostingsCursor[order.length];
+		for (int i = 0; i < order.length; i++) {
+			cursors[i] = index.getPostings(query.getTermID(order[i]));
+		}
+		return cursors;
+	}
+}
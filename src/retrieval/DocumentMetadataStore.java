@@ -0,0 +1,148 @@
+package retrieval;
+
+import indexing.DocumentMetadataWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * Read access to the document meta data written by {@link DocumentMetadataWriter}. The file is memory mapped and
+ * only the (few) categories are held as Strings, so document names are only decoded for the documents that are
+ * actually returned to the user. Queries are scored on docIDs alone and consult this store for the final top K.
+ */
+public class DocumentMetadataStore {
+	private ByteBuffer buffer;
+	private String[] categories;
+	private int numberOfDocIDs;
+	private int categoriesPosition; // start of the category index per docID
+	private int offsetsPosition; // start of the name offsets
+	private int namesPosition; // start of the name section
+	private int headersPosition; // start of the header lengths
+
+	private HashMap<String, Integer> documentIDs; // "category/name" -> docID, built on first use
+
+	private DocumentMetadataStore() {
+	}
+
+	/**
+	 * @return Whether the meta data file of the index with the given name exists.
+	 */
+	public static boolean exists(String directory, String indexName) {
+		return new File(directory + indexName + DocumentMetadataWriter.METADATA_SUFFIX).exists();
+	}
+
+	/**
+	 * Maps the meta data of the index with the given name.
+	 *
+	 * @param directory The directory of the index.
+	 * @param indexName The name of the index.
+	 * @throws IOException
+	 */
+	public static DocumentMetadataStore open(String directory, String indexName) throws IOException {
+		File file = new File(directory + indexName + DocumentMetadataWriter.METADATA_SUFFIX);
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+		DocumentMetadataStore store = new DocumentMetadataStore();
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File "+file.getPath()+" is too large to be mapped!");
+			}
+			store.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			randomAccessFile.close();
+		}
+
+		ByteBuffer header = store.buffer.duplicate();
+		store.categories = new String[header.getInt()];
+		for (int i = 0; i < store.categories.length; i++) {
+			byte[] category = new byte[header.getShort() & 0xFFFF];
+			header.get(category);
+			store.categories[i] = new String(category, "UTF-8"); // written by writeUTF, whose modified UTF-8 only differs for \0 and supplementary characters
+		}
+		store.numberOfDocIDs = header.getInt();
+		store.categoriesPosition = header.position();
+		store.offsetsPosition = store.categoriesPosition + 4 * store.numberOfDocIDs;
+		store.namesPosition = store.offsetsPosition + 4 * (store.numberOfDocIDs + 1);
+		store.headersPosition = store.namesPosition + store.buffer.getInt(store.offsetsPosition + 4 * store.numberOfDocIDs);
+
+		return store;
+	}
+
+	/**
+	 * @return The largest docID of the store.
+	 */
+	public int getMaxDocID() {
+		return numberOfDocIDs - 1;
+	}
+
+	/**
+	 * @return The category of the given document, null if the docID is unknown.
+	 */
+	public String getDocumentClass(int docID) {
+		if (docID < 0 || docID >= numberOfDocIDs) {
+			return null;
+		}
+		int categoryIndex = buffer.getInt(categoriesPosition + 4 * docID);
+		return categoryIndex < 0 ? null : categories[categoryIndex];
+	}
+
+	/**
+	 * @return The name of the given document, null if the docID is unknown.
+	 */
+	public String getDocumentName(int docID) {
+		if (docID < 0 || docID >= numberOfDocIDs || buffer.getInt(categoriesPosition + 4 * docID) < 0) {
+			return null;
+		}
+		int start = buffer.getInt(offsetsPosition + 4 * docID);
+		int end = buffer.getInt(offsetsPosition + 4 * (docID + 1));
+
+		byte[] name = new byte[end - start];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = buffer.get(namesPosition + start + i);
+		}
+		try {
+			return new String(name, "UTF-8");
+		}
+		catch (UnsupportedEncodingException uee) {
+			throw new RuntimeException(uee); // UTF-8 is always supported
+		}
+	}
+
+	/**
+	 * @return The length of the header of the given document file in bytes (the offset of its body), 0 if the 
+	 * document has no header or the docID is unknown.
+	 */
+	public int getHeaderLength(int docID) {
+		if (docID < 0 || docID >= numberOfDocIDs) {
+			return 0;
+		}
+		return buffer.getInt(headersPosition + 4 * docID);
+	}
+	
+	/**
+	 * Looks up a document by its path. The map from paths to docIDs is built (once) when this method is first called.
+	 *
+	 * @param documentPath The path of the document, "category/name".
+	 * @return The docID of the document or -1 if the document is not part of the index.
+	 */
+	public synchronized int getDocID(String documentPath) {
+		if (documentIDs == null) {
+			documentIDs = new HashMap<String, Integer>(numberOfDocIDs * 2);
+			for (int docID = 0; docID < numberOfDocIDs; docID++) {
+				String category = getDocumentClass(docID);
+				if (category != null) {
+					documentIDs.put(category + "/" + getDocumentName(docID), docID);
+				}
+			}
+		}
+		Integer docID = documentIDs.get(documentPath);
+		return docID == null ? -1 : docID;
+	}
+}
@@ -0,0 +1,86 @@
+package retrieval;
+
+import indexing.ForwardIndexWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read access to the forward index written by {@link ForwardIndexWriter}: the term frequency vector of every
+ * document of the collection, looked up by docID (see {@link DocumentMetadataStore#getDocID(String)} to find the
+ * docID of a document). The vectors and their offsets are memory mapped.
+ */
+public class ForwardIndex {
+	private ByteBuffer entries;
+	private LongBuffer offsets;
+
+	private ForwardIndex() {
+	}
+
+	/**
+	 * @return Whether the files of the forward index with the given name exist.
+	 */
+	public static boolean exists(String directory, String indexName) {
+		return new File(directory + indexName + ForwardIndexWriter.FORWARD_INDEX_SUFFIX).exists()
+				&& new File(directory + indexName + ForwardIndexWriter.OFFSETS_SUFFIX).exists();
+	}
+
+	/**
+	 * Maps the forward index with the given name.
+	 *
+	 * @param directory The directory of the index.
+	 * @param indexName The name of the index.
+	 * @throws IOException
+	 */
+	public static ForwardIndex open(String directory, String indexName) throws IOException {
+		ForwardIndex index = new ForwardIndex();
+		index.entries = map(new File(directory + indexName + ForwardIndexWriter.FORWARD_INDEX_SUFFIX));
+		index.offsets = map(new File(directory + indexName + ForwardIndexWriter.OFFSETS_SUFFIX)).asLongBuffer();
+		return index;
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File "+file.getPath()+" is too large to be mapped!");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // the mapping stays valid after closing the file
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Returns the term frequency vector of the given document, sorted by termID.
+	 *
+	 * @param docID The docID of the document.
+	 * @param useLogTf Whether to replace each term frequency tf by log10(1 + tf), as needed by the tf-idf index.
+	 * @return The vector, or null if the docID is not part of the index.
+	 */
+	public QueryVector getDocumentVector(int docID, boolean useLogTf) {
+		if (docID < 0 || docID + 1 >= offsets.limit()) {
+			return null;
+		}
+
+		int start = (int)offsets.get(docID);
+		int size = (int)(offsets.get(docID + 1) - start) / ForwardIndexWriter.BYTES_PER_ENTRY;
+
+		int[] termIDs = new int[size];
+		float[] values = new float[size];
+		for (int i = 0; i < size; i++) {
+			int position = start + i * ForwardIndexWriter.BYTES_PER_ENTRY;
+			termIDs[i] = entries.getInt(position);
+			float tf = entries.getFloat(position + 4);
+			values[i] = useLogTf ? (float)Math.log10(1 + tf) : tf;
+		}
+
+		return new QueryVector(termIDs, values, size);
+	}
+}
@@ -0,0 +1,22 @@
+package retrieval;
+
+/**
+ * The compressed postings of one term of an {@link InvertedIndex}, see {@link InvertedIndex#compressPostings()}.
+ * The docIDs are encoded, the values (tf or tf-idf) are kept in a plain array in docID order.
+ */
+public interface IPostings {
+	/**
+	 * @return A new cursor, positioned before the first posting.
+	 */
+	public IPostingsCursor cursor();
+
+	/**
+	 * @return The number of postings.
+	 */
+	public int size();
+
+	/**
+	 * @return The memory needed by the encoded docIDs and the values, in bytes (without object headers).
+	 */
+	public long getSizeInBytes();
+}
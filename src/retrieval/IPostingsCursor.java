@@ -0,0 +1,44 @@
+package retrieval;
+
+/**
+ * Iterates over the postings of a term in increasing docID order. A new cursor is positioned before the first
+ * posting, {@link #nextDoc()} or {@link #advance(int)} have to be called before {@link #docID()} and {@link #value()}.
+ */
+public interface IPostingsCursor {
+	/**
+	 * Returned as docID once the postings are exhausted. Larger than any docID, so loops over a range of docIDs
+	 * end without checking for it.
+	 */
+	public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	/**
+	 * @return The docID of the current posting, -1 before the first call of nextDoc() or advance(), NO_MORE_DOCS
+	 * after the last posting.
+	 */
+	public int docID();
+
+	/**
+	 * @return The index value (tf or tf-idf) of the current posting.
+	 */
+	public float value();
+
+	/**
+	 * Moves to the next posting.
+	 *
+	 * @return Its docID, NO_MORE_DOCS if there is none.
+	 */
+	public int nextDoc();
+
+	/**
+	 * Moves to the first posting with a docID >= target. The cursor never moves backwards, if it is at or after the
+	 * target already, it moves to the next posting like {@link #nextDoc()}.
+	 *
+	 * @return Its docID, NO_MORE_DOCS if there is none.
+	 */
+	public int advance(int target);
+
+	/**
+	 * @return The number of postings of the term, i.e. its document frequency.
+	 */
+	public int cost();
+}
@@ -0,0 +1,17 @@
+package retrieval;
+
+/**
+ * Defines the methods a query evaluation strategy over the resident {@link InvertedIndex} needs to implement.
+ */
+public interface IQueryEvaluator {
+	/**
+	 * Scores the documents of the index against the given query and returns the best K of them.
+	 * 
+	 * @param index The index to search.
+	 * @param scoringMethod The scoring method to use.
+	 * @param query The query vector, its termIDs refer to the vocabulary of the index.
+	 * @param K The number of results to return.
+	 * @return The docIDs of the K best documents, ordered by decreasing score (available as the priorities of the queue).
+	 */
+	public SizedPriorityQueue<Integer> evaluate(InvertedIndex index, IScoringMethod scoringMethod, QueryVector query, int K);
+}
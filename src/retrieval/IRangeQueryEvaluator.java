@@ -0,0 +1,13 @@
+package retrieval;
+
+/**
+ * A query evaluator that can restrict its evaluation to a range of docIDs. This allows the evaluation of a single 
+ * query to be split across several threads (see {@link ParallelEvaluator}).
+ */
+public interface IRangeQueryEvaluator extends IQueryEvaluator {
+	/**
+	 * Same as {@link IQueryEvaluator#evaluate(InvertedIndex, IScoringMethod, QueryVector, int)}, but only documents 
+	 * with fromDocID <= docID < toDocID are considered.
+	 */
+	public SizedPriorityQueue<Integer> evaluate(InvertedIndex index, IScoringMethod scoringMethod, QueryVector query, int K, int fromDocID, int toDocID);
+}
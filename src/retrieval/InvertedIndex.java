@@ -0,0 +1,633 @@
+package retrieval;
+
+import indexing.NearRealTimeIndexer;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import dao.CollectionStatistics;
+import dao.Document;
+import dao.DocumentTermList;
+import dao.Vocabulary;
+
+/**
+ * An inverted index that is kept in main memory for the lifetime of a {@link SearchEngine}, built by inverting
+ * the document rows of an ARFF index once. For every termID it stores the docIDs of the documents containing the
+ * term (in increasing order) together with the values found in the index (plain tf or tf-idf). Additionally, the
+ * per-document data needed by the scoring methods (document length, document vector length) and, for indexes without
+ * a {@link DocumentMetadataStore}, the document meta data is stored in arrays indexed by docID.
+ *
+ * The inverted index of an index made of segments (see {@link indexing.SegmentManifest}) is built by inverting every
+ * segment on its own and appending it to one index with a global vocabulary and global docIDs, see
+ * {@link #appendSegment(InvertedIndex, int[], int)}. The in-memory segment of a {@link NearRealTimeIndexer} is added
+ * the same way, see {@link #withBuffer(InvertedIndex, NearRealTimeIndexer.Snapshot, boolean)}.
+ *
+ * Deleted documents (see {@link indexing.LiveDocs}) keep their postings and count towards the statistics, but are
+ * marked in a bitset of docIDs that the evaluators check before scoring a document, see {@link #isDeleted(int)}.
+ *
+ * Once built, the postings can be compressed (see {@link #compressPostings()}): the docIDs of every term are then
+ * encoded either as a bitmap (dense terms) or as a list of variable-length gaps (sparse terms), and are read through
+ * {@link #getPostings(int)} only.
+ */
+public class InvertedIndex {
+	private Vocabulary vocabulary;
+	private CollectionStatistics collectionStatistics;
+
+	private int[][] postingsDocIDs; // indexed by termID, null once the postings are compressed
+	private float[][] postingsValues;
+	private IPostings[] compressedPostings; // indexed by termID, null if the postings are not compressed
+	private int[] documentFrequencies;
+
+	private int maxDocID;
+	private boolean keepMetadata;
+	private int[] documentLengths; // indexed by docID
+	private float[] documentVectorLengths;
+	private String[] documentClasses; // null if the meta data is not kept
+	private String[] documentNames;
+	private BitSet deletedDocuments; // indexed by docID, null if no document has been deleted
+	private MaxScores maxScores; // of the last scoring method asked for, see getMaxScores()
+
+	private InvertedIndex(Vocabulary _vocabulary, CollectionStatistics _collectionStatistics) {
+		this.vocabulary = _vocabulary;
+		this.collectionStatistics = _collectionStatistics;
+	}
+
+	/**
+	 * Reads the @DATA section of an ARFF index and inverts it. The scanner has to be positioned right after the
+	 * @DATA line, i.e. the header (and vocabulary) must have been consumed already.
+	 *
+	 * @param indexScanner Scanner positioned at the first row of the index.
+	 * @param vocabulary The vocabulary read from the header of the index.
+	 * @param collectionStatistics The statistics of the index, used to size the per-document arrays.
+	 * @param plainTf Whether the index contains plain term frequencies.
+	 * @param keepMetadata Whether to keep class and name of the documents in memory.
+	 * @return The inverted index.
+	 */
+	public static InvertedIndex readFromArff(Scanner indexScanner, Vocabulary vocabulary, CollectionStatistics collectionStatistics, boolean plainTf, boolean keepMetadata) {
+		InvertedIndex index = new InvertedIndex(vocabulary, collectionStatistics);
+		index.keepMetadata = keepMetadata;
+
+		int numberOfTerms = vocabulary.size();
+		index.postingsDocIDs = new int[numberOfTerms][];
+		index.postingsValues = new float[numberOfTerms][];
+		index.documentFrequencies = new int[numberOfTerms];
+
+		int numberOfDocuments = Math.max(collectionStatistics.getNumberOfDocuments(), 1);
+		index.allocateDocuments(numberOfDocuments + 1);
+		index.maxDocID = 0;
+
+		ArffDocumentRow row = new ArffDocumentRow();
+		while (indexScanner.hasNext()) {
+			String nextLine = indexScanner.nextLine();
+			if (!row.parse(nextLine, plainTf)) {
+				System.err.println("@DATA section contains invalid line:");
+				System.err.println(nextLine);
+				break;
+			}
+			index.addDocument(row);
+		}
+
+		for (int termID = 0; termID < numberOfTerms; termID++) { // trim the postings to their actual size
+			int df = index.documentFrequencies[termID];
+			if (index.postingsDocIDs[termID] == null) {
+				index.postingsDocIDs[termID] = new int[0];
+				index.postingsValues[termID] = new float[0];
+			}
+			else if (index.postingsDocIDs[termID].length != df) {
+				int[] docIDs = new int[df];
+				float[] values = new float[df];
+				System.arraycopy(index.postingsDocIDs[termID], 0, docIDs, 0, df);
+				System.arraycopy(index.postingsValues[termID], 0, values, 0, df);
+				index.postingsDocIDs[termID] = docIDs;
+				index.postingsValues[termID] = values;
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Creates an empty index that the segments of an index are appended to. The vocabulary is filled by the caller 
+	 * while the segments are appended, the statistics must be the aggregated ones of all segments.
+	 */
+	static InvertedIndex createForSegments(Vocabulary vocabulary, CollectionStatistics collectionStatistics, boolean keepMetadata) {
+		InvertedIndex index = new InvertedIndex(vocabulary, collectionStatistics);
+		index.keepMetadata = keepMetadata;
+		index.postingsDocIDs = new int[Math.max(vocabulary.size(), 1)][];
+		index.postingsValues = new float[index.postingsDocIDs.length][];
+		index.documentFrequencies = new int[index.postingsDocIDs.length];
+		index.allocateDocuments(Math.max(collectionStatistics.getNumberOfDocuments(), 1) + 1);
+		index.maxDocID = 0;
+		return index;
+	}
+
+	/**
+	 * Appends the postings and documents of a segment. Segments have to be appended in the order of their docIDs.
+	 *
+	 * @param segment The inverted segment, with docIDs starting at 1.
+	 * @param globalTermIDs The termID in this index of every termID of the segment.
+	 * @param docIDBase The number of documents of all previous segments, added to the docIDs of the segment.
+	 */
+	void appendSegment(InvertedIndex segment, int[] globalTermIDs, int docIDBase) {
+		int segmentMaxDocID = docIDBase + segment.maxDocID;
+		if (segmentMaxDocID >= documentLengths.length) {
+			allocateDocuments(Math.max(segmentMaxDocID + 1, documentLengths.length * 2));
+		}
+		for (int docID = 1; docID <= segment.maxDocID; docID++) {
+			documentLengths[docIDBase + docID] = segment.documentLengths[docID];
+			documentVectorLengths[docIDBase + docID] = segment.documentVectorLengths[docID];
+			if (keepMetadata) {
+				documentClasses[docIDBase + docID] = segment.getDocumentClass(docID);
+				documentNames[docIDBase + docID] = segment.getDocumentName(docID);
+			}
+		}
+		maxDocID = Math.max(maxDocID, segmentMaxDocID);
+
+		for (int termID = 0; termID < segment.getNumberOfTerms(); termID++) {
+			int segmentDf = segment.documentFrequencies[termID];
+			if (segmentDf == 0) {
+				continue;
+			}
+			int globalTermID = globalTermIDs[termID];
+			if (globalTermID >= documentFrequencies.length) {
+				allocateTerms(Math.max(globalTermID + 1, documentFrequencies.length * 2));
+			}
+
+			int df = documentFrequencies[globalTermID];
+			int[] docIDs = postingsDocIDs[globalTermID];
+			if (docIDs == null || docIDs.length < df + segmentDf) {
+				docIDs = new int[Math.max(df + segmentDf, df * 2)];
+				float[] values = new float[docIDs.length];
+				if (df > 0) {
+					System.arraycopy(postingsDocIDs[globalTermID], 0, docIDs, 0, df);
+					System.arraycopy(postingsValues[globalTermID], 0, values, 0, df);
+				}
+				postingsDocIDs[globalTermID] = docIDs;
+				postingsValues[globalTermID] = values;
+			}
+			for (int i = 0; i < segmentDf; i++) {
+				docIDs[df + i] = docIDBase + segment.postingsDocIDs[termID][i];
+			}
+			System.arraycopy(segment.postingsValues[termID], 0, postingsValues[globalTermID], df, segmentDf);
+			documentFrequencies[globalTermID] = df + segmentDf;
+		}
+	}
+
+	/**
+	 * Builds an index of the documents of the given (on-disk) segments followed by the buffered documents of a
+	 * {@link NearRealTimeIndexer}, with the statistics of both. The given index is not changed, so it can be reused 
+	 * for the next snapshot of the buffer.
+	 *
+	 * @param segments The inverted segments of the index with plain term frequencies, see 
+	 * {@link #finishSegments(boolean)}.
+	 * @param buffer The buffered documents, whose docIDs follow those of <code>segments</code>.
+	 * @param tfIdf Whether to replace the term frequencies by tf-idf values.
+	 */
+	static InvertedIndex withBuffer(InvertedIndex segments, NearRealTimeIndexer.Snapshot buffer, boolean tfIdf) {
+		CollectionStatistics segmentStatistics = segments.getCollectionStatistics();
+		int numberOfDocuments = segmentStatistics.getNumberOfDocuments() + buffer.getRows().size();
+		long numberOfTokens = segmentStatistics.getNumberOfTokens() + buffer.getNumberOfTokens();
+		CollectionStatistics collectionStatistics = new CollectionStatistics(numberOfDocuments, numberOfTokens, 0, numberOfDocuments == 0 ? 0 : numberOfTokens / numberOfDocuments);
+		collectionStatistics.setHeadersSkipped(segmentStatistics.isHeadersSkipped() || buffer.isHeadersSkipped());
+
+		Vocabulary vocabulary = new Vocabulary(Math.max(segments.vocabulary.size() + buffer.getTerms().length, 1024));
+		int[] segmentTermIDs = new int[segments.getNumberOfTerms()];
+		for (int termID = 0; termID < segmentTermIDs.length; termID++) {
+			segmentTermIDs[termID] = vocabulary.addSilent(segments.vocabulary.getTerm(termID)).getTermID();
+		}
+		int[] bufferTermIDs = new int[buffer.getTerms().length];
+		for (int termID = 0; termID < bufferTermIDs.length; termID++) {
+			bufferTermIDs[termID] = vocabulary.addSilent(buffer.getTerms()[termID]).getTermID();
+		}
+
+		InvertedIndex index = createForSegments(vocabulary, collectionStatistics, true);
+		index.appendSegment(segments, segmentTermIDs, 0);
+		index.appendSegment(invertBuffer(buffer), bufferTermIDs, segmentStatistics.getNumberOfDocuments());
+		index.finishSegments(tfIdf);
+
+		BitSet deletedDocuments = segments.deletedDocuments == null ? new BitSet() : (BitSet)segments.deletedDocuments.clone();
+		BitSet deletedBufferDocuments = buffer.getDeletedDocuments();
+		for (int docID = deletedBufferDocuments.nextSetBit(1); docID >= 0; docID = deletedBufferDocuments.nextSetBit(docID + 1)) {
+			deletedDocuments.set(segmentStatistics.getNumberOfDocuments() + docID);
+		}
+		index.deletedDocuments = deletedDocuments.isEmpty() ? null : deletedDocuments;
+		collectionStatistics.setNumberOfUniqueTerms(vocabulary.size());
+		return index;
+	}
+
+	/**
+	 * Returns an index that shares the postings and documents of this one, with the given documents deleted instead of
+	 * the deletions of this index. Since the postings are not copied, this is cheap enough to be done for every
+	 * change of the deletions.
+	 *
+	 * @param _deletedDocuments The deleted docIDs, null or empty if no document has been deleted. Must not be modified
+	 * afterwards.
+	 */
+	InvertedIndex withDeletions(BitSet _deletedDocuments) {
+		InvertedIndex index = new InvertedIndex(vocabulary, collectionStatistics);
+		index.postingsDocIDs = postingsDocIDs;
+		index.postingsValues = postingsValues;
+		index.compressedPostings = compressedPostings;
+		index.maxScores = maxScores; // deleted documents only lower the actual maxima
+		index.documentFrequencies = documentFrequencies;
+		index.maxDocID = maxDocID;
+		index.keepMetadata = keepMetadata;
+		index.documentLengths = documentLengths;
+		index.documentVectorLengths = documentVectorLengths;
+		index.documentClasses = documentClasses;
+		index.documentNames = documentNames;
+		index.deletedDocuments = _deletedDocuments == null || _deletedDocuments.isEmpty() ? null : _deletedDocuments;
+		return index;
+	}
+
+	/**
+	 * Inverts the buffered documents of a {@link NearRealTimeIndexer}, with plain term frequencies and docIDs 
+	 * starting at 1, like a segment read by {@link #readFromArff}.
+	 */
+	private static InvertedIndex invertBuffer(NearRealTimeIndexer.Snapshot buffer) {
+		InvertedIndex index = new InvertedIndex(null, null);
+		index.keepMetadata = true;
+		int numberOfTerms = buffer.getTerms().length;
+		index.postingsDocIDs = new int[numberOfTerms][];
+		index.postingsValues = new float[numberOfTerms][];
+		index.documentFrequencies = new int[numberOfTerms];
+		index.allocateDocuments(buffer.getRows().size() + 1);
+		index.maxDocID = buffer.getRows().size();
+
+		List<DocumentTermList> rows = buffer.getRows();
+		List<Document> documents = buffer.getDocuments();
+		for (int i = 0; i < rows.size(); i++) {
+			int docID = i + 1;
+			double vectorLength = 0.0;
+			int documentLength = 0;
+			for (Map.Entry<Integer, Float> entry : rows.get(i).getDocTermEntries().entrySet()) {
+				float tf = entry.getValue();
+				index.addPosting(entry.getKey(), docID, tf);
+				documentLength += tf;
+				vectorLength += tf * tf;
+			}
+			index.documentLengths[docID] = documentLength; // like the rows of a plain tf index, see ArffDocumentRow
+			index.documentVectorLengths[docID] = (float)Math.sqrt(vectorLength);
+			index.documentClasses[docID] = documents.get(i).getCategory();
+			index.documentNames[docID] = documents.get(i).getName();
+		}
+		return index;
+	}
+
+	/**
+	 * Finishes an index built by {@link #appendSegment(InvertedIndex, int[], int)}. The values of the postings have to
+	 * be plain term frequencies, since the tf-idf values of the segments were computed with the document frequencies 
+	 * of the segment only. If a tf-idf index is needed, they are replaced by log10(1 + tf) * log10(N / df) with the 
+	 * global N and df (like {@link dao.DocumentTermList#calculateIDFs(Vocabulary)} does while indexing), and the document
+	 * lengths and vector lengths are computed from the new values.
+	 *
+	 * @param tfIdf Whether to replace the term frequencies by tf-idf values.
+	 */
+	void finishSegments(boolean tfIdf) {
+		int numberOfTerms = vocabulary.size();
+		if (numberOfTerms != documentFrequencies.length) {
+			allocateTerms(numberOfTerms);
+		}
+		for (int termID = 0; termID < numberOfTerms; termID++) { // trim the postings to their actual size
+			int df = documentFrequencies[termID];
+			if (postingsDocIDs[termID] == null) {
+				postingsDocIDs[termID] = new int[0];
+				postingsValues[termID] = new float[0];
+			}
+			else if (postingsDocIDs[termID].length != df) {
+				int[] docIDs = new int[df];
+				float[] values = new float[df];
+				System.arraycopy(postingsDocIDs[termID], 0, docIDs, 0, df);
+				System.arraycopy(postingsValues[termID], 0, values, 0, df);
+				postingsDocIDs[termID] = docIDs;
+				postingsValues[termID] = values;
+			}
+		}
+
+		if (!tfIdf) {
+			return;
+		}
+
+		int numberOfDocuments = collectionStatistics.getNumberOfDocuments();
+		double[] squaredLengths = new double[documentLengths.length];
+		for (int docID = 0; docID <= maxDocID; docID++) {
+			documentLengths[docID] = 0;
+		}
+		for (int termID = 0; termID < numberOfTerms; termID++) {
+			int df = documentFrequencies[termID];
+			if (df == 0) {
+				continue;
+			}
+			double idf = Math.log10((numberOfDocuments / df)); // integer division, as in the indexer
+			int[] docIDs = postingsDocIDs[termID];
+			float[] values = postingsValues[termID];
+			for (int i = 0; i < df; i++) {
+				float value = (float)(Math.log10(1 + (int)Math.floor(values[i])) * idf);
+				values[i] = value;
+				squaredLengths[docIDs[i]] += value * value;
+				documentLengths[docIDs[i]]++;
+			}
+		}
+		for (int docID = 0; docID <= maxDocID; docID++) {
+			documentVectorLengths[docID] = (float)Math.sqrt(squaredLengths[docID]);
+		}
+	}
+
+	/**
+	 * Replaces the docID arrays of the postings by an encoding chosen per term: a {@link BitmapPostings} if it needs
+	 * fewer bytes than a {@link VarintPostings}, i.e. for terms that occur in a large fraction of the documents, a
+	 * {@link VarintPostings} otherwise. The values are kept as they are. Afterwards, the postings can only be read through
+	 * {@link #getPostings(int)}, and the index cannot be appended to another one. Must be called before the index is
+	 * shared with other threads.
+	 */
+	void compressPostings() {
+		if (compressedPostings != null) {
+			return;
+		}
+		IPostings[] postings = new IPostings[documentFrequencies.length];
+		for (int termID = 0; termID < postings.length; termID++) {
+			int df = documentFrequencies[termID];
+			int[] docIDs = postingsDocIDs[termID] == null ? new int[0] : postingsDocIDs[termID];
+			float[] values = postingsValues[termID] == null ? new float[0] : postingsValues[termID];
+			if (df > 0 && BitmapPostings.encodedSize(docIDs, df) < VarintPostings.encodedSize(docIDs, df)) {
+				postings[termID] = new BitmapPostings(docIDs, values, df);
+			}
+			else {
+				postings[termID] = new VarintPostings(docIDs, values, df);
+			}
+		}
+		compressedPostings = postings;
+		postingsDocIDs = null;
+		postingsValues = null;
+	}
+
+	/**
+	 * @return Whether the postings have been compressed by {@link #compressPostings()}.
+	 */
+	public boolean isCompressed() {
+		return compressedPostings != null;
+	}
+
+	/**
+	 * @return The number of terms whose postings are compressed as bitmap, 0 if the postings are not compressed.
+	 */
+	public int getNumberOfBitmapTerms() {
+		int bitmapTerms = 0;
+		if (compressedPostings != null) {
+			for (IPostings postings : compressedPostings) {
+				if (postings instanceof BitmapPostings) {
+					bitmapTerms++;
+				}
+			}
+		}
+		return bitmapTerms;
+	}
+
+	/**
+	 * Returns for every term an upper bound of the score a document can get from it, for a query term of weight 1 and
+	 * after applying the document vector length if the scoring method requires it (with a query vector length of 1).
+	 * The scoring methods are linear in the query weight, so the bound of a query term is its weight times this value
+	 * (divided by the query vector length). Negative scores are bounded by 0. Computed by one pass over all postings on 
+	 * first use, and kept for the last scoring method asked for.
+	 */
+	public float[] getMaxScores(IScoringMethod scoringMethod) {
+		MaxScores cached = maxScores;
+		if (cached != null && cached.scoringMethod == scoringMethod) {
+			return cached.values;
+		}
+
+		long numberOfTokens = collectionStatistics.getNumberOfTokens();
+		float[] values = new float[getNumberOfTerms()];
+		for (int termID = 0; termID < values.length; termID++) {
+			double max = 0.0;
+			IPostingsCursor postings = getPostings(termID);
+			for (int docID = postings.nextDoc(); docID != IPostingsCursor.NO_MORE_DOCS; docID = postings.nextDoc()) {
+				double score = scoringMethod.score(1.0f, postings.value(), 0, numberOfTokens, documentLengths[docID]);
+				if (scoringMethod.requiresVectorLengths()) {
+					score = scoringMethod.useVectorLenghts(score, 1.0, documentVectorLengths[docID]);
+				}
+				if (score > max) {
+					max = score;
+				}
+			}
+			values[termID] = Math.nextUp((float)max); // rounded up, so it stays an upper bound
+		}
+		maxScores = new MaxScores(scoringMethod, values);
+		return values;
+	}
+
+	private static class MaxScores {
+		final IScoringMethod scoringMethod;
+		final float[] values;
+
+		MaxScores(IScoringMethod _scoringMethod, float[] _values) {
+			this.scoringMethod = _scoringMethod;
+			this.values = _values;
+		}
+	}
+
+	/**
+	 * @return The memory needed by the docIDs and values of all postings, in bytes (without object headers).
+	 */
+	public long getPostingsSizeInBytes() {
+		long bytes = 0;
+		for (int termID = 0; termID < documentFrequencies.length; termID++) {
+			bytes += compressedPostings != null ? compressedPostings[termID].getSizeInBytes() : 8L * documentFrequencies[termID];
+		}
+		return bytes;
+	}
+
+	private void allocateTerms(int size) {
+		int[][] newPostingsDocIDs = new int[size][];
+		float[][] newPostingsValues = new float[size][];
+		int[] newDocumentFrequencies = new int[size];
+		int length = Math.min(size, documentFrequencies.length);
+		System.arraycopy(postingsDocIDs, 0, newPostingsDocIDs, 0, length);
+		System.arraycopy(postingsValues, 0, newPostingsValues, 0, length);
+		System.arraycopy(documentFrequencies, 0, newDocumentFrequencies, 0, length);
+		postingsDocIDs = newPostingsDocIDs;
+		postingsValues = newPostingsValues;
+		documentFrequencies = newDocumentFrequencies;
+	}
+
+	private void allocateDocuments(int size) {
+		int[] newDocumentLengths = new int[size];
+		float[] newDocumentVectorLengths = new float[size];
+
+		if (documentLengths != null) {
+			System.arraycopy(documentLengths, 0, newDocumentLengths, 0, documentLengths.length);
+			System.arraycopy(documentVectorLengths, 0, newDocumentVectorLengths, 0, documentVectorLengths.length);
+		}
+
+		documentLengths = newDocumentLengths;
+		documentVectorLengths = newDocumentVectorLengths;
+
+		if (keepMetadata) {
+			String[] newDocumentClasses = new String[size];
+			String[] newDocumentNames = new String[size];
+			if (documentClasses != null) {
+				System.arraycopy(documentClasses, 0, newDocumentClasses, 0, documentClasses.length);
+				System.arraycopy(documentNames, 0, newDocumentNames, 0, documentNames.length);
+			}
+			documentClasses = newDocumentClasses;
+			documentNames = newDocumentNames;
+		}
+	}
+
+	private void addDocument(ArffDocumentRow row) {
+		int docID = row.docID;
+		if (docID >= documentLengths.length) { // statistics were off, grow the document arrays
+			allocateDocuments(Math.max(docID + 1, documentLengths.length * 2));
+		}
+		maxDocID = Math.max(maxDocID, docID);
+
+		documentLengths[docID] = row.documentLength;
+		documentVectorLengths[docID] = (float)row.getVectorLength();
+		if (keepMetadata) {
+			documentClasses[docID] = row.getDocumentClass();
+			documentNames[docID] = row.getDocumentName();
+		}
+
+		for (int i = 0; i < row.numberOfEntries; i++) {
+			addPosting(row.termIDs[i], docID, row.values[i]);
+		}
+	}
+
+	/**
+	 * Appends a posting to the postings of the given term, growing them as needed. DocIDs have to be added in 
+	 * increasing order.
+	 */
+	private void addPosting(int termID, int docID, float value) {
+		int df = documentFrequencies[termID];
+
+		if (postingsDocIDs[termID] == null) {
+			postingsDocIDs[termID] = new int[4];
+			postingsValues[termID] = new float[4];
+		}
+		else if (df == postingsDocIDs[termID].length) {
+			int[] docIDs = new int[df * 2];
+			float[] values = new float[df * 2];
+			System.arraycopy(postingsDocIDs[termID], 0, docIDs, 0, df);
+			System.arraycopy(postingsValues[termID], 0, values, 0, df);
+			postingsDocIDs[termID] = docIDs;
+			postingsValues[termID] = values;
+		}
+
+		postingsDocIDs[termID][df] = docID;
+		postingsValues[termID][df] = value;
+		documentFrequencies[termID] = df + 1;
+	}
+
+	public Vocabulary getVocabulary() {
+		return vocabulary;
+	}
+
+	public CollectionStatistics getCollectionStatistics() {
+		return collectionStatistics;
+	}
+
+	/**
+	 * @return The number of terms in the index. Query terms with a termID >= this value do not occur in the index.
+	 */
+	public int getNumberOfTerms() {
+		return documentFrequencies.length;
+	}
+
+	/**
+	 * @return The largest docID in the index. Arrays indexed by docID need to have a size of at least getMaxDocID()+1.
+	 */
+	public int getMaxDocID() {
+		return maxDocID;
+	}
+
+	/**
+	 * @return The number of documents containing the given term, 0 for termIDs not contained in the index.
+	 */
+	public int getDocumentFrequency(int termID) {
+		if (termID < 0 || termID >= documentFrequencies.length) {
+			return 0;
+		}
+		return documentFrequencies[termID];
+	}
+
+	/**
+	 * @return The inverse document frequency log10(N/df) of the given term, 0 for termIDs not contained in the index.
+	 */
+	public double getIdf(int termID) {
+		int df = getDocumentFrequency(termID);
+		if (df == 0) {
+			return 0.0;
+		}
+		return Math.log10((double)collectionStatistics.getNumberOfDocuments() / df);
+	}
+
+	/**
+	 * @return A cursor over the postings of the given term, in increasing docID order.
+	 */
+	public IPostingsCursor getPostings(int termID) {
+		if (compressedPostings != null) {
+			return compressedPostings[termID].cursor();
+		}
+		return new ArrayPostingsCursor(postingsDocIDs[termID], postingsValues[termID], documentFrequencies[termID]);
+	}
+
+	/**
+	 * Returns the docIDs of the postings of the given term. Only the first {@link #getDocumentFrequency(int)} entries are valid.
+	 * Not available once the postings are compressed, use {@link #getPostings(int)}.
+	 */
+	public int[] getPostingsDocIDs(int termID) {
+		if (postingsDocIDs == null) {
+			throw new IllegalStateException("The postings are compressed.");
+		}
+		return postingsDocIDs[termID];
+	}
+
+	/**
+	 * Returns the index values (tf or tf-idf) of the postings of the given term, parallel to {@link #getPostingsDocIDs(int)}.
+	 * Not available once the postings are compressed, use {@link #getPostings(int)}.
+	 */
+	public float[] getPostingsValues(int termID) {
+		if (postingsValues == null) {
+			throw new IllegalStateException("The postings are compressed.");
+		}
+		return postingsValues[termID];
+	}
+
+	public int getDocumentLength(int docID) {
+		return documentLengths[docID];
+	}
+
+	public float getDocumentVectorLength(int docID) {
+		return documentVectorLengths[docID];
+	}
+
+	/**
+	 * @return Whether the given document has been deleted, i.e. must not be returned by queries.
+	 */
+	public boolean isDeleted(int docID) {
+		return deletedDocuments != null && deletedDocuments.get(docID);
+	}
+
+	/**
+	 * @return The deleted docIDs, null if no document has been deleted. Must not be modified.
+	 */
+	public BitSet getDeletedDocuments() {
+		return deletedDocuments;
+	}
+
+	/**
+	 * @return The class of the given document, null if the meta data is not kept.
+	 */
+	public String getDocumentClass(int docID) {
+		return documentClasses == null ? null : documentClasses[docID];
+	}
+
+	/**
+	 * @return The name of the given document, null if the meta data is not kept.
+	 */
+	public String getDocumentName(int docID) {
+		return documentNames == null ? null : documentNames[docID];
+	}
+}
@@ -0,0 +1,74 @@
+package retrieval;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the evaluation of a single query into docID ranges of equal size which are evaluated concurrently by the
+ * given executor. Every range produces its own top K, which are merged in the order of the ranges. Since ties are
+ * resolved by docID both within a range and between ranges, the result is the same as the one of a single
+ * evaluation over all docIDs.
+ */
+public class ParallelEvaluator implements IQueryEvaluator {
+	private IRangeQueryEvaluator evaluator;
+	private ExecutorService executor;
+	private int numberOfPartitions;
+
+	/**
+	 * @param _evaluator The evaluator used for every docID range.
+	 * @param _executor The executor to run the evaluation of the docID ranges on.
+	 * @param _numberOfPartitions The number of docID ranges to split a query into, usually the number of threads of the executor.
+	 */
+	public ParallelEvaluator(IRangeQueryEvaluator _evaluator, ExecutorService _executor, int _numberOfPartitions) {
+		this.evaluator = _evaluator;
+		this.executor = _executor;
+		this.numberOfPartitions = Math.max(_numberOfPartitions, 1);
+	}
+
+	public IRangeQueryEvaluator getEvaluator() {
+		return evaluator;
+	}
+
+	@Override
+	public SizedPriorityQueue<Integer> evaluate(final InvertedIndex index, final IScoringMethod scoringMethod, final QueryVector query, final int K) {
+		int numberOfDocIDs = index.getMaxDocID() + 1;
+		int partitionSize = (numberOfDocIDs + numberOfPartitions - 1) / numberOfPartitions;
+
+		ArrayList<Future<SizedPriorityQueue<Integer>>> partialResults = new ArrayList<Future<SizedPriorityQueue<Integer>>>(numberOfPartitions);
+		for (int fromDocID = 0; fromDocID < numberOfDocIDs; fromDocID += partitionSize) {
+			final int from = fromDocID;
+			final int to = Math.min(fromDocID + partitionSize, numberOfDocIDs);
+			partialResults.add(executor.submit(new Callable<SizedPriorityQueue<Integer>>() {
+				public SizedPriorityQueue<Integer> call() {
+					return evaluator.evaluate(index, scoringMethod, query, K, from, to);
+				}
+			}));
+		}
+
+		SizedPriorityQueue<Integer> results = new SizedPriorityQueue<Integer>(K, true);
+		for (Future<SizedPriorityQueue<Integer>> partialResult : partialResults) {
+			results.addAll(getResult(partialResult));
+		}
+		return results;
+	}
+
+	/**
+	 * Waits for the given partial result. Failures of the worker are rethrown as unchecked exceptions, since a missing
+	 * range would silently change the result of the query.
+	 */
+	static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for a partial query result!", ie);
+		}
+		catch (ExecutionException ee) {
+			throw new RuntimeException("Error evaluating a partial query!", ee.getCause());
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package retrieval;
+
+import indexing.PositionalIndexWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read access to the positional index written by {@link PositionalIndexWriter}: the positions of the terms of every
+ * document, looked up by docID and termID. The files are memory mapped. Meant for verifying the candidates of a
+ * phrase or proximity query (see {@link BooleanQuery.Phrase}), which the postings of the inverted index have already
+ * narrowed down to the documents containing all terms.
+ */
+public class PositionalIndex {
+	private ByteBuffer entries;
+	private LongBuffer offsets;
+
+	private PositionalIndex() {
+	}
+
+	/**
+	 * @return Whether the files of the positional index with the given name exist.
+	 */
+	public static boolean exists(String directory, String indexName) {
+		for (File file : PositionalIndexWriter.getFiles(directory, indexName)) {
+			if (!file.exists()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Maps the positional index with the given name.
+	 *
+	 * @param directory The directory of the index.
+	 * @param indexName The name of the index.
+	 * @throws IOException
+	 */
+	public static PositionalIndex open(String directory, String indexName) throws IOException {
+		File[] files = PositionalIndexWriter.getFiles(directory, indexName);
+		PositionalIndex index = new PositionalIndex();
+		index.entries = map(files[0]);
+		index.offsets = map(files[1]).asLongBuffer();
+		return index;
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File "+file.getPath()+" is too large to be mapped!");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // the mapping stays valid after closing the file
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Decodes the positions of the given terms in the given document. The entries of the document are walked once,
+	 * the positions of other terms are skipped without decoding them.
+	 *
+	 * @param docID The docID of the document.
+	 * @param termIDs The terms, in any order.
+	 * @return The positions of the terms in increasing order, parallel to <code>termIDs</code>, or null if the document
+	 * does not contain all of them or is not covered by this positional index.
+	 */
+	public int[][] getPositions(int docID, int[] termIDs) {
+		if (docID < 0 || docID + 1 >= offsets.limit()) {
+			return null;
+		}
+		int maxTermID = -1;
+		for (int termID : termIDs) {
+			maxTermID = Math.max(maxTermID, termID);
+		}
+
+		int[][] positions = new int[termIDs.length][];
+		int found = 0;
+		ByteBuffer buffer = entries.duplicate(); // the position of the shared buffer is not touched, so lookups may run in parallel
+		buffer.position((int)offsets.get(docID));
+		int end = (int)offsets.get(docID + 1);
+		int termID = 0;
+		while (buffer.position() < end && found < termIDs.length) {
+			termID += readVarint(buffer);
+			if (termID > maxTermID) { // the entries are ordered by termID
+				break;
+			}
+			int numberOfPositions = readVarint(buffer);
+			int next = readVarint(buffer) + buffer.position();
+			int[] termPositions = null;
+			for (int i = 0; i < termIDs.length; i++) {
+				if (termIDs[i] != termID) {
+					continue;
+				}
+				if (termPositions == null) {
+					termPositions = new int[numberOfPositions];
+					int position = 0;
+					for (int p = 0; p < numberOfPositions; p++) {
+						position += readVarint(buffer);
+						termPositions[p] = position;
+					}
+				}
+				positions[i] = termPositions; // shared if the term is given twice
+				found++;
+			}
+			buffer.position(next);
+		}
+		return found == termIDs.length ? positions : null;
+	}
+
+	/**
+	 * Decodes the variable-length number at the position of the buffer and moves the position behind it.
+	 */
+	private static int readVarint(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+}
@@ -0,0 +1,101 @@
+package retrieval;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Reduces verbose queries (such as whole documents used as queries) to their most discriminative terms. Query terms
+ * are ranked by tf*idf, where tf is the weight of the term in the query vector and idf is taken from the statistics
+ * of the index. The reducer keeps the best terms until either <code>maxTerms</code> terms have been kept or the kept
+ * terms account for <code>weightFraction</code> of the total tf*idf weight of the query, whichever comes first.
+ * Terms that do not occur in the index have an idf of 0 and are therefore always the first ones to be dropped.
+ */
+public class QueryReducer {
+	private int maxTerms = Integer.MAX_VALUE;
+	private double weightFraction = 1.0;
+
+	/**
+	 * Sets the maximum number of terms to keep.
+	 */
+	public void setMaxTerms(int _maxTerms) {
+		if (_maxTerms < 1) {
+			throw new IllegalArgumentException("invalid maximum number of query terms: "+_maxTerms+", must be at least 1");
+		}
+		this.maxTerms = _maxTerms;
+	}
+
+	public int getMaxTerms() {
+		return maxTerms;
+	}
+
+	/**
+	 * Sets the fraction of the total tf*idf weight of a query that the kept terms have to account for.
+	 */
+	public void setWeightFraction(double _weightFraction) {
+		if (!(_weightFraction > 0.0 && _weightFraction <= 1.0)) {
+			throw new IllegalArgumentException("invalid query weight fraction: "+_weightFraction+", must be in (0, 1]");
+		}
+		this.weightFraction = _weightFraction;
+	}
+
+	public double getWeightFraction() {
+		return weightFraction;
+	}
+
+	/**
+	 * Returns the reduced query. The termIDs of the result are still in increasing order.
+	 *
+	 * @param query The full query.
+	 * @param index The index providing the document frequencies of the terms.
+	 */
+	public QueryVector reduce(QueryVector query, InvertedIndex index) {
+		final double[] weights = new double[query.size()];
+		Integer[] order = new Integer[query.size()];
+		double totalWeight = 0.0;
+
+		for (int i = 0; i < query.size(); i++) {
+			weights[i] = query.getValue(i) * index.getIdf(query.getTermID(i));
+			totalWeight += weights[i];
+			order[i] = i;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int retval = Double.compare(weights[b], weights[a]);
+				if (retval == 0) {
+					return Integer.compare(a, b);
+				}
+				return retval;
+			}
+		});
+
+		boolean[] keep = new boolean[query.size()];
+		int numberOfKeptTerms = 0;
+		double keptWeight = 0.0;
+
+		for (int i = 0; i < order.length && numberOfKeptTerms < maxTerms; i++) {
+			if (numberOfKeptTerms > 0 && keptWeight >= weightFraction * totalWeight) {
+				break;
+			}
+			if (weights[order[i]] <= 0.0 && numberOfKeptTerms > 0) {
+				break; // terms without weight cannot contribute to the ranking
+			}
+			keep[order[i]] = true;
+			keptWeight += weights[order[i]];
+			numberOfKeptTerms++;
+		}
+
+		int[] termIDs = new int[numberOfKeptTerms];
+		float[] values = new float[numberOfKeptTerms];
+		int counter = 0;
+		for (int i = 0; i < query.size(); i++) {
+			if (keep[i]) {
+				termIDs[counter] = query.getTermID(i);
+				values[counter] = query.getValue(i);
+				counter++;
+			}
+		}
+
+		return new QueryVector(termIDs, values, numberOfKeptTerms);
+	}
+}
@@ -0,0 +1,70 @@
+package retrieval;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import dao.DocumentTermList;
+
+/**
+ * The parsed query: a sparse vector of termIDs and their weights, ordered by termID. Stored as two parallel
+ * arrays instead of a list of Map.Entry objects, since every evaluator walks this vector once per document
+ * (or once per query, in case of term-at-a-time evaluation).
+ */
+public class QueryVector {
+	private int[] termIDs;
+	private float[] values;
+	private int size;
+
+	public QueryVector(int[] _termIDs, float[] _values, int _size) {
+		this.termIDs = _termIDs;
+		this.values = _values;
+		this.size = _size;
+	}
+
+	/**
+	 * Creates a QueryVector from the given term list. The list has to be sorted by termID already
+	 * (see {@link DocumentTermList#sortTermsByID()}).
+	 *
+	 * @param termList The term frequencies of the query.
+	 * @param useLogTf Whether to replace each term frequency tf by log10(1 + tf), as needed by the tf-idf index.
+	 */
+	public static QueryVector fromTermList(DocumentTermList termList, boolean useLogTf) {
+		int size = termList.getDocTermEntries().size();
+		int[] termIDs = new int[size];
+		float[] values = new float[size];
+
+		int i = 0;
+		Iterator<Map.Entry<Integer, Float>> it = termList.getDocTermEntries().entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Integer, Float> entry = it.next();
+			termIDs[i] = entry.getKey();
+			values[i] = useLogTf ? (float)Math.log10(1 + entry.getValue()) : entry.getValue();
+			i++;
+		}
+
+		return new QueryVector(termIDs, values, size);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getTermID(int i) {
+		return termIDs[i];
+	}
+
+	public float getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * @return The euclidean length of this vector.
+	 */
+	public double getVectorLength() {
+		double length = 0.0;
+		for (int i = 0; i < size; i++) {
+			length += values[i] * values[i];
+		}
+		return Math.sqrt(length);
+	}
+}
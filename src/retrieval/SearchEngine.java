@@ -1,29 +1,49 @@
 package retrieval;
 
 import indexing.IIndexer;
+import indexing.ISegmentListener;
+import indexing.LiveDocs;
+import indexing.NearRealTimeIndexer;
+import indexing.SegmentManifest;
+import indexing.StemCache;
+import indexing.TermAnalyzer;
 import indexing.ZipTokenStream;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.Writer;
-import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.LinkedList;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipException;
 
 
 import dao.*;
 
-public class SearchEngine
+public class SearchEngine implements ISegmentListener
 {
-	private ArrayList<Map.Entry<Integer, Float>> fastAccessQueryVector;
+	private QueryVector queryVector;
 	private CollectionStatistics collectionStatistics;
 	private Vocabulary vocabulary;
 	private String indexName;
@@ -32,11 +52,49 @@ public class SearchEngine
 	private boolean useStemming;
 	
 	private Scanner indexScanner;
+	private ArffRowIndex rowIndex; // of the scanned ARFF file, null if it has none
 	
 	private IScoringMethod scoringMethod;
 	
 	private ArrayList<RetrievalResult> searchResults;
-	private SizedPriorityQueue<RetrievalResult> tmpSearchResults;
+	private SizedPriorityQueue<Integer> tmpSearchResults; // docIDs
+	
+	private IQueryEvaluator queryEvaluator; // null: scan the ARFF index document by document
+	private InvertedIndex invertedIndex;
+	private SegmentManifest segments; // null if the index does not consist of segments
+	private AtomicReference<RefreshedSegments> refreshedSegments = new AtomicReference<RefreshedSegments>(); // swapped in by the next query
+	private volatile RefreshedSegments loadedSegments; // the segments and inverted index in use, null if not loaded yet
+	private LiveDocs liveDocs; // of an index built in one run while it is scanned, null if it has no deletions
+	
+	private NearRealTimeIndexer nearRealTimeIndexer; // null: only the on-disk segments are searched
+	private long refreshInterval; // milliseconds
+	private long lastRefreshTime;
+	private long bufferGeneration; // of the buffer snapshot in invertedIndex
+	private InvertedIndex segmentsWithoutBuffer; // plain tf, reused by refreshes until the segments change
+	
+	public static final int ROWS_PER_TASK = 256; // number of ARFF rows scored by one task when scanning in parallel
+	public static final int TASKS_PER_THREAD = 4; // ranges of blocks per thread when scanning a block-gzip index in parallel
+	
+	private int numberOfThreads = 1;
+	private ExecutorService executor; // null if queries are evaluated by the calling thread only
+	
+	private QueryReducer queryReducer; // null: all query terms are scored
+	private int lastQuerySize; // number of distinct terms of the last query, before and after reduction
+	private int lastReducedQuerySize;
+	private long lastEvaluationTime; // nanoseconds spent scoring the last query (without parsing it)
+	private long lastParsingTime; // nanoseconds spent building the vector of the last query
+	
+	private ForwardIndex forwardIndex; // stored document vectors, null if the index has none
+	private PositionalIndex positionalIndex; // positions of the terms for phrase queries, null if the index has none
+	private DocumentMetadataStore metadataStore; // class and name per docID, null if the index has none
+	private boolean documentFilesOpened;
+	private ConcurrentHashMap<Integer, String[]> rowMetadata; // scanning without metadata store: class and name of the candidates for the top K
+	
+	private TermAnalyzer queryAnalyzer; // analyzes free text queries and query documents, created on first use
+	private BooleanQueryEvaluator booleanQueryEvaluator = new BooleanQueryEvaluator();
+	private int stemCacheSize = StemCache.DEFAULT_SIZE;
+	
+	private boolean compressPostings = false; // compress the postings of every inverted index that is loaded
 	
 	public SearchEngine(String _indexName, boolean _useStemming) throws IOException
 	{
@@ -51,20 +109,146 @@ public class SearchEngine
 		else {
 			indexDirectory += "no_stemming"+File.separator;
 		}
+		
+		if (SegmentManifest.exists(indexDirectory, indexName)) {
+			segments = SegmentManifest.read(indexDirectory, indexName); // later changes are only seen after refreshSegments()
+		}
 	}
 	
 	public void setScoringMethod(IScoringMethod method) {
 		this.scoringMethod = method;
+		this.invertedIndex = null; // the required index depends on the scoring method
+	}
+	
+	/**
+	 * Searches the documents buffered by the given indexer together with the on-disk segments of the index, so added 
+	 * documents can be found before they are flushed. Before a query, the search engine takes a new snapshot of the 
+	 * buffer if the last one is older than the refresh interval and the buffer has changed since (see 
+	 * {@link InvertedIndex#withBuffer}). The on-disk segments are only read again when the indexer has flushed its 
+	 * buffer or segments were merged.
+	 * 
+	 * @param indexer An indexer of the index of this search engine.
+	 * @param _refreshInterval The maximum age of the snapshot in milliseconds, 0 to see every added document at once.
+	 */
+	public void setNearRealTimeIndexer(NearRealTimeIndexer indexer, long _refreshInterval) {
+		if (_refreshInterval < 0) {
+			throw new IllegalArgumentException("invalid refresh interval: "+_refreshInterval);
+		}
+		if (!indexer.getIndexName().equals(indexName) || !new File(indexer.getDirectory()).getAbsolutePath().equals(new File(indexDirectory).getAbsolutePath())) {
+			throw new IllegalArgumentException("the indexer adds documents to "+indexer.getDirectory()+indexer.getIndexName()+", not to "+indexDirectory+indexName);
+		}
+		this.nearRealTimeIndexer = indexer;
+		this.refreshInterval = _refreshInterval;
+		this.invertedIndex = null;
+		forwardIndex = null; // docIDs of the buffer are not covered by the stored files of the index
+		positionalIndex = null;
+		metadataStore = null;
+		documentFilesOpened = true;
+	}
+	
+	/**
+	 * Sets the evaluator to use for queries. If an evaluator is set, the index is inverted and kept in memory the 
+	 * first time it is queried (see {@link InvertedIndex}), otherwise the ARFF index is scanned for every query.
+	 * 
+	 * @param evaluator The evaluator to use or null to scan the index.
+	 */
+	public void setQueryEvaluator(IQueryEvaluator evaluator) {
+		this.queryEvaluator = evaluator;
+	}
+	
+	/**
+	 * Sets the reducer to apply to every query before it is evaluated. Since the reducer needs the document 
+	 * frequencies of the query terms, the index is inverted and kept in memory even if it is scanned for evaluation.
+	 * 
+	 * @param reducer The reducer to use or null to evaluate the full queries.
+	 */
+	public void setQueryReducer(QueryReducer reducer) {
+		this.queryReducer = reducer;
+	}
+	
+	/**
+	 * Sets the number of threads used to evaluate a single query. With more than one thread, an evaluator that 
+	 * supports docID ranges ({@link IRangeQueryEvaluator}) is run on one docID range per thread, and a scan of the 
+	 * ARFF index hands ranges of gzip blocks to the threads (or, for an index without row index, consecutive batches 
+	 * of rows that the calling thread decompresses). In both cases the partial top K lists are merged 
+	 * in docID order, so the result does not depend on the number of threads.
+	 * 
+	 * @param _numberOfThreads The number of threads, 1 evaluates queries on the calling thread.
+	 */
+	public void setNumberOfThreads(int _numberOfThreads) {
+		if (_numberOfThreads < 1) {
+			throw new IllegalArgumentException("invalid number of threads: "+_numberOfThreads);
+		}
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		
+		this.numberOfThreads = _numberOfThreads;
+		if (numberOfThreads > 1) {
+			executor = Executors.newFixedThreadPool(numberOfThreads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "query-worker");
+					thread.setDaemon(true); // do not keep the application alive once all queries have been processed
+					return thread;
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Sets the number of surface forms whose stems are cached by query analysis (see {@link StemCache}), 0 disables 
+	 * the cache. The cache is shared by all queries of this search engine.
+	 */
+	public void setStemCacheSize(int _stemCacheSize) {
+		this.stemCacheSize = _stemCacheSize;
+		queryAnalyzer = null;
+	}
+	
+	/**
+	 * Sets whether the postings of the inverted index are compressed after loading it, as bitmaps for dense terms and 
+	 * as variable-length gaps for sparse terms (see {@link InvertedIndex#compressPostings()}). Takes effect when the 
+	 * inverted index is loaded the next time.
+	 */
+	public void setCompressPostings(boolean _compressPostings) {
+		this.compressPostings = _compressPostings;
+	}
+	
+	/**
+	 * Compresses the postings of the given index if enabled, see {@link #setCompressPostings(boolean)}.
+	 */
+	private InvertedIndex maybeCompressPostings(InvertedIndex index) {
+		if (compressPostings && index != null && !index.isCompressed()) {
+			long arraySize = index.getPostingsSizeInBytes();
+			index.compressPostings();
+			System.out.println("Compressed the postings from "+arraySize / 1024+" KB to "+index.getPostingsSizeInBytes() / 1024+" KB ("+index.getNumberOfBitmapTerms()+" of "+index.getNumberOfTerms()+" terms as bitmaps).");
+		}
+		return index;
+	}
+	
+	private TermAnalyzer getQueryAnalyzer() {
+		if (queryAnalyzer == null) {
+			queryAnalyzer = new TermAnalyzer(useStemming, stemCacheSize);
+		}
+		return queryAnalyzer;
 	}
 	
 	private void loadVocabularyFromIndex() {
 		System.out.println("Loading vocabulary... ");
 		
-		vocabulary = new Vocabulary(1);
+		vocabulary = readVocabulary(indexScanner);
+		
+		System.out.println("Vocabulary contains "+vocabulary.size()+" terms. ");
+	}
+	
+	/**
+	 * Reads the vocabulary from the header of an ARFF index, leaving the scanner right after the @DATA line.
+	 */
+	private static Vocabulary readVocabulary(Scanner indexScanner) {
+		Vocabulary vocabulary = new Vocabulary(1);
 		
 		String nextLine;
 		int attributeCounter = 0;
-		int termCounter = 0;
 		
 		while (indexScanner.hasNext()) {
 			nextLine = indexScanner.nextLine().toLowerCase();
@@ -83,178 +267,339 @@ public class SearchEngine
 			if (nextLine.startsWith("@attribute ")) {
 				if (attributeCounter >= IIndexer.META_FIELD_COUNT) { // ignore meta fields
 					vocabulary.addSilent(nextLine.substring(11, nextLine.length() - 8));// - length of " NUMERIC" == 8
-					termCounter++;
 				}
 				attributeCounter++;
 			}
 				
 		}
 		
-		System.out.println("Vocabulary contains "+termCounter+" terms. ");
+		return vocabulary;
 	}
 	
-	private void queryIndex() {
-		while (indexScanner.hasNext()) {
-			String nextLine = indexScanner.nextLine();
-			
-			if (nextLine.length() == 0 || nextLine.charAt(0) != '{') {
-				System.err.println("@DATA section contains invalid line:");
-				System.err.println(nextLine);
-				break;
+	private void queryIndex(int K) {
+		try {
+			if (executor != null && rowIndex != null) {
+				queryBlocksInParallel(K);
+			}
+			else if (executor != null) {
+				queryIndexInParallel(K);
+			}
+			else {
+				scoreLines(lines(indexScanner), null, 0, tmpSearchResults);
+			}
+		}
+		finally {
+			indexScanner.close();
+		}
+		materializeResults(tmpSearchResults);
+	}
+	
+	/**
+	 * Scans the index like {@link #queryIndex(int)}, but hands batches of ROWS_PER_TASK rows to the worker threads. 
+	 * The calling thread only decompresses and splits the index into lines. Batches are merged in the order they were 
+	 * read, and only a bounded number of batches are in flight at any time. If a line is invalid, the batches after it 
+	 * are skipped, so the result is the one of the sequential scan, which scores all lines before the invalid one.
+	 */
+	private void queryIndexInParallel(final int K) {
+		LinkedList<Future<SizedPriorityQueue<Integer>>> pending = new LinkedList<Future<SizedPriorityQueue<Integer>>>();
+		final AtomicInteger firstInvalidBatch = new AtomicInteger(Integer.MAX_VALUE);
+		int numberOfBatches = 0;
+		int mergedBatches = 0;
+		
+		while (indexScanner.hasNext() && firstInvalidBatch.get() == Integer.MAX_VALUE) {
+			final ArrayList<String> batch = new ArrayList<String>(ROWS_PER_TASK);
+			while (batch.size() < ROWS_PER_TASK && indexScanner.hasNext()) {
+				batch.add(indexScanner.nextLine());
 			}
 			
-			ArrayList<Map.Entry<Integer, Float>> documentVector = new ArrayList<Map.Entry<Integer, Float>>();
+			final int batchNumber = numberOfBatches++;
+			pending.add(executor.submit(new Callable<SizedPriorityQueue<Integer>>() {
+				public SizedPriorityQueue<Integer> call() {
+					SizedPriorityQueue<Integer> partialResults = new SizedPriorityQueue<Integer>(K, true);
+					scoreLines(batch.iterator(), firstInvalidBatch, batchNumber, partialResults);
+					return partialResults;
+				}
+			}));
 			
-			int documentLength = 0; // number of terms in the document
+			while (pending.size() > 2 * numberOfThreads) {
+				mergeBatch(ParallelEvaluator.getResult(pending.removeFirst()), mergedBatches++, firstInvalidBatch);
+			}
+		}
+		
+		while (!pending.isEmpty()) {
+			mergeBatch(ParallelEvaluator.getResult(pending.removeFirst()), mergedBatches++, firstInvalidBatch);
+		}
+	}
+	
+	/**
+	 * Adds the results of a batch to the results of the query, unless an earlier batch contains an invalid line. The 
+	 * batches have to be merged in order, so all earlier batches have finished and <code>firstInvalidBatch</code> 
+	 * does not change for this batch anymore.
+	 */
+	private void mergeBatch(SizedPriorityQueue<Integer> batchResults, int batch, AtomicInteger firstInvalidBatch) {
+		if (batch <= firstInvalidBatch.get()) {
+			tmpSearchResults.addAll(batchResults);
+		}
+	}
+	
+	/**
+	 * Scans the index like {@link #queryIndex(int)}, but the rows are read from the blocks of the ARFF file (see 
+	 * {@link ArffRowIndex}): the blocks are split into TASKS_PER_THREAD consecutive ranges per thread, and every task 
+	 * reads, decompresses, parses and scores its range into its own top K list. Unlike {@link #queryIndexInParallel(int)}, 
+	 * the calling thread does not decompress anything. The lists are merged in the order of the ranges. Like for 
+	 * {@link #queryIndexInParallel(int)}, the blocks after an invalid line are skipped.
+	 */
+	private void queryBlocksInParallel(final int K) {
+		ArrayList<Future<SizedPriorityQueue<Integer>>> rangeResults = new ArrayList<Future<SizedPriorityQueue<Integer>>>();
+		ArrayList<Integer> rangeStarts = new ArrayList<Integer>();
+		final AtomicInteger firstInvalidBlock = new AtomicInteger(Integer.MAX_VALUE);
+		final ArffRowIndex blocks = rowIndex;
+		
+		int numberOfTasks = Math.min(blocks.getNumberOfBlocks(), numberOfThreads * TASKS_PER_THREAD);
+		for (int task = 0; task < numberOfTasks; task++) {
+			final int firstBlock = (int)((long)task * blocks.getNumberOfBlocks() / numberOfTasks);
+			final int endBlock = (int)((long)(task + 1) * blocks.getNumberOfBlocks() / numberOfTasks);
 			
-			int attributeBeginning = 1;
-			int attributeMiddle = nextLine.indexOf(' ', attributeBeginning);
-			int attributeEnd = nextLine.indexOf(',', attributeMiddle);
+			rangeStarts.add(firstBlock);
+			rangeResults.add(executor.submit(new Callable<SizedPriorityQueue<Integer>>() {
+				public SizedPriorityQueue<Integer> call() throws IOException {
+					SizedPriorityQueue<Integer> partialResults = new SizedPriorityQueue<Integer>(K, true);
+					for (int block = firstBlock; block < endBlock && block <= firstInvalidBlock.get(); block++) {
+						ArrayList<String> rows = new ArrayList<String>(blocks.getNumberOfRows(block));
+						BufferedReader reader = ArffRowIndex.openBlock(blocks.readBlock(block));
+						try {
+							String line;
+							while ((line = reader.readLine()) != null) {
+								rows.add(line);
+							}
+						}
+						finally {
+							reader.close(); // releases the native memory of the inflater at once
+						}
+						scoreLines(rows.iterator(), firstInvalidBlock, block, partialResults);
+					}
+					return partialResults;
+				}
+			}));
+		}
+		
+		for (int task = 0; task < rangeResults.size(); task++) {
+			SizedPriorityQueue<Integer> partialResults = ParallelEvaluator.getResult(rangeResults.get(task));
+			if (rangeStarts.get(task) <= firstInvalidBlock.get()) { // all earlier ranges are done, so this is final for the range
+				tmpSearchResults.addAll(partialResults);
+			}
+		}
+	}
+	
+	/**
+	 * Returns an iterator over the remaining lines of the given scanner.
+	 */
+	private static Iterator<String> lines(final Scanner scanner) {
+		return new Iterator<String>() {
+			public boolean hasNext() {
+				return scanner.hasNextLine();
+			}
 			
-			if (attributeMiddle == -1 || attributeEnd == -1 || attributeMiddle > attributeEnd) {
-				System.err.println("@DATA section contains invalid line:");
-				System.err.println(nextLine);
-				break;
+			public String next() {
+				return scanner.nextLine();
 			}
 			
-			RetrievalResult currentRetrievalResult = new RetrievalResult();
-			//currentRetrievalResult.setTopic(queryDocument.substring(queryDocument.indexOf('/')+1));
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	/**
+	 * Parses and scores the given rows of the index and adds their docIDs to <code>results</code>. Class and name 
+	 * of a document are only cut out of its row if there is no metadata store and the document makes it into 
+	 * <code>results</code>. Rows of deleted documents are skipped.
+	 * 
+	 * @param firstInvalidBatch When the rows are scored in batches, the number of the first batch known to contain an 
+	 * invalid line: scoring stops as soon as it is smaller than <code>batch</code>, and it is lowered to 
+	 * <code>batch</code> if an invalid line is found. Null for a sequential scan.
+	 * @param batch The number of the batch of the rows, in the order of the index.
+	 * @return false if an invalid line was encountered (processing stops at this line).
+	 */
+	private boolean scoreLines(Iterator<String> lines, AtomicInteger firstInvalidBatch, int batch, SizedPriorityQueue<Integer> results) {
+		ArffDocumentRow row = new ArffDocumentRow();
+		
+		while (lines.hasNext() && (firstInvalidBatch == null || firstInvalidBatch.get() >= batch)) {
+			String nextLine = lines.next();
 			
-			while(attributeMiddle != -1 && attributeEnd != -1 && attributeMiddle < attributeEnd) {
-				int attributeId = Integer.parseInt(nextLine.substring(attributeBeginning, attributeMiddle));
-				
-				switch(attributeId) {
-					case 0: // docID, not needed
-						//docID = Integer.parseInt((nextLine.substring(attributeMiddle+1, attributeEnd)));
-						break;
-					case 1:	// docClass
-						currentRetrievalResult.setDocumentClass(nextLine.substring(attributeMiddle+1, attributeEnd));
-						break;
-					case 2: // docName
-						currentRetrievalResult.setDocumentName(nextLine.substring(attributeMiddle+1, attributeEnd));
-						break;
-					default:
-						float value = Float.parseFloat(nextLine.substring(attributeMiddle, attributeEnd));
-						documentLength += (scoringMethod.requiresPlainTf()?value:1);
-						documentVector.add(new AbstractMap.SimpleEntry<Integer, Float>(attributeId-IIndexer.META_FIELD_COUNT, value));
-				}
-				
-				attributeBeginning = attributeEnd + 1;
-				attributeMiddle = nextLine.indexOf(' ', attributeBeginning);
-				attributeEnd = nextLine.indexOf(',', attributeMiddle);
-				if (attributeEnd == -1) {
-					attributeEnd = nextLine.indexOf('}');
+			if (!row.parse(nextLine, scoringMethod.requiresPlainTf())) {
+				System.err.println("@DATA section contains invalid line:");
+				System.err.println(nextLine);
+				if (firstInvalidBatch != null) {
+					int first;
+					do {
+						first = firstInvalidBatch.get();
+					} while (batch < first && !firstInvalidBatch.compareAndSet(first, batch));
 				}
+				return false;
+			}
+			if (liveDocs != null && !liveDocs.isLive(row.docID)) {
+				continue;
 			}
 			
-			double similarity = 0.0;
-			double documentVectorLength = 0.0;
-			double queryVectorLength = 0.0;
-			
-			Iterator<Map.Entry<Integer, Float>> queryIterator = fastAccessQueryVector.iterator();
-			Iterator<Map.Entry<Integer, Float>> documentIterator = documentVector.iterator();
-			
-			Map.Entry<Integer, Float> nextQueryEntry = null;
-			Map.Entry<Integer, Float> nextDocumentEntry = null;
+			double similarity = scoreRow(row);
 			
-			if(queryIterator.hasNext() && documentIterator.hasNext()) {
-				nextDocumentEntry = documentIterator.next();
-				nextQueryEntry = queryIterator.next();
+			if (results.isFull() && similarity <= results.getLastPriority()) {
+				continue; // would be dropped anyway
 			}
-			
-			while(queryIterator.hasNext() && documentIterator.hasNext()) {
-				if (nextQueryEntry.getKey() == nextDocumentEntry.getKey()) {
-					if (nextDocumentEntry.getValue() == 0.0f || nextQueryEntry.getValue() == 0.0f) {
-						nextQueryEntry = queryIterator.next();
-						nextDocumentEntry = documentIterator.next();
-						continue;
-					}
-					
-					similarity += scoringMethod.score(nextQueryEntry.getValue(), nextDocumentEntry.getValue(), 0, collectionStatistics.getNumberOfTokens(), documentLength);
-					
-					if(scoringMethod.requiresVectorLengths()) {
-						documentVectorLength += Math.pow(nextDocumentEntry.getValue(), 2.0);
-						queryVectorLength += Math.pow(nextQueryEntry.getValue(), 2.0);
-					}
-					
-					nextDocumentEntry = documentIterator.next();
-					nextQueryEntry = queryIterator.next();	
-				}
-				else if (nextQueryEntry.getKey() < nextDocumentEntry.getKey()) { // the current document does not contain this term, try next term
-					if(scoringMethod.requiresVectorLengths()) {
-						queryVectorLength += Math.pow(nextQueryEntry.getValue(), 2.0);
-					}
-					
-					nextQueryEntry = queryIterator.next();
-				}
-				else { // have to step up document vector
-					if(scoringMethod.requiresVectorLengths()) {
-						documentVectorLength += Math.pow(nextDocumentEntry.getValue(), 2.0);
-					}
-					
-					nextDocumentEntry = documentIterator.next();
-				}
+			if (rowMetadata != null) {
+				rowMetadata.put(row.docID, new String[] {row.getDocumentClass(), row.getDocumentName()});
 			}
+			results.add(row.docID, similarity);
+		}
+		return true;
+	}
+	
+	/**
+	 * Scores a single document of the index against the current query by merging the two termID-ordered vectors.
+	 */
+	private double scoreRow(ArffDocumentRow row) {
+		double similarity = 0.0;
+		
+		int q = 0;
+		int d = 0;
+		while(q < queryVector.size() && d < row.numberOfEntries) {
+			int queryTermID = queryVector.getTermID(q);
+			int documentTermID = row.termIDs[d];
 			
-			if(scoringMethod.requiresVectorLengths()) {
-				while (queryIterator.hasNext()) {
-					queryVectorLength += Math.pow(queryIterator.next().getValue(), 2.0);
+			if (queryTermID == documentTermID) {
+				if (row.values[d] != 0.0f && queryVector.getValue(q) != 0.0f) {
+					similarity += scoringMethod.score(queryVector.getValue(q), row.values[d], 0, collectionStatistics.getNumberOfTokens(), row.documentLength);
 				}
-				while (documentIterator.hasNext()) {
-					documentVectorLength += Math.pow(documentIterator.next().getValue(), 2.0);
-				}
-				
-				queryVectorLength = Math.sqrt(queryVectorLength);
-				documentVectorLength = Math.sqrt(documentVectorLength);
-				
-				similarity = scoringMethod.useVectorLenghts(similarity, queryVectorLength, documentVectorLength);
+				q++;
+				d++;
+			}
+			else if (queryTermID < documentTermID) { // the current document does not contain this term, try next term
+				q++;
+			}
+			else { // have to step up document vector
+				d++;
 			}
-			
-			currentRetrievalResult.setSimilarity((float)(similarity));
-			currentRetrievalResult.setSize(indexName);
-			tmpSearchResults.add(currentRetrievalResult, similarity);
 		}
 		
-		indexScanner.close();
-		Iterator<RetrievalResult> resultIterator = tmpSearchResults.getAllScores().iterator();
-		int counter = 1;
-		while (resultIterator.hasNext()) {
-			RetrievalResult res = resultIterator.next();
-			res.setPlacement(counter++);
-			searchResults.add(res);
+		if(scoringMethod.requiresVectorLengths()) {
+			similarity = scoringMethod.useVectorLenghts(similarity, queryVector.getVectorLength(), row.getVectorLength());
 		}
+		
+		return similarity;
 	}
 	
+	/**
+	 * Builds the vector of the given query document. If the index has a forward index containing the document, its stored 
+	 * vector is used, otherwise the document is read from the collection and tokenized.
+	 */
 	private void parseQuery(File collectionFile, String queryDocument) throws ZipException, IOException {
-		ZipTokenStream zipTokenStream = new ZipTokenStream(collectionFile, useStemming);
+		long start = System.nanoTime();
+		
+		openDocumentFiles();
+		queryVector = null;
+		if (forwardIndex != null && metadataStore != null) {
+			int docID = metadataStore.getDocID(queryDocument.substring(queryDocument.indexOf('/') + 1)); // strip the collection name
+			queryVector = forwardIndex.getDocumentVector(docID, !scoringMethod.requiresPlainTf());
+		}
+		if (queryVector == null) {
+			tokenizeQuery(collectionFile, queryDocument);
+		}
+		
+		lastParsingTime = System.nanoTime() - start;
+	}
+	
+	/**
+	 * Opens the metadata store, the forward index and the positional index the first time they are needed, if the 
+	 * index has them.
+	 */
+	private void openDocumentFiles() {
+		if (documentFilesOpened) {
+			return;
+		}
+		documentFilesOpened = true;
+		
+		if (segments != null) { // the stored vectors and docIDs of the segments are local to them
+			return;
+		}
+		
+		if (DocumentMetadataStore.exists(indexDirectory, indexName)) {
+			try {
+				metadataStore = DocumentMetadataStore.open(indexDirectory, indexName);
+			}
+			catch (IOException ioe) {
+				System.err.println("Error reading the document meta data of "+indexDirectory+indexName+", reading it from the index instead! -- Stack Trace follows.");
+				ioe.printStackTrace();
+			}
+		}
+		if (ForwardIndex.exists(indexDirectory, indexName)) {
+			try {
+				forwardIndex = ForwardIndex.open(indexDirectory, indexName);
+			}
+			catch (IOException ioe) {
+				System.err.println("Error reading the forward index of "+indexDirectory+indexName+", tokenizing queries instead! -- Stack Trace follows.");
+				ioe.printStackTrace();
+			}
+		}
+		if (PositionalIndex.exists(indexDirectory, indexName)) {
+			try {
+				positionalIndex = PositionalIndex.open(indexDirectory, indexName);
+			}
+			catch (IOException ioe) {
+				System.err.println("Error reading the positional index of "+indexDirectory+indexName+", phrase queries are not available! -- Stack Trace follows.");
+				ioe.printStackTrace();
+			}
+		}
+	}
+	
+	private void tokenizeQuery(File collectionFile, String queryDocument) throws ZipException, IOException {
+		ZipTokenStream zipTokenStream = new ZipTokenStream(collectionFile, getQueryAnalyzer()); // shares the stem cache with the other queries
 		zipTokenStream.restrictToFile(queryDocument);
+		zipTokenStream.setSkipMetaData(collectionStatistics.isHeadersSkipped()); // tokenize the query like the indexed documents
 		zipTokenStream.initialize();
 		
-		DocumentTermList queryTermList = new DocumentTermList();
-		
+		ArrayList<String> terms = new ArrayList<String>();
 		while(zipTokenStream.hasNext()) { // we assume that the query fits comfortably into the main memory.
-			Token nextToken = zipTokenStream.next();
-			int termID = vocabulary.add(nextToken.getTerm(), nextToken.getDoc().getId()).getTermID(); // we add the term to the overall vocabulary (needed if our query document contains new terms).
-			queryTermList.add(termID);
+			terms.add(zipTokenStream.next().getTerm());
 		}
-		vocabulary.setTotalNumberOfDocuments(1); // we have only one query document
-		vocabulary.finalize();
-		queryTermList.sortTermsByID();
 		
-		fastAccessQueryVector = new ArrayList<Map.Entry<Integer, Float>>(queryTermList.getDocTermEntries().entrySet());
+		queryVector = toQueryVector(terms, vocabulary);
+	}
+	
+	/**
+	 * Maps the given query terms to their termIDs and counts them.
+	 */
+	private QueryVector toQueryVector(ArrayList<String> terms, Vocabulary vocabulary) {
+		DocumentTermList queryTermList = new DocumentTermList();
+		HashMap<String, Integer> unknownTerms = new HashMap<String, Integer>(); // terms of the query that are not in the index
 		
-		if(!scoringMethod.requiresPlainTf()) {
-			Iterator<Map.Entry<Integer, Float>> queryIterator = fastAccessQueryVector.iterator();
-			while(queryIterator.hasNext()) {
-				Map.Entry<Integer, Float> nextQueryEntry = queryIterator.next();
-				nextQueryEntry.setValue((float)Math.log10(1 + nextQueryEntry.getValue()));
+		for (String term : terms) {
+			VocabularyEntry entry = vocabulary.get(term);
+			int termID;
+			if (entry != null) {
+				termID = entry.getTermID();
 			}
+			else { // new terms get termIDs beyond the vocabulary, they are needed for the length of the query vector
+				Integer unknownTermID = unknownTerms.get(term);
+				if (unknownTermID == null) {
+					unknownTermID = vocabulary.size() + unknownTerms.size();
+					unknownTerms.put(term, unknownTermID);
+				}
+				termID = unknownTermID;
+			}
+			queryTermList.add(termID);
 		}
+		queryTermList.sortTermsByID();
+		
+		return QueryVector.fromTermList(queryTermList, !scoringMethod.requiresPlainTf());
 	}
 	
 	private void loadCollectionStatistics() {
-		File statisticsFile = new File(indexDirectory + indexName + ".stat");
-		collectionStatistics = new CollectionStatistics();
+		collectionStatistics = readCollectionStatistics(new File(indexDirectory + indexName + ".stat"));
+	}
+	
+	private static CollectionStatistics readCollectionStatistics(File statisticsFile) {
+		CollectionStatistics collectionStatistics = new CollectionStatistics();
 		
 		try {
 			collectionStatistics.readFromFile(statisticsFile);
@@ -263,6 +608,7 @@ public class SearchEngine
 			System.err.println("Error reading from statisticsFile "+statisticsFile.getPath()+"! -- Stack Trace follows.");
 			ioe.printStackTrace();
 		}
+		return collectionStatistics;
 	}
 	
 	/**
@@ -278,13 +624,20 @@ public class SearchEngine
 			int queryCounter = 1;
 			System.out.println("Working... ");
 			String collectionFileName = collectionFile.getName().substring(0, collectionFile.getName().lastIndexOf('.'));
+			ArrayList<Long> latencies = new ArrayList<Long>();
+			ArrayList<Long> parsingLatencies = new ArrayList<Long>();
 			while (queriesScanner.hasNext()) {
 				String queryDocument = collectionFileName+"/"+queriesScanner.nextLine(); // 20_newsgroups_subset/
+				long start = System.nanoTime();
 				retrieveTop(K, collectionFile, queryDocument);
+				latencies.add(System.nanoTime() - start);
+				parsingLatencies.add(lastParsingTime);
 				writeResultsToFile(queryCounter);
 				System.out.println(queryCounter+" queries processed.");
 				queryCounter++;
 			}
+			printLatencies("Query latency", latencies);
+			printLatencies("Query setup", parsingLatencies);
 			System.out.println("Done!");
 		}
 		catch (IOException ioe) {
@@ -293,23 +646,558 @@ public class SearchEngine
 		}
 	}
 	
+	/**
+	 * Prints mean, median and 99th percentile of the given latencies (in nanoseconds), labeled with the given name.
+	 */
+	public static void printLatencies(String name, ArrayList<Long> latencies) {
+		if (latencies.isEmpty()) {
+			return;
+		}
+		ArrayList<Long> sorted = new ArrayList<Long>(latencies);
+		Collections.sort(sorted);
+		
+		long total = 0;
+		for (long latency : sorted) {
+			total += latency;
+		}
+		long median = sorted.get((sorted.size() - 1) / 2);
+		long p99 = sorted.get((int)Math.ceil(0.99 * sorted.size()) - 1);
+		
+		System.out.println(String.format("%s: mean %.2f ms, median %.2f ms, p99 %.2f ms (%d queries).", name, total / 1e6 / sorted.size(), median / 1e6, p99 / 1e6, sorted.size()));
+	}
+	
 	public ArrayList<RetrievalResult> retrieveTop(int K, File collectionFile, String queryDocument) throws IOException {
-		GZIPInputStream gzis = new GZIPInputStream(new FileInputStream(new File(indexDirectory+indexName+scoringMethod.getRequiredIndexSuffix()+".arff.gz")));
+		searchResults = new ArrayList<RetrievalResult>(K);
+		swapRefreshedSegments();
+		maybeRefreshBuffer();
+		
+		if (queryEvaluator != null || segments != null || nearRealTimeIndexer != null) { // there is no single ARFF file to scan for an index of segments
+			loadInvertedIndex();
+			
+			parseQuery(collectionFile, queryDocument);
+			reduceQuery();
+			
+			evaluateQuery(queryEvaluator != null ? queryEvaluator : new TermAtATimeEvaluator(), K);
+			
+			return searchResults;
+		}
+		
+		if (queryReducer != null) {
+			loadInvertedIndex(); // needed for the statistics of the query terms
+		}
+		
+		File indexFile = new File(indexDirectory+indexName+scoringMethod.getRequiredIndexSuffix()+".arff.gz");
+		GZIPInputStream gzis = new GZIPInputStream(new FileInputStream(indexFile));
 		indexScanner = new Scanner(gzis);
+		rowIndex = executor != null && ArffRowIndex.exists(indexFile) ? ArffRowIndex.open(indexFile) : null; // only the header is read by indexScanner then
 		
-		searchResults = new ArrayList<RetrievalResult>(K);
-		tmpSearchResults = new SizedPriorityQueue<RetrievalResult>(K, true);
+		tmpSearchResults = new SizedPriorityQueue<Integer>(K, true);
+		openDocumentFiles();
+		rowMetadata = metadataStore == null ? new ConcurrentHashMap<Integer, String[]>() : null;
 		
 		loadVocabularyFromIndex();
 		
 		loadCollectionStatistics();
+		liveDocs = LiveDocs.exists(indexDirectory, indexName) ? LiveDocs.read(indexDirectory, indexName, collectionStatistics.getNumberOfDocuments()) : null; // read for every scan, like the index
 		
 		parseQuery(collectionFile, queryDocument);
+		reduceQuery();
+		
+		long start = System.nanoTime();
+		queryIndex(K);
+		lastEvaluationTime = System.nanoTime() - start;
+		
+		return searchResults;
+	}
+	
+	/**
+	 * Retrieves the top K documents for the given free text query. The text is analyzed like the documents of the 
+	 * collection (see {@link TermAnalyzer}) and evaluated on the inverted index, which is loaded on the first query and 
+	 * kept in memory. If no query evaluator has been set, exact term-at-a-time evaluation is used.
+	 * 
+	 * @param K The number of results.
+	 * @param queryText The text of the query.
+	 * @return The top K documents, best first.
+	 * @throws IOException
+	 */
+	public ArrayList<RetrievalResult> retrieveTop(int K, String queryText) throws IOException {
+		return retrieveTop(K, new StringReader(queryText));
+	}
+	
+	/**
+	 * Like {@link #retrieveTop(int, String)}, the query text is read from the given stream until its end.
+	 */
+	public ArrayList<RetrievalResult> retrieveTop(int K, Reader queryText) throws IOException {
+		searchResults = new ArrayList<RetrievalResult>(K);
+		swapRefreshedSegments();
+		maybeRefreshBuffer();
+		loadInvertedIndex();
+		
+		long start = System.nanoTime();
+		queryVector = toQueryVector(getQueryAnalyzer().analyze(queryText), invertedIndex.getVocabulary());
+		lastParsingTime = System.nanoTime() - start;
+		reduceQuery();
+		
+		evaluateQuery(queryEvaluator != null ? queryEvaluator : new TermAtATimeEvaluator(), K);
+		
+		return searchResults;
+	}
+	
+	/**
+	 * Retrieves the documents matching the given boolean query (see {@link BooleanQueryParser} for the syntax) from the 
+	 * inverted index, which is loaded on the first query and kept in memory. Only the matching documents are visited. 
+	 * Phrases are available if the index has been built in one run with positions (see 
+	 * {@link indexing.BlockIndexer#setStorePositions(boolean)}), without near-real-time indexer. 
+	 * The query reducer and the threads are not used, since they would change which documents match.
+	 * 
+	 * @param K The number of results.
+	 * @param queryText The boolean query.
+	 * @param ranked Whether the matches are ranked by the scoring method (on the terms that are not negated), otherwise 
+	 * the first K matches in docID order are returned with similarity 0.
+	 * @return The top K matches, best first.
+	 * @throws IllegalArgumentException If the query is malformed.
+	 * @throws IOException
+	 */
+	public ArrayList<RetrievalResult> retrieveBoolean(int K, String queryText, boolean ranked) throws IOException {
+		searchResults = new ArrayList<RetrievalResult>(K);
+		swapRefreshedSegments();
+		maybeRefreshBuffer();
+		loadInvertedIndex();
+		
+		long start = System.nanoTime();
+		BooleanQuery query = new BooleanQueryParser(getQueryAnalyzer(), invertedIndex.getVocabulary(), positionalIndex).parse(queryText);
+		queryVector = ranked ? toQueryVector(query.getPositiveTerms(), invertedIndex.getVocabulary()) : null;
+		lastParsingTime = System.nanoTime() - start;
 		
-		queryIndex();
+		start = System.nanoTime();
+		SizedPriorityQueue<Integer> topDocuments = booleanQueryEvaluator.evaluate(invertedIndex, scoringMethod, query, queryVector, K);
+		lastEvaluationTime = System.nanoTime() - start;
+		rowMetadata = null;
+		materializeResults(topDocuments);
 		
 		return searchResults;
 	}
+	
+	/**
+	 * @return The number of documents that matched the last boolean query, see {@link #retrieveBoolean(int, String, boolean)}.
+	 */
+	public int getLastNumberOfMatches() {
+		return booleanQueryEvaluator.getNumberOfMatches();
+	}
+	
+	/**
+	 * Evaluates the current query on the inverted index and stores the results.
+	 */
+	private void evaluateQuery(IQueryEvaluator evaluator, int K) {
+		if (executor != null && evaluator instanceof IRangeQueryEvaluator) {
+			evaluator = new ParallelEvaluator((IRangeQueryEvaluator)evaluator, executor, numberOfThreads);
+		}
+		
+		long start = System.nanoTime();
+		SizedPriorityQueue<Integer> topDocuments = evaluator.evaluate(invertedIndex, scoringMethod, queryVector, K);
+		lastEvaluationTime = System.nanoTime() - start;
+		rowMetadata = null;
+		materializeResults(topDocuments);
+	}
+	
+	/**
+	 * Applies the query reducer (if any) to the current query.
+	 */
+	private void reduceQuery() {
+		lastQuerySize = queryVector.size();
+		if (queryReducer != null) {
+			queryVector = queryReducer.reduce(queryVector, invertedIndex);
+		}
+		lastReducedQuerySize = queryVector.size();
+	}
+	
+	/**
+	 * Runs every query of the query file twice, once with all query terms and once reduced by the current query reducer, 
+	 * and prints the number of query terms, the time spent scoring and the overlap of the two result lists per query. 
+	 * No result files are written.
+	 * 
+	 * @param K The number of results per query, the overlap is computed for the top K.
+	 * @param collectionFile
+	 * @param queryFile
+	 * @throws IOException
+	 */
+	public void compareQueryReduction(int K, File collectionFile, File queryFile) throws IOException {
+		if (queryReducer == null) {
+			throw new IllegalStateException("no query reducer set");
+		}
+		QueryReducer reducer = queryReducer;
+		
+		Scanner queriesScanner = new Scanner(new FileInputStream(queryFile));
+		String collectionFileName = collectionFile.getName().substring(0, collectionFile.getName().lastIndexOf('.'));
+		
+		int queryCounter = 0;
+		long totalFullTime = 0;
+		long totalReducedTime = 0;
+		long totalFullTerms = 0;
+		long totalReducedTerms = 0;
+		double totalOverlap = 0.0;
+		
+		while (queriesScanner.hasNext()) {
+			String queryDocument = collectionFileName+"/"+queriesScanner.nextLine();
+			queryCounter++;
+			
+			queryReducer = null;
+			ArrayList<String> fullResults = new ArrayList<String>();
+			for (RetrievalResult result : retrieveTop(K, collectionFile, queryDocument)) {
+				fullResults.add(result.getDocumentClass()+"/"+result.getDocumentName());
+			}
+			long fullTime = lastEvaluationTime;
+			
+			queryReducer = reducer;
+			int overlap = 0;
+			for (RetrievalResult result : retrieveTop(K, collectionFile, queryDocument)) {
+				if (fullResults.contains(result.getDocumentClass()+"/"+result.getDocumentName())) {
+					overlap++;
+				}
+			}
+			long reducedTime = lastEvaluationTime;
+			
+			System.out.println(String.format("topic%d: %d -> %d terms, %.2f ms -> %.2f ms, overlap@%d %d/%d", queryCounter, lastQuerySize, lastReducedQuerySize, fullTime / 1e6, reducedTime / 1e6, K, overlap, fullResults.size()));
+			
+			totalFullTime += fullTime;
+			totalReducedTime += reducedTime;
+			totalFullTerms += lastQuerySize;
+			totalReducedTerms += lastReducedQuerySize;
+			totalOverlap += fullResults.isEmpty() ? 1.0 : (double)overlap / fullResults.size();
+		}
+		queriesScanner.close();
+		
+		if (queryCounter > 0) {
+			System.out.println(String.format("Average: %.1f -> %.1f terms, scoring time %.2f ms -> %.2f ms (%.1f%% saved), mean overlap@%d %.3f", 
+					(double)totalFullTerms / queryCounter, (double)totalReducedTerms / queryCounter, totalFullTime / 1e6 / queryCounter, totalReducedTime / 1e6 / queryCounter, 
+					totalFullTime > 0 ? 100.0 * (totalFullTime - totalReducedTime) / totalFullTime : 0.0, K, totalOverlap / queryCounter));
+		}
+	}
+	
+	/**
+	 * Inverts the index required by the current scoring method and keeps it in memory. Does nothing if this has been done before.
+	 */
+	private void loadInvertedIndex() throws IOException {
+		if (invertedIndex != null) {
+			return;
+		}
+		
+		openDocumentFiles();
+		
+		if (nearRealTimeIndexer != null) {
+			loadSegmentsWithBuffer();
+			return;
+		}
+		
+		if (segments != null) {
+			InvertedIndex segmentsIndex;
+			while (true) {
+				try {
+					segmentsIndex = readSegments(indexDirectory, segments, scoringMethod.requiresPlainTf());
+					break;
+				}
+				catch (FileNotFoundException e) {
+					segments = readChangedManifest(segments, e);
+				}
+			}
+			invertedIndex = maybeCompressPostings(segmentsIndex);
+			vocabulary = invertedIndex.getVocabulary();
+			collectionStatistics = invertedIndex.getCollectionStatistics();
+			loadedSegments = new RefreshedSegments(segments, invertedIndex, scoringMethod.requiresPlainTf(), false);
+			return;
+		}
+		
+		GZIPInputStream gzis = new GZIPInputStream(new FileInputStream(new File(indexDirectory+indexName+scoringMethod.getRequiredIndexSuffix()+".arff.gz")));
+		indexScanner = new Scanner(gzis);
+		
+		loadVocabularyFromIndex();
+		
+		loadCollectionStatistics();
+		
+		System.out.print("Inverting index... ");
+		invertedIndex = InvertedIndex.readFromArff(indexScanner, vocabulary, collectionStatistics, scoringMethod.requiresPlainTf(), metadataStore == null);
+		indexScanner.close();
+		invertedIndex = invertedIndex.withDeletions(readDeletions(indexDirectory, SegmentManifest.read(indexDirectory, indexName)));
+		System.out.println("Done.");
+		invertedIndex = maybeCompressPostings(invertedIndex);
+		loadedSegments = new RefreshedSegments(null, invertedIndex, scoringMethod.requiresPlainTf(), false);
+	}
+	
+	/**
+	 * Inverts every segment of the index and appends it to one inverted index with a global vocabulary, global docIDs 
+	 * and the statistics of all segments, so documents are scored exactly as if the segments had been indexed in one 
+	 * run (up to thresholds, which are applied per segment). The plain tf files of the segments are read for every 
+	 * scoring method, since their tf-idf files were weighted with the document frequencies of the segment only. 
+	 * Deleted documents are marked, see {@link #readDeletions}.
+	 * 
+	 * @throws FileNotFoundException If a file of a segment is missing, e.g. because a merge has replaced the segment 
+	 * since the manifest was read, see {@link #readChangedManifest}.
+	 */
+	private static InvertedIndex readSegments(String indexDirectory, SegmentManifest segments, boolean plainTf) throws IOException {
+		System.out.print("Reading "+segments.size()+" segments... ");
+		
+		int numberOfDocuments = 0;
+		long numberOfTokens = 0;
+		boolean headersSkipped = false;
+		for (int i = 0; i < segments.size(); i++) {
+			CollectionStatistics segmentStatistics = new CollectionStatistics();
+			segmentStatistics.readFromFile(new File(indexDirectory + segments.getSegmentName(i) + ".stat"));
+			numberOfDocuments += segments.getNumberOfDocuments(i);
+			numberOfTokens += segmentStatistics.getNumberOfTokens();
+			headersSkipped |= segmentStatistics.isHeadersSkipped();
+		}
+		CollectionStatistics collectionStatistics = new CollectionStatistics(numberOfDocuments, numberOfTokens, 0, numberOfDocuments == 0 ? 0 : numberOfTokens / numberOfDocuments);
+		collectionStatistics.setHeadersSkipped(headersSkipped);
+		
+		Vocabulary vocabulary = new Vocabulary(65536);
+		InvertedIndex invertedIndex = InvertedIndex.createForSegments(vocabulary, collectionStatistics, true);
+		for (int i = 0; i < segments.size(); i++) {
+			Scanner segmentScanner = new Scanner(new GZIPInputStream(new FileInputStream(new File(indexDirectory + segments.getSegmentName(i) + "_tf.arff.gz"))));
+			try {
+				Vocabulary segmentVocabulary = readVocabulary(segmentScanner);
+				int[] globalTermIDs = new int[segmentVocabulary.size()];
+				for (int termID = 0; termID < globalTermIDs.length; termID++) {
+					globalTermIDs[termID] = vocabulary.addSilent(segmentVocabulary.getTerm(termID)).getTermID();
+				}
+				
+				CollectionStatistics segmentStatistics = new CollectionStatistics(segments.getNumberOfDocuments(i), 0, segmentVocabulary.size(), 0); // only used to size the arrays
+				InvertedIndex segment = InvertedIndex.readFromArff(segmentScanner, segmentVocabulary, segmentStatistics, true, true);
+				invertedIndex.appendSegment(segment, globalTermIDs, segments.getDocIDBase(i));
+			}
+			finally {
+				segmentScanner.close();
+			}
+		}
+		invertedIndex.finishSegments(!plainTf);
+		collectionStatistics.setNumberOfUniqueTerms(vocabulary.size());
+		
+		BitSet deletedDocuments = readDeletions(indexDirectory, segments);
+		System.out.println("Done. The index contains "+numberOfDocuments+" documents"+(deletedDocuments != null ? " ("+deletedDocuments.cardinality()+" deleted)" : "")+" and "+vocabulary.size()+" terms.");
+		return invertedIndex.withDeletions(deletedDocuments);
+	}
+	
+	/**
+	 * Reads the live docs of all segments of the index (see {@link LiveDocs}).
+	 * 
+	 * @return The deleted global docIDs, null if no document has been deleted.
+	 * @throws FileNotFoundException If the live docs of a segment with deletions are missing, see {@link #readSegments}.
+	 */
+	private static BitSet readDeletions(String indexDirectory, SegmentManifest segments) throws IOException {
+		BitSet deletedDocuments = null;
+		for (int i = 0; i < segments.size(); i++) {
+			File liveDocsFile = new File(indexDirectory + segments.getSegmentName(i) + LiveDocs.SUFFIX);
+			if (segments.getNumberOfDeletedDocuments(i) > 0 && !liveDocsFile.exists()) {
+				throw new FileNotFoundException(liveDocsFile.getPath());
+			}
+			LiveDocs segmentLiveDocs = LiveDocs.read(indexDirectory, segments.getSegmentName(i), segments.getNumberOfDocuments(i));
+			if (segmentLiveDocs.getNumberOfDeletedDocuments() == 0) {
+				continue;
+			}
+			if (deletedDocuments == null) {
+				deletedDocuments = new BitSet(segments.getDocIDBase(segments.size()) + 1);
+			}
+			int docIDBase = segments.getDocIDBase(i);
+			for (int docID = segmentLiveDocs.nextDeletedDocument(1); docID >= 0; docID = segmentLiveDocs.nextDeletedDocument(docID + 1)) {
+				deletedDocuments.set(docIDBase + docID);
+			}
+		}
+		return deletedDocuments;
+	}
+	
+	/**
+	 * Reads the manifest of the index again after a file of the segments listed by the given manifest was not found. 
+	 * A merge deletes the files of the segments it replaced as soon as it has committed the new manifest (see 
+	 * {@link indexing.MergeScheduler}), so anyone who read the manifest before, e.g. another process or a snapshot of 
+	 * a near-real-time indexer, may find them gone while reading the segments. Such a reader starts over with the new 
+	 * manifest.
+	 * 
+	 * @return The new manifest.
+	 * @throws FileNotFoundException The given exception if the manifest has not changed, i.e. the file is missing for 
+	 * another reason.
+	 */
+	private SegmentManifest readChangedManifest(SegmentManifest manifest, FileNotFoundException missingFile) throws IOException {
+		SegmentManifest current = SegmentManifest.read(indexDirectory, indexName);
+		if (current.hasSameSegments(manifest)) {
+			throw missingFile;
+		}
+		System.out.println("The segments have changed meanwhile, reading them again.");
+		return current;
+	}
+	
+	/**
+	 * Drops the inverted index if the snapshot of the buffer is out of date, so the next query builds a new one.
+	 */
+	private void maybeRefreshBuffer() {
+		if (nearRealTimeIndexer == null || invertedIndex == null) {
+			return;
+		}
+		if (System.currentTimeMillis() - lastRefreshTime >= refreshInterval && nearRealTimeIndexer.getGeneration() != bufferGeneration) {
+			invertedIndex = null;
+		}
+	}
+	
+	/**
+	 * Takes a snapshot of the buffer of the near-real-time indexer and builds the inverted index of the on-disk segments 
+	 * and the buffer. The snapshot contains the manifest of the segments the buffer belongs to. The segments are only 
+	 * read again if their documents have changed; if only documents were deleted, just their live docs are read. If a 
+	 * merge replaces the segments while they are read, a new snapshot is taken, since the docIDs of the buffer follow 
+	 * the documents of the segments.
+	 */
+	private void loadSegmentsWithBuffer() throws IOException {
+		NearRealTimeIndexer.Snapshot buffer;
+		SegmentManifest manifest;
+		while (true) {
+			buffer = nearRealTimeIndexer.snapshot();
+			manifest = buffer.getManifest();
+			try {
+				if (segmentsWithoutBuffer == null || segments == null || !manifest.hasSameDocuments(segments)) {
+					segmentsWithoutBuffer = readSegments(indexDirectory, manifest, true);
+				}
+				else if (!manifest.hasSameSegments(segments)) {
+					segmentsWithoutBuffer = segmentsWithoutBuffer.withDeletions(readDeletions(indexDirectory, manifest));
+				}
+				break;
+			}
+			catch (FileNotFoundException e) {
+				readChangedManifest(manifest, e);
+			}
+		}
+		segments = manifest;
+		invertedIndex = maybeCompressPostings(InvertedIndex.withBuffer(segmentsWithoutBuffer, buffer, !scoringMethod.requiresPlainTf()));
+		vocabulary = invertedIndex.getVocabulary();
+		collectionStatistics = invertedIndex.getCollectionStatistics();
+		bufferGeneration = buffer.getGeneration();
+		lastRefreshTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Re-reads the segments of the index and inverts them on the calling thread (see {@link #readSegments}). The new 
+	 * inverted index is swapped in by the next query, so queries never wait for it: queries running meanwhile use the 
+	 * old one. Meant to be called by a background thread, e.g. by a {@link indexing.MergeScheduler} after a merge or 
+	 * by the indexer after adding a segment. If only documents were deleted (see {@link indexing.DocumentDeleter}), 
+	 * just the live docs are read and applied to the inverted index in use, this works for an index built in one run as 
+	 * well. Does nothing if a near-real-time indexer is set, since its next snapshot reads the segments again if they 
+	 * have changed.
+	 */
+	public void refreshSegments() throws IOException {
+		if (nearRealTimeIndexer != null) { // with a buffer, the next snapshot reads changed segments
+			return;
+		}
+		RefreshedSegments loaded = loadedSegments;
+		if (!SegmentManifest.exists(indexDirectory, indexName)) {
+			if (loaded != null && loaded.manifest == null) { // an index built in one run, only its deletions can change
+				InvertedIndex index = loaded.invertedIndex.withDeletions(readDeletions(indexDirectory, SegmentManifest.read(indexDirectory, indexName)));
+				refreshedSegments.set(new RefreshedSegments(null, index, loaded.plainTf, true));
+			}
+			return;
+		}
+		SegmentManifest manifest = SegmentManifest.read(indexDirectory, indexName);
+		while (true) {
+			try {
+				if (loaded != null && loaded.manifest != null && loaded.manifest.hasSameDocuments(manifest)) {
+					InvertedIndex index = loaded.invertedIndex.withDeletions(readDeletions(indexDirectory, manifest));
+					refreshedSegments.set(new RefreshedSegments(manifest, index, loaded.plainTf, true));
+					return;
+				}
+				IScoringMethod method = scoringMethod;
+				InvertedIndex index = method == null ? null : maybeCompressPostings(readSegments(indexDirectory, manifest, method.requiresPlainTf()));
+				refreshedSegments.set(new RefreshedSegments(manifest, index, method != null && method.requiresPlainTf(), false));
+				return;
+			}
+			catch (FileNotFoundException e) {
+				manifest = readChangedManifest(manifest, e);
+			}
+		}
+	}
+	
+	@Override
+	public void segmentsChanged(String directory, String changedIndexName) {
+		if (!changedIndexName.equals(indexName) || !new File(directory).getAbsolutePath().equals(new File(indexDirectory).getAbsolutePath())) {
+			return;
+		}
+		try {
+			refreshSegments();
+		}
+		catch (IOException ioe) {
+			System.err.println("Error reading the segments of "+indexDirectory+indexName+", keeping the previous ones! -- Stack Trace follows.");
+			ioe.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Swaps in the segments read by the last {@link #refreshSegments()}, if any.
+	 */
+	private void swapRefreshedSegments() {
+		RefreshedSegments refreshed = refreshedSegments.getAndSet(null);
+		if (refreshed == null) {
+			return;
+		}
+		segments = refreshed.manifest;
+		if (!refreshed.deletionsOnly) {
+			forwardIndex = null; // an index that was built in one run may have become the first segment
+			positionalIndex = null;
+			metadataStore = null;
+			documentFilesOpened = true;
+		}
+		if (refreshed.invertedIndex != null && refreshed.plainTf == scoringMethod.requiresPlainTf()) {
+			invertedIndex = refreshed.invertedIndex;
+			vocabulary = invertedIndex.getVocabulary();
+			collectionStatistics = invertedIndex.getCollectionStatistics();
+			loadedSegments = refreshed;
+		}
+		else { // read for another scoring method, read them again on demand
+			invertedIndex = null;
+			loadedSegments = null;
+		}
+	}
+	
+	/**
+	 * The segments of the index and their inverted index, as read by {@link SearchEngine#refreshSegments()}.
+	 */
+	private static class RefreshedSegments {
+		SegmentManifest manifest; // null for an index built in one run
+		InvertedIndex invertedIndex; // null if no scoring method was set
+		boolean plainTf;
+		boolean deletionsOnly; // whether only the deletions changed, the documents are the same
+		
+		RefreshedSegments(SegmentManifest _manifest, InvertedIndex _invertedIndex, boolean _plainTf, boolean _deletionsOnly) {
+			this.manifest = _manifest;
+			this.invertedIndex = _invertedIndex;
+			this.plainTf = _plainTf;
+			this.deletionsOnly = _deletionsOnly;
+		}
+	}
+	
+	/**
+	 * Converts the top docIDs into RetrievalResults. Class and name of the documents are taken from the metadata store 
+	 * if the index has one, otherwise from the rows kept while scanning or from the inverted index.
+	 */
+	private void materializeResults(SizedPriorityQueue<Integer> topDocuments) {
+		Iterator<Integer> docIterator = topDocuments.getAllScores().iterator();
+		Iterator<Double> similarityIterator = topDocuments.getAllPriorities().iterator();
+		int counter = 1;
+		while (docIterator.hasNext()) {
+			int docID = docIterator.next();
+			
+			RetrievalResult res = new RetrievalResult();
+			if (metadataStore != null) {
+				res.setDocumentClass(metadataStore.getDocumentClass(docID));
+				res.setDocumentName(metadataStore.getDocumentName(docID));
+			}
+			else if (rowMetadata != null) {
+				res.setDocumentClass(rowMetadata.get(docID)[0]);
+				res.setDocumentName(rowMetadata.get(docID)[1]);
+			}
+			else {
+				res.setDocumentClass(invertedIndex.getDocumentClass(docID));
+				res.setDocumentName(invertedIndex.getDocumentName(docID));
+			}
+			res.setSimilarity(similarityIterator.next().floatValue());
+			res.setSize(indexName);
+			res.setPlacement(counter++);
+			searchResults.add(res);
+		}
+	}
 
 	public void writeResultsToFile(int numberOfQuery) throws IOException {
 		if (searchResults.size() == 0) {
@@ -1,6 +1,7 @@
 package retrieval;
 
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -105,7 +106,7 @@ public class SizedPriorityQueue<T>
 			index++;
 		}
 
-		if (index < mSize - 1)
+		if (index < mSize)
 		{
 			mList.add(index, value);
 			mPriorities.add(index, priority);
@@ -118,6 +119,28 @@ public class SizedPriorityQueue<T>
 		}
 	}
 
+	/**
+	 * Adds all values of the given queue (in their order) with their priorities. Merging several partial queues
+	 * in the order they were built yields the same result as adding all values to a single queue, ties included.
+	 * 
+	 * @param other
+	 */
+	public void addAll(SizedPriorityQueue<T> other)
+	{
+		Iterator<T> valueIterator = other.mList.iterator();
+		Iterator<Double> priorityIterator = other.mPriorities.iterator();
+		while (valueIterator.hasNext() && priorityIterator.hasNext())
+		{
+			T value = valueIterator.next();
+			double priority = priorityIterator.next();
+			if (mGetLowest && isFull() && priority <= getLastPriority())
+			{
+				break; // the queue is ordered by decreasing priority, the remaining values would be dropped as well
+			}
+			add(value, priority);
+		}
+	}
+
 	/**
 	 * Like any ohter queue, it returns the top
 	 * 
@@ -148,6 +171,35 @@ public class SizedPriorityQueue<T>
 		return mList.size();
 	}
 
+	/**
+	 * @return Whether the queue already holds the maximum number of values
+	 */
+	public boolean isFull()
+	{
+		return mList.size() >= mSize;
+	}
+
+	/**
+	 * Returns the priority of the last value in the list, i.e. the one that is dropped next. Only valid for
+	 * non-empty queues that were filled via {@link #add(Object, double)}.
+	 * 
+	 * @return
+	 */
+	public double getLastPriority()
+	{
+		return mPriorities.getLast();
+	}
+
+	/**
+	 * Returns the priorities of all values currently held, in the same order as {@link #getAllScores()}
+	 * 
+	 * @return
+	 */
+	public List<Double> getAllPriorities()
+	{
+		return mPriorities;
+	}
+
 	/**
 	 * Returns an ordered list of all of the scores currently held
 	 * 
@@ -0,0 +1,184 @@
+package retrieval;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * Term-at-a-time evaluation over the resident {@link InvertedIndex}: query terms are processed one after the other in
+ * order of decreasing idf, and the contribution of every posting is added to a dense array of accumulators with one
+ * entry per docID.
+ *
+ * The number of accumulators can be bounded as proposed by Moffat and Zobel ("Self-indexing inverted files for fast
+ * text retrieval", 1996). Once <code>accumulatorLimit</code> documents have been touched, the QUIT strategy stops
+ * processing postings altogether, while the CONTINUE strategy keeps updating the existing accumulators but does not
+ * create new ones. Since the rare (high idf) terms are processed first, the documents that make it into the
+ * accumulator set are the ones most likely to end up in the top K. Without a limit (the default) the evaluation is exact.
+ *
+ * Accumulator arrays are pooled per thread, so consecutive queries evaluated on the same thread do not reallocate them.
+ * If the evaluation is restricted to a range of docIDs, the accumulator limit is scaled down to the share of the range.
+ * Postings of deleted documents are skipped before they take an accumulator.
+ */
+public class TermAtATimeEvaluator implements IRangeQueryEvaluator {
+	public static enum LimitingStrategy {
+		QUIT, CONTINUE
+	}
+
+	private static final ThreadLocal<Accumulators> accumulatorPool = new ThreadLocal<Accumulators>();
+
+	private int accumulatorLimit = Integer.MAX_VALUE;
+	private LimitingStrategy limitingStrategy = LimitingStrategy.CONTINUE;
+
+	/**
+	 * Sets the maximum number of accumulators, i.e. documents, that may receive a score. Integer.MAX_VALUE disables the limit.
+	 */
+	public void setAccumulatorLimit(int _accumulatorLimit) {
+		if (_accumulatorLimit < 1) {
+			throw new IllegalArgumentException("invalid accumulator limit: "+_accumulatorLimit+", must be at least 1");
+		}
+		this.accumulatorLimit = _accumulatorLimit;
+	}
+
+	public int getAccumulatorLimit() {
+		return accumulatorLimit;
+	}
+
+	/**
+	 * Sets the strategy to use once the accumulator limit has been reached.
+	 */
+	public void setLimitingStrategy(LimitingStrategy _limitingStrategy) {
+		this.limitingStrategy = _limitingStrategy;
+	}
+
+	public LimitingStrategy getLimitingStrategy() {
+		return limitingStrategy;
+	}
+
+	/**
+	 * Returns the accumulators of the calling thread, (re-)allocating them if they are too small for the given capacity.
+	 */
+	static Accumulators getAccumulators(int capacity) {
+		Accumulators accumulators = accumulatorPool.get();
+		if (accumulators == null || accumulators.capacity() < capacity) {
+			accumulators = new Accumulators(capacity);
+			accumulatorPool.set(accumulators);
+		}
+		return accumulators;
+	}
+
+	/**
+	 * Returns the positions of the query terms that occur in the index, ordered by decreasing idf (ties by termID).
+	 */
+	static Integer[] orderByDecreasingIdf(final InvertedIndex index, QueryVector query) {
+		int numberOfTerms = 0;
+		for (int i = 0; i < query.size(); i++) {
+			if (index.getDocumentFrequency(query.getTermID(i)) > 0 && query.getValue(i) != 0.0f) {
+				numberOfTerms++;
+			}
+		}
+
+		Integer[] order = new Integer[numberOfTerms];
+		final double[] idfs = new double[query.size()];
+		int counter = 0;
+		for (int i = 0; i < query.size(); i++) {
+			if (index.getDocumentFrequency(query.getTermID(i)) > 0 && query.getValue(i) != 0.0f) {
+				idfs[i] = index.getIdf(query.getTermID(i));
+				order[counter++] = i;
+			}
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int retval = Double.compare(idfs[b], idfs[a]);
+				if (retval == 0) {
+					return Integer.compare(a, b);
+				}
+				return retval;
+			}
+		});
+
+		return order;
+	}
+
+	@Override
+	public SizedPriorityQueue<Integer> evaluate(InvertedIndex index, IScoringMethod scoringMethod, QueryVector query, int K) {
+		return evaluate(index, scoringMethod, query, K, 0, index.getMaxDocID() + 1);
+	}
+
+	@Override
+	public SizedPriorityQueue<Integer> evaluate(InvertedIndex index, IScoringMethod scoringMethod, QueryVector query, int K, int fromDocID, int toDocID) {
+		Accumulators accumulators = getAccumulators(index.getMaxDocID() + 1);
+		long numberOfTokens = index.getCollectionStatistics().getNumberOfTokens();
+
+		int limit = accumulatorLimit;
+		if (limit != Integer.MAX_VALUE && toDocID - fromDocID < index.getMaxDocID() + 1) {
+			limit = (int)Math.ceil((double)accumulatorLimit * (toDocID - fromDocID) / (index.getMaxDocID() + 1));
+		}
+
+		Integer[] order = orderByDecreasingIdf(index, query);
+		BitSet deletedDocuments = index.getDeletedDocuments();
+
+		try {
+			termLoop:
+			for (int position : order) {
+				int termID = query.getTermID(position);
+				float tfQuery = query.getValue(position);
+
+				IPostingsCursor postings = index.getPostings(termID);
+				int docID = fromDocID > 0 ? postings.advance(fromDocID) : postings.nextDoc(); // the first posting of the range
+
+				for (; docID < toDocID; docID = postings.nextDoc()) { // NO_MORE_DOCS ends the loop as well
+					float tfDocument = postings.value();
+					if (tfDocument == 0.0f || (deletedDocuments != null && deletedDocuments.get(docID))) {
+						continue;
+					}
+
+					if (!accumulators.active[docID]) {
+						if (accumulators.size >= limit) {
+							if (limitingStrategy == LimitingStrategy.QUIT) {
+								break termLoop;
+							}
+							continue; // CONTINUE: only existing accumulators are updated
+						}
+						accumulators.activate(docID);
+					}
+
+					accumulators.scores[docID] += scoringMethod.score(tfQuery, tfDocument, 0, numberOfTokens, index.getDocumentLength(docID));
+				}
+			}
+
+			return collectTopK(index, scoringMethod, query, accumulators, K);
+		}
+		finally {
+			accumulators.reset(); // the accumulators are pooled, they must be clean for the next query of the thread even after an error
+		}
+	}
+
+	/**
+	 * Turns the touched accumulators into the top K documents. Documents are offered in order of increasing docID,
+	 * so ties are resolved the same way as by a sequential scan of the index.
+	 */
+	static SizedPriorityQueue<Integer> collectTopK(InvertedIndex index, IScoringMethod scoringMethod, QueryVector query, Accumulators accumulators, int K) {
+		SizedPriorityQueue<Integer> results = new SizedPriorityQueue<Integer>(K, true);
+
+		Arrays.sort(accumulators.touched, 0, accumulators.size);
+
+		double queryVectorLength = scoringMethod.requiresVectorLengths() ? query.getVectorLength() : 0.0;
+
+		for (int i = 0; i < accumulators.size; i++) {
+			int docID = accumulators.touched[i];
+			double similarity = accumulators.scores[docID];
+
+			if (scoringMethod.requiresVectorLengths()) {
+				similarity = scoringMethod.useVectorLenghts(similarity, queryVectorLength, index.getDocumentVectorLength(docID));
+			}
+
+			if (results.isFull() && similarity <= results.getLastPriority()) {
+				continue; // would be dropped anyway
+			}
+			results.add(docID, similarity);
+		}
+
+		return results;
+	}
+}
@@ -0,0 +1,183 @@
+package retrieval;
+
+import java.util.Arrays;
+
+/**
+ * Postings whose docIDs are stored as gaps to the previous docID (the first one as gap to 0), each in a variable
+ * number of bytes: 7 bits per byte, lowest bits first, the high bit set on all but the last byte of a gap. Rare terms
+ * have large gaps, but still need only 2-3 bytes per posting instead of 4, and terms of medium density need one byte.
+ * See {@link BitmapPostings} for dense terms.
+ *
+ * Gaps can only be decoded one after the other, so {@link IPostingsCursor#advance(int)} would have to decode every
+ * posting up to the target. The postings therefore carry multi-level skip data (like the skip lists of Lucene): level
+ * 0 has an entry after every SKIP_INTERVAL postings, every further level an entry after every SKIP_MULTIPLIER entries
+ * of the level below. An entry holds the docID of the posting it follows and the offset of the next gap. Advancing
+ * uses the highest level first and walks down, so it decodes at most SKIP_INTERVAL gaps and a few entries per level
+ * instead of all postings before the target.
+ */
+public class VarintPostings implements IPostings {
+	public static final int SKIP_INTERVAL = 128; // postings per entry of skip level 0
+	public static final int SKIP_MULTIPLIER = 8; // entries of a level per entry of the next level
+	public static final int MAX_SKIP_LEVELS = 6;
+
+	private byte[] bytes;
+	private int[][] skipDocIDs; // per level: the docID of the last posting before every entry
+	private int[][] skipOffsets; // per level: the offset of the next gap in bytes
+	private float[] values;
+	private int size;
+
+	/**
+	 * Encodes the given postings.
+	 *
+	 * @param docIDs The docIDs, in increasing order.
+	 * @param _values The values, parallel to the docIDs. The array is kept, not copied.
+	 * @param _size The number of postings.
+	 */
+	public VarintPostings(int[] docIDs, float[] _values, int _size) {
+		this.values = _values;
+		this.size = _size;
+
+		int levels = 0;
+		for (long interval = SKIP_INTERVAL; levels < MAX_SKIP_LEVELS && _size / interval > 0; interval *= SKIP_MULTIPLIER) {
+			levels++;
+		}
+		skipDocIDs = new int[levels][];
+		skipOffsets = new int[levels][];
+		int interval = SKIP_INTERVAL;
+		for (int level = 0; level < levels; level++) {
+			skipDocIDs[level] = new int[_size / interval];
+			skipOffsets[level] = new int[_size / interval];
+			interval *= SKIP_MULTIPLIER;
+		}
+
+		byte[] buffer = new byte[encodedSize(docIDs, _size)];
+		int length = 0;
+		int previousDocID = 0;
+		for (int i = 0; i < _size; i++) {
+			int gap = docIDs[i] - previousDocID;
+			while ((gap & ~0x7F) != 0) {
+				buffer[length++] = (byte)((gap & 0x7F) | 0x80);
+				gap >>>= 7;
+			}
+			buffer[length++] = (byte)gap;
+			previousDocID = docIDs[i];
+
+			interval = SKIP_INTERVAL;
+			for (int level = 0; level < levels && (i + 1) % interval == 0; level++) {
+				skipDocIDs[level][(i + 1) / interval - 1] = docIDs[i];
+				skipOffsets[level][(i + 1) / interval - 1] = length;
+				interval *= SKIP_MULTIPLIER;
+			}
+		}
+		this.bytes = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * @return The number of bytes needed for the docIDs of the given postings.
+	 */
+	public static int encodedSize(int[] docIDs, int size) {
+		int bytes = 0;
+		int previousDocID = 0;
+		for (int i = 0; i < size; i++) {
+			int gap = docIDs[i] - previousDocID;
+			do {
+				bytes++;
+				gap >>>= 7;
+			} while (gap != 0);
+			previousDocID = docIDs[i];
+		}
+		return bytes;
+	}
+
+	public IPostingsCursor cursor() {
+		return new Cursor();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getSizeInBytes() {
+		long skipBytes = 0;
+		for (int[] levelDocIDs : skipDocIDs) {
+			skipBytes += 8L * levelDocIDs.length;
+		}
+		return bytes.length + skipBytes + 4L * size;
+	}
+
+	/**
+	 * Decodes the gaps one after the other, {@link #advance(int)} jumps over blocks of postings using the skip data.
+	 */
+	private class Cursor implements IPostingsCursor {
+		private int offset = 0; // of the next gap in bytes
+		private int index = -1;
+		private int docID = -1;
+
+		public int docID() {
+			return docID;
+		}
+
+		public float value() {
+			return values[index];
+		}
+
+		public int nextDoc() {
+			index++;
+			if (index >= size) {
+				index = size;
+				docID = NO_MORE_DOCS;
+				return docID;
+			}
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[offset++];
+				gap |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			docID = (docID < 0 ? 0 : docID) + gap;
+			return docID;
+		}
+
+		public int advance(int target) {
+			if (target > docID) {
+				skipTo(target);
+			}
+			int doc = nextDoc();
+			while (doc < target) {
+				doc = nextDoc();
+			}
+			return doc;
+		}
+
+		/**
+		 * Moves to the last skip entry before the target, from the highest level down. Entry k of a level with the
+		 * given interval follows the posting at index (k + 1) * interval - 1.
+		 */
+		private void skipTo(int target) {
+			int interval = SKIP_INTERVAL;
+			for (int level = 1; level < skipDocIDs.length; level++) {
+				interval *= SKIP_MULTIPLIER;
+			}
+			for (int level = skipDocIDs.length - 1; level >= 0; level--) {
+				int[] levelDocIDs = skipDocIDs[level];
+				int first = (index + 1) / interval; // the first entry after the current posting
+				int entry = first;
+				while (entry < levelDocIDs.length && levelDocIDs[entry] < target) {
+					entry++;
+				}
+				if (entry > first) {
+					index = entry * interval - 1;
+					docID = levelDocIDs[entry - 1];
+					offset = skipOffsets[level][entry - 1];
+				}
+				interval /= SKIP_MULTIPLIER;
+			}
+		}
+
+		public int cost() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package retrieval;
+
+/**
+ * Ranked OR with WAND pruning (Broder et al., "Efficient query evaluation using a two-level retrieval process", 2003):
+ * every query term has an upper bound of the score it can add to a document (see
+ * {@link InvertedIndex#getMaxScores(IScoringMethod)}). The cursors are kept sorted by their current docID, and the
+ * pivot is the first cursor at which the bounds of the cursors up to it exceed the score of the K-th result found so
+ * far. No document before the pivot docID can make it into the result, so the cursors before the pivot are advanced
+ * to it without looking at the documents in between. Once the result is full, the postings of frequent terms with low
+ * bounds are mostly skipped.
+ *
+ * The pruning is safe: documents are scored like by {@link DocumentAtATimeEvaluator}, in double precision and in the
+ * same term order as by {@link TermAtATimeEvaluator}, so the result is the same as the one of an unlimited
+ * term-at-a-time evaluation.
+ */
+public class WandEvaluator extends DocumentAtATimeEvaluator {
+	private static final double BOUND_SLACK = 1e-6; // covers the rounding of the bounds multiplied and added up
+
+	@Override
+	public SizedPriorityQueue<Integer> evaluate(InvertedIndex index, IScoringMethod scoringMethod, QueryVector query, int K, int fromDocID, int toDocID) {
+		SizedPriorityQueue<Integer> results = new SizedPriorityQueue<Integer>(K, true);
+
+		Integer[] order = TermAtATimeEvaluator.orderByDecreasingIdf(index, query);
+		IPostingsCursor[] cursors = openCursors(index, query, order);
+		float[] maxScores = index.getMaxScores(scoringMethod);
+		double queryVectorLength = query.getVectorLength();
+
+		double[] bounds = new double[cursors.length];
+		int[] sorted = new int[cursors.length]; // cursors by current docID
+		for (int i = 0; i < cursors.length; i++) {
+			bounds[i] = query.getValue(order[i]) * maxScores[query.getTermID(order[i])];
+			if (scoringMethod.requiresVectorLengths()) {
+				bounds[i] = scoringMethod.useVectorLenghts(bounds[i], queryVectorLength, 1.0);
+			}
+			bounds[i] = Math.max(bounds[i], 0.0) * (1 + BOUND_SLACK);
+			cursors[i].advance(fromDocID);
+			sorted[i] = i;
+		}
+
+		while (true) {
+			sortByDocID(cursors, sorted);
+
+			int pivot = -1;
+			double bound = 0.0;
+			for (int j = 0; j < sorted.length && cursors[sorted[j]].docID() < toDocID; j++) {
+				bound += bounds[sorted[j]];
+				if (!results.isFull() || bound > results.getLastPriority()) {
+					pivot = j;
+					break;
+				}
+			}
+			if (pivot < 0) {
+				break;
+			}
+
+			int pivotDocID = cursors[sorted[pivot]].docID();
+			if (cursors[sorted[0]].docID() == pivotDocID) { // all cursors up to the pivot are on the pivot document
+				collect(results, pivotDocID, scoreDocument(index, scoringMethod, query, order, cursors, pivotDocID));
+				for (int j = 0; j < sorted.length && cursors[sorted[j]].docID() == pivotDocID; j++) {
+					cursors[sorted[j]].nextDoc();
+				}
+			}
+			else {
+				for (int j = 0; j < pivot; j++) {
+					if (cursors[sorted[j]].docID() < pivotDocID) {
+						cursors[sorted[j]].advance(pivotDocID);
+					}
+				}
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Insertion sort of the cursors by docID, ties by position. The order changes little between steps.
+	 */
+	private static void sortByDocID(IPostingsCursor[] cursors, int[] sorted) {
+		for (int i = 1; i < sorted.length; i++) {
+			int cursor = sorted[i];
+			int docID = cursors[cursor].docID();
+			int j = i - 1;
+			while (j >= 0 && (cursors[sorted[j]].docID() > docID || (cursors[sorted[j]].docID() == docID && sorted[j] > cursor))) {
+				sorted[j + 1] = sorted[j];
+				j--;
+			}
+			sorted[j + 1] = cursor;
+		}
+	}
+}